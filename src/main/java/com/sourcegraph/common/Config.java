@@ -29,6 +29,189 @@ public final class Config {
      */
     public static final boolean IGNORE_DEPENDENCY_RESOLUTION_CACHE = System.getenv().get("NO_CACHE") != null;
 
+    /**
+     * If set, Maven workspaces resolve and index their direct dependencies first and fetch the rest of the transitive
+     * closure in the background. Javac only waits for the background resolution when it lists a package that neither
+     * the direct dependencies nor the workspace's sources provide, so files that only use those don't wait for it.
+     */
+    public static final boolean LAZY_DEPENDENCY_RESOLUTION = System.getenv().get("LAZY_DEPENDENCY_RESOLUTION") != null;
+
+    /**
+     * If set, analyzing a file only attributes the bodies of that file. Other source files that javac enters because
+     * the file depends on them only get their members and signatures entered; their bodies are attributed when they
+     * are analyzed themselves.
+     */
+    public static final boolean HEADER_ONLY_ATTRIBUTION = System.getenv().get("HEADER_ONLY_ATTRIBUTION") != null;
+
+    /**
+     * If set, hover and definition requests only attribute the method or initializer that contains the requested
+     * position (along with the signatures of the file's classes). The other bodies are attributed when a request
+     * needs them.
+     */
+    public static final boolean LAZY_METHOD_ATTRIBUTION = System.getenv().get("LAZY_METHOD_ATTRIBUTION") != null;
+
+    /**
+     * If set, Maven workspaces that depend on the same jar file share a single index of its classes, instead of each
+     * workspace listing the jar's classes on its own.
+     */
+    public static final boolean SHARED_JAR_INDEX = System.getenv().get("SHARED_JAR_INDEX") != null;
+
+    /**
+     * If set, analyzing a file also records a compact navigation index of it (see NavigationIndex), from which later
+     * hover and definition requests are answered without going back to the javac trees. Indexes survive the release
+     * of idle compilers.
+     */
+    public static final boolean NAVIGATION_INDEX = System.getenv().get("NAVIGATION_INDEX") != null;
+
+    /**
+     * If set along with NAVIGATION_INDEX, navigation indexes are also stored on disk (see NAVIGATION_INDEX_CACHE_DIR,
+     * NAVIGATION_INDEX_DISK_CACHE_MB) and read back on demand, so that after a restart hover and definition for
+     * unchanged files don't have to wait for javac. Indexes of documents edited by the client are not stored.
+     */
+    public static final boolean NAVIGATION_INDEX_DISK_CACHE = System.getenv().get("NAVIGATION_INDEX_DISK_CACHE") != null;
+
+    /**
+     * If set, POMs inferred by Fradle are also cached on disk (see FRADLE_CACHE_DIR), so they survive restarts. They
+     * are always cached in memory.
+     */
+    public static final boolean FRADLE_DISK_CACHE = System.getenv().get("FRADLE_DISK_CACHE") != null;
+
+    /**
+     * Maximum number of concurrent artifact downloads from a single repository host. Maven itself defaults to
+     * downloading up to 5 artifacts concurrently; going much higher risks getting rate-limited by Maven Central.
+     */
+    public static final int ARTIFACT_FETCH_CONCURRENCY_PER_HOST;
+
+    static {
+        String concurrency = System.getenv().get("ARTIFACT_FETCH_CONCURRENCY_PER_HOST");
+        if (concurrency != null) {
+            ARTIFACT_FETCH_CONCURRENCY_PER_HOST = Integer.valueOf(concurrency);
+        } else {
+            ARTIFACT_FETCH_CONCURRENCY_PER_HOST = 8;
+        }
+    }
+
+    /**
+     * Maximum number of idle sessions (initialized workspaces of a repository revision that no connection is using)
+     * to keep around for reuse by later connections. 0 disables keeping idle sessions.
+     */
+    public static final int SESSION_CACHE_SIZE;
+
+    static {
+        String size = System.getenv().get("SESSION_CACHE_SIZE");
+        if (size != null) {
+            SESSION_CACHE_SIZE = Integer.valueOf(size);
+        } else {
+            SESSION_CACHE_SIZE = 4;
+        }
+    }
+
+    /**
+     * Fraction of the maximum heap above which memory is considered tight: idle sessions are evicted regardless of
+     * SESSION_CACHE_SIZE, and the compilers of workspaces that haven't been used for a minute are released regardless
+     * of COMPILER_IDLE_SECONDS.
+     */
+    public static final double SESSION_CACHE_HEAP_FRACTION;
+
+    static {
+        String fraction = System.getenv().get("SESSION_CACHE_HEAP_FRACTION");
+        if (fraction != null) {
+            SESSION_CACHE_HEAP_FRACTION = Double.valueOf(fraction);
+        } else {
+            SESSION_CACHE_HEAP_FRACTION = 0.75;
+        }
+    }
+
+    /**
+     * Number of seconds after which the compiler of a workspace that hasn't been used is released (and rebuilt on the
+     * next request that needs it). 0 disables releasing compilers, except under heap pressure.
+     */
+    public static final int COMPILER_IDLE_SECONDS;
+
+    static {
+        String seconds = System.getenv().get("COMPILER_IDLE_SECONDS");
+        if (seconds != null) {
+            COMPILER_IDLE_SECONDS = Integer.valueOf(seconds);
+        } else {
+            COMPILER_IDLE_SECONDS = 1800;
+        }
+    }
+
+    /**
+     * Number of compilers kept ready for each of the common compiler option sets (see JavacHolderPool). 0 disables the
+     * pool and the compiler warm-up at server start.
+     */
+    public static final int COMPILER_POOL_SIZE;
+
+    static {
+        String size = System.getenv().get("COMPILER_POOL_SIZE");
+        if (size != null) {
+            COMPILER_POOL_SIZE = Integer.valueOf(size);
+        } else {
+            COMPILER_POOL_SIZE = 1;
+        }
+    }
+
+    /**
+     * Maximum number of hover, definition, xdefinition and documentSymbol responses remembered per session (see
+     * ResponseCache). 0 disables the cache.
+     */
+    public static final int RESPONSE_CACHE_SIZE;
+
+    static {
+        String size = System.getenv().get("RESPONSE_CACHE_SIZE");
+        if (size != null) {
+            RESPONSE_CACHE_SIZE = Integer.valueOf(size);
+        } else {
+            RESPONSE_CACHE_SIZE = 10000;
+        }
+    }
+
+    /**
+     * Maximum number of files whose navigation indexes are kept in memory per session (see NAVIGATION_INDEX). Above
+     * that, the least recently used indexes are dropped along with the declarations they provide.
+     */
+    public static final int NAVIGATION_INDEX_MAX_FILES;
+
+    static {
+        String size = System.getenv().get("NAVIGATION_INDEX_MAX_FILES");
+        if (size != null) {
+            NAVIGATION_INDEX_MAX_FILES = Integer.valueOf(size);
+        } else {
+            NAVIGATION_INDEX_MAX_FILES = 20000;
+        }
+    }
+
+    /**
+     * Maximum number of distinct declared names in the index used by workspace/symbol text queries (see
+     * SymbolNameIndex). The index disables itself above that, and queries search every file. 0 disables the index.
+     */
+    public static final int SYMBOL_INDEX_MAX_NAMES;
+
+    static {
+        String max = System.getenv().get("SYMBOL_INDEX_MAX_NAMES");
+        if (max != null) {
+            SYMBOL_INDEX_MAX_NAMES = Integer.valueOf(max);
+        } else {
+            SYMBOL_INDEX_MAX_NAMES = 1000000;
+        }
+    }
+
+    /**
+     * Maximum size of the navigation indexes stored on disk (see NAVIGATION_INDEX_DISK_CACHE), in megabytes. The least
+     * recently used indexes are deleted above that.
+     */
+    public static final int NAVIGATION_INDEX_DISK_CACHE_MB;
+
+    static {
+        String size = System.getenv().get("NAVIGATION_INDEX_DISK_CACHE_MB");
+        if (size != null) {
+            NAVIGATION_INDEX_DISK_CACHE_MB = Integer.valueOf(size);
+        } else {
+            NAVIGATION_INDEX_DISK_CACHE_MB = 1024;
+        }
+    }
+
     /**
      * Controls how long the LSP controller will wait for a response to a blocking request.
      */
@@ -57,6 +240,16 @@ public final class Config {
      */
     public static final File LOCAL_REPOSITORY = new File(LANGSERVER_ROOT, "artifacts");
 
+    /**
+     * Directory for POMs inferred by Fradle, or null if FRADLE_DISK_CACHE is not set
+     */
+    public static final File FRADLE_CACHE_DIR = FRADLE_DISK_CACHE ? new File(LANGSERVER_ROOT, "fradle-cache") : null;
+
+    /**
+     * Directory for navigation indexes, or null if NAVIGATION_INDEX_DISK_CACHE is not set
+     */
+    public static final File NAVIGATION_INDEX_CACHE_DIR = NAVIGATION_INDEX && NAVIGATION_INDEX_DISK_CACHE ? new File(LANGSERVER_ROOT, "navigation-index") : null;
+
     /**
      * Comma-delimited original root paths for which we run the Gradle plugin, rather than Fradle, to extract
      * Gradle metadata. Note that these should include projects that we trust with arbitrary code execution.
@@ -114,9 +307,25 @@ public final class Config {
         System.out.printf("\t%s:\t%s\n", "LIGHTSTEP_PROJECT", LIGHTSTEP_PROJECT);
         System.out.printf("\t%s:\t%s\n", "LIGHTSTEP_TOKEN", LIGHTSTEP_TOKEN != null ? "<redacted>" : null);
         System.out.printf("\t%s:\t%s\n", "ANDROID_JAR_PATH", ANDROID_JAR_PATH);
+        System.out.printf("\t%s:\t%d\n", "ARTIFACT_FETCH_CONCURRENCY_PER_HOST", ARTIFACT_FETCH_CONCURRENCY_PER_HOST);
         System.out.printf("\t%s:\t%s\n", "IGNORE_DEPENDENCY_RESOLUTION_CACHE", IGNORE_DEPENDENCY_RESOLUTION_CACHE);
+        System.out.printf("\t%s:\t%s\n", "LAZY_DEPENDENCY_RESOLUTION", LAZY_DEPENDENCY_RESOLUTION);
+        System.out.printf("\t%s:\t%s\n", "HEADER_ONLY_ATTRIBUTION", HEADER_ONLY_ATTRIBUTION);
+        System.out.printf("\t%s:\t%s\n", "LAZY_METHOD_ATTRIBUTION", LAZY_METHOD_ATTRIBUTION);
+        System.out.printf("\t%s:\t%s\n", "SHARED_JAR_INDEX", SHARED_JAR_INDEX);
+        System.out.printf("\t%s:\t%s\n", "NAVIGATION_INDEX", NAVIGATION_INDEX);
+        System.out.printf("\t%s:\t%s\n", "NAVIGATION_INDEX_DISK_CACHE", NAVIGATION_INDEX_DISK_CACHE);
+        System.out.printf("\t%s:\t%d\n", "NAVIGATION_INDEX_DISK_CACHE_MB", NAVIGATION_INDEX_DISK_CACHE_MB);
+        System.out.printf("\t%s:\t%s\n", "FRADLE_DISK_CACHE", FRADLE_DISK_CACHE);
         System.out.printf("\t%s:\t%s\n", "LANGSERVER_ROOT", LANGSERVER_ROOT);
         System.out.printf("\t%s:\t%d\n", "LSP_TIMEOUT", LSP_TIMEOUT);
+        System.out.printf("\t%s:\t%d\n", "SESSION_CACHE_SIZE", SESSION_CACHE_SIZE);
+        System.out.printf("\t%s:\t%s\n", "SESSION_CACHE_HEAP_FRACTION", SESSION_CACHE_HEAP_FRACTION);
+        System.out.printf("\t%s:\t%d\n", "COMPILER_IDLE_SECONDS", COMPILER_IDLE_SECONDS);
+        System.out.printf("\t%s:\t%d\n", "COMPILER_POOL_SIZE", COMPILER_POOL_SIZE);
+        System.out.printf("\t%s:\t%d\n", "RESPONSE_CACHE_SIZE", RESPONSE_CACHE_SIZE);
+        System.out.printf("\t%s:\t%d\n", "NAVIGATION_INDEX_MAX_FILES", NAVIGATION_INDEX_MAX_FILES);
+        System.out.printf("\t%s:\t%d\n", "SYMBOL_INDEX_MAX_NAMES", SYMBOL_INDEX_MAX_NAMES);
         System.out.printf("\t%s:\t%s\n", "PRIVATE_ARTIFACT_REPO_ID", PRIVATE_REPO_ID);
         System.out.printf("\t%s:\t%s\n", "PRIVATE_ARTIFACT_REPO_USERNAME", PRIVATE_REPO_USERNAME);
         System.out.printf("\t%s:\t%s\n", "PRIVATE_ARTIFACT_REPO_PASSWORD", PRIVATE_REPO_PASSWORD != null ? "<redacted>" : null);
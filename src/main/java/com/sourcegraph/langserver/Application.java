@@ -2,6 +2,7 @@ package com.sourcegraph.langserver;
 
 import ch.qos.logback.classic.Level;
 import com.sourcegraph.common.Config;
+import com.sourcegraph.langserver.langservice.workspace.JavacHolderPool;
 import com.sourcegraph.lsp.Controller;
 import org.apache.commons.cli.*;
 import org.apache.commons.lang3.StringUtils;
@@ -67,6 +68,7 @@ public class Application {
             System.out.println("Logging level (com.sourcegraph,root)=(" + mainLogger.getLevel() + "," + rootLogger.getLevel()+")");
 
             Config.checkEnv();
+            JavacHolderPool.warmUp();
 
             Runtime runtime = Runtime.getRuntime();
             log.info(String.format("JVM properties (TotalMemory=%.2fGB, MaxMemory=%.2fGB)",
@@ -0,0 +1,131 @@
+package com.sourcegraph.langserver;
+
+import ch.qos.logback.classic.Level;
+import com.sourcegraph.common.Config;
+import com.sourcegraph.langserver.langservice.RepositoryIndexer;
+import com.sourcegraph.langserver.langservice.files.FileSystemFileProvider;
+import com.sourcegraph.langserver.langservice.workspace.JavacHolderPool;
+import org.apache.commons.cli.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * BatchIndexer indexes a local checkout of a repository offline and writes a dump of its definitions, references,
+ * hovers and symbols (see RepositoryIndexer), so that code intelligence for frequently viewed repositories can be
+ * precomputed instead of computed by live compilation.
+ */
+public class BatchIndexer {
+
+    private static final long BYTES_TO_GIGABYTES = 1_000_000_000L;
+
+    private static final Logger log = LoggerFactory.getLogger(BatchIndexer.class);
+
+    private static final ch.qos.logback.classic.Logger rootLogger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+
+    public static void main(String... args) throws Exception {
+        new BatchIndexer().run(args);
+    }
+
+    private void run(String... args) throws Exception {
+
+        Options options = new Options();
+        options.addOption(Option.builder("r")
+                .argName("directory")
+                .hasArg()
+                .desc("Root directory of the repository to index (current directory)")
+                .longOpt("root")
+                .build());
+        options.addOption(Option.builder("o")
+                .argName("file")
+                .hasArg()
+                .desc("File to write the dump to, gzipped if it ends with .gz (index.jsonl)")
+                .longOpt("output")
+                .build());
+        options.addOption(Option.builder("j")
+                .argName("number")
+                .hasArg()
+                .desc("Number of files to index in parallel (number of processors)")
+                .longOpt("jobs")
+                .build());
+        options.addOption(Option.builder("l")
+                .argName("level")
+                .hasArg()
+                .desc("Log level (DEBUG : TRACE | DEBUG | INFO | WARN | ERROR)")
+                .longOpt("log")
+                .build());
+        options.addOption(Option.builder("h")
+                .desc("Show help")
+                .longOpt("help")
+                .build());
+
+        CommandLineParser parser = new DefaultParser();
+        try {
+            // parse the command line arguments
+            CommandLine line = parser.parse(options, args);
+            if (line.hasOption("h")) {
+                new HelpFormatter().printHelp("java-langserver-index", options);
+                return;
+            }
+            Path root = Paths.get(line.getOptionValue("r", ".")).toAbsolutePath().normalize();
+            String output = line.getOptionValue("o", "index.jsonl");
+            int jobs = Runtime.getRuntime().availableProcessors();
+            if (line.hasOption("j")) {
+                jobs = Integer.parseInt(line.getOptionValue("j"));
+            }
+
+            // logging
+            ch.qos.logback.classic.Logger mainLogger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("com.sourcegraph");
+            if (line.hasOption("l")) {
+                mainLogger.setLevel(Level.valueOf(line.getOptionValue("l")));
+            }
+            System.out.println("Logging level (com.sourcegraph,root)=(" + mainLogger.getLevel() + "," + rootLogger.getLevel()+")");
+
+            Config.checkEnv();
+            JavacHolderPool.warmUp();
+
+            Runtime runtime = Runtime.getRuntime();
+            log.info(String.format("JVM properties (TotalMemory=%.2fGB, MaxMemory=%.2fGB)",
+                    ((double)runtime.totalMemory()/BYTES_TO_GIGABYTES),
+                    ((double)runtime.maxMemory()/BYTES_TO_GIGABYTES)));
+
+            log.info("Indexing {} into {} with {} workers", root, output, jobs);
+            RepositoryIndexer indexer = new RepositoryIndexer("file:///", new FileSystemFileProvider(root), jobs);
+            RepositoryIndexer.Stats stats;
+            try (Writer out = openOutput(output)) {
+                stats = indexer.index(out);
+            }
+
+            log.info(String.format("Indexed %d documents (%d failed, %d symbols, %d ranges) in %.1fs, %.1f documents/s, peak heap %.2fGB",
+                    stats.getDocuments(),
+                    stats.getFailedDocuments(),
+                    stats.getSymbols(),
+                    stats.getRanges(),
+                    stats.getElapsedMillis() / 1000.0,
+                    stats.getDocumentsPerSecond(),
+                    ((double)stats.getPeakHeapBytes()/BYTES_TO_GIGABYTES)));
+            System.exit(0);
+
+        } catch (ParseException exp) {
+            log.error("Parsing failed.  Reason: ", exp);
+            new HelpFormatter().printHelp("java-langserver-index", options);
+            System.exit(1);
+        } catch (Config.ConfigException exp) {
+            log.error("Configuration error: " + exp);
+            System.exit(1);
+        }
+    }
+
+    private static Writer openOutput(String output) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(output));
+        if (output.endsWith(".gz")) {
+            out = new GZIPOutputStream(out);
+        }
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+}
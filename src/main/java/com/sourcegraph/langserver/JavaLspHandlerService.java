@@ -27,7 +27,10 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class JavaLspHandlerService implements MessageHandlerService {
 
@@ -44,8 +47,19 @@ public class JavaLspHandlerService implements MessageHandlerService {
     private final boolean vfs;
 
     private Object isInitializedMu = new Object();
+    // completes once the files have been listed and the build files parsed; workspaces are added to the workspace
+    // manager afterwards, as their modules are built (see ensureReadyOrThrow)
     private CompletableFuture<Void> isInitialized;
 
+    // the (possibly shared) session this connection is attached to, see SessionRegistry
+    private SessionRegistry.Session session;
+    // builds the workspaces of a session for this connection's repository, set on initialize
+    private Function<SessionRegistry.Connections, SessionRegistry.Initialized> sessionInitializer;
+    private String originalRootUri;
+    // whether the client offers a cache, in which case this connection serves the session's SharedCache
+    private boolean xcacheProvider;
+    private final AtomicBoolean releasedSession = new AtomicBoolean(false);
+
     private Util.Timer start;
 
     public JavaLspHandlerService(Controller controller, boolean vfs) {
@@ -53,6 +67,7 @@ public class JavaLspHandlerService implements MessageHandlerService {
         this.vfs = vfs;
         this.workspaceManager = null;
         this.languageService = null;
+        controller.addShutdownListener(this::releaseSession);
     }
 
     @Override
@@ -80,38 +95,44 @@ public class JavaLspHandlerService implements MessageHandlerService {
             throw new RuntimeException("rootUri was not specified");
         }
 
+        ClientCapabilities capabilities = request.getParams().getCapabilities();
+        final boolean xcacheProvider = capabilities != null && capabilities.isXcacheProvider();
+
         final List<WorkspaceConfigurationServersResult.Server> servers = new ArrayList<>();
         servers.addAll(getServers());
         InitializeParams.InitializationOptions initOpts = request.getParams().getInitializationOptions();
         if (initOpts != null && initOpts.getServers() != null) {
             servers.addAll(initOpts.getServers());
         }
+        final String sessionKey = SessionRegistry.key(rootUri, request.getParams().getOriginalRootUri(), servers);
 
         final String r = originalRootUri;
         synchronized(isInitializedMu) {
             if (this.isInitialized == null) {
-                this.isInitialized = CompletableFuture.supplyAsync(() -> {
+                this.originalRootUri = finalOriginalRootUri;
+                this.xcacheProvider = xcacheProvider;
+                this.sessionInitializer = connections -> {
                     try {
                         FileContentProvider files = OverlayContentProvider.withOverlays(
-                                new CachingFileContentProvider(controller),
+                                new CachingFileContentProvider(connections),
                                 finalRootUri,
-                                controller
+                                connections
                         );
-                        List<Workspace> workspaces = Workspaces.fromFiles(finalRootUri, files, controller, servers);
-                        if (workspaces.size() == 0) {
-                            log.warn("No workspaces detected in {}", r);
-                        } else {
-                            log.info("{} Workspaces detected in {}", workspaces.size(), r);
-                        }
-                        this.workspaceManager = new WorkspaceManager(workspaces, files);
-                        this.languageService = new LanguageService(files, controller, workspaceManager);
-                        return null;
+                        WorkspaceManager workspaceManager = Workspaces.fromFilesStaged(finalRootUri, files, connections, servers, connections.getSharedCache());
+                        workspaceManager.whenInitialized().thenRun(() -> {
+                            List<Workspace> workspaces = workspaceManager.getWorkspaces();
+                            if (workspaces.size() == 0) {
+                                log.warn("No workspaces detected in {}", r);
+                            } else {
+                                log.info("{} Workspaces detected in {}", workspaces.size(), r);
+                            }
+                        });
+                        return new SessionRegistry.Initialized(files, workspaceManager);
                     } catch (Exception e) {
-                        log.error("Initialization error for {}: {}", finalOriginalRootUri, e);
-                        this.terminate();
                         throw new RuntimeException(e);
                     }
-                });
+                };
+                attachSession(SessionRegistry.getInstance().acquire(sessionKey, controller));
             }
         }
 
@@ -123,6 +144,27 @@ public class JavaLspHandlerService implements MessageHandlerService {
         start = Util.timeStartQuiet("JavaLspHandlerService", "originalRootUri", originalRootUri);
     }
 
+    /**
+     * Attaches this connection to the session, which is initialized unless another connection already did. Must be
+     * called with isInitializedMu held.
+     */
+    private void attachSession(SessionRegistry.Session session) {
+        this.session = session;
+        if (xcacheProvider) {
+            // detached by SessionRegistry.release
+            session.getSharedCache().attach(controller);
+        }
+        this.isInitialized = session.initializeOnce(sessionInitializer).thenRun(() -> {
+            this.workspaceManager = session.getWorkspaceManager();
+            this.languageService = new LanguageService(session.getFiles(), controller, workspaceManager, session.getCompilerService());
+        });
+        this.isInitialized.thenCompose(v -> session.getWorkspaceManager().whenInitialized()).exceptionally(e -> {
+            log.error("Initialization error for {}: {}", originalRootUri, e);
+            this.terminate();
+            return null;
+        });
+    }
+
     @Override
     public void shutdown(Map<String, Object> ctx, Request<Void> request) {
         if (start != null) {
@@ -145,6 +187,20 @@ public class JavaLspHandlerService implements MessageHandlerService {
         languageService = null;
     }
 
+    /**
+     * releaseSession detaches this connection from its session, so that the session can be evicted once no
+     * connection uses it anymore
+     */
+    private void releaseSession() {
+        SessionRegistry.Session s;
+        synchronized (isInitializedMu) {
+            s = session;
+        }
+        if (s != null && releasedSession.compareAndSet(false, true)) {
+            SessionRegistry.getInstance().release(s, controller);
+        }
+    }
+
     @Override
     public void exit(Map<String, Object> ctx, Request<Void> request) {
         if (receivedShutdownRequest.get()) {
@@ -182,7 +238,13 @@ public class JavaLspHandlerService implements MessageHandlerService {
         ensureReadyOrThrow("workspace/symbol");
         List<SymbolInformation> symbols;
         try {
-            symbols = languageService.workspaceSymbol(request.getParams(), ctx);
+            symbols = coalesce("workspace/symbol", request.getParams(), () -> {
+                try {
+                    return languageService.workspaceSymbol(request.getParams(), ctx);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            });
         } catch (Exception e) {
             log.error("Error on workspace/symbol: {}", e);
             symbols = Collections.emptyList();
@@ -228,13 +290,86 @@ public class JavaLspHandlerService implements MessageHandlerService {
 
     @Override
     public void textDocumentDidOpen(Map<String, Object> ctx, Request<DidOpenTextDocumentParams> request) {
-        // not yet implemented
+        String uri = request.getParams().getTextDocument().getUri();
+        ensureReadyOrThrow("textDocument/didOpen", uri);
+        if (languageService.differsFromContent(uri, request.getParams().getTextDocument().getText())) {
+            ensureExclusiveSession("textDocument/didOpen", uri);
+        }
+        if (languageService.didOpen(request.getParams())) {
+            onContentChanged();
+        }
+    }
+
+    @Override
+    public void textDocumentDidChange(Map<String, Object> ctx, Request<DidChangeTextDocumentParams> request) {
+        String uri = request.getParams().getTextDocument().getUri();
+        ensureReadyOrThrow("textDocument/didChange", uri);
+        if (request.getParams().getContentChanges() != null && !request.getParams().getContentChanges().isEmpty()) {
+            ensureExclusiveSession("textDocument/didChange", uri);
+        }
+        if (languageService.didChange(request.getParams())) {
+            onContentChanged();
+        }
+    }
+
+    @Override
+    public void textDocumentDidSave(Map<String, Object> ctx, Request<DidSaveTextDocumentParams> request) {
+        String uri = request.getParams().getTextDocument().getUri();
+        ensureReadyOrThrow("textDocument/didSave", uri);
+        if (request.getParams().getText() != null && languageService.differsFromContent(uri, request.getParams().getText())) {
+            ensureExclusiveSession("textDocument/didSave", uri);
+        }
+        if (languageService.didSave(request.getParams())) {
+            onContentChanged();
+        }
+    }
+
+    /**
+     * Makes sure that no other connection uses this connection's session before this connection edits a document, so
+     * that other connections never see its unsaved content. The session stops being shared if this connection is the
+     * only one attached to it; otherwise this connection moves to a private session of its own, forked from the
+     * initialized workspaces of the shared one (see SessionRegistry.fork), and the edit waits until it is ready.
+     */
+    private void ensureExclusiveSession(String requestMethod, String uri) {
+        synchronized (isInitializedMu) {
+            if (session == null || SessionRegistry.getInstance().claimForEditing(session)) {
+                return;
+            }
+            log.info("Forking the session for {} before editing {}, other connections are using it", originalRootUri, uri);
+            attachSession(SessionRegistry.getInstance().fork(session, controller));
+        }
+        ensureReadyOrThrow(requestMethod, uri);
+    }
+
+    /**
+     * Cached responses and coalesced requests of the session no longer apply once this connection has edited it
+     */
+    private void onContentChanged() {
+        SessionRegistry.Session s;
+        synchronized (isInitializedMu) {
+            s = session;
+        }
+        if (s != null) {
+            s.getRequestCoalescer().advanceRevision();
+        }
+    }
+
+    /**
+     * Runs the computation of a request, sharing it with identical requests that any connection attached to the same
+     * session has in flight (see RequestCoalescer)
+     */
+    private <T> T coalesce(String method, Object params, Supplier<T> computation) {
+        SessionRegistry.Session s;
+        synchronized (isInitializedMu) {
+            s = session;
+        }
+        return s == null ? computation.get() : s.getRequestCoalescer().run(method, params, computation);
     }
 
     @Override
     public void textDocumentHover(Map<String, Object> ctx, Request<TextDocumentPositionParams> request) {
-        ensureReadyOrThrow("textDocument/hover");
-        Hover hover = languageService.hover(request.getParams(), ctx);
+        ensureReadyOrThrow("textDocument/hover", request.getParams().getTextDocument().getUri());
+        Hover hover = coalesce("textDocument/hover", request.getParams(), () -> languageService.hover(request.getParams(), ctx));
         Response<Hover> response = new Response<Hover>()
                 .withResult(hover)
                 .withId(request.getId());
@@ -261,8 +396,8 @@ public class JavaLspHandlerService implements MessageHandlerService {
 
     @Override
     public void textDocumentDocumentSymbol(Map<String, Object> ctx, Request<DocumentSymbolParams> request) {
-        ensureReadyOrThrow("textDocument/symbols");
-        List<SymbolInformation> symbols = languageService.documentSymbol(request.getParams(), ctx);
+        ensureReadyOrThrow("textDocument/symbols", request.getParams().getTextDocument().getUri());
+        List<SymbolInformation> symbols = coalesce("textDocument/documentSymbol", request.getParams(), () -> languageService.documentSymbol(request.getParams(), ctx));
         Response<List<SymbolInformation>> response = new Response<List<SymbolInformation>>()
                 .withResult(symbols)
                 .withId(request.getId());
@@ -271,8 +406,8 @@ public class JavaLspHandlerService implements MessageHandlerService {
 
     @Override
     public void textDocumentDefinition(Map<String, Object> ctx, Request<TextDocumentPositionParams> request) {
-        ensureReadyOrThrow("textDocument/definition");
-        List<Location> locations = languageService.definition(request.getParams(), ctx);
+        ensureReadyOrThrow("textDocument/definition", request.getParams().getTextDocument().getUri());
+        List<Location> locations = coalesce("textDocument/definition", request.getParams(), () -> languageService.definition(request.getParams(), ctx));
         Response<List<Location>> response = new Response<List<Location>>()
                 .withResult(locations)
                 .withId(request.getId());
@@ -281,14 +416,30 @@ public class JavaLspHandlerService implements MessageHandlerService {
 
     @Override
     public void textDocumentXDefinition(Map<String, Object> ctx, Request<TextDocumentPositionParams> request) {
-        ensureReadyOrThrow("textDocument/xdefinition");
-        List<SymbolLocationInformation> symbols = languageService.xDefinition(request.getParams(), ctx);
+        ensureReadyOrThrow("textDocument/xdefinition", request.getParams().getTextDocument().getUri());
+        List<SymbolLocationInformation> symbols = coalesce("textDocument/xdefinition", request.getParams(), () -> languageService.xDefinition(request.getParams(), ctx));
         Response<List<SymbolLocationInformation>> response = new Response<List<SymbolLocationInformation>>()
                 .withResult(symbols)
                 .withId(request.getId());
         controller.send(response);
     }
 
+    @Override
+    public void textDocumentXAnnotations(Map<String, Object> ctx, Request<TextDocumentAnnotationsParams> request) {
+        ensureReadyOrThrow("textDocument/xannotations", request.getParams().getTextDocument().getUri());
+        List<Annotation> annotations;
+        try {
+            annotations = languageService.annotations(request.getParams(), request.getId(), ctx);
+        } catch (Exception e) {
+            log.error("Error on textDocument/xannotations: {}", e);
+            annotations = Collections.emptyList();
+        }
+        Response<List<Annotation>> response = new Response<List<Annotation>>()
+                .withResult(annotations)
+                .withId(request.getId());
+        controller.send(response);
+    }
+
     @Override
     public void textDocumentContent(Map<String, Object> ctx, Request<TextDocumentContentParams> request) {
         // not expecting this request from the client
@@ -296,11 +447,23 @@ public class JavaLspHandlerService implements MessageHandlerService {
     }
 
     private void ensureReadyOrThrow(String requestMethod) {
+        ensureReadyOrThrow(requestMethod, null);
+    }
+
+    /**
+     * Waits until the workspaces needed by the request are ready: the workspace owning the given URI (and the
+     * workspaces it depends on), or all workspaces if the URI is null
+     */
+    private void ensureReadyOrThrow(String requestMethod, String uri) {
         if (isInitialized == null) {
             throw new RuntimeException("Received LSP request " + requestMethod + " before initialize call");
         }
         try {
             isInitialized.get();
+            WorkspaceManager workspaceManager = this.workspaceManager;
+            if (workspaceManager != null) {
+                (uri != null ? workspaceManager.whenReadyFor(uri) : workspaceManager.whenInitialized()).get();
+            }
         } catch (Exception e) {
             throw new RuntimeException("Received LSP request " + requestMethod + " after initialization error: " + e.getMessage());
         }
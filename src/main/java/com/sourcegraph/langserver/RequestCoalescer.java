@@ -0,0 +1,105 @@
+package com.sourcegraph.langserver;
+
+import com.sourcegraph.lsp.domain.Mapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * RequestCoalescer lets identical requests that arrive while the first of them is still being computed share its
+ * result, instead of each computing it again. Clients commonly send the same hover or workspace/symbol request several
+ * times in quick succession (from several tabs, or when retrying).
+ *
+ * Requests are identical if they have the same method, the same parameters (compared by their JSON serialization) and
+ * were received at the same revision. The revision is advanced whenever documents change, so that a request received
+ * after a change never gets a result computed before it. Results are only shared while being computed; nothing is
+ * cached once the computation is done.
+ *
+ * This class is threadsafe.
+ */
+public class RequestCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestCoalescer.class);
+
+    // method, revision and parameters -> pending computation
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong revision = new AtomicLong();
+
+    private final AtomicLong computed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Returns the result of the computation for the given request, sharing the computation with identical requests
+     * that are being computed concurrently. Exceptions thrown by the computation are rethrown to every request that
+     * shares it.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T run(String method, Object params, Supplier<T> computation) {
+        String key = method + " " + revision.get() + " " + Mapper.writeValueAsString(params);
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            log.debug("Coalescing {} with an identical request in flight", method);
+            return (T) join(existing);
+        }
+        computed.incrementAndGet();
+        try {
+            T result = computation.get();
+            future.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private static Object join(CompletableFuture<Object> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CompletionException(cause);
+        }
+    }
+
+    /**
+     * Stops requests received from now on from sharing computations with requests received before, e.g. because a
+     * document has changed in between
+     */
+    public void advanceRevision() {
+        revision.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of requests that were computed
+     */
+    public long getComputed() {
+        return computed.get();
+    }
+
+    /**
+     * Returns the number of requests that shared the computation of an identical request instead of being computed
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+}
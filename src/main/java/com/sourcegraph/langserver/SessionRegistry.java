@@ -0,0 +1,411 @@
+package com.sourcegraph.langserver;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.sourcegraph.common.Config;
+import com.sourcegraph.langserver.langservice.CompilerService;
+import com.sourcegraph.langserver.langservice.workspace.WorkspaceManager;
+import com.sourcegraph.lsp.Controller;
+import com.sourcegraph.lsp.FileContentProvider;
+import com.sourcegraph.lsp.Messenger;
+import com.sourcegraph.lsp.SharedCache;
+import com.sourcegraph.lsp.domain.params.MessageType;
+import com.sourcegraph.lsp.domain.result.WorkspaceConfigurationServersResult;
+import com.sourcegraph.lsp.domain.structures.TextDocumentIdentifier;
+import com.sourcegraph.utils.ExecutorUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+/**
+ * SessionRegistry lets connections for the same repository revision share a single initialized session (the
+ * workspaces, their compilers and the compilation caches), instead of each connection rebuilding everything from
+ * scratch on `initialize`.
+ *
+ * Sessions are reference-counted by the connections attached to them. A session that no connection uses anymore is
+ * kept around for reuse, up to Config.SESSION_CACHE_SIZE idle sessions; the least recently used idle sessions are
+ * evicted first, and all idle sessions are evicted when heap usage exceeds Config.SESSION_CACHE_HEAP_FRACTION.
+ * Sessions whose initialization fails are never reused.
+ *
+ * This class is threadsafe.
+ */
+public class SessionRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionRegistry.class);
+
+    private static final SessionRegistry instance = new SessionRegistry(Config.SESSION_CACHE_SIZE, Config.SESSION_CACHE_HEAP_FRACTION);
+
+    public static SessionRegistry getInstance() {
+        return instance;
+    }
+
+    private final int maxIdleSessions;
+
+    private final double maxHeapFraction;
+
+    // session key -> session, guarded by this
+    private final Map<String, Session> sessions = new HashMap<>();
+
+    SessionRegistry(int maxIdleSessions, double maxHeapFraction) {
+        this.maxIdleSessions = maxIdleSessions;
+        this.maxHeapFraction = maxHeapFraction;
+    }
+
+    /**
+     * Returns a key identifying the repository revision served by a connection, or null if the revision is unknown
+     * (in which case the session must not be shared)
+     */
+    public static String key(String rootUri, String originalRootUri) {
+        return key(rootUri, originalRootUri, Collections.emptyList());
+    }
+
+    /**
+     * Returns a key identifying the repository revision served by a connection along with the artifact repositories
+     * and credentials it resolves dependencies with, or null if the revision is unknown. Connections with different
+     * servers see different dependencies (and errors), so they get different sessions. Servers are hashed, so that
+     * credentials don't end up in logs.
+     */
+    public static String key(String rootUri, String originalRootUri, List<WorkspaceConfigurationServersResult.Server> servers) {
+        if (rootUri == null || originalRootUri == null) {
+            return null;
+        }
+        String key = originalRootUri + " " + rootUri;
+        if (servers == null || servers.isEmpty()) {
+            return key;
+        }
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (WorkspaceConfigurationServersResult.Server server : servers) {
+            for (String field : Arrays.asList(server.getId(), server.getUsername(), server.getPassword(), server.getDefaultUrl())) {
+                String value = Objects.toString(field, "");
+                hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
+            }
+        }
+        return key + " " + hasher.hash();
+    }
+
+    /**
+     * Attaches the controller to the session for the given key, creating the session if there is none. A null key
+     * always creates a new, unshared session. The caller must call {@link Session#initializeOnce} and, when the
+     * connection ends, {@link #release}.
+     */
+    public synchronized Session acquire(String key, Controller controller) {
+        Session session = key != null ? sessions.get(key) : null;
+        if (session == null) {
+            evictIdle(true);
+            session = new Session(key);
+            if (key != null) {
+                sessions.put(key, session);
+            }
+        } else {
+            log.info("Reusing session for {} ({} connections attached)", key, session.refCount);
+        }
+        session.refCount++;
+        session.connections.attach(controller);
+        return session;
+    }
+
+    /**
+     * Detaches the controller from the session. Once no connection is attached, the session becomes idle and may be
+     * evicted.
+     */
+    public synchronized void release(Session session, Controller controller) {
+        session.connections.detach(controller);
+        session.connections.sharedCache.detach(controller);
+        if (session.upstreamConnections != null) {
+            session.upstreamConnections.detach(controller);
+        }
+        session.refCount--;
+        if (session.refCount > 0) {
+            return;
+        }
+        session.lastReleased = System.nanoTime();
+        if (session.key == null || sessions.get(session.key) != session || session.ready.isCompletedExceptionally()) {
+            discard(session);
+            return;
+        }
+        evictIdle(false);
+    }
+
+    synchronized int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Evicts idle sessions, least recently used first, while there are more than allowed or the heap is too full.
+     * When making room for a new session, one more slot is freed.
+     */
+    private void evictIdle(boolean makeRoom) {
+        List<Session> idle = new ArrayList<>();
+        for (Session session : sessions.values()) {
+            if (session.refCount == 0) {
+                idle.add(session);
+            }
+        }
+        idle.sort(Comparator.comparingLong(s -> s.lastReleased));
+        int limit = makeRoom ? maxIdleSessions - 1 : maxIdleSessions;
+        Iterator<Session> it = idle.iterator();
+        while (it.hasNext() && (idle.size() > Math.max(limit, 0) || isHeapPressure())) {
+            Session session = it.next();
+            it.remove();
+            log.info("Evicting idle session for {}", session.key);
+            sessions.remove(session.key, session);
+            discard(session);
+        }
+    }
+
+    private boolean isHeapPressure() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        return used > runtime.maxMemory() * maxHeapFraction;
+    }
+
+    private static void discard(Session session) {
+        RequestCoalescer coalescer = session.requestCoalescer;
+        if (coalescer.getCoalesced() > 0) {
+            log.info("Session for {} coalesced {} of {} requests", session.key, coalescer.getCoalesced(),
+                    coalescer.getComputed() + coalescer.getCoalesced());
+        }
+        synchronized (session) {
+            // an initializer still running must not fill the session in again
+            session.discarded = true;
+            session.workspaceManager = null;
+            session.compilerService = null;
+            session.files = null;
+        }
+    }
+
+    /**
+     * Stops sharing the session with connections that attach later. Connections already attached keep using it, and it
+     * is discarded once they are all gone.
+     */
+    public synchronized void unshare(Session session) {
+        if (session.key != null && sessions.remove(session.key, session)) {
+            log.info("Session for {} is no longer shared", session.key);
+        }
+    }
+
+    /**
+     * Reserves the session for the edits of the only connection attached to it: it stops being shared, so that no
+     * connection attaching later sees the edits. Returns false if other connections are attached, in which case the
+     * editing connection has to {@link #fork} the session.
+     */
+    public synchronized boolean claimForEditing(Session session) {
+        if (session.refCount > 1) {
+            return false;
+        }
+        unshare(session);
+        return true;
+    }
+
+    /**
+     * Moves the controller from the session to a new, unshared session, forked from the workspaces of the session
+     * (see WorkspaceManager.fork) rather than initialized from scratch. Used by a connection that edits documents while
+     * other connections share its session; the session must be ready.
+     *
+     * The forked workspaces fetch files through the connections of the session, so the controller keeps answering the
+     * file requests of the session until it releases the forked one.
+     */
+    public synchronized Session fork(Session session, Controller controller) {
+        FileContentProvider files = session.files;
+        WorkspaceManager workspaceManager = session.workspaceManager;
+        Session forked = acquire(null, controller);
+        release(session, controller);
+        session.connections.attach(controller);
+        forked.upstreamConnections = session.connections;
+        forked.initializeOnce(connections -> new Initialized(files, workspaceManager.fork()));
+        return forked;
+    }
+
+    private synchronized void onInitializationFailed(Session session) {
+        // don't let later connections attach to a broken session
+        if (session.key != null) {
+            sessions.remove(session.key, session);
+        }
+    }
+
+    /**
+     * Session holds the state shared by all connections for a repository revision
+     */
+    public class Session {
+
+        private final String key;
+
+        private final Connections connections = new Connections();
+
+        private final CompletableFuture<Void> ready = new CompletableFuture<>();
+
+        private final RequestCoalescer requestCoalescer = new RequestCoalescer();
+
+        private boolean initializationStarted;
+
+        // set once the registry has dropped the session; guarded by this
+        private boolean discarded;
+
+        // connections of the session this one was forked from, which its workspaces fetch files through; null if the
+        // session wasn't forked
+        private Connections upstreamConnections;
+
+        // guarded by the registry
+        private int refCount;
+        private long lastReleased;
+
+        private volatile FileContentProvider files;
+        private volatile WorkspaceManager workspaceManager;
+        private volatile CompilerService compilerService;
+
+        private Session(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Starts initializing the session, unless another connection already did. The initializer is given the
+         * session's connections (which route file requests and messages to an attached connection) and returns the
+         * session's files and workspace manager. The returned future completes once the session is ready, which may be
+         * before all workspaces have been added to the workspace manager (see WorkspaceManager.whenInitialized).
+         */
+        public CompletableFuture<Void> initializeOnce(Function<Connections, Initialized> initializer) {
+            synchronized (this) {
+                if (initializationStarted) {
+                    return ready;
+                }
+                initializationStarted = true;
+            }
+            CompletableFuture.supplyAsync(() -> initializer.apply(connections), ExecutorUtils.getExecutorService()).whenComplete((initialized, e) -> {
+                if (e != null) {
+                    onInitializationFailed(this);
+                    ready.completeExceptionally(e);
+                    return;
+                }
+                synchronized (this) {
+                    if (discarded) {
+                        // no connection is left to use what the initializer built
+                        ready.completeExceptionally(new IllegalStateException("Session discarded during initialization"));
+                        return;
+                    }
+                    files = initialized.files;
+                    workspaceManager = initialized.workspaceManager;
+                    compilerService = new CompilerService(workspaceManager, connections.sharedCache);
+                }
+                ready.complete(null);
+                // workspaces are still being added to the workspace manager, which may fail as well
+                workspaceManager.whenInitialized().exceptionally(ex -> {
+                    onInitializationFailed(this);
+                    return null;
+                });
+            });
+            return ready;
+        }
+
+        public FileContentProvider getFiles() {
+            return files;
+        }
+
+        public WorkspaceManager getWorkspaceManager() {
+            return workspaceManager;
+        }
+
+        public CompilerService getCompilerService() {
+            return compilerService;
+        }
+
+        /**
+         * Returns the cache offered by the clients of the connections attached to the session. A connection whose
+         * client advertises the xcacheProvider capability attaches itself to it; it is detached on release.
+         */
+        public SharedCache getSharedCache() {
+            return connections.sharedCache;
+        }
+
+        /**
+         * Returns the coalescer shared by the requests of all connections attached to the session
+         */
+        public RequestCoalescer getRequestCoalescer() {
+            return requestCoalescer;
+        }
+    }
+
+    /**
+     * The result of initializing a session
+     */
+    public static class Initialized {
+        final FileContentProvider files;
+        final WorkspaceManager workspaceManager;
+
+        public Initialized(FileContentProvider files, WorkspaceManager workspaceManager) {
+            this.files = files;
+            this.workspaceManager = workspaceManager;
+        }
+    }
+
+    /**
+     * Connections routes the file requests and messages of a shared session to the connections attached to it. All of
+     * them serve the same repository revision, so any of them can answer; the most recently attached one is asked
+     * first, and the next one is asked if it goes away in the middle of a request.
+     */
+    public static class Connections implements FileContentProvider, Messenger {
+
+        private final List<Controller> controllers = new CopyOnWriteArrayList<>();
+
+        private final SharedCache sharedCache = new SharedCache();
+
+        /**
+         * Returns the cache offered by the clients of the session (see Session.getSharedCache)
+         */
+        public SharedCache getSharedCache() {
+            return sharedCache;
+        }
+
+        void attach(Controller controller) {
+            controllers.add(controller);
+        }
+
+        void detach(Controller controller) {
+            controllers.remove(controller);
+        }
+
+        @Override
+        public InputStream readContent(String uri) throws Exception {
+            return withController(c -> c.readContent(uri));
+        }
+
+        @Override
+        public List<TextDocumentIdentifier> listFilesRecursively(String baseUri) throws Exception {
+            return withController(c -> c.listFilesRecursively(baseUri));
+        }
+
+        @Override
+        public void showMessage(MessageType messageType, String message) {
+            List<Controller> current = new ArrayList<>(controllers);
+            if (!current.isEmpty()) {
+                current.get(current.size() - 1).showMessage(messageType, message);
+            }
+        }
+
+        private interface ControllerCall<T> {
+            T call(Controller controller) throws Exception;
+        }
+
+        private <T> T withController(ControllerCall<T> call) throws Exception {
+            List<Controller> current = new ArrayList<>(controllers);
+            Collections.reverse(current);
+            for (Controller controller : current) {
+                try {
+                    return call.call(controller);
+                } catch (Exception e) {
+                    if (controllers.contains(controller)) {
+                        throw e;
+                    }
+                    // the connection went away while we were waiting for it, try the next one
+                }
+            }
+            throw new IOException("No connection attached to the session");
+        }
+    }
+}
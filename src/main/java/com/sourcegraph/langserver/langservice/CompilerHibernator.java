@@ -0,0 +1,76 @@
+package com.sourcegraph.langserver.langservice;
+
+import com.sourcegraph.common.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CompilerHibernator periodically releases the compilers (and the compilation results that refer to them) of
+ * workspaces that haven't been used for Config.COMPILER_IDLE_SECONDS, or for a minute when heap usage exceeds
+ * Config.SESSION_CACHE_HEAP_FRACTION. A released compiler is rebuilt on the next request that needs it, so a
+ * long-lived multi-module session only keeps the compilers of the modules that are actually being browsed.
+ */
+class CompilerHibernator {
+
+    private static final Logger log = LoggerFactory.getLogger(CompilerHibernator.class);
+
+    private static final long CHECK_INTERVAL_SECONDS = 60;
+
+    private static final long MIN_IDLE_SECONDS = 60;
+
+    // held weakly, so that the compiler services of sessions that are gone don't stay around
+    private static final Set<CompilerService> services = Collections.newSetFromMap(new WeakHashMap<>());
+
+    private static ScheduledExecutorService scheduler;
+
+    static void register(CompilerService service) {
+        synchronized (services) {
+            services.add(service);
+            if (scheduler == null) {
+                scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "compiler-hibernator");
+                    t.setDaemon(true);
+                    return t;
+                });
+                scheduler.scheduleWithFixedDelay(CompilerHibernator::hibernateIdle, CHECK_INTERVAL_SECONDS, CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private static void hibernateIdle() {
+        long idleSeconds;
+        if (isHeapPressure()) {
+            idleSeconds = MIN_IDLE_SECONDS;
+        } else if (Config.COMPILER_IDLE_SECONDS > 0) {
+            idleSeconds = Math.max(Config.COMPILER_IDLE_SECONDS, MIN_IDLE_SECONDS);
+        } else {
+            return;
+        }
+        List<CompilerService> current;
+        synchronized (services) {
+            current = new ArrayList<>(services);
+        }
+        int released = 0;
+        for (CompilerService service : current) {
+            try {
+                released += service.hibernateIdleWorkspaces(TimeUnit.SECONDS.toNanos(idleSeconds));
+            } catch (Exception e) {
+                log.error("Error releasing idle compilers", e);
+            }
+        }
+        if (released > 0) {
+            log.info("Released the compilers of {} workspaces idle for more than {}s", released, idleSeconds);
+        }
+    }
+
+    private static boolean isHeapPressure() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        return used > runtime.maxMemory() * Config.SESSION_CACHE_HEAP_FRACTION;
+    }
+}
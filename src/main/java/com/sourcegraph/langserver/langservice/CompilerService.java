@@ -1,14 +1,24 @@
 package com.sourcegraph.langserver.langservice;
 
+import com.sourcegraph.common.Config;
 import com.sourcegraph.langserver.langservice.compiler.CompilationResult;
 import com.sourcegraph.langserver.langservice.compiler.Javac;
+import com.sourcegraph.langserver.langservice.compiler.NavigationIndex;
+import com.sourcegraph.langserver.langservice.compiler.PublicSignature;
+import com.sourcegraph.langserver.langservice.workspace.SourceFile;
 import com.sourcegraph.langserver.langservice.workspace.Workspace;
 import com.sourcegraph.langserver.langservice.workspace.WorkspaceManager;
+import com.sourcegraph.lsp.SharedCache;
 import com.sourcegraph.lsp.Tracing;
+import com.sourcegraph.lsp.domain.structures.PackageIdentifier;
+import com.sourcegraph.lsp.domain.structures.Position;
+import com.sourcegraph.utils.ExecutorUtils;
 import com.sourcegraph.utils.LanguageUtils;
+import com.sourcegraph.utils.Util;
 import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.util.TreePath;
 import io.opentracing.Span;
+import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,9 +26,7 @@ import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.TypeElement;
 import javax.tools.JavaFileObject;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class CompilerService {
@@ -33,11 +41,53 @@ public class CompilerService {
 
     private ConcurrentHashMap<String, CompilationResult> declaredTypes;
 
+    // file name -> navigation index of the file, kept when compilers are released (see Config.NAVIGATION_INDEX); the
+    // least recently used ones are dropped above Config.NAVIGATION_INDEX_MAX_FILES
+    private final Map<String, NavigationIndex> navigationIndexes = Collections.synchronizedMap(
+            new LinkedHashMap<String, NavigationIndex>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, NavigationIndex> eldest) {
+                    if (size() <= Config.NAVIGATION_INDEX_MAX_FILES) {
+                        return false;
+                    }
+                    removeDeclarations(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+            });
+
+    // declaring workspace and symbol key -> indexed declaration of the symbol; two workspaces may declare the same
+    // class, e.g. modules with copies of a shared source directory
+    private final ConcurrentHashMap<Pair<Workspace, String>, NavigationIndex.Symbol> indexedDeclarations = new ConcurrentHashMap<>();
+
+    // null unless Config.NAVIGATION_INDEX is set
+    private final NavigationIndexStore navigationIndexStore;
+
+    // responses of the language services sharing this compiler service
+    private final ResponseCache responseCache = new ResponseCache(Config.RESPONSE_CACHE_SIZE);
+
+    // names declared by the parsed files, kept when compilers are released
+    private final SymbolNameIndex symbolNameIndex = new SymbolNameIndex(Config.SYMBOL_INDEX_MAX_NAMES);
+
+    // compilers released by hibernateIdleWorkspaces; results from them must not be reused
+    private final Set<Javac> releasedCompilers = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
     public CompilerService(WorkspaceManager workspaceManager) {
+        this(workspaceManager, new SharedCache());
+    }
+
+    /**
+     * @param sharedCache the cache of the clients of the session, through which navigation indexes are shared with
+     *                    other language server instances (see NavigationIndexStore)
+     */
+    public CompilerService(WorkspaceManager workspaceManager, SharedCache sharedCache) {
         this.workspaceManager = workspaceManager;
+        this.navigationIndexStore = Config.NAVIGATION_INDEX
+                ? new NavigationIndexStore(Config.NAVIGATION_INDEX_CACHE_DIR,
+                Config.NAVIGATION_INDEX_DISK_CACHE_MB * 1024L * 1024L, sharedCache) : null;
         this.parsed = new ConcurrentHashMap<>();
         this.analyzed = new HashMap<>(); // we're locking this one, so just use a regular HashMap
         this.declaredTypes = new ConcurrentHashMap<>();
+        CompilerHibernator.register(this);
     }
 
     public Optional<CompilationResult> parse(String uri) {
@@ -60,10 +110,141 @@ public class CompilerService {
             CompilationUnitTree compilationUnitTree = compiler.parseNicely(file);
             return new CompilationResult(compilationUnitTree, compiler.getTrees(), compiler.getTypes(), compiler);
         });
+        if (result != null && releasedCompilers.contains(result.getCompiler())) {
+            // parsed by a compiler that has been released in the meantime
+            parsed.remove(file.getName(), result);
+            return parse(file, compiler == result.getCompiler() ? workspaceCompiler(file) : compiler);
+        }
         return Optional.ofNullable(result);
     }
 
+    private Javac workspaceCompiler(JavaFileObject file) {
+        Workspace workspace = workspaceManager.getWorkspaceContainingUri(file.getName());
+        if (workspace == null) {
+            throw new IllegalStateException("Workspace not found for " + file.getName());
+        }
+        return workspace.getCompiler();
+    }
+
+    /**
+     * Releases the compilers of the workspaces whose compiler hasn't been used for the given time, along with all
+     * compilation results that refer to them. The workspaces rebuild their compilers on demand.
+     *
+     * @return the number of released compilers
+     */
+    public int hibernateIdleWorkspaces(long idleNanos) {
+        int released = 0;
+        for (Workspace workspace : workspaceManager.getWorkspaces()) {
+            long lastUsed = workspace.getCompilerLastUsed();
+            if (lastUsed == Long.MAX_VALUE || System.nanoTime() - lastUsed < idleNanos) {
+                continue;
+            }
+            // analyze holds this lock for the whole analysis, so no analysis is using the compiler while we drop it
+            synchronized (analyzed) {
+                if (release(workspace)) {
+                    released++;
+                }
+            }
+        }
+        return released;
+    }
+
+    /**
+     * Releases the compiler of the workspace along with the compilation results that refer to it. Must be called
+     * while holding the analyzed lock.
+     *
+     * @return false if the workspace had no compiler
+     */
+    private boolean release(Workspace workspace) {
+        Javac compiler = workspace.releaseCompiler();
+        if (compiler == null) {
+            return false;
+        }
+        releasedCompilers.add(compiler);
+        parsed.values().removeIf(r -> r.getCompiler() == compiler);
+        analyzed.values().removeIf(r -> r.getCompiler() == compiler);
+        declaredTypes.values().removeIf(r -> r.getCompiler() == compiler);
+        return true;
+    }
+
+    /**
+     * Drops the compilation results of a source file whose content has changed, and replaces the classes its
+     * workspace's compiler has entered from the previous content by those of the new one (see Javac.reenter). The
+     * changed file itself is re-attributed in the background, so that the next request for it doesn't have to wait for
+     * the analysis. Other files are only affected if the file's public signature (see PublicSignature) has changed: the
+     * compilers of its workspace and of the workspaces that depend on it are then released, and the files re-analyzed
+     * lazily.
+     */
+    public void invalidate(String uri) {
+        Workspace workspace = workspaceManager.getWorkspaceContainingUri(uri);
+        if (workspace == null) {
+            log.warn("Workspace not found for {}, nothing to invalidate", uri);
+            return;
+        }
+        JavaFileObject source = workspace.getSourceFile(uri);
+        responseCache.advanceRevision();
+        symbolNameIndex.remove(uri);
+        synchronized (analyzed) {
+            CompilationResult previous = analyzed.get(uri);
+            if (previous == null) {
+                previous = parsed.get(uri);
+            }
+            parsed.remove(uri);
+            analyzed.remove(uri);
+            NavigationIndex index = navigationIndexes.remove(uri);
+            if (index != null) {
+                removeDeclarations(uri, index);
+            }
+            declaredTypes.values().removeIf(r -> uri.equals(r.getCompilationUnitTree().getSourceFile().getName()));
+            // without results, no compiler of this service has entered the file, or it has been released since
+            if (previous != null && source != null && !releasedCompilers.contains(previous.getCompiler())) {
+                if (signatureChanged(previous, source)) {
+                    Set<Workspace> affected = workspaceManager.getInternalDependents(workspace);
+                    affected.add(workspace);
+                    for (Workspace w : affected) {
+                        release(w);
+                    }
+                } else if (workspace.getCompilerLastUsed() != Long.MAX_VALUE) {
+                    // the dependents only see the signature, which is the same
+                    workspace.getCompiler().reenter(source);
+                }
+            }
+        }
+        reanalyze(uri, workspace);
+    }
+
+    private static boolean signatureChanged(CompilationResult previous, JavaFileObject source) {
+        CompilationUnitTree current = previous.getCompiler().parse(source);
+        return !PublicSignature.of(previous.getCompilationUnitTree()).equals(PublicSignature.of(current));
+    }
+
+    private void reanalyze(String uri, Workspace workspace) {
+        JavaFileObject source = workspace.getSourceFile(uri);
+        if (!(source instanceof SourceFile)) {
+            return;
+        }
+        int version = ((SourceFile) source).getVersion();
+        ExecutorUtils.getExecutorService().submit(() -> {
+            if (((SourceFile) source).getVersion() != version) {
+                // changed again in the meantime, which schedules its own re-analysis
+                return;
+            }
+            Util.Timer t = Util.timeStartQuiet("reanalyze");
+            analyze(source, workspace, Collections.emptyMap());
+            t.end();
+        });
+    }
+
     public Optional<CompilationResult> analyze(String uri, Map<String, Object> ctx) {
+        return analyze(uri, null, ctx);
+    }
+
+    /**
+     * Analyzes the file, making sure that at least the method or initializer containing the given position is
+     * attributed. Other bodies may be left unattributed (see Config.LAZY_METHOD_ATTRIBUTION); they are attributed
+     * when the file is analyzed without a position. A null position attributes the whole file.
+     */
+    public Optional<CompilationResult> analyze(String uri, Position position, Map<String, Object> ctx) {
         try {
             Workspace workspace = workspaceManager.getWorkspaceContainingUri(uri);
             if (workspace == null) {
@@ -73,7 +254,7 @@ public class CompilerService {
             // library indexing will be triggered by this::analyze(JavaFileObject file, Workspace workspace, Map<String, Object> ctx)
 
             JavaFileObject source = workspace.getSourceFile(uri);
-            return source == null ? Optional.empty() : analyze(source, workspace, ctx);
+            return source == null ? Optional.empty() : analyze(source, workspace, position, ctx);
         } catch (Exception e) {
             log.warn("Failed to analyze {}: {}", uri, e);
             return Optional.empty();
@@ -81,6 +262,10 @@ public class CompilerService {
     }
 
     public Optional<CompilationResult> analyze(JavaFileObject file, Workspace workspace, Map<String, Object> ctx) {
+        return analyze(file, workspace, null, ctx);
+    }
+
+    public Optional<CompilationResult> analyze(JavaFileObject file, Workspace workspace, Position position, Map<String, Object> ctx) {
         // can't use ConcurrentHashMap::computeIfAbsent because we might need to update multiple entries and end up
         // deadlocking ourselves
         synchronized (analyzed) {
@@ -88,17 +273,26 @@ public class CompilerService {
             analyzeSpan.setTag("filename", file.getName());
             try {
                 if (analyzed.containsKey(file.getName())) {
-                    return Optional.ofNullable(analyzed.get(file.getName()));
+                    CompilationResult result = analyzed.get(file.getName());
+                    if (result != null) {
+                        CompilationUnitTree tree = result.getCompilationUnitTree();
+                        result.getCompiler().attributeBodies(tree.getSourceFile(), offset(tree, position));
+                        index(result, position);
+                    }
+                    return Optional.ofNullable(result);
                 }
                 Javac compiler = workspace.getCompiler();
                 parse(file, compiler);
                 CompilationResult parseResult = parsed.get(file.getName());
-                for (Element element : compiler.analyze(parseResult.getCompilationUnitTree())) {
+                CompilationUnitTree parseTree = parseResult.getCompilationUnitTree();
+                for (Element element : compiler.analyze(parseTree, offset(parseTree, position))) {
                     TreePath path = compiler.getTrees().getPath(element);
                     CompilationUnitTree tree = path.getCompilationUnit();
                     CompilationResult analyzeResult = new CompilationResult(tree, compiler.getTrees(), compiler.getTypes(), compiler);
                     parsed.putIfAbsent(tree.getSourceFile().getName(), analyzeResult);
-                    analyzed.putIfAbsent(tree.getSourceFile().getName(), analyzeResult);
+                    if (compiler.isAttributed(tree.getSourceFile())) {
+                        analyzed.putIfAbsent(tree.getSourceFile().getName(), analyzeResult);
+                    }
 
                     // map declared type names to their trees; this simplifies looking up definitions on the fly
                     ElementKind kind = element.getKind();
@@ -112,12 +306,156 @@ public class CompilerService {
             } finally {
                 Tracing.endSpan(analyzeSpan);
             }
-            return Optional.ofNullable(analyzed.get(file.getName()))
+            CompilationResult result = analyzed.get(file.getName());
+            if (result != null) {
+                index(result, position);
+            }
+            return Optional.ofNullable(result)
                     .map(Optional::of)
                     .orElse(Optional.ofNullable(parsed.get(file.getName())));
         }
     }
 
+    /**
+     * Records the navigation index of an analyzed file, unless the analysis may have left bodies unattributed (in which
+     * case the file is indexed once it is analyzed as a whole)
+     */
+    private void index(CompilationResult result, Position position) {
+        if (!Config.NAVIGATION_INDEX || (position != null && Config.LAZY_METHOD_ATTRIBUTION)) {
+            return;
+        }
+        String fileName = result.getCompilationUnitTree().getSourceFile().getName();
+        if (navigationIndexes.containsKey(fileName)) {
+            return;
+        }
+        try {
+            NavigationIndex index = NavigationIndex.build(result.getCompilationUnitTree(), result.getTrees());
+            addIndex(fileName, index);
+            JavaFileObject source = result.getCompilationUnitTree().getSourceFile();
+            // content edited by the client is rarely seen again, no need to store its index
+            boolean edited = source instanceof SourceFile && ((SourceFile) source).getVersion() != -1;
+            if (!edited && navigationIndexStore != null && navigationIndexStore.isEnabled()) {
+                Workspace workspace = workspaceManager.getWorkspaceContainingUri(fileName);
+                String key = workspace == null ? null : navigationIndexStore.key(workspace, source);
+                if (key != null) {
+                    navigationIndexStore.write(key, index);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to index {}: {}", fileName, e);
+        }
+    }
+
+    private void addIndex(String fileName, NavigationIndex index) {
+        Workspace workspace = workspaceManager.getWorkspaceContainingUri(fileName);
+        if (workspace != null) {
+            for (NavigationIndex.Symbol declaration : index.getDeclarations()) {
+                indexedDeclarations.put(Pair.of(workspace, declaration.getKey()), declaration);
+            }
+        }
+        navigationIndexes.put(fileName, index);
+    }
+
+    private void removeDeclarations(String fileName, NavigationIndex index) {
+        Workspace workspace = workspaceManager.getWorkspaceContainingUri(fileName);
+        if (workspace != null) {
+            for (NavigationIndex.Symbol declaration : index.getDeclarations()) {
+                // unless another file of the workspace has declared the symbol since
+                indexedDeclarations.remove(Pair.of(workspace, declaration.getKey()), declaration);
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the file, reading it from disk if it was stored there for the current content of the file
+     * (see NavigationIndexStore). An index found in the shared cache is only available to later calls, since it is
+     * fetched in the background.
+     */
+    private NavigationIndex getIndex(String uri) {
+        NavigationIndex index = navigationIndexes.get(uri);
+        if (index != null || navigationIndexStore == null || !navigationIndexStore.isEnabled()) {
+            return index;
+        }
+        Workspace workspace = workspaceManager.getWorkspaceContainingUri(uri);
+        JavaFileObject source = workspace == null ? null : workspace.getSourceFile(uri);
+        String key = source == null ? null : navigationIndexStore.key(workspace, source);
+        index = key == null ? null : navigationIndexStore.read(key);
+        if (index == null) {
+            return null;
+        }
+        synchronized (analyzed) {
+            // unless the file has been indexed or changed in the meantime
+            if (!navigationIndexes.containsKey(uri) && key.equals(navigationIndexStore.key(workspace, source))) {
+                addIndex(uri, index);
+            }
+        }
+        return navigationIndexes.get(uri);
+    }
+
+    /**
+     * Returns the definition of the symbol at the given position, if both the file and the file declaring the symbol
+     * have been indexed (see Config.NAVIGATION_INDEX). Doesn't analyze anything or wait for the client, but may read
+     * the file's index from disk.
+     */
+    public Optional<NavigationIndex.Symbol> findIndexedDefinition(String uri, Position position) {
+        NavigationIndex index = getIndex(uri);
+        if (index == null) {
+            return Optional.empty();
+        }
+        return index.findSymbol(position).flatMap(symbol -> {
+            if (symbol.getDefinition() != null) {
+                return Optional.of(symbol);
+            }
+            return symbol.getKey() == null ? Optional.empty() : findIndexedDeclaration(uri, symbol.getKey());
+        });
+    }
+
+    /**
+     * Returns the indexed declaration of the symbol in the workspace of the file or in the workspaces it depends on,
+     * which are the ones its compiler would find the symbol in
+     */
+    private Optional<NavigationIndex.Symbol> findIndexedDeclaration(String uri, String key) {
+        Workspace workspace = workspaceManager.getWorkspaceContainingUri(uri);
+        if (workspace == null) {
+            return Optional.empty();
+        }
+        NavigationIndex.Symbol declaration = indexedDeclarations.get(Pair.of(workspace, key));
+        if (declaration != null) {
+            return Optional.of(declaration);
+        }
+        PackageIdentifier id = workspace.getThisArtifactInformation().getPackage().getIdentifier();
+        for (Workspace dependency : workspaceManager.getInternalDependencies(id)) {
+            declaration = indexedDeclarations.get(Pair.of(dependency, key));
+            if (declaration != null) {
+                return Optional.of(declaration);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Converts the position to an offset in the file, or returns -1 if there is no position
+     */
+    private static long offset(CompilationUnitTree tree, Position position) {
+        if (position == null || tree.getLineMap() == null) {
+            return -1;
+        }
+        try {
+            return tree.getLineMap().getPosition(position.getLine() + 1, position.getCharacter() + 1);
+        } catch (IndexOutOfBoundsException e) {
+            // past the end of the file
+            return -1;
+        }
+    }
+
+    ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    SymbolNameIndex getSymbolNameIndex() {
+        return symbolNameIndex;
+    }
+
     public Optional<CompilationResult> getDeclaredType(String typeName) {
         return Optional.ofNullable(declaredTypes.get(typeName));
     }
@@ -8,6 +8,7 @@ import com.sourcegraph.langserver.langservice.workspace.WorkspaceManager;
 import com.sourcegraph.langserver.langservice.workspace.Workspaces;
 import com.sourcegraph.lsp.FileContentProvider;
 import com.sourcegraph.lsp.NoopMessenger;
+import com.sourcegraph.lsp.SharedCache;
 import com.sourcegraph.lsp.domain.result.WorkspaceConfigurationServersResult;
 import com.sourcegraph.utils.LanguageUtils;
 import com.sourcegraph.utils.Util;
@@ -65,7 +66,7 @@ public class JavacLanguageServer implements LanguageServer, WorkspaceService, Te
         try {
             FileContentProvider files = filesProvider.apply(remoteRootURI);
             ArrayList<WorkspaceConfigurationServersResult.Server> servers = new ArrayList<>();
-            List<Workspace> workspaces = Workspaces.fromFiles(remoteRootURI, files, new NoopMessenger(), servers);
+            List<Workspace> workspaces = Workspaces.fromFiles(remoteRootURI, files, new NoopMessenger(), servers, new SharedCache());
             WorkspaceManager workspaceManager = new WorkspaceManager(workspaces, files);
 
             this.workspaceManager = workspaceManager;
@@ -170,7 +171,7 @@ public class JavacLanguageServer implements LanguageServer, WorkspaceService, Te
 
     private Optional<LanguageData> findHover(String uri, com.sourcegraph.lsp.domain.structures.Position position, Map<String, Object> ctx) {
         return compilerService
-                .analyze(uri, ctx)
+                .analyze(uri, position, ctx)
                 .flatMap(compilationResult -> compilationResult.findHover(position));
     }
 
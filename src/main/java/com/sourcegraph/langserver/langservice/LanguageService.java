@@ -3,12 +3,15 @@ package com.sourcegraph.langserver.langservice;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import com.sourcegraph.common.Config;
 import com.sourcegraph.langserver.langservice.compiler.CompilationResult;
 import com.sourcegraph.langserver.langservice.compiler.LanguageData;
+import com.sourcegraph.langserver.langservice.compiler.NavigationIndex;
 import com.sourcegraph.lsp.FileContentProvider;
 import com.sourcegraph.langserver.langservice.filters.ReferenceFilterUtils;
 import com.sourcegraph.langserver.langservice.workspace.standardlibs.StandardLibraries;
 import com.sourcegraph.langserver.langservice.workspace.standardlibs.StandardLibrary;
+import com.sourcegraph.langserver.langservice.workspace.SourceFile;
 import com.sourcegraph.langserver.langservice.workspace.Workspace;
 import com.sourcegraph.langserver.langservice.workspace.WorkspaceManager;
 import com.sourcegraph.lsp.PartialResultStreamer;
@@ -26,7 +29,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
 import javax.tools.JavaFileObject;
+import java.io.IOException;
 import java.net.URI;
 import java.util.*;
 import java.util.concurrent.atomic.LongAdder;
@@ -42,6 +47,14 @@ public class LanguageService {
     // do unnecessary work.
     private static int REFERENCES_LIMIT = 200;
 
+    // number of annotations per textDocument/xannotations partial result
+    private static final int ANNOTATIONS_BATCH_SIZE = 500;
+
+    // number of recent workspace/symbol text queries whose matching files are remembered
+    private static final int SYMBOL_SEARCH_CACHE_SIZE = 8;
+
+    private final SymbolSearchCache<Pair<Workspace, JavaFileObject>> symbolSearchCache = new SymbolSearchCache<>(SYMBOL_SEARCH_CACHE_SIZE);
+
     private WorkspaceManager workspaceManager;
 
     private CompilerService compilerService;
@@ -51,14 +64,33 @@ public class LanguageService {
     private PartialResultStreamer partialResultStreamer;
 
     public LanguageService(FileContentProvider fileProvider, PartialResultStreamer partialResultStreamer, WorkspaceManager workspaceManager) {
+        this(fileProvider, partialResultStreamer, workspaceManager, new CompilerService(workspaceManager));
+    }
+
+    /**
+     * Creates a language service that shares its compilation caches with other language services for the same
+     * workspaces (see SessionRegistry)
+     */
+    public LanguageService(FileContentProvider fileProvider, PartialResultStreamer partialResultStreamer, WorkspaceManager workspaceManager, CompilerService compilerService) {
         this.fileContentProvider = fileProvider;
         this.workspaceManager = workspaceManager;
-        this.compilerService = new CompilerService(workspaceManager);
+        this.compilerService = compilerService;
         this.partialResultStreamer = partialResultStreamer;
     }
 
     public Hover hover(TextDocumentPositionParams textDocumentPosition, Map<String, Object> ctx) {
         Util.Timer t = Util.timeStartQuiet("textDocument/hover");
+        Optional<NavigationIndex.Symbol> indexed = findIndexedDefinition(textDocumentPosition);
+        if (indexed.isPresent()) {
+            t.end();
+            return new Hover().withContents(indexed.get().getHoverContents());
+        }
+        Optional<Hover> cached = getCachedResponse("textDocument/hover", textDocumentPosition);
+        if (cached.isPresent()) {
+            t.end();
+            return cached.get();
+        }
+        long revision = compilerService.getResponseCache().getRevision();
         Workspace workspace = workspaceManager.getWorkspaceContainingUri(textDocumentPosition.getTextDocument().getUri());
         Optional<LanguageData> shallowHover = findHover(textDocumentPosition, ctx);
         Optional<LanguageData> deepHover = shallowHover.flatMap(h -> getDefinitionFromHover(h, workspace, ctx));
@@ -66,8 +98,54 @@ public class LanguageService {
                 .orElse(shallowHover)
                 .map(LanguageData::getData)
                 .orElse(Collections.emptyList());
+        Hover hover = new Hover().withContents(hoverContents);
+        if (!hoverContents.isEmpty()) {
+            cacheResponse("textDocument/hover", textDocumentPosition, revision, shallowHover.get(), hover);
+        }
         t.end();
-        return new Hover().withContents(hoverContents);
+        return hover;
+    }
+
+    private <T> Optional<T> getCachedResponse(String method, TextDocumentPositionParams textDocumentPosition) {
+        return compilerService.getResponseCache().get(method, textDocumentPosition.getTextDocument().getUri(), textDocumentPosition.getPosition());
+    }
+
+    /**
+     * Remembers the response to a position-based request (see ResponseCache), for the whole identifier the hover data
+     * was found for if the position is within it
+     */
+    private void cacheResponse(String method, TextDocumentPositionParams textDocumentPosition, long revision, LanguageData hover, Object response) {
+        if (!workspaceManager.whenInitialized().isDone()) {
+            // responses may still change as the remaining workspaces are added
+            return;
+        }
+        String uri = textDocumentPosition.getTextDocument().getUri();
+        Position position = textDocumentPosition.getPosition();
+        Range identifier = null;
+        Location location = hover.getLocation();
+        if (location != null && uri.equals(location.getUri())
+                && location.getRange().getStart().getLine() == position.getLine()
+                && location.getRange().getStart().getCharacter() <= position.getCharacter()
+                && position.getCharacter() < location.getRange().getEnd().getCharacter()) {
+            Workspace workspace = workspaceManager.getWorkspaceContainingUri(uri);
+            JavaFileObject file = workspace == null ? null : workspace.getSourceFile(uri);
+            try {
+                identifier = file == null ? null : ResponseCache.identifierRange(file.getCharContent(true), location.getRange());
+            } catch (IOException e) {
+                // cache for the position only
+            }
+        }
+        compilerService.getResponseCache().put(method, uri, revision, position, identifier, response);
+    }
+
+    /**
+     * Looks up the definition of the symbol at the position in the navigation indexes (see Config.NAVIGATION_INDEX)
+     */
+    private Optional<NavigationIndex.Symbol> findIndexedDefinition(TextDocumentPositionParams textDocumentPosition) {
+        if (!Config.NAVIGATION_INDEX) {
+            return Optional.empty();
+        }
+        return compilerService.findIndexedDefinition(textDocumentPosition.getTextDocument().getUri(), textDocumentPosition.getPosition());
     }
 
     private Optional<LanguageData> findHover(TextDocumentPositionParams textDocumentPosition, Map<String, Object> ctx) {
@@ -76,7 +154,7 @@ public class LanguageService {
 
     private Optional<LanguageData> findHover(String uri, Position position, Map<String, Object> ctx) {
         return compilerService
-                .analyze(uri, ctx)
+                .analyze(uri, position, ctx)
                 .flatMap(compilationResult -> compilationResult.findHover(position));
     }
 
@@ -106,12 +184,27 @@ public class LanguageService {
 
     public List<Location> definition(TextDocumentPositionParams textDocumentPosition, Map<String, Object> ctx) {
         Util.Timer t = Util.timeStartQuiet("textDocument/definition");
+        Optional<NavigationIndex.Symbol> indexed = findIndexedDefinition(textDocumentPosition);
+        if (indexed.isPresent()) {
+            t.end();
+            return Collections.singletonList(indexed.get().getDefinition());
+        }
+        Optional<List<Location>> cached = getCachedResponse("textDocument/definition", textDocumentPosition);
+        if (cached.isPresent()) {
+            t.end();
+            return cached.get();
+        }
+        long revision = compilerService.getResponseCache().getRevision();
         Workspace workspace = workspaceManager.getWorkspaceContainingUri(textDocumentPosition.getTextDocument().getUri());
-        List<Location> locations = findHover(textDocumentPosition, ctx)
+        Optional<LanguageData> hover = findHover(textDocumentPosition, ctx);
+        List<Location> locations = hover
                 .flatMap(h -> getDefinitionFromHover(h, workspace, ctx))
                 .map(LanguageData::getLocation)
                 .map(Collections::singletonList)
                 .orElse(Collections.emptyList());
+        if (!locations.isEmpty()) {
+            cacheResponse("textDocument/definition", textDocumentPosition, revision, hover.get(), locations);
+        }
         t.end();
         return locations;
     }
@@ -127,43 +220,24 @@ public class LanguageService {
             throw new RuntimeException(e);
         }
 
+        Optional<List<SymbolLocationInformation>> cached = getCachedResponse("textDocument/xdefinition", textDocumentPosition);
+        if (cached.isPresent()) {
+            t.end("numResults", cached.get().size());
+            return cached.get();
+        }
+        long revision = compilerService.getResponseCache().getRevision();
+
         Workspace workspace = workspaceManager.getWorkspaceContainingUri(textDocumentPosition.getTextDocument().getUri());
 
-        List<SymbolLocationInformation> symbolLocations = this.findHover(textDocumentPosition, ctx)
+        Optional<LanguageData> foundHover = this.findHover(textDocumentPosition, ctx);
+        List<SymbolLocationInformation> symbolLocations = foundHover
                 .map((hover) -> {
                     Optional<LanguageData> def = this.getDefinitionFromHover(hover, workspace, ctx);
                     Location location = null;
                     if (def.isPresent()) {
                         location = def.get().getLocation();
                     }
-                    SymbolDescriptor symbolDescriptor = null;
-                    if (hover.getElement() instanceof Symbol) {
-                        Symbol sym = (Symbol) hover.getElement();
-                        JavaFileObject fileObject = getSymbolFileObject(sym);
-                        if (fileObject != null) {
-                            PackageIdentifier packageIdentifier = null;
-                            for (StandardLibrary library : StandardLibraries.getInstance().getLibraries()) {
-                                if (library.matches(fileObject, sym)) {
-                                    packageIdentifier = library.getPackageIdentifier();
-                                    break;
-                                }
-                            }
-                            URI fileUri = fileObject.toUri();
-                            if (packageIdentifier == null) {
-                                packageIdentifier = workspace.getArtifactIdentifier(fileUri);
-                            }
-                            if (packageIdentifier == null) {
-                                packageIdentifier = workspaceManager.getArtifactorIdentifier(fileUri);
-                            }
-                            if (location != null) {
-                                // this is an internal symbol, so get the default fully-analyzed signature
-                                symbolDescriptor = SymbolDescriptor.of(hover.getSignature(), packageIdentifier);
-                            } else {
-                                // this is an external symbol, so get a simpler signature that matches workspace/symbol
-                                symbolDescriptor = SymbolDescriptor.of(hover.getCrossRepoSignature(), packageIdentifier);
-                            }
-                        }
-                    }
+                    SymbolDescriptor symbolDescriptor = getSymbolDescriptor(hover, location != null, workspace);
                     if (symbolDescriptor != null || location != null) {
                         return SymbolLocationInformation.of(location, symbolDescriptor);
                     }
@@ -172,11 +246,104 @@ public class LanguageService {
                 .map(Collections::singletonList)
                 .orElse(Collections.emptyList());
 
+        if (!symbolLocations.isEmpty()) {
+            cacheResponse("textDocument/xdefinition", textDocumentPosition, revision, foundHover.get(), symbolLocations);
+        }
         t.end("numResults", symbolLocations.size());
         return symbolLocations;
     }
 
 
+    /**
+     * Returns the descriptor of the hovered symbol, or null if the symbol's origin can't be found. If internal, the
+     * symbol is defined in the workspace.
+     */
+    private SymbolDescriptor getSymbolDescriptor(LanguageData hover, boolean internal, Workspace workspace) {
+        if (!(hover.getElement() instanceof Symbol)) {
+            return null;
+        }
+        Symbol sym = (Symbol) hover.getElement();
+        JavaFileObject fileObject = getSymbolFileObject(sym);
+        if (fileObject == null) {
+            return null;
+        }
+        PackageIdentifier packageIdentifier = null;
+        for (StandardLibrary library : StandardLibraries.getInstance().getLibraries()) {
+            if (library.matches(fileObject, sym)) {
+                packageIdentifier = library.getPackageIdentifier();
+                break;
+            }
+        }
+        URI fileUri = fileObject.toUri();
+        if (packageIdentifier == null) {
+            packageIdentifier = workspace.getArtifactIdentifier(fileUri);
+        }
+        if (packageIdentifier == null) {
+            packageIdentifier = workspaceManager.getArtifactorIdentifier(fileUri);
+        }
+        if (internal) {
+            // this is an internal symbol, so get the default fully-analyzed signature
+            return SymbolDescriptor.of(hover.getSignature(), packageIdentifier);
+        }
+        // this is an external symbol, so get a simpler signature that matches workspace/symbol
+        return SymbolDescriptor.of(hover.getCrossRepoSignature(), packageIdentifier);
+    }
+
+    /**
+     * Returns, for every name token of the document, what hover and xdefinition would return for a position within
+     * it. The document is analyzed and walked once, and the definition of each distinct symbol is looked up once.
+     *
+     * If requestId is not null, annotations are also streamed as partial results, in batches of ANNOTATIONS_BATCH_SIZE.
+     */
+    public List<Annotation> annotations(TextDocumentAnnotationsParams params, Object requestId, Map<String, Object> ctx) {
+        Util.Timer t = Util.timeStart("textDocument/xannotations");
+        String uri = params.getTextDocument().getUri();
+        Workspace workspace = workspaceManager.getWorkspaceContainingUri(uri);
+        Optional<CompilationResult> compilationResult = compilerService.analyze(uri, ctx);
+        if (workspace == null || !compilationResult.isPresent()) {
+            t.end("numResults", 0);
+            return Collections.emptyList();
+        }
+
+        if (requestId != null) {
+            JsonPatch streamingInitPatch = new JsonPatch();
+            streamingInitPatch.add(JsonPatchOperation.of("add", "", new ArrayList()));
+            partialResultStreamer.sendPartialResult(requestId, streamingInitPatch);
+        }
+
+        // element -> annotation of its first token, whose contents, location and symbol the other tokens share
+        Map<Element, Annotation> resolved = new IdentityHashMap<>();
+        List<Annotation> annotations = new ArrayList<>();
+        JsonPatch patch = new JsonPatch();
+        for (LanguageData token : compilationResult.get().findAnnotations()) {
+            if (Thread.currentThread().isInterrupted()) {
+                return Collections.emptyList();
+            }
+            Annotation symbol = resolved.computeIfAbsent(token.getElement(), __ -> {
+                Optional<LanguageData> def = getDefinitionFromHover(token, workspace, ctx);
+                Location location = def.map(LanguageData::getLocation).orElse(null);
+                return Annotation.of(null,
+                        def.orElse(token).getData(),
+                        location,
+                        getSymbolDescriptor(token, location != null, workspace));
+            });
+            Annotation annotation = Annotation.of(token.getLocation().getRange(), symbol.getContents(), symbol.getLocation(), symbol.getSymbol());
+            annotations.add(annotation);
+            if (requestId != null) {
+                patch.add(JsonPatchOperation.of("add", "/-", annotation));
+                if (patch.size() >= ANNOTATIONS_BATCH_SIZE) {
+                    partialResultStreamer.sendPartialResult(requestId, patch);
+                    patch = new JsonPatch();
+                }
+            }
+        }
+        if (!patch.isEmpty()) {
+            partialResultStreamer.sendPartialResult(requestId, patch);
+        }
+        t.end("numResults", annotations.size());
+        return annotations;
+    }
+
     public List<Location> references(ReferenceParams referenceParams, Map<String, Object> ctx) throws Exception {
         return references(referenceParams, null, ctx);
     }
@@ -198,6 +365,14 @@ public class LanguageService {
         ArrayList<Location> accumulator = new ArrayList<>();
         int limit = refCtx != null && refCtx.getXlimit() != null ? refCtx.getXlimit() : REFERENCES_LIMIT;
 
+        // references to a constructor name its class
+        Element element = hoverData.getElement();
+        String identifier = element == null ? ""
+                : (element.getKind() == ElementKind.CONSTRUCTOR ? element.getEnclosingElement() : element).getSimpleName().toString();
+        // files skipped by their identifier filter, and files that passed it but don't contain the symbol
+        int skipped = 0;
+        int falsePositives = 0;
+
         // if there's no request id, then apply the identity function to each partial result, otherwise apply
         // this::streamPartialResults
         Function<List<LanguageData>, List<LanguageData>> streamingFunction;
@@ -253,6 +428,10 @@ public class LanguageService {
                 if (!referencesScopeFilter.test(sourceFile)) {
                     continue;
                 }
+                if (!mightContainIdentifier(sourceFile, identifier)) {
+                    skipped++;
+                    continue;
+                }
                 Optional<CompilationResult> optionalResult = compilerService.parse(sourceFile, workspace.getCompiler());
                 if (!optionalResult.isPresent()) {
                     continue;
@@ -260,6 +439,7 @@ public class LanguageService {
                 CompilationResult compilationResult = optionalResult.get();
                 // quick search for element in a tree
                 if (!compilationResult.containsExactSymbol(hoverData.getElement())) {
+                    falsePositives++;
                     continue;
                 }
                 optionalResult = compilerService.analyze(sourceFile, workspace, ctx);
@@ -304,7 +484,7 @@ public class LanguageService {
                 return l1.getRange().getEnd().getCharacter() - l2.getRange().getEnd().getCharacter();
             });
         }
-        t.end();
+        t.end("skippedFiles", skipped, "falsePositives", falsePositives);
         return accumulator;
     }
 
@@ -405,58 +585,115 @@ public class LanguageService {
             Tracing.endSpan(tsSpan, "number of symbols", targetedSymbols.size());
             if (!targetedSymbols.isEmpty()) {
                 t.log("Found structured workspace symbols", "numResults", targetedSymbols.size(), "kind", symbolQuery.getElementKind(), "query", simpleQuery);
-                return targetedSymbols.stream()
-                        .map(symbol -> Pair.of(-1 * symbolScore(symbol, simpleQuery), symbol))
-                        .sorted(Comparator.comparing(Pair::getLeft))
-                        .limit(limit)
-                        .map(Pair::getRight)
-                        .collect(Collectors.toCollection(ArrayList::new));
+                SymbolRanking ranking = new SymbolRanking(simpleQuery, limit);
+                targetedSymbols.forEach(ranking::offer);
+                return ranking.result();
             }
         }
 
 
-        // even if we're doing a raw text search, create a symbol out of it because the symbol-filtering visitor is
-        // faster (ignores non-definitions)
-        final SymbolDescriptor symbolFromText = SymbolDescriptor.of(null, simpleQuery, null, null, null, null);
+        // files to search, in order; for text queries extending a recent one, only the files that matched it
+        long revision = compilerService.getResponseCache().getRevision();
+        List<Pair<Workspace, JavaFileObject>> files = symbolQuery == null ? symbolSearchCache.candidates(simpleQuery, revision) : null;
+        if (files == null) {
+            files = new ArrayList<>();
+            for (Workspace workspace : workspaceManager.getWorkspaces()) {
+                Collection<JavaFileObject> workspaceFiles;
+                if (symbolQuery != null && symbolQuery.getPackageName() != null) {
+                    workspaceFiles = workspace.getPackageSourceFileObjects(symbolQuery.getPackageName());
+                } else {
+                    workspaceFiles = workspace.getSourceFiles();
+                }
+                for (JavaFileObject file : workspaceFiles) {
+                    files.add(Pair.of(workspace, file));
+                }
+            }
+        }
 
         // raw text searches are interactive, so go ahead and wait for workspace initialization
-        ArrayList<SymbolInformation> symbols = workspaceManager.getWorkspaces().stream()
-                .flatMap(workspace -> {
-
-                    Collection<JavaFileObject> files;
-                    try {
-                        if (symbolQuery != null && symbolQuery.getPackageName() != null) {
-                            files = workspace.getPackageSourceFileObjects(symbolQuery.getPackageName());
-                        } else {
-                            files = workspace.getSourceFiles();
-                        }
-                    } catch (Exception e) {
-                        // TODO: convert to for-loop
-                        throw new RuntimeException(e);
-                    }
-
-                    return files.stream()
-                            .map(file -> compilerService.parse(file, workspace.getCompiler()))
-                            .filter(Optional::isPresent)
-                            .map(Optional::get)
-                            .filter(symbolQuery == null
-                                    ? compilationResult -> compilationResult.containsPartialSymbol(symbolFromText)
-                                    : compilationResult -> compilationResult.containsExactSymbol(symbolQuery));
-                })
-                .map(symbolQuery == null
-                        ? compilationResult -> compilationResult.findSymbols(simpleQuery)
-                        : compilationResult -> compilationResult.findSymbols(symbolQuery))
-                .flatMap(Collection::stream)
-                .map(symbol -> Pair.of(-1 * symbolScore(symbol, simpleQuery), symbol))
-                .sorted(Comparator.comparing(Pair::getLeft))
-                .limit(limit)
-                .map(Pair::getRight)
-                .collect(Collectors.toCollection(ArrayList::new));
+        // text queries only look into the files declaring a matching name, if the index is enabled
+        Set<String> declaring = symbolQuery == null ? findFilesDeclaring(simpleQuery, files) : null;
+        SymbolRanking ranking = new SymbolRanking(simpleQuery, limit);
+        List<Pair<Workspace, JavaFileObject>> matched = new ArrayList<>();
+        for (Pair<Workspace, JavaFileObject> file : files) {
+            if (declaring != null && !declaring.contains(file.getRight().getName())) {
+                continue;
+            }
+            if (symbolQuery != null && !mightContainIdentifier(file.getRight(), simpleQuery)) {
+                continue;
+            }
+            Optional<CompilationResult> optionalResult = compilerService.parse(file.getRight(), file.getLeft().getCompiler());
+            if (!optionalResult.isPresent()) {
+                continue;
+            }
+            CompilationResult compilationResult = optionalResult.get();
+            if (symbolQuery == null) {
+                List<SymbolInformation> found = compilationResult.findSymbols(simpleQuery, true);
+                if (found.isEmpty()) {
+                    continue;
+                }
+                matched.add(file);
+                found.forEach(ranking::offer);
+            } else if (compilationResult.containsExactSymbol(symbolQuery)) {
+                compilationResult.findSymbols(symbolQuery).forEach(ranking::offer);
+            }
+        }
+        if (symbolQuery == null && workspaceManager.whenInitialized().isDone()) {
+            symbolSearchCache.put(simpleQuery, revision, matched);
+        }
+        List<SymbolInformation> symbols = ranking.result();
 
         t.end("query", simpleQuery);
         return symbols;
     }
 
+    /**
+     * Returns the names of the files, among the given ones, that declare a name matching the text query (see
+     * SymbolNameIndex), or null if the index is disabled. Indexes the files that haven't been indexed yet.
+     */
+    private Set<String> findFilesDeclaring(String query, List<Pair<Workspace, JavaFileObject>> files) {
+        SymbolNameIndex index = compilerService.getSymbolNameIndex();
+        if (!index.isEnabled()) {
+            return null;
+        }
+        long version = index.getVersion();
+        // files changed while being indexed, searched regardless
+        Set<String> unindexed = new HashSet<>();
+        int added = 0;
+        for (Pair<Workspace, JavaFileObject> file : files) {
+            String fileName = file.getRight().getName();
+            if (index.contains(fileName)) {
+                continue;
+            }
+            Optional<CompilationResult> result = compilerService.parse(file.getRight(), file.getLeft().getCompiler());
+            if (!result.isPresent()) {
+                continue;
+            }
+            if (index.add(fileName, result.get().findDeclaredNames(), version)) {
+                added++;
+            } else {
+                unindexed.add(fileName);
+            }
+        }
+        if (added > 0) {
+            log.info("Indexed the names declared by {} files, symbol name index has {} names and {} trigrams, about {}KB",
+                    added, index.getNames(), index.getTrigrams(), index.getEstimatedBytes() / 1024);
+        }
+        Set<String> declaring = index.findFiles(query);
+        if (declaring != null) {
+            declaring.addAll(unindexed);
+        }
+        return declaring;
+    }
+
+    /**
+     * Tells if the file may contain the identifier, judging by its identifier filter (see IdentifierFilter), so that
+     * files that can't are skipped without being parsed
+     */
+    private static boolean mightContainIdentifier(JavaFileObject file, String identifier) {
+        return !(file instanceof SourceFile) || ((SourceFile) file).getIdentifierFilter().mightContain(identifier);
+    }
+
     private List<SymbolInformation> initializedTargetedSymbols(SymbolDescriptor symbolQuery) throws Exception {
 
         ArrayList<SymbolInformation> targetedSymbols = new ArrayList<>();
@@ -467,7 +704,7 @@ public class LanguageService {
                 baseFileName = StringUtils.substringBeforeLast(baseFileName, ".");
                 if (baseFileName.equals(symbolQuery.getOutermostContainerName())) {
                     JavaFileObject source = workspace.getSourceFile(uri);
-                    if (source == null) {
+                    if (source == null || !mightContainIdentifier(source, symbolQuery.getSimpleName())) {
                         continue;
                     }
                     compilerService
@@ -484,32 +721,6 @@ public class LanguageService {
         return targetedSymbols;
     }
 
-    private double symbolScore(SymbolInformation symbol, String rawQuery) {
-        double score = 0.0;
-        String simpleName = symbol.getName();
-        if (simpleName.equals(rawQuery)) {
-            score += 1000;
-        } else if (simpleName.toLowerCase().equals(rawQuery.toLowerCase())) {
-            score += 900;
-        } else if (simpleName.toLowerCase().startsWith(rawQuery.toLowerCase())) {
-            score += 50;
-        }
-
-        score += 10 * ((double) rawQuery.length()) / simpleName.length();
-
-        score += (double) 10 / symbol.getLocation().getUri().length();
-
-        if (symbol.getKind() != null) {
-            switch (symbol.getKind()) {
-                case CLASS:
-                case INTERFACE:
-                case PACKAGE:
-                    score += 200;
-            }
-        }
-        return score;
-    }
-
     public List<SymbolInformation> documentSymbol(DocumentSymbolParams documentSymbolParams, Map<String, Object> ctx) {
 
         // we want all symbols in the specified document, so just query for the empty string
@@ -518,13 +729,24 @@ public class LanguageService {
 
         String uri = documentSymbolParams.getTextDocument().getUri();
 
+        ResponseCache responseCache = compilerService.getResponseCache();
+        Optional<List<SymbolInformation>> cached = responseCache.getFile("textDocument/documentSymbol", uri);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        long revision = responseCache.getRevision();
+
         Workspace workspace = workspaceManager.getWorkspaceContainingUri(uri);
         JavaFileObject file = workspace.getSourceFile(uri);
 
         ArrayList<SymbolInformation> symbols = new ArrayList<>();
 
         compilerService.parse(file, workspace.getCompiler())
-                .ifPresent(compilationResult -> symbols.addAll(compilationResult.findSymbols("")));
+                .ifPresent(compilationResult -> {
+                    symbols.addAll(compilationResult.findSymbols(""));
+                    // only depends on the file itself, so there's no need to wait for other workspaces
+                    responseCache.putFile("textDocument/documentSymbol", uri, revision, symbols);
+                });
 
         // don't sort them; since it's for the current file, it'll be more intuitive to keep them in document order
 
@@ -548,7 +770,7 @@ public class LanguageService {
 
         int limit = params.getLimit() == null ? REFERENCES_LIMIT : params.getLimit();
 
-        long before = System.currentTimeMillis();
+        Util.Timer t = Util.timeStart("workspace/xreferences", "query", queryName);
 
         // if there's no request id, then apply the identity function to each partial result, otherwise apply
         // this::streamPartialResults
@@ -574,6 +796,9 @@ public class LanguageService {
         List<Workspace> workspaces = workspaceManager.getWorkspaces();
 
         List<ReferenceInformation> accumulator = new ArrayList<>();
+        // files skipped by their identifier filter, and files that passed it but don't contain the symbol
+        int skipped = 0;
+        int falsePositives = 0;
 
         for (Workspace workspace : workspaces) {
             if (Thread.currentThread().isInterrupted()) {
@@ -620,6 +845,10 @@ public class LanguageService {
                 if (sourceFile.getKind() != JavaFileObject.Kind.SOURCE) {
                     continue;
                 }
+                if (!mightContainIdentifier(sourceFile, queryName)) {
+                    skipped++;
+                    continue;
+                }
                 Optional<CompilationResult> optionalResult = compilerService.parse(sourceFile, workspace.getCompiler());
                 if (!optionalResult.isPresent()) {
                     continue;
@@ -627,6 +856,7 @@ public class LanguageService {
                 CompilationResult compilationResult = optionalResult.get();
                 // quick search for element in a tree
                 if (!compilationResult.containsExactSymbol(queryName)) {
+                    falsePositives++;
                     continue;
                 }
                 optionalResult = compilerService.analyze(sourceFile, workspace, ctx);
@@ -671,6 +901,7 @@ public class LanguageService {
             });
         }
 
+        t.end("skippedFiles", skipped, "falsePositives", falsePositives);
         return accumulator;
     }
 
@@ -725,6 +956,68 @@ public class LanguageService {
                 .collect(Collectors.toCollection(ArrayList::new));
     }
 
+    /**
+     * Sets the content of an opened document. Documents outside of the workspaces' source files are ignored.
+     *
+     * @return true if the content differs from the one previously known
+     */
+    public boolean didOpen(DidOpenTextDocumentParams params) {
+        TextDocumentItem document = params.getTextDocument();
+        return updateSourceFile(document.getUri(), f -> f.open(StringUtils.defaultString(document.getText()), document.getVersion()));
+    }
+
+    /**
+     * Applies changes to an opened document.
+     *
+     * @return true if the content has changed
+     */
+    public boolean didChange(DidChangeTextDocumentParams params) {
+        VersionedTextDocumentIdentifier document = params.getTextDocument();
+        return updateSourceFile(document.getUri(), f -> f.applyChanges(params.getContentChanges(), document.getVersion()));
+    }
+
+    /**
+     * Sets the content of a saved document, if the client sent it.
+     *
+     * @return true if the content has changed
+     */
+    public boolean didSave(DidSaveTextDocumentParams params) {
+        if (params.getText() == null) {
+            return false;
+        }
+        return updateSourceFile(params.getTextDocument().getUri(), f -> f.setContent(params.getText(), null));
+    }
+
+    /**
+     * Tells if the text differs from the current content of the source file, i.e. if setting it would edit the file
+     */
+    public boolean differsFromContent(String uri, String text) {
+        Workspace workspace = workspaceManager.getWorkspaceContainingUri(uri);
+        JavaFileObject file = workspace == null ? null : workspace.getSourceFile(uri);
+        if (!(file instanceof SourceFile)) {
+            return false;
+        }
+        try {
+            return !StringUtils.equals(file.getCharContent(true), StringUtils.defaultString(text));
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private boolean updateSourceFile(String uri, Predicate<SourceFile> update) {
+        Workspace workspace = workspaceManager.getWorkspaceContainingUri(uri);
+        JavaFileObject file = workspace == null ? null : workspace.getSourceFile(uri);
+        if (!(file instanceof SourceFile)) {
+            log.info("Ignoring content of {}, which isn't a source file of any workspace", uri);
+            return false;
+        }
+        if (!update.test((SourceFile) file)) {
+            return false;
+        }
+        compilerService.invalidate(uri);
+        return true;
+    }
+
     private class ReferencesFilter implements Predicate<LanguageData> {
 
         private Location definition;
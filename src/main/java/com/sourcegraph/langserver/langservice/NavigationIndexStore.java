@@ -0,0 +1,309 @@
+package com.sourcegraph.langserver.langservice;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.sourcegraph.langserver.langservice.compiler.CompilerOption;
+import com.sourcegraph.langserver.langservice.compiler.NavigationIndex;
+import com.sourcegraph.langserver.langservice.workspace.ConfigProvider;
+import com.sourcegraph.langserver.langservice.workspace.Workspace;
+import com.sourcegraph.lsp.SharedCache;
+import com.sourcegraph.lsp.domain.structures.PackageIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.tools.JavaFileObject;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * NavigationIndexStore keeps navigation indexes (see NavigationIndex) on disk (if Config.NAVIGATION_INDEX_DISK_CACHE is
+ * set) and in the cache of the session's clients (see SharedCache), so that after a restart, or on another language
+ * server instance, hover and definition requests for files analyzed before are answered by reading the index instead
+ * of by analyzing the files again.
+ *
+ * An index is stored under a hash of the workspace's compiler options, of the workspace's dependencies and of the
+ * file's content, so an index is only reused for the same file content compiled the same way. Changes to other source
+ * files of the workspace are not part of the key; indexes only record what the file itself refers to, and anything
+ * they can't answer is resolved by javac as usual.
+ *
+ * Asking the client takes a round trip, which hover requests must not wait for: an index missing on disk is fetched
+ * from the shared cache in the background and returned by a later read. Indexes are written in the background as
+ * well.
+ *
+ * The indexes on disk are kept under a size limit: once it is exceeded, the least recently read or written ones are
+ * deleted until a quarter of the limit is free again. This class is threadsafe.
+ */
+class NavigationIndexStore {
+
+    private static final Logger log = LoggerFactory.getLogger(NavigationIndexStore.class);
+
+    private static final String SHARED_CACHE_NAMESPACE = "navigation-index";
+
+    /**
+     * Maximum number of keys remembered as missing from the shared cache
+     */
+    private static final int MAX_SHARED_MISSES = 10000;
+
+    /**
+     * Maximum number of indexes fetched from the shared cache that wait to be read
+     */
+    private static final int MAX_FETCHED = 256;
+
+    // null if indexes are not stored on disk
+    private final File dir;
+
+    private final long maxDiskBytes;
+
+    // size of the indexes on disk, -1 until measured; only used by the writer thread
+    private long diskBytes = -1;
+
+    private final SharedCache sharedCache;
+
+    // keys the shared cache had no index for or that are being fetched, so that files that aren't indexed yet don't
+    // ask the client every time; the least recently used ones are forgotten first
+    private final Set<String> sharedMisses = Collections.newSetFromMap(Collections.synchronizedMap(lru(MAX_SHARED_MISSES)));
+
+    // key -> index fetched from the shared cache that hasn't been read yet, if indexes are not stored on disk
+    private final Map<String, NavigationIndex> fetched = Collections.synchronizedMap(lru(MAX_FETCHED));
+
+    // workspace -> hash of its compiler options and dependencies
+    private final Map<Workspace, String> workspaceHashes = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "navigation-index-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final ExecutorService fetcher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "navigation-index-fetcher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * @param dir          directory to store indexes in, or null to only use the shared cache
+     * @param maxDiskBytes maximum size of the indexes stored in dir
+     */
+    NavigationIndexStore(File dir, long maxDiskBytes, SharedCache sharedCache) {
+        this.dir = dir;
+        this.maxDiskBytes = maxDiskBytes;
+        this.sharedCache = sharedCache;
+    }
+
+    private static <V> Map<String, V> lru(int maxSize) {
+        return new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns false if indexes can currently be neither read nor written, so there is no need to compute keys
+     */
+    boolean isEnabled() {
+        return dir != null || sharedCache.isAvailable();
+    }
+
+    /**
+     * Returns the key of the file's index, or null if the file's content can't be read
+     */
+    String key(Workspace workspace, JavaFileObject file) {
+        CharSequence content;
+        try {
+            content = file.getCharContent(true);
+        } catch (IOException e) {
+            return null;
+        }
+        return Hashing.sha256().newHasher()
+                .putString(workspaceHashes.computeIfAbsent(workspace, NavigationIndexStore::workspaceHash), StandardCharsets.UTF_8)
+                .putString(file.getName(), StandardCharsets.UTF_8)
+                .putString(content, StandardCharsets.UTF_8)
+                .hash().toString();
+    }
+
+    private static String workspaceHash(Workspace workspace) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        if (workspace instanceof ConfigProvider) {
+            for (CompilerOption option : ((ConfigProvider) workspace).getConfig().getCompilerOptions()) {
+                hasher.putString(option.getName() + " " + option.getValue() + "\n", StandardCharsets.UTF_8);
+            }
+        }
+        List<PackageIdentifier> dependencies = new ArrayList<>(workspace.getDependencies());
+        dependencies.sort(PackageIdentifier.comparator);
+        for (PackageIdentifier dependency : dependencies) {
+            hasher.putString(String.join(" ", String.valueOf(dependency.getType()), dependency.getId(),
+                    dependency.getVersion(), dependency.getRepoURL(), dependency.getCommit()) + "\n", StandardCharsets.UTF_8);
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Returns the index stored under the given key, or null if there is none or it hasn't been fetched from the shared
+     * cache yet. Never waits for the client.
+     */
+    NavigationIndex read(String key) {
+        if (dir != null && Files.isRegularFile(path(key))) {
+            Path path = path(key);
+            touch(path);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                return NavigationIndex.read(in);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Ignoring unreadable navigation index {}: {}", path, e.toString());
+                return null;
+            }
+        }
+        NavigationIndex index = fetched.remove(key);
+        if (index != null) {
+            return index;
+        }
+        if (sharedCache.isAvailable() && sharedMisses.add(key)) {
+            fetcher.submit(() -> fetch(key));
+        }
+        return null;
+    }
+
+    private void fetch(String key) {
+        byte[] bytes = sharedCache.get(SHARED_CACHE_NAMESPACE, NavigationIndex.FORMAT_VERSION, key);
+        if (bytes == null) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            NavigationIndex index = NavigationIndex.read(in);
+            if (dir != null) {
+                writer.submit(() -> writeToDisk(key, bytes));
+            } else {
+                fetched.put(key, index);
+            }
+            sharedMisses.remove(key);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unreadable shared navigation index {}: {}", key, e.toString());
+        }
+    }
+
+    /**
+     * Stores the index under the given key, in the background
+     */
+    void write(String key, NavigationIndex index) {
+        sharedMisses.remove(key);
+        writer.submit(() -> {
+            if (dir != null && Files.isRegularFile(path(key))) {
+                // stored by an earlier run, and thus shared already
+                return;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                index.write(out);
+            } catch (IOException e) {
+                log.warn("Could not serialize navigation index {}: {}", key, e.toString());
+                return;
+            }
+            sharedCache.set(SHARED_CACHE_NAMESPACE, NavigationIndex.FORMAT_VERSION, key, bytes.toByteArray());
+            if (dir != null) {
+                writeToDisk(key, bytes.toByteArray());
+            }
+        });
+    }
+
+    /**
+     * Writes the index file, pruning the least recently used ones if that exceeds the size limit. Only called on the
+     * writer thread.
+     */
+    private void writeToDisk(String key, byte[] bytes) {
+        Path target = path(key);
+        if (Files.isRegularFile(target)) {
+            return;
+        }
+        if (diskBytes < 0) {
+            diskBytes = 0;
+            for (Path file : listFiles()) {
+                diskBytes += file.toFile().length();
+            }
+        }
+        try {
+            Files.createDirectories(target.getParent());
+            Path tmp = Files.createTempFile(target.getParent(), key, ".tmp");
+            try {
+                Files.write(tmp, bytes);
+                try {
+                    Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            diskBytes += bytes.length;
+        } catch (IOException e) {
+            log.warn("Could not write navigation index {}: {}", target, e.toString());
+        }
+        if (diskBytes > maxDiskBytes) {
+            prune();
+        }
+    }
+
+    /**
+     * Deletes the least recently used indexes until a quarter of the size limit is free
+     */
+    private void prune() {
+        List<Path> files = listFiles();
+        Map<Path, Long> lastModified = new HashMap<>();
+        for (Path file : files) {
+            lastModified.put(file, file.toFile().lastModified());
+        }
+        files.sort(Comparator.comparing(lastModified::get));
+        long target = maxDiskBytes / 4 * 3;
+        int deleted = 0;
+        for (Path file : files) {
+            if (diskBytes <= target) {
+                break;
+            }
+            long length = file.toFile().length();
+            try {
+                Files.deleteIfExists(file);
+                diskBytes -= length;
+                deleted++;
+            } catch (IOException e) {
+                log.warn("Could not delete navigation index {}: {}", file, e.toString());
+            }
+        }
+        log.info("Deleted {} least recently used navigation indexes from {}", deleted, dir);
+    }
+
+    private List<Path> listFiles() {
+        List<Path> files = new ArrayList<>();
+        File[] subdirs = dir.listFiles(File::isDirectory);
+        if (subdirs == null) {
+            return files;
+        }
+        for (File subdir : subdirs) {
+            File[] indexes = subdir.listFiles(file -> file.isFile() && !file.getName().endsWith(".tmp"));
+            if (indexes != null) {
+                for (File index : indexes) {
+                    files.add(index.toPath());
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Marks the index file as recently used, for pruning
+     */
+    private static void touch(Path path) {
+        if (!path.toFile().setLastModified(System.currentTimeMillis())) {
+            log.debug("Could not update the modification time of {}", path);
+        }
+    }
+
+    private Path path(String key) {
+        // spread over subdirectories to keep directory listings small
+        return dir.toPath().resolve(key.substring(0, 2)).resolve(key);
+    }
+}
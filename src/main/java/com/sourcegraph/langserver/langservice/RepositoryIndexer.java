@@ -0,0 +1,262 @@
+package com.sourcegraph.langserver.langservice;
+
+import com.sourcegraph.langserver.langservice.compiler.CompilationResult;
+import com.sourcegraph.langserver.langservice.workspace.ForkedWorkspace;
+import com.sourcegraph.langserver.langservice.workspace.Workspace;
+import com.sourcegraph.langserver.langservice.workspace.WorkspaceManager;
+import com.sourcegraph.langserver.langservice.workspace.Workspaces;
+import com.sourcegraph.lsp.FileContentProvider;
+import com.sourcegraph.lsp.NoopMessenger;
+import com.sourcegraph.lsp.SharedCache;
+import com.sourcegraph.lsp.domain.Mapper;
+import com.sourcegraph.lsp.domain.params.DocumentSymbolParams;
+import com.sourcegraph.lsp.domain.params.TextDocumentAnnotationsParams;
+import com.sourcegraph.lsp.domain.structures.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RepositoryIndexer analyzes every source file of a repository and writes a dump of the code intelligence the language
+ * server would compute for it on demand, so that it can be served without compiling anything (see BatchIndexer).
+ *
+ * The dump is line-oriented: one JSON object per line, and the lines of a document are contiguous:
+ * <pre>
+ * {"type":"document","uri":...}
+ * {"type":"symbol","symbol":SymbolInformation}                        textDocument/documentSymbol results
+ * {"type":"hover","id":N,"contents":[MarkedString, ...]}              hover contents, written before their first use
+ * {"type":"range","range":Range,"hover":N,"definition":Location,"symbol":SymbolDescriptor}
+ * </pre>
+ * A range is written for each name token (see textDocument/xannotations). A range whose definition is the range itself
+ * is a definition; any other range is a reference to its definition, or to its symbol if it is defined outside of the
+ * repository. Hover ids are only unique within a document.
+ *
+ * javac compilers are not threadsafe and a CompilerService analyzes one file at a time, so files are indexed by
+ * several workers, each with compilers and caches of its own. The workspaces are resolved once, and workers share
+ * their source files and dependency JARs through forks of them (see ForkedWorkspace). Files of a directory go to the
+ * same worker, since analyzing a file usually pulls in the other files of its package. A file that can't be analyzed
+ * is counted as failed and left out of the dump.
+ */
+public class RepositoryIndexer {
+
+    private static final Logger log = LoggerFactory.getLogger(RepositoryIndexer.class);
+
+    private final String rootUri;
+
+    private final FileContentProvider files;
+
+    private final int workers;
+
+    public RepositoryIndexer(String rootUri, FileContentProvider files, int workers) {
+        this.rootUri = rootUri;
+        this.files = files;
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * Indexes the repository, writing the dump to out
+     */
+    public Stats index(Writer out) throws Exception {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+        Stats stats = new Stats();
+        long start = System.nanoTime();
+        List<Workspace> workspaces = Workspaces.fromFiles(rootUri, files, new NoopMessenger(), new ArrayList<>(), new SharedCache());
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "batch-indexer-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                int worker = i;
+                futures.add(executor.submit(() -> {
+                    runWorker(worker, workspaces, out, stats);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        out.flush();
+        stats.elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                stats.peakHeapBytes += pool.getPeakUsage().getUsed();
+            }
+        }
+        return stats;
+    }
+
+    private void runWorker(int worker, List<Workspace> workspaces, Writer out, Stats stats) throws Exception {
+        List<Workspace> forks = new ArrayList<>();
+        for (Workspace workspace : workspaces) {
+            forks.add(new ForkedWorkspace(workspace));
+        }
+        WorkspaceManager workspaceManager = new WorkspaceManager(forks, files);
+        CompilerService compilerService = new CompilerService(workspaceManager);
+        LanguageService languageService = new LanguageService(files, (requestId, patch) -> {}, workspaceManager, compilerService);
+        Set<String> seen = new HashSet<>();
+        for (Workspace workspace : workspaceManager.getWorkspaces()) {
+            List<String> uris = new ArrayList<>(workspace.getSourceUris());
+            Collections.sort(uris);
+            for (String uri : uris) {
+                if (workerOf(uri, workers) != worker || !seen.add(uri)) {
+                    continue;
+                }
+                String lines;
+                try {
+                    lines = dumpDocument(compilerService, languageService, uri, stats);
+                } catch (Exception e) {
+                    log.warn("Failed to index {}: {}", uri, e.toString());
+                    stats.failedDocuments.incrementAndGet();
+                    continue;
+                }
+                if (lines == null) {
+                    log.warn("Failed to index {}: it could not be analyzed", uri);
+                    stats.failedDocuments.incrementAndGet();
+                    continue;
+                }
+                synchronized (out) {
+                    out.write(lines);
+                }
+                stats.documents.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Returns the worker that indexes the file, the same for all files of a directory
+     */
+    static int workerOf(String uri, int workers) {
+        int slash = uri.lastIndexOf('/');
+        String dir = slash < 0 ? "" : uri.substring(0, slash);
+        return Math.floorMod(dir.hashCode(), workers);
+    }
+
+    /**
+     * Returns the dump lines of the document, or null if it can't be analyzed
+     */
+    private static String dumpDocument(CompilerService compilerService, LanguageService languageService, String uri, Stats stats) throws IOException {
+        Map<String, Object> ctx = new HashMap<>();
+        // the requests below return nothing rather than fail when the file can't be analyzed; the analysis is cached
+        Optional<CompilationResult> analyzed = compilerService.analyze(uri, ctx);
+        if (!analyzed.isPresent()) {
+            return null;
+        }
+        StringBuilder lines = new StringBuilder();
+        append(lines, line("document").with("uri", uri));
+
+        for (SymbolInformation symbol : languageService.documentSymbol(DocumentSymbolParams.of(TextDocumentIdentifier.of(uri)), ctx)) {
+            append(lines, line("symbol").with("symbol", symbol));
+            stats.symbols.incrementAndGet();
+        }
+
+        Map<List<MarkedString>, Integer> hoverIds = new HashMap<>();
+        for (Annotation annotation : languageService.annotations(TextDocumentAnnotationsParams.of(TextDocumentIdentifier.of(uri)), null, ctx)) {
+            Integer hoverId = null;
+            if (annotation.getContents() != null && !annotation.getContents().isEmpty()) {
+                hoverId = hoverIds.get(annotation.getContents());
+                if (hoverId == null) {
+                    hoverId = hoverIds.size();
+                    hoverIds.put(annotation.getContents(), hoverId);
+                    append(lines, line("hover").with("id", hoverId).with("contents", annotation.getContents()));
+                }
+            }
+            append(lines, line("range")
+                    .with("range", annotation.getRange())
+                    .with("hover", hoverId)
+                    .with("definition", annotation.getLocation())
+                    .with("symbol", annotation.getSymbol()));
+            stats.ranges.incrementAndGet();
+        }
+        return lines.toString();
+    }
+
+    private static Line line(String type) {
+        return new Line().with("type", type);
+    }
+
+    private static void append(StringBuilder lines, Line line) {
+        lines.append(Mapper.writeValueAsString(line)).append('\n');
+    }
+
+    /**
+     * The fields of a dump line, in order; null fields are left out
+     */
+    private static class Line extends LinkedHashMap<String, Object> {
+
+        Line with(String key, Object value) {
+            if (value != null) {
+                put(key, value);
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Counters reported at the end of a run
+     */
+    public static class Stats {
+
+        private final AtomicLong documents = new AtomicLong();
+        private final AtomicLong failedDocuments = new AtomicLong();
+        private final AtomicLong symbols = new AtomicLong();
+        private final AtomicLong ranges = new AtomicLong();
+
+        private long elapsedMillis;
+
+        // sum of the peak usages of the heap memory pools, an upper bound of the peak heap usage
+        private long peakHeapBytes;
+
+        public long getDocuments() {
+            return documents.get();
+        }
+
+        public long getFailedDocuments() {
+            return failedDocuments.get();
+        }
+
+        public long getSymbols() {
+            return symbols.get();
+        }
+
+        public long getRanges() {
+            return ranges.get();
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public long getPeakHeapBytes() {
+            return peakHeapBytes;
+        }
+
+        public double getDocumentsPerSecond() {
+            return elapsedMillis == 0 ? 0 : documents.get() * 1000.0 / elapsedMillis;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.sourcegraph.langserver.langservice;
+
+import com.sourcegraph.lsp.domain.structures.Position;
+import com.sourcegraph.lsp.domain.structures.Range;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ResponseCache remembers the responses to position-based requests (hover, definition, ...) and per-file requests
+ * (documentSymbol), so that code views re-requesting the same tokens don't go through the compiler every time.
+ *
+ * A position-based response is stored for the range of the identifier it was computed for, so that requests anywhere
+ * within the identifier get the same response; responses that aren't about a single identifier are stored for their
+ * exact position only. The revision is advanced whenever a document changes (see CompilerService.invalidate), which
+ * drops all responses; responses are only stored if no change happened while they were being computed.
+ *
+ * The cache holds up to a given number of responses; the responses for the least recently used files are evicted
+ * first. This class is threadsafe.
+ */
+class ResponseCache {
+
+    private final int maxEntries;
+
+    private final AtomicLong revision = new AtomicLong();
+
+    // method, revision and URI -> responses for the file, least recently used first; guarded by this
+    private final LinkedHashMap<String, FileEntries> files = new LinkedHashMap<>(16, 0.75f, true);
+
+    // number of responses in files, guarded by this
+    private int size;
+
+    ResponseCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    private static class FileEntries {
+
+        // line -> responses stored for identifiers on that line
+        final Map<Integer, List<TokenEntry>> tokens = new HashMap<>();
+
+        // "line:character" -> responses stored for exact positions
+        final Map<String, Object> positions = new HashMap<>();
+
+        // response for the whole file
+        Object file;
+
+        int size;
+    }
+
+    private static class TokenEntry {
+        final int start;
+        final int end;
+        final Object response;
+
+        TokenEntry(int start, int end, Object response) {
+            this.start = start;
+            this.end = end;
+            this.response = response;
+        }
+    }
+
+    /**
+     * Returns the current revision, to be passed to the put methods along with responses computed from now on
+     */
+    long getRevision() {
+        return revision.get();
+    }
+
+    /**
+     * Drops all responses stored so far, along with responses still being computed at the previous revision
+     */
+    synchronized void advanceRevision() {
+        revision.incrementAndGet();
+        files.clear();
+        size = 0;
+    }
+
+    /**
+     * Returns the response stored for the given position, or for the identifier containing it
+     */
+    @SuppressWarnings("unchecked")
+    synchronized <T> Optional<T> get(String method, String uri, Position position) {
+        FileEntries entries = files.get(key(method, revision.get(), uri));
+        if (entries == null) {
+            return Optional.empty();
+        }
+        Object response = entries.positions.get(position.getLine() + ":" + position.getCharacter());
+        if (response == null) {
+            for (TokenEntry token : entries.tokens.getOrDefault(position.getLine(), Collections.emptyList())) {
+                if (token.start <= position.getCharacter() && position.getCharacter() < token.end) {
+                    response = token.response;
+                    break;
+                }
+            }
+        }
+        return Optional.ofNullable((T) response);
+    }
+
+    /**
+     * Returns the response stored for the whole file
+     */
+    @SuppressWarnings("unchecked")
+    synchronized <T> Optional<T> getFile(String method, String uri) {
+        FileEntries entries = files.get(key(method, revision.get(), uri));
+        return Optional.ofNullable(entries == null ? null : (T) entries.file);
+    }
+
+    /**
+     * Stores the response computed at the given revision for a position. If identifier is not null, it is the range
+     * of the identifier the response is about, and the response is stored for the whole identifier.
+     */
+    synchronized void put(String method, String uri, long revision, Position position, Range identifier, Object response) {
+        if (maxEntries <= 0 || revision != this.revision.get()) {
+            return;
+        }
+        FileEntries entries = files.computeIfAbsent(key(method, revision, uri), __ -> new FileEntries());
+        if (identifier != null) {
+            entries.tokens.computeIfAbsent(identifier.getStart().getLine(), __ -> new ArrayList<>())
+                    .add(new TokenEntry(identifier.getStart().getCharacter(), identifier.getEnd().getCharacter(), response));
+        } else {
+            entries.positions.put(position.getLine() + ":" + position.getCharacter(), response);
+        }
+        added(entries);
+    }
+
+    /**
+     * Stores the response computed at the given revision for the whole file
+     */
+    synchronized void putFile(String method, String uri, long revision, Object response) {
+        if (maxEntries <= 0 || revision != this.revision.get()) {
+            return;
+        }
+        FileEntries entries = files.computeIfAbsent(key(method, revision, uri), __ -> new FileEntries());
+        if (entries.file == null) {
+            entries.file = response;
+            added(entries);
+        }
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private void added(FileEntries entries) {
+        entries.size++;
+        size++;
+        Iterator<FileEntries> it = files.values().iterator();
+        while (size > maxEntries && it.hasNext()) {
+            FileEntries eldest = it.next();
+            it.remove();
+            size -= eldest.size;
+        }
+    }
+
+    private static String key(String method, long revision, String uri) {
+        return method + " " + revision + " " + uri;
+    }
+
+    /**
+     * Returns the range if it spans a single identifier of the given content, or null otherwise
+     */
+    static Range identifierRange(CharSequence content, Range range) {
+        if (range == null || range.getStart().getLine() != range.getEnd().getLine()
+                || range.getStart().getCharacter() >= range.getEnd().getCharacter()) {
+            return null;
+        }
+        // find the start of the line
+        int offset = 0;
+        for (int line = 0; line < range.getStart().getLine(); line++) {
+            while (offset < content.length() && content.charAt(offset) != '\n') {
+                offset++;
+            }
+            if (offset >= content.length()) {
+                return null;
+            }
+            offset++;
+        }
+        int start = offset + range.getStart().getCharacter();
+        int end = offset + range.getEnd().getCharacter();
+        if (end > content.length() || !Character.isJavaIdentifierStart(content.charAt(start))) {
+            return null;
+        }
+        for (int i = start + 1; i < end; i++) {
+            if (!Character.isJavaIdentifierPart(content.charAt(i))) {
+                return null;
+            }
+        }
+        return range;
+    }
+}
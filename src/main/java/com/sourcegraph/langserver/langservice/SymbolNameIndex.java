@@ -0,0 +1,369 @@
+package com.sourcegraph.langserver.langservice;
+
+import com.sourcegraph.langserver.langservice.compiler.CamelHumps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * SymbolNameIndex maps the names declared by source files (see CompilationResult.findDeclaredNames) to the files
+ * declaring them, so that a workspace/symbol text query only has to look for symbols in the files that declare a
+ * matching name instead of walking the trees of every file.
+ *
+ * Each distinct name is stored once, with trigram postings over its lowercased form for substring queries of three
+ * characters or more, and filed under its first character for camel case abbreviations (see CamelHumps). Shorter
+ * queries check every name, which is still much cheaper than walking trees. Files are returned as candidates: the
+ * caller still matches the symbols of each candidate file.
+ *
+ * Names no longer declared by any file are dropped once the number of names exceeds the limit and at least a quarter
+ * of them are no longer declared, so that each rebuild makes room for many more names; until then the index may hold
+ * up to a third more names than the limit. If files still declare too many names the index disables itself and frees
+ * its memory, and callers fall back to searching every file.
+ *
+ * This class is threadsafe.
+ */
+class SymbolNameIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(SymbolNameIndex.class);
+
+    private final int maxNames;
+
+    // all fields are guarded by this
+
+    private boolean enabled;
+
+    // advanced each time a file is removed
+    private long version;
+
+    // name -> id
+    private final Map<String, Integer> nameIds = new HashMap<>();
+
+    // id -> name
+    private final List<String> names = new ArrayList<>();
+
+    // id -> ids of the files declaring the name; empty once no file declares it any longer
+    private final List<IntList> nameFiles = new ArrayList<>();
+
+    // number of names no file declares any longer
+    private int deadNames;
+
+    // packed lowercase trigram -> ids of the names containing it, ascending
+    private final Map<Long, IntList> trigrams = new HashMap<>();
+
+    // lowercase first character -> ids of the names starting with it, ascending
+    private final Map<Character, IntList> initials = new HashMap<>();
+
+    // file name -> id; ids are kept when files are removed, so that re-indexing a file reuses its id
+    private final Map<String, Integer> fileIds = new HashMap<>();
+
+    // id -> file name
+    private final List<String> fileNames = new ArrayList<>();
+
+    // id -> ids of the names declared by the file, null if the file isn't indexed
+    private final List<int[]> fileNameIds = new ArrayList<>();
+
+    SymbolNameIndex(int maxNames) {
+        this.maxNames = maxNames;
+        this.enabled = maxNames > 0;
+    }
+
+    synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the current version, to pass to add
+     */
+    synchronized long getVersion() {
+        return version;
+    }
+
+    synchronized boolean contains(String fileName) {
+        Integer fileId = fileIds.get(fileName);
+        return fileId != null && fileNameIds.get(fileId) != null;
+    }
+
+    /**
+     * Indexes the names declared by a file, unless a file has been removed since the given version, in which case the
+     * names may come from content that is already outdated
+     *
+     * @return false if the names were not indexed because of a removal
+     */
+    synchronized boolean add(String fileName, Collection<String> declaredNames, long sinceVersion) {
+        if (!enabled) {
+            return true;
+        }
+        if (version != sinceVersion) {
+            return false;
+        }
+        removeFile(fileName);
+        Integer fileId = fileIds.get(fileName);
+        if (fileId == null) {
+            fileId = fileNames.size();
+            fileIds.put(fileName, fileId);
+            fileNames.add(fileName);
+            fileNameIds.add(null);
+        }
+        int[] ids = new int[declaredNames.size()];
+        int i = 0;
+        int existingNames = names.size();
+        for (String name : declaredNames) {
+            int nameId = addName(name);
+            IntList files = nameFiles.get(nameId);
+            if (files.isEmpty() && nameId < existingNames) {
+                deadNames--;
+            }
+            files.add(fileId);
+            ids[i++] = nameId;
+        }
+        fileNameIds.set(fileId, ids);
+        if (names.size() > maxNames && (names.size() - deadNames > maxNames || deadNames * 4 >= names.size())) {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * Forgets the names declared by a file, when its content has changed or it is gone
+     */
+    synchronized void remove(String fileName) {
+        version++;
+        removeFile(fileName);
+    }
+
+    /**
+     * Returns the names of the indexed files declaring a name that contains the query, ignoring case, or that the
+     * query abbreviates, or null if the index is disabled
+     */
+    synchronized Set<String> findFiles(String query) {
+        if (!enabled) {
+            return null;
+        }
+        String lowerQuery = query.toLowerCase();
+        Set<String> files = new HashSet<>();
+        IntList candidates = substringCandidates(lowerQuery);
+        int count = candidates == null ? names.size() : candidates.size;
+        for (int i = 0; i < count; i++) {
+            int nameId = candidates == null ? i : candidates.items[i];
+            if (!nameFiles.get(nameId).isEmpty() && names.get(nameId).toLowerCase().contains(lowerQuery)) {
+                addFiles(nameId, files);
+            }
+        }
+        if (!lowerQuery.isEmpty()) {
+            IntList initial = initials.get(lowerQuery.charAt(0));
+            if (initial != null) {
+                for (int i = 0; i < initial.size; i++) {
+                    int nameId = initial.items[i];
+                    if (!nameFiles.get(nameId).isEmpty() && CamelHumps.matches(lowerQuery, names.get(nameId))) {
+                        addFiles(nameId, files);
+                    }
+                }
+            }
+        }
+        return files;
+    }
+
+    synchronized int getNames() {
+        return names.size();
+    }
+
+    synchronized int getTrigrams() {
+        return trigrams.size();
+    }
+
+    /**
+     * Returns a rough estimate of the heap used by the index, in bytes
+     */
+    synchronized long getEstimatedBytes() {
+        // object headers, references and hash map entries of a 64-bit JVM with compressed oops
+        long bytes = 0;
+        for (String name : names) {
+            bytes += 40 + 2L * name.length() + 48;
+        }
+        for (IntList files : nameFiles) {
+            bytes += files.bytes();
+        }
+        for (IntList postings : trigrams.values()) {
+            bytes += 64 + postings.bytes();
+        }
+        for (IntList postings : initials.values()) {
+            bytes += 64 + postings.bytes();
+        }
+        for (int i = 0; i < fileNames.size(); i++) {
+            bytes += 40 + 2L * fileNames.get(i).length() + 48;
+            int[] ids = fileNameIds.get(i);
+            bytes += ids == null ? 0 : 16 + 4L * ids.length;
+        }
+        return bytes;
+    }
+
+    private void removeFile(String fileName) {
+        Integer fileId = fileIds.get(fileName);
+        if (fileId == null) {
+            return;
+        }
+        int[] ids = fileNameIds.get(fileId);
+        if (ids == null) {
+            return;
+        }
+        for (int nameId : ids) {
+            IntList files = nameFiles.get(nameId);
+            files.remove(fileId);
+            if (files.isEmpty()) {
+                deadNames++;
+            }
+        }
+        fileNameIds.set(fileId, null);
+    }
+
+    private int addName(String name) {
+        Integer nameId = nameIds.get(name);
+        if (nameId != null) {
+            return nameId;
+        }
+        nameId = names.size();
+        nameIds.put(name, nameId);
+        names.add(name);
+        nameFiles.add(new IntList());
+        String lowerName = name.toLowerCase();
+        for (int i = 0; i + 3 <= lowerName.length(); i++) {
+            IntList postings = trigrams.computeIfAbsent(trigram(lowerName, i), key -> new IntList());
+            // a name may contain the same trigram several times
+            if (postings.size == 0 || postings.items[postings.size - 1] != nameId) {
+                postings.add(nameId);
+            }
+        }
+        if (!lowerName.isEmpty()) {
+            initials.computeIfAbsent(lowerName.charAt(0), key -> new IntList()).add(nameId);
+        }
+        return nameId;
+    }
+
+    /**
+     * Returns the ids of the names containing all trigrams of the query, or null if the query is too short to have
+     * any
+     */
+    private IntList substringCandidates(String lowerQuery) {
+        if (lowerQuery.length() < 3) {
+            return null;
+        }
+        List<IntList> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= lowerQuery.length(); i++) {
+            IntList postings = trigrams.get(trigram(lowerQuery, i));
+            if (postings == null) {
+                return new IntList();
+            }
+            lists.add(postings);
+        }
+        lists.sort(Comparator.comparingInt(list -> list.size));
+        IntList smallest = lists.get(0);
+        IntList candidates = new IntList();
+        for (int i = 0; i < smallest.size; i++) {
+            int nameId = smallest.items[i];
+            boolean all = true;
+            for (int j = 1; j < lists.size() && all; j++) {
+                IntList other = lists.get(j);
+                all = Arrays.binarySearch(other.items, 0, other.size, nameId) >= 0;
+            }
+            if (all) {
+                candidates.add(nameId);
+            }
+        }
+        return candidates;
+    }
+
+    private void addFiles(int nameId, Set<String> files) {
+        IntList ids = nameFiles.get(nameId);
+        for (int i = 0; i < ids.size; i++) {
+            files.add(fileNames.get(ids.items[i]));
+        }
+    }
+
+    /**
+     * Rebuilds the index from the names files still declare, disabling it if there are still too many
+     */
+    private void compact() {
+        List<String> live = new ArrayList<>();
+        for (int nameId = 0; nameId < names.size(); nameId++) {
+            if (!nameFiles.get(nameId).isEmpty()) {
+                live.add(names.get(nameId));
+            }
+        }
+        if (live.size() > maxNames) {
+            log.warn("Disabling the symbol name index, {} names exceed the limit of {}", live.size(), maxNames);
+            enabled = false;
+            deadNames = 0;
+            nameIds.clear();
+            names.clear();
+            nameFiles.clear();
+            trigrams.clear();
+            initials.clear();
+            fileIds.clear();
+            fileNames.clear();
+            fileNameIds.clear();
+            return;
+        }
+
+        List<String> oldNames = new ArrayList<>(names);
+        deadNames = 0;
+        nameIds.clear();
+        names.clear();
+        nameFiles.clear();
+        trigrams.clear();
+        initials.clear();
+        for (String name : live) {
+            addName(name);
+        }
+        for (int fileId = 0; fileId < fileNameIds.size(); fileId++) {
+            int[] ids = fileNameIds.get(fileId);
+            if (ids == null) {
+                continue;
+            }
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = nameIds.get(oldNames.get(ids[i]));
+                nameFiles.get(ids[i]).add(fileId);
+            }
+        }
+        log.info("Compacted the symbol name index from {} to {} names", oldNames.size(), names.size());
+    }
+
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    /**
+     * Growable list of ints, to avoid boxing millions of ids
+     */
+    private static class IntList {
+
+        int[] items = new int[2];
+
+        int size;
+
+        void add(int value) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = value;
+        }
+
+        void remove(int value) {
+            for (int i = 0; i < size; i++) {
+                if (items[i] == value) {
+                    System.arraycopy(items, i + 1, items, i, size - i - 1);
+                    size--;
+                    return;
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long bytes() {
+            return 32 + 4L * items.length;
+        }
+    }
+}
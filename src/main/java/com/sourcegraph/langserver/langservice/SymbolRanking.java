@@ -0,0 +1,116 @@
+package com.sourcegraph.langserver.langservice;
+
+import com.sourcegraph.lsp.domain.structures.SymbolInformation;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * SymbolRanking selects the best scoring symbols for a workspace/symbol query as they are found, keeping only the
+ * current best ones in a bounded heap instead of collecting and sorting every match.
+ *
+ * The result is the same as sorting all offered symbols by descending score and taking the first ones: symbols with
+ * the same score are kept in the order in which they were offered.
+ *
+ * Names that the query only abbreviates (see CamelHumps) rank below every name that contains the query.
+ */
+class SymbolRanking {
+
+    // more than any name containing the query can score otherwise
+    private static final double ABBREVIATION_PENALTY = 1000;
+
+    private final String query;
+
+    private final String lowerQuery;
+
+    private final int limit;
+
+    // best symbols so far, worst first
+    private final PriorityQueue<Ranked> best;
+
+    private long offered;
+
+    private static class Ranked {
+        // negated score, as the ranking has always sorted by it
+        final double negatedScore;
+        final long order;
+        final SymbolInformation symbol;
+
+        Ranked(double negatedScore, long order, SymbolInformation symbol) {
+            this.negatedScore = negatedScore;
+            this.order = order;
+            this.symbol = symbol;
+        }
+    }
+
+    private static final Comparator<Ranked> BEST_FIRST = (a, b) -> {
+        int c = Double.compare(a.negatedScore, b.negatedScore);
+        return c != 0 ? c : Long.compare(a.order, b.order);
+    };
+
+    SymbolRanking(String query, int limit) {
+        this.query = query;
+        this.lowerQuery = query.toLowerCase();
+        this.limit = limit;
+        this.best = new PriorityQueue<>(Math.max(1, limit), BEST_FIRST.reversed());
+    }
+
+    void offer(SymbolInformation symbol) {
+        if (limit <= 0) {
+            return;
+        }
+        Ranked ranked = new Ranked(-1 * score(symbol), offered++, symbol);
+        if (best.size() < limit) {
+            best.add(ranked);
+        } else if (BEST_FIRST.compare(ranked, best.peek()) < 0) {
+            best.poll();
+            best.add(ranked);
+        }
+    }
+
+    /**
+     * Returns the best symbols offered so far, best first
+     */
+    List<SymbolInformation> result() {
+        List<Ranked> ranked = new ArrayList<>(best);
+        ranked.sort(BEST_FIRST);
+        List<SymbolInformation> result = new ArrayList<>(ranked.size());
+        for (Ranked r : ranked) {
+            result.add(r.symbol);
+        }
+        return result;
+    }
+
+    double score(SymbolInformation symbol) {
+        double score = 0.0;
+        String simpleName = symbol.getName();
+        if (simpleName.equals(query)) {
+            score += 1000;
+        } else {
+            String lowerName = simpleName.toLowerCase();
+            if (lowerName.equals(lowerQuery)) {
+                score += 900;
+            } else if (lowerName.startsWith(lowerQuery)) {
+                score += 50;
+            } else if (!lowerName.contains(lowerQuery)) {
+                score -= ABBREVIATION_PENALTY;
+            }
+        }
+
+        score += 10 * ((double) query.length()) / simpleName.length();
+
+        score += (double) 10 / symbol.getLocation().getUri().length();
+
+        if (symbol.getKind() != null) {
+            switch (symbol.getKind()) {
+                case CLASS:
+                case INTERFACE:
+                case PACKAGE:
+                    score += 200;
+            }
+        }
+        return score;
+    }
+}
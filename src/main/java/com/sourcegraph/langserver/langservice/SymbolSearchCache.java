@@ -0,0 +1,82 @@
+package com.sourcegraph.langserver.langservice;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * SymbolSearchCache remembers, for recent workspace/symbol text queries, which source files had definitions whose name
+ * matches the query, so that a query extending a previous one (as when the user keeps typing) only searches those files.
+ *
+ * Text queries match names that contain the query ignoring case, or that the query abbreviates (see CamelHumps), so
+ * any file matching a query also matches all of its prefixes, and searching the files that matched a prefix, in the
+ * same order, finds the same symbols in the same order as searching all files. Entries are only valid for the revision they were computed at (see
+ * ResponseCache.getRevision), since edits change what files contain.
+ *
+ * This class is threadsafe.
+ *
+ * @param <F> source file reference
+ */
+class SymbolSearchCache<F> {
+
+    private final int maxQueries;
+
+    // most recently used first; guarded by this
+    private final LinkedList<Entry<F>> entries = new LinkedList<>();
+
+    SymbolSearchCache(int maxQueries) {
+        this.maxQueries = maxQueries;
+    }
+
+    private static class Entry<F> {
+        final String lowerQuery;
+        final long revision;
+        final List<F> files;
+
+        Entry(String lowerQuery, long revision, List<F> files) {
+            this.lowerQuery = lowerQuery;
+            this.revision = revision;
+            this.files = files;
+        }
+    }
+
+    /**
+     * Returns the files that matched the longest cached prefix of the query at the given revision, in search order,
+     * or null if there is none
+     */
+    synchronized List<F> candidates(String query, long revision) {
+        String lowerQuery = query.toLowerCase();
+        Entry<F> found = null;
+        for (Iterator<Entry<F>> it = entries.iterator(); it.hasNext(); ) {
+            Entry<F> entry = it.next();
+            if (entry.revision != revision) {
+                it.remove();
+            } else if (lowerQuery.startsWith(entry.lowerQuery)
+                    && (found == null || entry.lowerQuery.length() > found.lowerQuery.length())) {
+                found = entry;
+            }
+        }
+        if (found == null) {
+            return null;
+        }
+        entries.remove(found);
+        entries.addFirst(found);
+        return found.files;
+    }
+
+    /**
+     * Records the files, in search order, that matched the query at the given revision
+     */
+    synchronized void put(String query, long revision, List<F> files) {
+        if (maxQueries <= 0) {
+            return;
+        }
+        String lowerQuery = query.toLowerCase();
+        entries.removeIf(entry -> entry.lowerQuery.equals(lowerQuery));
+        entries.addFirst(new Entry<>(lowerQuery, revision, new ArrayList<>(files)));
+        while (entries.size() > maxQueries) {
+            entries.removeLast();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.sourcegraph.langserver.langservice.compiler;
+
+import com.sourcegraph.lsp.domain.structures.Location;
+import com.sourcegraph.lsp.domain.structures.Range;
+import com.sun.source.tree.*;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.Trees;
+import com.sun.tools.javac.code.Flags;
+import com.sun.tools.javac.code.Symbol;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * AnnotationScanner collects, in a single pass over an attributed compilation unit, the hover data of every name token
+ * that resolves to an element: the same data HoverVisitor returns for a position within the token. It serves requests
+ * that annotate a whole file at once, which would otherwise need one HoverVisitor walk per token.
+ *
+ * Tokens are returned sorted by position.
+ */
+public class AnnotationScanner extends TreePathScanner<Void, Void> {
+
+    private final Trees trees;
+
+    private final CompilationUnitTree compilationUnit;
+
+    private final PositionCalculator positionCalculator;
+
+    private final List<LanguageData> tokens = new ArrayList<>();
+
+    public AnnotationScanner(Trees trees, CompilationUnitTree compilationUnit) {
+        this.trees = trees;
+        this.compilationUnit = compilationUnit;
+        this.positionCalculator = new PositionCalculator(trees.getSourcePositions(), compilationUnit);
+    }
+
+    public List<LanguageData> collect() {
+        scan(compilationUnit, null);
+        tokens.sort(Comparator.<LanguageData>comparingInt(d -> d.getLocation().getRange().getStart().getLine())
+                .thenComparingInt(d -> d.getLocation().getRange().getStart().getCharacter()));
+        return tokens;
+    }
+
+    @Override
+    public Void visitClass(ClassTree classTree, Void aVoid) {
+        if (classTree.getSimpleName().length() > 0) {
+            add(getCurrentPath(), positionCalculator.getLocation(classTree));
+        }
+        return super.visitClass(classTree, aVoid);
+    }
+
+    @Override
+    public Void visitMethod(MethodTree methodTree, Void aVoid) {
+        Element element = trees.getElement(getCurrentPath());
+        if (element != null) {
+            if (element.getKind() != ElementKind.CONSTRUCTOR) {
+                add(getCurrentPath(), positionCalculator.getLocation(methodTree));
+            } else if ((((Symbol) element).flags() & Flags.GENERATEDCONSTR) == 0) {
+                // a default constructor has no name token of its own
+                add(getCurrentPath(), positionCalculator.getLocation(methodTree, element.getEnclosingElement().getSimpleName().toString()));
+            }
+        }
+        return super.visitMethod(methodTree, aVoid);
+    }
+
+    @Override
+    public Void visitVariable(VariableTree variableTree, Void aVoid) {
+        add(getCurrentPath(), positionCalculator.getLocation(variableTree));
+        return super.visitVariable(variableTree, aVoid);
+    }
+
+    @Override
+    public Void visitTypeParameter(TypeParameterTree typeParameterTree, Void aVoid) {
+        add(getCurrentPath(), positionCalculator.getLocation(typeParameterTree));
+        return super.visitTypeParameter(typeParameterTree, aVoid);
+    }
+
+    @Override
+    public Void visitIdentifier(IdentifierTree identifierTree, Void aVoid) {
+        add(getCurrentPath(), positionCalculator.getLocation(identifierTree));
+        return super.visitIdentifier(identifierTree, aVoid);
+    }
+
+    @Override
+    public Void visitMemberSelect(MemberSelectTree memberSelectTree, Void aVoid) {
+        // only the identifier after the dot
+        add(getCurrentPath(), positionCalculator.getLocation(memberSelectTree));
+        return super.visitMemberSelect(memberSelectTree, aVoid);
+    }
+
+    @Override
+    public Void visitNewClass(NewClassTree newClassTree, Void aVoid) {
+        if (newClassTree.getClassBody() != null) {
+            // anonymous class: the identifier stands for the class, like in HoverVisitor
+            return super.visitNewClass(newClassTree, aVoid);
+        }
+        // the class name stands for the constructor, like in HoverVisitor, so it is not scanned as a type
+        add(getCurrentPath(), positionCalculator.getLocation(newClassTree.getIdentifier()));
+        Tree identifier = newClassTree.getIdentifier();
+        if (identifier instanceof ParameterizedTypeTree) {
+            scan(((ParameterizedTypeTree) identifier).getTypeArguments(), aVoid);
+        }
+        scan(newClassTree.getEnclosingExpression(), aVoid);
+        scan(newClassTree.getTypeArguments(), aVoid);
+        scan(newClassTree.getArguments(), aVoid);
+        return null;
+    }
+
+    private void add(TreePath path, Location location) {
+        Element element = trees.getElement(path);
+        if (element == null || location == null) {
+            return;
+        }
+        Range range = location.getRange();
+        if (range == null || range.getStart().getLine() < 0 || range.getStart().getLine() != range.getEnd().getLine()
+                || range.getStart().getCharacter() >= range.getEnd().getCharacter()) {
+            return;
+        }
+        LanguageData data = new LanguageData(compilationUnit.getSourceFile().getName(), element, trees.getTypeMirror(path));
+        data.setLocation(location);
+        data.setDocComment(trees.getDocComment(path));
+        tokens.add(data);
+    }
+}
@@ -0,0 +1,113 @@
+package com.sourcegraph.langserver.langservice.compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CamelHumps matches symbol names against camel case abbreviations, as in "AMBM" or "absMapBM" for
+ * AbstractMapBasedMultimap.
+ *
+ * A name is split into humps at case changes and underscores, and a query matches the name if it can be cut into
+ * pieces that are prefixes of humps of the name, in order, the first piece being a prefix of the first hump. Humps may
+ * be skipped after the first one, and case is ignored. Any prefix of a matching query matches too.
+ */
+public final class CamelHumps {
+
+    private CamelHumps() {
+    }
+
+    /**
+     * Splits the name into lowercased humps: "HTMLParser2" into html and parser2, "MAX_VALUE" into max and value
+     */
+    public static List<String> humps(String name) {
+        List<String> humps = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '_' || c == '$') {
+                if (start >= 0) {
+                    humps.add(name.substring(start, i).toLowerCase());
+                    start = -1;
+                }
+                continue;
+            }
+            if (start >= 0 && Character.isUpperCase(c)) {
+                boolean boundary = !Character.isUpperCase(name.charAt(i - 1))
+                        || i + 1 < name.length() && Character.isLowerCase(name.charAt(i + 1));
+                if (boundary) {
+                    humps.add(name.substring(start, i).toLowerCase());
+                    start = i;
+                }
+            }
+            if (start < 0) {
+                start = i;
+            }
+        }
+        if (start >= 0) {
+            humps.add(name.substring(start).toLowerCase());
+        }
+        return humps;
+    }
+
+    /**
+     * Tells if the lowercased query is a camel case abbreviation of the name
+     */
+    public static boolean matches(String lowerQuery, String name) {
+        if (lowerQuery.isEmpty()) {
+            return true;
+        }
+        if (!isSubsequence(lowerQuery, name)) {
+            // most names don't even contain the characters of the query, no need to split them
+            return false;
+        }
+        List<String> humps = humps(name);
+        if (humps.isEmpty()) {
+            return false;
+        }
+        return matchAt(lowerQuery, 0, humps, 0, new boolean[(lowerQuery.length() + 1) * humps.size()]);
+    }
+
+    /**
+     * Tells if the characters of the lowercased query appear in the name in the same order, ignoring case
+     */
+    private static boolean isSubsequence(String lowerQuery, String name) {
+        int matched = 0;
+        for (int i = 0; i < name.length() && matched < lowerQuery.length(); i++) {
+            if (Character.toLowerCase(name.charAt(i)) == lowerQuery.charAt(matched)) {
+                matched++;
+            }
+        }
+        return matched == lowerQuery.length();
+    }
+
+    /**
+     * Tells if the query, from the given character on, matches pieces of humps starting with the given hump
+     *
+     * @param failed query offset and hump pairs known not to match
+     */
+    private static boolean matchAt(String query, int offset, List<String> humps, int hump, boolean[] failed) {
+        String text = humps.get(hump);
+        int common = 0;
+        while (common < text.length() && offset + common < query.length()
+                && text.charAt(common) == query.charAt(offset + common)) {
+            common++;
+        }
+        for (int length = common; length > 0; length--) {
+            int rest = offset + length;
+            if (rest == query.length()) {
+                return true;
+            }
+            for (int next = hump + 1; next < humps.size(); next++) {
+                int state = rest * humps.size() + next;
+                if (failed[state]) {
+                    continue;
+                }
+                if (matchAt(query, rest, humps, next, failed)) {
+                    return true;
+                }
+                failed[state] = true;
+            }
+        }
+        return false;
+    }
+}
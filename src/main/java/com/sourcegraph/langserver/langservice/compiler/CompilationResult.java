@@ -3,8 +3,8 @@ package com.sourcegraph.langserver.langservice.compiler;
 import com.sourcegraph.lsp.domain.structures.Position;
 import com.sourcegraph.lsp.domain.structures.SymbolDescriptor;
 import com.sourcegraph.lsp.domain.structures.SymbolInformation;
-import com.sun.source.tree.CompilationUnitTree;
-import com.sun.source.tree.Tree;
+import com.sun.source.tree.*;
+import com.sun.source.util.TreeScanner;
 import com.sun.source.util.Trees;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,8 +14,10 @@ import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.Types;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 public class CompilationResult {
 
@@ -53,6 +55,13 @@ public class CompilationResult {
         return Optional.ofNullable(hover);
     }
 
+    /**
+     * Returns the hover data of every name token of this compilation unit, sorted by position
+     */
+    public List<LanguageData> findAnnotations() {
+        return new AnnotationScanner(trees, compilationUnitTree).collect();
+    }
+
     // search for a definition corresponding to a top-level type in this compilation unit
     public Optional<LanguageData> findDefinition(Element referenceElement, TypeMirror referenceType) {
         return findDefinition(compilationUnitTree, referenceElement, referenceType);
@@ -136,15 +145,56 @@ public class CompilationResult {
     }
 
     public List<SymbolInformation> findSymbols(String queryName) {
+        return findSymbols(queryName, false);
+    }
+
+    /**
+     * Returns the symbols whose name contains the query, ignoring case, or, if camelHumps is set, whose name the query
+     * abbreviates (see CamelHumps)
+     */
+    public List<SymbolInformation> findSymbols(String queryName, boolean camelHumps) {
         SymbolVisitor scanner = new SymbolVisitor(
                 trees,
                 compilationUnitTree,
-                queryName
+                queryName,
+                camelHumps
         );
         compilationUnitTree.accept(scanner, null);
         return scanner.getSymbols();
     }
 
+    /**
+     * Returns the names of the classes, methods and fields declared by this compilation unit, that is the names
+     * findSymbols matches queries against. Constructors are named after their class.
+     */
+    public Set<String> findDeclaredNames() {
+        Set<String> names = new HashSet<>();
+        new TreeScanner<Void, Void>() {
+            @Override
+            public Void visitClass(ClassTree classTree, Void aVoid) {
+                names.add(classTree.getSimpleName().toString());
+                return scan(classTree.getMembers(), null);
+            }
+
+            @Override
+            public Void visitMethod(MethodTree methodTree, Void aVoid) {
+                String name = methodTree.getName().toString();
+                if (!"<init>".equals(name)) {
+                    names.add(name);
+                }
+                return null;
+            }
+
+            @Override
+            public Void visitVariable(VariableTree variableTree, Void aVoid) {
+                names.add(variableTree.getName().toString());
+                return null;
+            }
+        }.scan(compilationUnitTree.getTypeDecls(), null);
+        names.remove("");
+        return names;
+    }
+
     public List<SymbolInformation> findSymbols(SymbolDescriptor queryDescriptor) {
         SymbolVisitor scanner = new SymbolVisitor(
                 trees,
@@ -30,4 +30,30 @@ public interface Javac {
      * If these files reference un-parsed dependencies, those dependencies will also be parsed and compiled.
      */
     List<Element> analyze(CompilationUnitTree parsed);
+
+    /**
+     * Like analyze, but unless the position is negative, the bodies of the file's methods and initializers that don't
+     * contain it may be left unattributed (see Config.LAZY_METHOD_ATTRIBUTION) until attributeBodies is called.
+     */
+    List<Element> analyze(CompilationUnitTree parsed, long position);
+
+    /**
+     * Replaces the classes the compiler has entered from the file by those of the file's current content, without
+     * attributing them yet (see isAttributed), so that the next analysis of the file doesn't start from a new compiler.
+     * Returns false if the compiler hasn't entered the file, in which case its next analysis enters the current content
+     * anyway.
+     */
+    boolean reenter(JavaFileObject file);
+
+    /**
+     * Attributes the method and initializer bodies of an analyzed file that were left unattributed and contain the
+     * position, or all of them if the position is negative.
+     */
+    void attributeBodies(JavaFileObject file, long position);
+
+    /**
+     * Returns false if the file was entered while analyzing another file, but its bodies haven't been attributed yet
+     * (only its members and signatures have). Analyzing the file attributes the rest.
+     */
+    boolean isAttributed(JavaFileObject file);
 }
\ No newline at end of file
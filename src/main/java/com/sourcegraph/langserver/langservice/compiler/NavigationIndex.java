@@ -0,0 +1,401 @@
+package com.sourcegraph.langserver.langservice.compiler;
+
+import com.sourcegraph.lsp.domain.structures.Hover;
+import com.sourcegraph.lsp.domain.structures.Location;
+import com.sourcegraph.lsp.domain.structures.MarkedString;
+import com.sourcegraph.lsp.domain.structures.Position;
+import com.sourcegraph.lsp.domain.structures.Range;
+import com.sourcegraph.utils.LanguageUtils;
+import com.sun.source.tree.*;
+import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.Trees;
+import com.sun.tools.javac.code.Flags;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * NavigationIndex is a compact record of what hover and definition requests need from an analyzed file: the range of
+ * each name token that resolves to a symbol, and for each symbol its signature, and, when the symbol is declared in
+ * the file, its definition location and doc comment. It holds no javac trees or symbols, so it stays valid (and small)
+ * after the compiler that produced it has been released.
+ *
+ * Symbols declared outside of the file are resolved through the declarations of other indexed files (see
+ * CompilerService), using {@link Symbol#getKey}. Local symbols (variables, parameters, local and anonymous classes)
+ * have no key and can only be resolved within the file.
+ *
+ * Indexes can be written to and read back from a stream (see NavigationIndexStore), so that they survive restarts.
+ */
+public class NavigationIndex {
+
+    // tokens sorted by line and start character; token i spans [tokenStarts[i], tokenEnds[i]) on tokenLines[i]
+    private final int[] tokenLines;
+    private final int[] tokenStarts;
+    private final int[] tokenEnds;
+    private final int[] tokenSymbols;
+
+    private final Symbol[] symbols;
+
+    private NavigationIndex(int[] tokenLines, int[] tokenStarts, int[] tokenEnds, int[] tokenSymbols, Symbol[] symbols) {
+        this.tokenLines = tokenLines;
+        this.tokenStarts = tokenStarts;
+        this.tokenEnds = tokenEnds;
+        this.tokenSymbols = tokenSymbols;
+        this.symbols = symbols;
+    }
+
+    /**
+     * Indexes an attributed compilation unit
+     */
+    public static NavigationIndex build(CompilationUnitTree compilationUnit, Trees trees) {
+        Indexer indexer = new Indexer(compilationUnit, trees);
+        indexer.scan(compilationUnit, null);
+        return indexer.toIndex();
+    }
+
+    /**
+     * Returns the symbol of the name token at the given position, if any
+     */
+    public Optional<Symbol> findSymbol(Position position) {
+        int lo = 0;
+        int hi = tokenLines.length - 1;
+        // find the last token starting at or before the position
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = tokenLines[mid] != position.getLine()
+                    ? Integer.compare(tokenLines[mid], position.getLine())
+                    : Integer.compare(tokenStarts[mid], position.getCharacter());
+            if (cmp <= 0) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        // tokens may nest (e.g., a constructor name inside a `new` expression), so look back for the innermost one
+        for (int i = found; i >= 0 && tokenLines[i] == position.getLine(); i--) {
+            if (position.getCharacter() < tokenEnds[i]) {
+                return Optional.of(symbols[tokenSymbols[i]]);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Returns the symbols declared in this file that can be referred to from other files
+     */
+    public List<Symbol> getDeclarations() {
+        List<Symbol> declarations = new ArrayList<>();
+        for (Symbol symbol : symbols) {
+            if (symbol.key != null && symbol.definition != null) {
+                declarations.add(symbol);
+            }
+        }
+        return declarations;
+    }
+
+    public int size() {
+        return tokenLines.length;
+    }
+
+    /**
+     * Bump when the format written by {@link #write} changes
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(symbols.length);
+        for (Symbol symbol : symbols) {
+            writeNullableUTF(out, symbol.key);
+            writeNullableUTF(out, symbol.signature);
+            out.writeBoolean(symbol.definition != null);
+            if (symbol.definition != null) {
+                Range range = symbol.definition.getRange();
+                out.writeUTF(symbol.definition.getUri());
+                out.writeInt(range.getStart().getLine());
+                out.writeInt(range.getStart().getCharacter());
+                out.writeInt(range.getEnd().getLine());
+                out.writeInt(range.getEnd().getCharacter());
+                writeNullableUTF(out, symbol.docComment);
+            }
+        }
+        out.writeInt(tokenLines.length);
+        for (int i = 0; i < tokenLines.length; i++) {
+            out.writeInt(tokenLines[i]);
+            out.writeInt(tokenStarts[i]);
+            out.writeInt(tokenEnds[i]);
+            out.writeInt(tokenSymbols[i]);
+        }
+    }
+
+    public static NavigationIndex read(DataInputStream in) throws IOException {
+        if (in.readInt() != FORMAT_VERSION) {
+            throw new IOException("unknown format version");
+        }
+        Symbol[] symbols = new Symbol[in.readInt()];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = new Symbol(readNullableUTF(in), readNullableUTF(in));
+            if (in.readBoolean()) {
+                symbols[i].definition = Location.of(in.readUTF(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+                symbols[i].docComment = readNullableUTF(in);
+            }
+        }
+        int n = in.readInt();
+        int[] lines = new int[n];
+        int[] starts = new int[n];
+        int[] ends = new int[n];
+        int[] tokenSymbols = new int[n];
+        for (int i = 0; i < n; i++) {
+            lines[i] = in.readInt();
+            starts[i] = in.readInt();
+            ends[i] = in.readInt();
+            tokenSymbols[i] = in.readInt();
+            if (tokenSymbols[i] < 0 || tokenSymbols[i] >= symbols.length) {
+                throw new IOException("invalid symbol reference");
+            }
+        }
+        return new NavigationIndex(lines, starts, ends, tokenSymbols, symbols);
+    }
+
+    // unlike writeUTF, not limited to 64KB (doc comments can be long)
+    private static void writeNullableUTF(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readNullableUTF(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A symbol referred to by the tokens of an indexed file
+     */
+    public static class Symbol {
+
+        private final String key;
+
+        private final String signature;
+
+        // set if the symbol is declared in the indexed file
+        private Location definition;
+        private String docComment;
+
+        private Symbol(String key, String signature) {
+            this.key = key;
+            this.signature = signature;
+        }
+
+        /**
+         * Identifies the symbol across files, or null for local symbols
+         */
+        public String getKey() {
+            return key;
+        }
+
+        public Location getDefinition() {
+            return definition;
+        }
+
+        /**
+         * The hover contents of the symbol's definition, in the same form as LanguageData.getData
+         */
+        public List<MarkedString> getHoverContents() {
+            List<MarkedString> result = new ArrayList<>();
+            result.add(new MarkedString().withValue(signature).withLanguage(Hover.LANGUAGE_JAVA));
+            if (docComment != null) result.add(new MarkedString().withValue(docComment).withLanguage(Hover.LANGUAGE_MARKDOWN));
+            return result;
+        }
+    }
+
+    private static class Indexer extends TreePathScanner<Void, Void> {
+
+        private final Trees trees;
+
+        private final PositionCalculator positionCalculator;
+
+        // javac symbols are unique within a compiler, so identity tells apart local symbols with the same name
+        private final Map<Element, Integer> symbolIds = new IdentityHashMap<>();
+        private final List<Symbol> symbols = new ArrayList<>();
+
+        private final List<int[]> tokens = new ArrayList<>();
+
+        Indexer(CompilationUnitTree compilationUnit, Trees trees) {
+            this.trees = trees;
+            this.positionCalculator = new PositionCalculator(trees.getSourcePositions(), compilationUnit);
+        }
+
+        @Override
+        public Void visitClass(ClassTree classTree, Void aVoid) {
+            Element element = trees.getElement(getCurrentPath());
+            if (element != null && classTree.getSimpleName().length() > 0) {
+                declare(element, positionCalculator.getLocation(classTree));
+            }
+            return super.visitClass(classTree, aVoid);
+        }
+
+        @Override
+        public Void visitMethod(MethodTree methodTree, Void aVoid) {
+            Element element = trees.getElement(getCurrentPath());
+            if (element != null) {
+                // same locations as DefinitionVisitor
+                Location location = element.getKind() == ElementKind.CONSTRUCTOR
+                        ? positionCalculator.getLocation(methodTree, element.getEnclosingElement().getSimpleName().toString())
+                        : positionCalculator.getLocation(methodTree);
+                // a default constructor has no name token of its own, its location is the class name
+                boolean generated = (((com.sun.tools.javac.code.Symbol) element).flags() & Flags.GENERATEDCONSTR) != 0;
+                declare(element, location, !generated);
+            }
+            return super.visitMethod(methodTree, aVoid);
+        }
+
+        @Override
+        public Void visitNewClass(NewClassTree newClassTree, Void aVoid) {
+            super.visitNewClass(newClassTree, aVoid);
+            Element element = trees.getElement(getCurrentPath());
+            if (element != null && newClassTree.getClassBody() == null) {
+                // like HoverVisitor, the class name of a `new` expression stands for the constructor; added after the
+                // tokens of the class name so that it takes precedence over them
+                addToken(positionCalculator.getLocation(newClassTree.getIdentifier()).getRange(), symbol(element));
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitVariable(VariableTree variableTree, Void aVoid) {
+            Element element = trees.getElement(getCurrentPath());
+            if (element != null) {
+                declare(element, positionCalculator.getLocation(variableTree));
+            }
+            return super.visitVariable(variableTree, aVoid);
+        }
+
+        @Override
+        public Void visitTypeParameter(TypeParameterTree typeParameterTree, Void aVoid) {
+            Element element = trees.getElement(getCurrentPath());
+            if (element != null) {
+                declare(element, positionCalculator.getLocation(typeParameterTree));
+            }
+            return super.visitTypeParameter(typeParameterTree, aVoid);
+        }
+
+        @Override
+        public Void visitIdentifier(IdentifierTree identifierTree, Void aVoid) {
+            Element element = trees.getElement(getCurrentPath());
+            if (element != null) {
+                addToken(positionCalculator.getLocation(identifierTree).getRange(), symbol(element));
+            }
+            return super.visitIdentifier(identifierTree, aVoid);
+        }
+
+        @Override
+        public Void visitMemberSelect(MemberSelectTree memberSelectTree, Void aVoid) {
+            Element element = trees.getElement(getCurrentPath());
+            if (element != null) {
+                // only the identifier after the dot
+                addToken(positionCalculator.getLocation(memberSelectTree).getRange(), symbol(element));
+            }
+            return super.visitMemberSelect(memberSelectTree, aVoid);
+        }
+
+        private void declare(Element element, Location location) {
+            declare(element, location, true);
+        }
+
+        private void declare(Element element, Location location, boolean hasToken) {
+            Symbol symbol = symbols.get(symbol(element));
+            if (symbol.definition == null) {
+                symbol.definition = location;
+                symbol.docComment = trees.getDocComment(getCurrentPath());
+            }
+            if (hasToken) {
+                addToken(location.getRange(), symbolIds.get(element));
+            }
+        }
+
+        private int symbol(Element element) {
+            Integer id = symbolIds.get(element);
+            if (id == null) {
+                id = symbols.size();
+                symbols.add(new Symbol(key(element), LanguageUtils.getElementSignature(element)));
+                symbolIds.put(element, id);
+            }
+            return id;
+        }
+
+        private void addToken(Range range, int symbol) {
+            if (range == null || range.getStart().getLine() < 0 || range.getStart().getLine() != range.getEnd().getLine()
+                    || range.getStart().getCharacter() >= range.getEnd().getCharacter()) {
+                return;
+            }
+            tokens.add(new int[]{range.getStart().getLine(), range.getStart().getCharacter(), range.getEnd().getCharacter(), symbol});
+        }
+
+        NavigationIndex toIndex() {
+            tokens.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+            int n = tokens.size();
+            int[] lines = new int[n];
+            int[] starts = new int[n];
+            int[] ends = new int[n];
+            int[] tokenSymbols = new int[n];
+            for (int i = 0; i < n; i++) {
+                int[] token = tokens.get(i);
+                lines[i] = token[0];
+                starts[i] = token[1];
+                ends[i] = token[2];
+                tokenSymbols[i] = token[3];
+            }
+            return new NavigationIndex(lines, starts, ends, tokenSymbols, symbols.toArray(new Symbol[0]));
+        }
+    }
+
+    /**
+     * Returns a key identifying a non-local symbol across compilers, or null for local symbols
+     */
+    private static String key(Element element) {
+        for (Element e = element; e != null; e = e.getEnclosingElement()) {
+            if (e.getKind() == ElementKind.PACKAGE) {
+                break;
+            }
+            if (e != element && e instanceof ExecutableElement) {
+                return null;
+            }
+            if (e instanceof TypeElement && ((TypeElement) e).getQualifiedName().length() == 0) {
+                // anonymous or local class
+                return null;
+            }
+        }
+        switch (element.getKind()) {
+            case LOCAL_VARIABLE:
+            case PARAMETER:
+            case EXCEPTION_PARAMETER:
+            case RESOURCE_VARIABLE:
+                return null;
+        }
+        String key = element.getKind() + " " + LanguageUtils.getQualifiedName(element);
+        if (element instanceof ExecutableElement) {
+            // overloads
+            key += " " + element;
+        }
+        return key;
+    }
+}
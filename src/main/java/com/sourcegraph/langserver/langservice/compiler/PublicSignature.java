@@ -0,0 +1,147 @@
+package com.sourcegraph.langserver.langservice.compiler;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.tools.javac.code.Flags;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeScanner;
+
+import java.util.List;
+
+/**
+ * PublicSignature describes what other files can see of a compilation unit: its package and imports, and the
+ * declarations of its non-private classes, methods and fields, without method bodies or field initializers (except
+ * those of final fields that may be constants, which other files inline). Two contents of a file with the same
+ * signature can't change how other files are attributed.
+ *
+ * Only the syntax is compared, and the signature of a unit is the same whether javac has attributed it or not: javac
+ * adds default constructors to the classes it enters and names the single argument of annotations "value", which are
+ * both left out.
+ */
+public class PublicSignature {
+
+    public static String of(CompilationUnitTree tree) {
+        JCTree.JCCompilationUnit unit = (JCTree.JCCompilationUnit) tree;
+        StringBuilder signature = new StringBuilder();
+        signature.append(unit.getPackageName()).append(';');
+        for (JCTree.JCImport anImport : unit.getImports()) {
+            signature.append(anImport).append(';');
+        }
+        for (JCTree def : unit.getTypeDecls()) {
+            if (def instanceof JCTree.JCClassDecl) {
+                appendClass(signature, (JCTree.JCClassDecl) def, false);
+            }
+        }
+        return signature.toString();
+    }
+
+    private static void appendClass(StringBuilder signature, JCTree.JCClassDecl classDecl, boolean inInterface) {
+        long flags = classDecl.mods.flags & Flags.ModifierFlags;
+        if (inInterface) {
+            // javac makes the member classes of interfaces public and static when it enters them
+            flags &= ~(Flags.PUBLIC | Flags.STATIC);
+        }
+        if ((flags & Flags.PRIVATE) != 0) {
+            return;
+        }
+        signature.append(Flags.toString(flags)).append(' ');
+        appendAnnotations(signature, classDecl.mods.annotations);
+        signature.append(classDecl.getKind()).append(' ')
+                .append(classDecl.name)
+                .append('<').append(classDecl.typarams).append('>')
+                .append(" extends ").append(classDecl.extending)
+                .append(" implements ").append(classDecl.implementing)
+                .append('{');
+        boolean isInterface = (classDecl.mods.flags & Flags.INTERFACE) != 0;
+        for (JCTree def : classDecl.defs) {
+            switch (def.getTag()) {
+                case CLASSDEF:
+                    appendClass(signature, (JCTree.JCClassDecl) def, isInterface);
+                    break;
+                case METHODDEF:
+                    JCTree.JCMethodDecl method = (JCTree.JCMethodDecl) def;
+                    if ((method.mods.flags & (Flags.PRIVATE | Flags.GENERATEDCONSTR)) == 0) {
+                        appendModifiers(signature, method.mods);
+                        signature.append('<').append(method.typarams).append('>')
+                                .append(method.restype).append(' ')
+                                .append(method.name).append('(');
+                        for (JCTree.JCVariableDecl param : method.params) {
+                            appendModifiers(signature, param.mods);
+                            signature.append(param.vartype).append(',');
+                        }
+                        signature.append(')')
+                                .append(" throws ").append(method.thrown)
+                                .append(" default ").append(method.defaultValue)
+                                .append(';');
+                    }
+                    break;
+                case VARDEF:
+                    JCTree.JCVariableDecl field = (JCTree.JCVariableDecl) def;
+                    if ((field.mods.flags & Flags.PRIVATE) == 0) {
+                        appendModifiers(signature, field.mods);
+                        signature.append(field.vartype).append(' ').append(field.name);
+                        if ((field.mods.flags & Flags.FINAL) != 0 && isConstantCandidate(field.init)) {
+                            signature.append(" = ").append(field.init);
+                        }
+                        signature.append(';');
+                    }
+                    break;
+            }
+        }
+        signature.append('}');
+    }
+
+    private static void appendModifiers(StringBuilder signature, JCTree.JCModifiers mods) {
+        signature.append(Flags.toString(mods.flags & (Flags.ModifierFlags | Flags.VARARGS))).append(' ');
+        appendAnnotations(signature, mods.annotations);
+    }
+
+    private static void appendAnnotations(StringBuilder signature, List<JCTree.JCAnnotation> annotations) {
+        for (JCTree.JCAnnotation annotation : annotations) {
+            signature.append('@').append(annotation.annotationType).append('(');
+            for (JCTree.JCExpression arg : annotation.args) {
+                if (annotation.args.size() == 1 && arg instanceof JCTree.JCAssign
+                        && ((JCTree.JCAssign) arg).lhs.toString().equals("value")) {
+                    arg = ((JCTree.JCAssign) arg).rhs;
+                }
+                signature.append(arg).append(',');
+            }
+            signature.append(") ");
+        }
+    }
+
+    /**
+     * Returns false if the initializer can't be a constant expression, e.g. because it creates an object. Such
+     * initializers may contain classes and lambdas, whose trees javac changes when it attributes them.
+     */
+    private static boolean isConstantCandidate(JCTree.JCExpression init) {
+        if (init == null) {
+            return false;
+        }
+        boolean[] constant = {true};
+        new TreeScanner() {
+            @Override
+            public void scan(JCTree tree) {
+                if (tree == null) {
+                    return;
+                }
+                switch (tree.getTag()) {
+                    case LITERAL:
+                    case IDENT:
+                    case SELECT:
+                    case PARENS:
+                    case CONDEXPR:
+                    case TYPECAST:
+                    case TYPEIDENT:
+                        break;
+                    default:
+                        if (!(tree instanceof JCTree.JCUnary || tree instanceof JCTree.JCBinary)) {
+                            constant[0] = false;
+                            return;
+                        }
+                }
+                super.scan(tree);
+            }
+        }.scan(init);
+        return constant[0];
+    }
+}
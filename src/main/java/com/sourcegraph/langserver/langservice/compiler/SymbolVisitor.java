@@ -29,14 +29,22 @@ public class SymbolVisitor implements TreeVisitor<Void, Void> {
 
     private SymbolDescriptor querySymbol;
 
+    // whether text queries also match names they abbreviate (see CamelHumps)
+    private boolean camelHumps;
+
     private List<SymbolInformation> symbols;
 
     private Stack<String> nameStack;
 
     public SymbolVisitor(Trees trees, CompilationUnitTree compilationUnit, String queryName) {
+        this(trees, compilationUnit, queryName, false);
+    }
+
+    public SymbolVisitor(Trees trees, CompilationUnitTree compilationUnit, String queryName, boolean camelHumps) {
         this(trees, compilationUnit);
         this.queryName = queryName.toLowerCase();
         this.querySymbol = null;
+        this.camelHumps = camelHumps;
     }
 
     public SymbolVisitor(Trees trees, CompilationUnitTree compilationUnit, SymbolDescriptor querySymbol) {
@@ -400,7 +408,7 @@ public class SymbolVisitor implements TreeVisitor<Void, Void> {
     }
 
     private boolean matchName(String name) {
-        return name.toLowerCase().contains(queryName);
+        return name.toLowerCase().contains(queryName) || camelHumps && CamelHumps.matches(queryName, name);
     }
 
     private boolean matchPackage() {
@@ -0,0 +1,373 @@
+package com.sourcegraph.langserver.langservice.gradle;
+
+import com.google.common.hash.Hashing;
+import com.sourcegraph.common.Config;
+import com.sourcegraph.langserver.langservice.compiler.CompilerOption;
+import com.sourcegraph.langserver.langservice.maven.MavenWorkspaceModelResolver;
+import com.sourcegraph.lsp.FileContentProvider;
+import com.sourcegraph.lsp.SharedCache;
+import com.sourcegraph.lsp.domain.structures.TextDocumentIdentifier;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.apache.maven.model.io.xpp3.MavenXpp3Writer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * FradleCache caches the POMs that Fradle infers from a Gradle hierarchy, so that unchanged build scripts don't have
+ * to be parsed and interpreted again on every initialize.
+ *
+ * An entry records every file that was read (or probed and found missing) while evaluating the hierarchy, along with
+ * a hash of its content. An entry is only used if all of those files still have the same content, so any change to
+ * settings.gradle, a build script, a script applied with `apply from` or a properties file invalidates it.
+ *
+ * Entries live in memory for the lifetime of the process (a few candidates per hierarchy root, since different
+ * repositories commonly share root URIs such as file:///) and, if FRADLE_DISK_CACHE is set, on disk. The latest entry
+ * for a root is also shared with other language server instances through the cache of the clients it was inferred
+ * for (see SharedCache), keyed by the root and the Gradle files in the repository so that repositories sharing a root
+ * URI rarely collide.
+ *
+ * This class is threadsafe.
+ */
+class FradleCache {
+
+    private static final Logger log = LoggerFactory.getLogger(FradleCache.class);
+
+    private static final FradleCache instance = new FradleCache(Config.FRADLE_CACHE_DIR);
+
+    static FradleCache getInstance() {
+        return instance;
+    }
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final String SHARED_CACHE_NAMESPACE = "fradle";
+
+    private static final int MAX_ROOTS = 64;
+
+    private static final int MAX_CANDIDATES_PER_ROOT = 4;
+
+    /**
+     * Content hash recorded for files that don't exist
+     */
+    private static final String ABSENT = "";
+
+    // hierarchy root URI -> candidate entries, most recently used first
+    private final LinkedHashMap<String, LinkedList<Entry>> entries = new LinkedHashMap<String, LinkedList<Entry>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LinkedList<Entry>> eldest) {
+            return size() > MAX_ROOTS;
+        }
+    };
+
+    private final File diskDir;
+
+    FradleCache(File diskDir) {
+        this.diskDir = diskDir;
+    }
+
+    private static class Entry {
+        // file URI -> content hash (or ABSENT)
+        final Map<String, String> fileHashes;
+        final List<MavenWorkspaceModelResolver.PomInfo> poms;
+
+        Entry(Map<String, String> fileHashes, List<MavenWorkspaceModelResolver.PomInfo> poms) {
+            this.fileHashes = fileHashes;
+            this.poms = poms;
+        }
+    }
+
+    /**
+     * Returns the POMs cached for the hierarchy rooted at rootUri if none of the files they were inferred from has
+     * changed, or null otherwise. The returned POMs are copies that the caller may modify. Entries missing locally are
+     * looked up in the given shared cache.
+     */
+    Map<String, MavenWorkspaceModelResolver.PomInfo> get(String rootUri, FileContentProvider files, Set<String> allUris, SharedCache sharedCache) {
+        List<Entry> candidates;
+        synchronized (entries) {
+            candidates = new ArrayList<>(entries.getOrDefault(rootUri, new LinkedList<>()));
+        }
+        for (Entry candidate : candidates) {
+            if (isUpToDate(candidate, files, allUris)) {
+                remember(rootUri, candidate);
+                return copy(candidate.poms);
+            }
+        }
+        if (diskDir != null) {
+            for (Entry candidate : readFromDisk(rootUri)) {
+                if (isUpToDate(candidate, files, allUris)) {
+                    remember(rootUri, candidate);
+                    return copy(candidate.poms);
+                }
+            }
+        }
+        Entry shared = readFromSharedCache(rootUri, allUris, sharedCache);
+        if (shared != null && isUpToDate(shared, files, allUris)) {
+            remember(rootUri, shared);
+            return copy(shared.poms);
+        }
+        return null;
+    }
+
+    /**
+     * Stores the POMs inferred for the hierarchy rooted at rootUri, along with the files recorded while inferring them,
+     * and shares them through the given shared cache
+     */
+    void put(String rootUri, Recorder recorder, Set<String> allUris, Map<String, MavenWorkspaceModelResolver.PomInfo> poms, SharedCache sharedCache) {
+        Entry entry = new Entry(new HashMap<>(recorder.fileHashes), new ArrayList<>(copy(poms.values()).values()));
+        remember(rootUri, entry);
+        writeToSharedCache(rootUri, allUris, entry, sharedCache);
+        if (diskDir != null) {
+            try {
+                writeToDisk(rootUri, entry);
+            } catch (IOException e) {
+                log.warn("Could not write Fradle cache entry for {}: {}", rootUri, e.toString());
+            }
+        }
+    }
+
+    private void remember(String rootUri, Entry entry) {
+        synchronized (entries) {
+            LinkedList<Entry> candidates = entries.computeIfAbsent(rootUri, __ -> new LinkedList<>());
+            candidates.remove(entry);
+            candidates.addFirst(entry);
+            while (candidates.size() > MAX_CANDIDATES_PER_ROOT) {
+                candidates.removeLast();
+            }
+        }
+    }
+
+    private static boolean isUpToDate(Entry entry, FileContentProvider files, Set<String> allUris) {
+        for (Map.Entry<String, String> e : entry.fileHashes.entrySet()) {
+            if (!e.getValue().equals(currentHash(e.getKey(), files, allUris))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String currentHash(String uri, FileContentProvider files, Set<String> allUris) {
+        if (!allUris.contains(uri)) {
+            return ABSENT;
+        }
+        try {
+            return hash(IOUtils.toByteArray(files.readContent(uri)));
+        } catch (Exception e) {
+            return ABSENT;
+        }
+    }
+
+    private static String hash(byte[] content) {
+        return Hashing.sha256().hashBytes(content).toString();
+    }
+
+    private static Map<String, MavenWorkspaceModelResolver.PomInfo> copy(Collection<MavenWorkspaceModelResolver.PomInfo> poms) {
+        Map<String, MavenWorkspaceModelResolver.PomInfo> ret = new LinkedHashMap<>();
+        for (MavenWorkspaceModelResolver.PomInfo pom : poms) {
+            ret.put(pom.workspaceUri, new MavenWorkspaceModelResolver.PomInfo(pom.workspaceUri, pom.rawModel.clone(), new ArrayList<>(pom.compilerOptions)));
+        }
+        return ret;
+    }
+
+    /**
+     * On disk, each entry is a file named after the hash of the root URI followed by the hash of the entry's file
+     * hashes, so that several candidates per root can coexist.
+     */
+    private List<Entry> readFromDisk(String rootUri) {
+        String prefix = hash(rootUri.getBytes(StandardCharsets.UTF_8));
+        if (!diskDir.isDirectory()) {
+            return Collections.emptyList();
+        }
+        List<Entry> ret = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(diskDir.toPath())) {
+            for (Path path : paths.filter(p -> p.getFileName().toString().startsWith(prefix + "-")).collect(Collectors.toList())) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                    ret.add(readEntry(in));
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Ignoring unreadable Fradle cache entry {}: {}", path, e.toString());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not list Fradle cache directory {}: {}", diskDir, e.toString());
+        }
+        return ret;
+    }
+
+    private void writeToDisk(String rootUri, Entry entry) throws IOException {
+        String fingerprint = hash(new TreeMap<>(entry.fileHashes).toString().getBytes(StandardCharsets.UTF_8));
+        Path dir = diskDir.toPath();
+        Files.createDirectories(dir);
+        Path target = dir.resolve(hash(rootUri.getBytes(StandardCharsets.UTF_8)) + "-" + fingerprint);
+        Path tmp = Files.createTempFile(dir, fingerprint, ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                writeEntry(out, entry);
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        prune(dir, hash(rootUri.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private Entry readFromSharedCache(String rootUri, Set<String> allUris, SharedCache sharedCache) {
+        byte[] bytes = sharedCache.get(SHARED_CACHE_NAMESPACE, FORMAT_VERSION, sharedKey(rootUri, allUris));
+        if (bytes == null) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            return readEntry(in);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unreadable shared Fradle cache entry for {}: {}", rootUri, e.toString());
+            return null;
+        }
+    }
+
+    private void writeToSharedCache(String rootUri, Set<String> allUris, Entry entry, SharedCache sharedCache) {
+        if (!sharedCache.isAvailable()) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeEntry(out, entry);
+        } catch (IOException e) {
+            log.warn("Could not serialize Fradle cache entry for {}: {}", rootUri, e.toString());
+            return;
+        }
+        sharedCache.set(SHARED_CACHE_NAMESPACE, FORMAT_VERSION, sharedKey(rootUri, allUris), bytes.toByteArray());
+    }
+
+    private static String sharedKey(String rootUri, Set<String> allUris) {
+        StringBuilder key = new StringBuilder(rootUri);
+        allUris.stream()
+                .filter(uri -> uri.endsWith(".gradle") || uri.endsWith("/gradle.properties"))
+                .sorted()
+                .forEach(uri -> key.append('\n').append(uri));
+        return hash(key.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Keeps only the most recently written entries for a root on disk
+     */
+    private static void prune(Path dir, String prefix) throws IOException {
+        List<Path> stale;
+        try (Stream<Path> paths = Files.list(dir)) {
+            stale = paths.filter(p -> p.getFileName().toString().startsWith(prefix + "-"))
+                    .sorted(Comparator.comparing((Path p) -> p.toFile().lastModified()).reversed())
+                    .skip(MAX_CANDIDATES_PER_ROOT)
+                    .collect(Collectors.toList());
+        }
+        for (Path path : stale) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(entry.fileHashes.size());
+        for (Map.Entry<String, String> e : entry.fileHashes.entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeUTF(e.getValue());
+        }
+        out.writeInt(entry.poms.size());
+        for (MavenWorkspaceModelResolver.PomInfo pom : entry.poms) {
+            out.writeUTF(pom.workspaceUri);
+            StringWriter modelXml = new StringWriter();
+            new MavenXpp3Writer().write(modelXml, pom.rawModel);
+            byte[] modelBytes = modelXml.toString().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(modelBytes.length);
+            out.write(modelBytes);
+            out.writeInt(pom.compilerOptions.size());
+            for (CompilerOption option : pom.compilerOptions) {
+                out.writeUTF(option.getName());
+                out.writeBoolean(option.getValue() != null);
+                if (option.getValue() != null) {
+                    out.writeUTF(option.getValue());
+                }
+            }
+        }
+    }
+
+    private static Entry readEntry(DataInputStream in) throws IOException {
+        if (in.readInt() != FORMAT_VERSION) {
+            throw new IOException("unknown format version");
+        }
+        int numFiles = in.readInt();
+        Map<String, String> fileHashes = new HashMap<>();
+        for (int i = 0; i < numFiles; i++) {
+            fileHashes.put(in.readUTF(), in.readUTF());
+        }
+        int numPoms = in.readInt();
+        List<MavenWorkspaceModelResolver.PomInfo> poms = new ArrayList<>(numPoms);
+        for (int i = 0; i < numPoms; i++) {
+            String workspaceUri = in.readUTF();
+            byte[] modelBytes = new byte[in.readInt()];
+            in.readFully(modelBytes);
+            Model model;
+            try {
+                model = new MavenXpp3Reader().read(new StringReader(new String(modelBytes, StandardCharsets.UTF_8)));
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+            int numOptions = in.readInt();
+            List<CompilerOption> options = new ArrayList<>(numOptions);
+            for (int j = 0; j < numOptions; j++) {
+                String name = in.readUTF();
+                String value = in.readBoolean() ? in.readUTF() : null;
+                options.add(new CompilerOption(name, value));
+            }
+            poms.add(new MavenWorkspaceModelResolver.PomInfo(workspaceUri, model, options));
+        }
+        return new Entry(fileHashes, poms);
+    }
+
+    /**
+     * Recorder wraps the FileContentProvider used to evaluate a hierarchy and records the content hash of every file
+     * read through it. Files that are probed but don't exist are recorded with {@link #recordAbsent}.
+     */
+    static class Recorder implements FileContentProvider {
+
+        private final FileContentProvider files;
+
+        private final ConcurrentHashMap<String, String> fileHashes = new ConcurrentHashMap<>();
+
+        Recorder(FileContentProvider files) {
+            this.files = files;
+        }
+
+        void recordAbsent(String uri) {
+            fileHashes.putIfAbsent(uri, ABSENT);
+        }
+
+        @Override
+        public InputStream readContent(String uri) throws Exception {
+            byte[] content;
+            try {
+                content = IOUtils.toByteArray(files.readContent(uri));
+            } catch (Exception e) {
+                recordAbsent(uri);
+                throw e;
+            }
+            fileHashes.put(uri, hash(content));
+            return new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public List<TextDocumentIdentifier> listFilesRecursively(String baseUri) throws Exception {
+            return files.listFilesRecursively(baseUri);
+        }
+    }
+}
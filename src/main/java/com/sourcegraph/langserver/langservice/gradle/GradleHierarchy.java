@@ -6,7 +6,9 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.sourcegraph.lsp.FileContentProvider;
 import com.sourcegraph.lsp.MessageAggregator;
+import com.sourcegraph.lsp.SharedCache;
 import com.sourcegraph.langserver.langservice.maven.MavenUtil;
+import com.sourcegraph.utils.ExecutorUtils;
 import com.sourcegraph.utils.LanguageUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -17,6 +19,7 @@ import org.slf4j.LoggerFactory;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import com.sourcegraph.langserver.langservice.maven.MavenWorkspaceModelResolver;
 
@@ -36,12 +39,14 @@ public class GradleHierarchy {
     private HashSet<String> allUris;
     private FileContentProvider fileProvider;
     private MessageAggregator messages;
+    private SharedCache sharedCache;
 
-    public GradleHierarchy(Collection<String> gradleUris, Collection<String> allUris, FileContentProvider fileProvider, MessageAggregator messages) {
+    public GradleHierarchy(Collection<String> gradleUris, Collection<String> allUris, FileContentProvider fileProvider, MessageAggregator messages, SharedCache sharedCache) {
         this.gradleUris = Sets.newHashSet(gradleUris);
         this.allUris = Sets.newHashSet(allUris);
         this.fileProvider = fileProvider;
         this.messages = messages;
+        this.sharedCache = sharedCache;
     }
 
     public static class FatalGradleException extends Exception {
@@ -54,181 +59,161 @@ public class GradleHierarchy {
      * computeInferredPomModels returns a map from workspace URI to inferred POM
      */
     public Map<String, MavenWorkspaceModelResolver.PomInfo> computeInferredPoms() {
-        // Find all potential Gradle hierarchy roots (indicated by presence of `settings.gradle` for multi-project hierarchies or
-        // `build.gradle` for single projects).
-        List<String> rootsMaybe = gradleUris
+        // Gradle hierarchies are indicated by the presence of `settings.gradle` for multi-project hierarchies or
+        // `build.gradle` for single projects. collectProjectRoots finds all of them at once, so there is no need to
+        // evaluate anything per candidate root directory.
+        boolean hasRoots = gradleUris
                 .stream()
-                .filter(path -> path.endsWith("/build.gradle") || path.endsWith("/settings.gradle"))
-                .map(path -> StringUtils.substringBeforeLast(path, "/"))
-                .sorted(Comparator.comparing(path -> StringUtils.countMatches(path, '/')))
-                .collect(Collectors.toList());
+                .anyMatch(path -> path.endsWith("/build.gradle") || path.endsWith("/settings.gradle"));
+        if (!hasRoots) {
+            return Maps.newHashMap();
+        }
+        return computeInferredPomsFromHierarchies();
+    }
 
-        // Filter down to actual roots (don't count as a root any directory that's a descendant of another root.
-        // Note: this is a heuristic; there may be peculiar projects with multiple settings.gradle's that overlap in
-        // directory hierarchy.
-        Set<String> roots = new HashSet<>();
-        for (String rootMaybe : rootsMaybe) {
-            // if folder was already seen, all its subfolders are considered seen.
-            boolean seen = false;
-            String current = rootMaybe;
-            while (true) {
-                if (roots.contains(current)) {
-                    seen = true;
-                    break;
+    /**
+     * Computes inferred POM(s) from all Gradle hierarchies in the workspace.
+     */
+    private Map<String, MavenWorkspaceModelResolver.PomInfo> computeInferredPomsFromHierarchies() {
+        Map<String, MavenWorkspaceModelResolver.PomInfo> poms = Maps.newHashMap();
+
+        List<Map<String, MavenWorkspaceModelResolver.PomInfo>> hierarchyPoms = collectProjectRoots();
+
+        int projectNumber = 0;
+        for (Map<String, MavenWorkspaceModelResolver.PomInfo> unitPoms : hierarchyPoms) {
+            poms.putAll(unitPoms);
+
+            // Final fill-in of missing data
+            for (MavenWorkspaceModelResolver.PomInfo pom : poms.values()) {
+                Model model = pom.rawModel;
+                if (model.getGroupId() == null && model.getArtifactId() != null && model.getArtifactId().contains(":")) {
+                    String groupId = StringUtils.substringBefore(model.getArtifactId(), ":");
+                    String artifactId = StringUtils.substringAfter(model.getArtifactId(), ":");
+                    model.setArtifactId(artifactId);
+                    model.setGroupId(groupId);
                 }
-                int pos = current.lastIndexOf('/');
-                if (pos < 0) {
-                    break;
+                if (model.getArtifactId() == null) {
+                    model.setArtifactId("UNKNOWN_ARTIFACT_" + projectNumber);
                 }
-                current = current.substring(0, pos);
-            }
-            if (!seen) {
-                roots.add(rootMaybe);
+                if (model.getVersion() == null) {
+                    model.setVersion(MavenUtil.UNKNOWN_VERSION);
+                }
+                if (model.getGroupId() == null) {
+                    model.setGroupId(MavenUtil.UNKNOWN_GROUP);
+                }
+                projectNumber++;
             }
         }
 
-        Map<String, MavenWorkspaceModelResolver.PomInfo> poms = Maps.newHashMap();
-        for (String root : roots) {
-            poms.putAll(computeInferredPomsAtRoot(root));
-        }
         return poms;
     }
 
     /**
-     * Computes inferred POM(s) from a given Gradle hierarchy root.
-     *
-     * @param rootUri     workpace subtree root (directory) that contains root Gradle file(s)
+     * Transforms the projects of an evaluated Gradle hierarchy into POMs, keyed by project directory URI. The POMs
+     * are returned as inferred from the scripts, i.e., without any placeholders for missing coordinates.
      */
-    private Map<String, MavenWorkspaceModelResolver.PomInfo> computeInferredPomsAtRoot(String rootUri) {
-        Map<String, MavenWorkspaceModelResolver.PomInfo> poms = Maps.newHashMap();
-
-        List<Fradle.Globals> globalEnvironments = collectProjectRoots(rootUri);
-
-        int projectNumber = 0;
-        for (Fradle.Globals globals : globalEnvironments) {
-            // Transform to poms
-            ArrayList<Project> projects = Lists.newArrayList(globals.rootProject);
-            projects.addAll(globals.subProjects.values());
-            for (Project project : projects) {
-                Model model = new Model();
-                model.setModelVersion("4.0.0");
-
-                if (project.depManagement.size() > 0) {
-                    DependencyManagement depMgt = new DependencyManagement();
-                    for (String depString : project.depManagement) {
-                        Dependency dep;
-                        try {
-                            dep = GradleUtil.toDependency(depString, "import", "pom");
-                        } catch (Exception e) {
-                            log.error("failed to parse dependency management dependency {} due to error", depString, e);
-                            continue;
-                        }
-                        depMgt.addDependency(dep);
+    private LinkedHashMap<String, MavenWorkspaceModelResolver.PomInfo> inferPoms(Fradle.Globals globals) {
+        LinkedHashMap<String, MavenWorkspaceModelResolver.PomInfo> poms = new LinkedHashMap<>();
+        ArrayList<Project> projects = Lists.newArrayList(globals.rootProject);
+        projects.addAll(globals.subProjects.values());
+        for (Project project : projects) {
+            Model model = new Model();
+            model.setModelVersion("4.0.0");
+
+            if (project.depManagement.size() > 0) {
+                DependencyManagement depMgt = new DependencyManagement();
+                for (String depString : project.depManagement) {
+                    Dependency dep;
+                    try {
+                        dep = GradleUtil.toDependency(depString, "import", "pom");
+                    } catch (Exception e) {
+                        log.error("failed to parse dependency management dependency {} due to error", depString, e);
+                        continue;
                     }
-                    model.setDependencyManagement(depMgt);
+                    depMgt.addDependency(dep);
                 }
+                model.setDependencyManagement(depMgt);
+            }
 
-                Map<String, List<String>> projDeps = project.getDependencies();
-                collectDependencies(projDeps.get("compile"), "compile", model);
-                collectDependencies(projDeps.get("testCompile"), "test", model);
-                collectDependencies(projDeps.get("androidTestCompile"), "test", model);
-                collectDependencies(projDeps.get("provided"),"compile", model);
-
-                for (String repo : project.getRepositories()) {
-                    Repository repository = new Repository();
-                    repository.setId(repo);
-                    repository.setName(repo);
-                    repository.setUrl(repo);
-                    model.addRepository(repository);
-                }
+            Map<String, List<String>> projDeps = project.getDependencies();
+            collectDependencies(projDeps.get("compile"), "compile", model);
+            collectDependencies(projDeps.get("testCompile"), "test", model);
+            collectDependencies(projDeps.get("androidTestCompile"), "test", model);
+            collectDependencies(projDeps.get("provided"),"compile", model);
+
+            for (String repo : project.getRepositories()) {
+                Repository repository = new Repository();
+                repository.setId(repo);
+                repository.setName(repo);
+                repository.setUrl(repo);
+                model.addRepository(repository);
+            }
 
-                Map<String, String> projIdentifier = project.getIdentifier();
-                model.setGroupId(projIdentifier.get("group"));
-                model.setArtifactId(projIdentifier.get("artifact"));
-                model.setVersion(projIdentifier.get("version"));
+            Map<String, String> projIdentifier = project.getIdentifier();
+            model.setGroupId(projIdentifier.get("group"));
+            model.setArtifactId(projIdentifier.get("artifact"));
+            model.setVersion(projIdentifier.get("version"));
 
-                {
-                    List<String> sourceDirs = Lists.newArrayList();
-                    List<String> testSourceDirs = Lists.newArrayList();
+            {
+                List<String> sourceDirs = Lists.newArrayList();
+                List<String> testSourceDirs = Lists.newArrayList();
 
-                    for (String sourceDir : sourceSourceSets) {
-                        if (project.getAttribute(sourceDir) instanceof List) {
-                            for (Object o : (List) project.getAttribute(sourceDir)) {
-                                sourceDirs.add(o.toString());
-                            }
+                for (String sourceDir : sourceSourceSets) {
+                    if (project.getAttribute(sourceDir) instanceof List) {
+                        for (Object o : (List) project.getAttribute(sourceDir)) {
+                            sourceDirs.add(o.toString());
                         }
                     }
-                    for (String testDir : testSourceSets) {
-                        if (project.getAttribute(testDir) instanceof List) {
-                            for (Object o : (List) project.getAttribute(testDir)) {
-                                testSourceDirs.add(o.toString());
-                            }
-                        }
-                    }
-
-                    if (sourceDirs.size() > 0 || testSourceDirs.size() > 0) {
-                        Build build = new Build();
-                        if (sourceDirs.size() > 0) {
-                            build.setSourceDirectory(String.join(",", sourceDirs));
-                        }
-                        if (testSourceDirs.size() > 0) {
-                            build.setTestSourceDirectory(String.join(",", testSourceDirs));
+                }
+                for (String testDir : testSourceSets) {
+                    if (project.getAttribute(testDir) instanceof List) {
+                        for (Object o : (List) project.getAttribute(testDir)) {
+                            testSourceDirs.add(o.toString());
                         }
-                        model.setBuild(build);
                     }
                 }
 
-                String projectRootDir = project.getAttribute("rootDir").toString();
-                Path projectRootPath = Paths.get(projectRootDir);
-
-                Path projectPath = projectRootPath.resolve(project.getAttribute("projectDir").toString());
-                if (Paths.get("/").relativize(projectPath).normalize().startsWith("../")) {
-                    // ignore paths that point outside repository
-                    continue;
-                }
-                String projectUri = LanguageUtils.pathToUri(projectPath.normalize().toString());
-                poms.put(projectUri, new MavenWorkspaceModelResolver.PomInfo(projectUri, model, project.getCompilerOptions()));
-
-                // set the desired Java source and target versions, if specified in the Gradle project
-                String sourceVersion = null;
-                if (project.getAttribute("sourceCompatibility") != null) {
-                    sourceVersion = project.getAttribute("sourceCompatibility").toString();
-                }
-                String targetVersion = null;
-                if (project.getAttribute("targetCompatibility") != null) {
-                    targetVersion = project.getAttribute("targetCompatibility").toString();
-                }
-                if (sourceVersion != null || targetVersion != null) {
-                    Properties modelProperties = new Properties();
-                    if (sourceVersion != null) {
-                        modelProperties.setProperty("maven.compiler.source", sourceVersion);
+                if (sourceDirs.size() > 0 || testSourceDirs.size() > 0) {
+                    Build build = new Build();
+                    if (sourceDirs.size() > 0) {
+                        build.setSourceDirectory(String.join(",", sourceDirs));
                     }
-                    if (targetVersion != null) {
-                        modelProperties.setProperty("maven.compiler.target", targetVersion);
+                    if (testSourceDirs.size() > 0) {
+                        build.setTestSourceDirectory(String.join(",", testSourceDirs));
                     }
-                    model.setProperties(modelProperties);
+                    model.setBuild(build);
                 }
             }
 
-            // Final fill-in of missing data
-            for (MavenWorkspaceModelResolver.PomInfo pom : poms.values()) {
-                Model model = pom.rawModel;
-                if (model.getGroupId() == null && model.getArtifactId() != null && model.getArtifactId().contains(":")) {
-                    String groupId = StringUtils.substringBefore(model.getArtifactId(), ":");
-                    String artifactId = StringUtils.substringAfter(model.getArtifactId(), ":");
-                    model.setArtifactId(artifactId);
-                    model.setGroupId(groupId);
-                }
-                if (model.getArtifactId() == null) {
-                    model.setArtifactId("UNKNOWN_ARTIFACT_" + projectNumber);
-                }
-                if (model.getVersion() == null) {
-                    model.setVersion(MavenUtil.UNKNOWN_VERSION);
+            String projectRootDir = project.getAttribute("rootDir").toString();
+            Path projectRootPath = Paths.get(projectRootDir);
+
+            Path projectPath = projectRootPath.resolve(project.getAttribute("projectDir").toString());
+            if (Paths.get("/").relativize(projectPath).normalize().startsWith("../")) {
+                // ignore paths that point outside repository
+                continue;
+            }
+            String projectUri = LanguageUtils.pathToUri(projectPath.normalize().toString());
+            poms.put(projectUri, new MavenWorkspaceModelResolver.PomInfo(projectUri, model, project.getCompilerOptions()));
+
+            // set the desired Java source and target versions, if specified in the Gradle project
+            String sourceVersion = null;
+            if (project.getAttribute("sourceCompatibility") != null) {
+                sourceVersion = project.getAttribute("sourceCompatibility").toString();
+            }
+            String targetVersion = null;
+            if (project.getAttribute("targetCompatibility") != null) {
+                targetVersion = project.getAttribute("targetCompatibility").toString();
+            }
+            if (sourceVersion != null || targetVersion != null) {
+                Properties modelProperties = new Properties();
+                if (sourceVersion != null) {
+                    modelProperties.setProperty("maven.compiler.source", sourceVersion);
                 }
-                if (model.getGroupId() == null) {
-                    model.setGroupId(MavenUtil.UNKNOWN_GROUP);
+                if (targetVersion != null) {
+                    modelProperties.setProperty("maven.compiler.target", targetVersion);
                 }
-                projectNumber++;
+                model.setProperties(modelProperties);
             }
         }
 
@@ -263,12 +248,13 @@ public class GradleHierarchy {
     /**
      * Reads properties from a gradle.properties (or other *.properties) file.
      */
-    private Map<String, Object> readProperties(String propertiesUri) throws Exception {
+    private Map<String, Object> readProperties(String propertiesUri, FradleCache.Recorder files) throws Exception {
         if (!allUris.contains(propertiesUri)) {
+            files.recordAbsent(propertiesUri);
             return Maps.newHashMap();
         }
         Map<String, Object> props = Maps.newHashMap();
-        String[] lines = IOUtils.toString(fileProvider.readContent(propertiesUri), "UTF-8").split("\n");
+        String[] lines = IOUtils.toString(files.readContent(propertiesUri), "UTF-8").split("\n");
         for (String line : lines) {
             if (line.indexOf("=") == -1) {
                 continue;
@@ -286,9 +272,10 @@ public class GradleHierarchy {
     /**
      * Collects all Gradle hierarchy roots under a given path -- a path is considered a root if it either contains a
      * settings.gradle file, or if it contains an "orphan" build.gradle file that isn't under any settings.gradle file.
-     * @param rootUri
+     * Returns the POMs inferred from each root. Roots are independent of each other, so they are evaluated in
+     * parallel.
      */
-    private List<Fradle.Globals> collectProjectRoots(String rootUri) {
+    private List<Map<String, MavenWorkspaceModelResolver.PomInfo>> collectProjectRoots() {
 
         HashSet<String> projectRoots = gradleUris.stream()
                 .map(LanguageUtils::uriToPath)
@@ -314,24 +301,44 @@ public class GradleHierarchy {
 
         projectRoots.addAll(moreRoots);
 
-        return projectRoots.stream()
+        List<CompletableFuture<Map<String, MavenWorkspaceModelResolver.PomInfo>>> futures = projectRoots.stream()
                 .map(LanguageUtils::pathToUri)
-                .map(subProjectRoot -> {
-                    try {
-                        return collectProjects(subProjectRoot);
-                    } catch (FatalGradleException e) {
-                        log.error("Error initializing Gradle sub-project under {}", subProjectRoot, e);
-                        return null;
-                    }
-                })
+                .map(subProjectRoot -> CompletableFuture.supplyAsync(() -> inferPomsAtRoot(subProjectRoot), ExecutorUtils.getExecutorService()))
+                .collect(Collectors.toList());
+        return futures.stream()
+                .map(CompletableFuture::join)
                 .filter(Objects::nonNull)
                 .collect(Collectors.toCollection(ArrayList::new));
     }
 
     /**
-     * Collects all project metadata in a given Gradle script hierarchy.
+     * Returns the POMs inferred from the Gradle hierarchy rooted at the given URI, from FradleCache if none of the
+     * files involved has changed since they were last inferred, or null if the hierarchy can't be evaluated.
+     */
+    private Map<String, MavenWorkspaceModelResolver.PomInfo> inferPomsAtRoot(String rootUri) {
+        FradleCache cache = FradleCache.getInstance();
+        Map<String, MavenWorkspaceModelResolver.PomInfo> cached = cache.get(rootUri, fileProvider, allUris, sharedCache);
+        if (cached != null) {
+            log.info("Using cached POMs for Gradle hierarchy under {}", rootUri);
+            return cached;
+        }
+        FradleCache.Recorder files = new FradleCache.Recorder(fileProvider);
+        Fradle.Globals globals;
+        try {
+            globals = collectProjects(rootUri, files);
+        } catch (FatalGradleException e) {
+            log.error("Error initializing Gradle sub-project under {}", rootUri, e);
+            return null;
+        }
+        Map<String, MavenWorkspaceModelResolver.PomInfo> poms = inferPoms(globals);
+        cache.put(rootUri, files, allUris, poms, sharedCache);
+        return poms;
+    }
+
+    /**
+     * Collects all project metadata in a given Gradle script hierarchy, reading all files through the given recorder.
      */
-    private Fradle.Globals collectProjects(String rootUri) throws FatalGradleException {
+    private Fradle.Globals collectProjects(String rootUri, FradleCache.Recorder files) throws FatalGradleException {
         // Map out hierarchy from settings.gradle
         String rootPath = LanguageUtils.uriToPath(rootUri).toString();
         Fradle.Globals globals = new Fradle.Globals(rootPath);
@@ -340,10 +347,12 @@ public class GradleHierarchy {
         String settingsUri = LanguageUtils.pathToUri(LanguageUtils.joinPath(LanguageUtils.uriToPath(rootUri).toString(), "settings.gradle"));
         if (gradleUris.contains(settingsUri)) {
             try {
-                Fradle.runGradle(settingsUri, fileProvider, globals, scope, messages);
+                Fradle.runGradle(settingsUri, files, globals, scope, messages);
             } catch (Exception e) {
                 throw new FatalGradleException(e);
             }
+        } else {
+            files.recordAbsent(settingsUri);
         }
         for (Project proj : globals.subProjects.values()) {
             proj.parent = globals.rootProject;
@@ -365,7 +374,7 @@ public class GradleHierarchy {
                 "gradle.properties"
         ));
         try {
-            Map<String, Object> rootProps = readProperties(rootPropsUri);
+            Map<String, Object> rootProps = readProperties(rootPropsUri, files);
             globals.rootProject.setAllProperties(rootProps);
         } catch (Exception e) {
             log.error("failed to read properties from " + rootPropsUri);
@@ -377,7 +386,7 @@ public class GradleHierarchy {
                     "gradle.properties"
             ));
             try {
-                subProject.setAllProperties(readProperties(propsUri));
+                subProject.setAllProperties(readProperties(propsUri, files));
             } catch (Exception e) {
                 log.error("failed to read properties from " + propsUri);
             }
@@ -386,7 +395,7 @@ public class GradleHierarchy {
         // Other *.properties files set default values on projects (NOTE: this is a heuristic and may not be 100% accurate)
         try {
             String versionPropsUri = LanguageUtils.pathToUri(LanguageUtils.uriToPath(rootUri).resolve("version.properties").toString());
-            Map<String, Object> versionProps = readProperties(versionPropsUri);
+            Map<String, Object> versionProps = readProperties(versionPropsUri, files);
             if (versionProps.containsKey("version")) {
                 String version = versionProps.get("version").toString();
                 for (Project proj : globals.getAllProjects()) {
@@ -402,7 +411,7 @@ public class GradleHierarchy {
                 Objects.toString(globals.rootProject.getAttribute("buildFileName"))
         ));
         try {
-            Fradle.runGradle(buildUri, fileProvider, globals, scope, messages);
+            Fradle.runGradle(buildUri, files, globals, scope, messages);
         } catch (Exception e) {
             throw new FatalGradleException(e);
         }
@@ -418,7 +427,7 @@ public class GradleHierarchy {
             context.put("project", subProject);
             scope.push(Fradle.TOP_LEVEL_SCOPE, Lists.newArrayList(context));
             try {
-                Fradle.runGradle(subBuildUri, fileProvider, globals, scope, messages);
+                Fradle.runGradle(subBuildUri, files, globals, scope, messages);
             } catch (Exception e) {
                 log.error("failed to run Gradle for subProject " + subProject.getAttribute("name") + ": " + e.getMessage());
             }
@@ -0,0 +1,228 @@
+package com.sourcegraph.langserver.langservice.maven;
+
+import com.sourcegraph.common.Config;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.DefaultSessionData;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.repository.LocalArtifactRequest;
+import org.eclipse.aether.repository.LocalArtifactResult;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.eclipse.aether.transfer.ArtifactTransferException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ArtifactFetcher downloads artifacts from remote repositories. There is a single instance per process, shared by all
+ * sessions, which provides:
+ *
+ * - Per-host concurrency limits: each repository host gets its own small pool of download threads, so a slow or
+ *   rate-limiting host can't starve the others, and we never open more than a fixed number of connections to one host.
+ * - Deduplication: concurrent requests for the same artifact from the same repositories (e.g., from two workspaces or
+ *   two sessions that share a dependency) share a single download.
+ * - Retries: transfer failures (as opposed to "not found") are retried with exponential backoff before moving on to
+ *   the next repository.
+ *
+ * Artifacts that are already in the local repository are returned immediately without touching the pools.
+ */
+public class ArtifactFetcher {
+
+    private static final Logger log = LoggerFactory.getLogger(ArtifactFetcher.class);
+
+    private static final ArtifactFetcher instance = new ArtifactFetcher(Config.ARTIFACT_FETCH_CONCURRENCY_PER_HOST, 3, 500);
+
+    public static ArtifactFetcher getInstance() {
+        return instance;
+    }
+
+    private final int concurrencyPerHost;
+
+    private final int maxAttempts;
+
+    private final long initialBackoffMillis;
+
+    // repository host -> the pool that downloads from it
+    private final ConcurrentHashMap<String, ExecutorService> lanes = new ConcurrentHashMap<>();
+
+    // artifact coordinates and repositories -> pending download
+    private final ConcurrentHashMap<String, CompletableFuture<Artifact>> inFlight = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "artifact-fetch-retry");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicLong localHits = new AtomicLong();
+    private final AtomicLong downloads = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    ArtifactFetcher(int concurrencyPerHost, int maxAttempts, long initialBackoffMillis) {
+        this.concurrencyPerHost = concurrencyPerHost;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+    }
+
+    /**
+     * Fetches the artifact, trying the given repositories in order. The returned future completes with the artifact
+     * (with its file set) or exceptionally with the last resolution error.
+     */
+    public CompletableFuture<Artifact> fetch(RepositorySystem system,
+                                             RepositorySystemSession session,
+                                             Artifact artifact,
+                                             List<RemoteRepository> repositories) {
+        File localFile = findLocally(session, artifact);
+        if (localFile != null) {
+            localHits.incrementAndGet();
+            return CompletableFuture.completedFuture(artifact.setFile(localFile));
+        }
+
+        String key = inFlightKey(artifact, repositories);
+        CompletableFuture<Artifact> future = new CompletableFuture<>();
+        CompletableFuture<Artifact> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            deduplicated.incrementAndGet();
+            return existing;
+        }
+        future.whenComplete((a, ex) -> inFlight.remove(key, future));
+        tryRepository(system, session, artifact, repositories, 0, 1, null, future);
+        return future;
+    }
+
+    public long getLocalHits() {
+        return localHits.get();
+    }
+
+    public long getDownloads() {
+        return downloads.get();
+    }
+
+    public long getDeduplicated() {
+        return deduplicated.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    private void tryRepository(RepositorySystem system,
+                               RepositorySystemSession session,
+                               Artifact artifact,
+                               List<RemoteRepository> repositories,
+                               int index,
+                               int attempt,
+                               Exception lastError,
+                               CompletableFuture<Artifact> result) {
+        if (index >= repositories.size()) {
+            failures.incrementAndGet();
+            result.completeExceptionally(lastError != null ? lastError : new ArtifactNotFoundException(artifact, null));
+            return;
+        }
+        RemoteRepository repository = repositories.get(index);
+        lane(repository).execute(() -> {
+            ArtifactRequest request = new ArtifactRequest(artifact, Collections.singletonList(repository), null);
+            try {
+                // a retry must not be answered from the failures the session remembers about the previous attempt
+                RepositorySystemSession attemptSession = attempt == 1 ? session : withFreshData(session);
+                Artifact fetched = system.resolveArtifact(attemptSession, request).getArtifact();
+                downloads.incrementAndGet();
+                result.complete(fetched);
+            } catch (ArtifactResolutionException e) {
+                if (isTransferFailure(e) && attempt < maxAttempts) {
+                    retries.incrementAndGet();
+                    long backoff = initialBackoffMillis << (attempt - 1);
+                    log.debug("Transfer of {} from {} failed, retrying in {}ms: {}", artifact, repository.getUrl(), backoff, e.getMessage());
+                    retryScheduler.schedule(
+                            () -> tryRepository(system, session, artifact, repositories, index, attempt + 1, e, result),
+                            backoff,
+                            TimeUnit.MILLISECONDS);
+                } else {
+                    tryRepository(system, session, artifact, repositories, index + 1, 1, e, result);
+                }
+            } catch (RuntimeException e) {
+                failures.incrementAndGet();
+                result.completeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * Returns the key under which a download is shared. Requests that try different repositories can't share one, since
+     * an artifact missing from the repositories of one request may still be found in those of the other.
+     */
+    static String inFlightKey(Artifact artifact, List<RemoteRepository> repositories) {
+        StringBuilder key = new StringBuilder(artifact.toString());
+        for (RemoteRepository repository : repositories) {
+            key.append(' ').append(repository.getId()).append('=').append(repository.getUrl());
+        }
+        return key.toString();
+    }
+
+    private ExecutorService lane(RemoteRepository repository) {
+        String host = repository.getHost() != null ? repository.getHost() : "";
+        return lanes.computeIfAbsent(host, h -> {
+            AtomicInteger n = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    concurrencyPerHost,
+                    concurrencyPerHost,
+                    60,
+                    TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    r -> {
+                        Thread t = new Thread(r, "artifact-fetch-" + h + "-" + n.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        });
+    }
+
+    private static File findLocally(RepositorySystemSession session, Artifact artifact) {
+        if (artifact.isSnapshot()) {
+            // snapshots have to be checked against the remote metadata
+            return null;
+        }
+        LocalArtifactResult result = session.getLocalRepositoryManager().find(session, new LocalArtifactRequest(artifact, null, null));
+        return result.getFile();
+    }
+
+    private static RepositorySystemSession withFreshData(RepositorySystemSession session) {
+        DefaultRepositorySystemSession copy = new DefaultRepositorySystemSession(session);
+        copy.setData(new DefaultSessionData());
+        return copy;
+    }
+
+    /**
+     * Returns true if the resolution failed because of a (possibly transient) transfer error, rather than because
+     * the repository doesn't have the artifact
+     */
+    private static boolean isTransferFailure(ArtifactResolutionException e) {
+        for (ArtifactResult result : e.getResults()) {
+            for (Exception exception : result.getExceptions()) {
+                if (exception instanceof ArtifactTransferException && !(exception instanceof ArtifactNotFoundException)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,289 @@
+package com.sourcegraph.langserver.langservice.maven;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.sourcegraph.lsp.SharedCache;
+import com.sourcegraph.lsp.domain.structures.PackageIdentifier;
+import org.apache.maven.model.Dependency;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * DependencyResolutionCache stores the result of resolving the transitive dependencies of a POM in the local
+ * repository. Entries are content-addressed: the key is a hash of everything that influences the resolution (the
+ * effective dependencies, the exclusions, the remote repositories and the dependency management section), so that
+ * POMs that differ between branches or commits never share an entry, while identical dependency sets (e.g., the same
+ * module at a new commit) hit the cache regardless of the module's own coordinates.
+ *
+ * Each entry holds the resolution in a compact binary format: a string table followed by the resolved packages, with
+ * the jars that were fetched for them, relative to the local repository. Only complete resolutions are stored (see
+ * EffectivePom), so that a failed fetch is retried by the next resolution instead of being remembered. Entries are
+ * written to a temporary file and atomically moved into place, so concurrent readers never observe a partially written
+ * entry.
+ *
+ * An entry is only the flat result of the resolution, the resolved packages and their jars, and not the dependency
+ * graph: which package pulled in which, and the versions conflict resolution dropped, aren't kept. That's all the
+ * workspaces need; resolving again yields the graph.
+ *
+ * A resolution that may change while its inputs don't is never cached (see isCacheable): SNAPSHOT dependencies are
+ * republished, and version ranges and the LATEST and RELEASE versions match new releases. Resolutions that pulled in
+ * SNAPSHOT packages transitively aren't stored either. Version ranges that only the POMs of dependencies declare can't
+ * be told apart from fixed versions in the result, so those resolutions are cached as they first resolved.
+ *
+ * Since jars are recorded relative to the local repository, entries are also valid for other language server
+ * instances, so they are shared with them through the client's cache (see SharedCache). An entry missing locally is
+ * copied from there; jars missing locally are fetched again.
+ */
+class DependencyResolutionCache {
+
+    private static final Logger log = LoggerFactory.getLogger(DependencyResolutionCache.class);
+
+    private static final int MAGIC = 0x4a445243; // "JDRC"
+
+    /**
+     * Bump when the entry format or the meaning of the key changes
+     */
+    private static final int FORMAT_VERSION = 2;
+
+    private static final String SHARED_CACHE_NAMESPACE = "dependency-resolution";
+
+    // the version of a timestamped SNAPSHOT build, e.g. 1.0-20180101.123456-1
+    private static final Pattern SNAPSHOT_BUILD = Pattern.compile("-\\d{8}\\.\\d{6}-\\d+$");
+
+    private final Path localRepository;
+
+    private final Path cacheDir;
+
+    /**
+     * @param localRepository the local repository the jars are fetched to, which stores the entries as well
+     */
+    DependencyResolutionCache(Path localRepository) {
+        this.localRepository = localRepository.toAbsolutePath();
+        this.cacheDir = this.localRepository.resolve(".resolution-cache");
+    }
+
+    /**
+     * The resolved transitive dependencies of a POM
+     */
+    static class Resolution {
+        /**
+         * Resolved package -> absolute paths of its jars
+         */
+        final Map<PackageIdentifier, List<String>> jars;
+
+        Resolution(Map<PackageIdentifier, List<String>> jars) {
+            this.jars = jars;
+        }
+    }
+
+    /**
+     * Computes the cache key of a resolution. Declared dependencies, exclusions and managed dependencies are hashed
+     * in a canonical order; repositories are hashed in declaration order, because it determines where artifacts come
+     * from.
+     */
+    static String key(Collection<Dependency> dependencies,
+                      Collection<PackageIdentifier> excludes,
+                      List<RemoteRepository> repositories,
+                      Collection<Dependency> dependencyManagement) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putInt(FORMAT_VERSION);
+        putSorted(hasher, "dependencies", dependencies.stream().map(DependencyResolutionCache::describe));
+        putSorted(hasher, "excludes", excludes.stream()
+                .filter(Objects::nonNull)
+                .map(e -> e.getId() + ":" + e.getVersion()));
+        putString(hasher, "repositories");
+        for (RemoteRepository repository : repositories) {
+            putString(hasher, repository.getId() + "|" + repository.getContentType() + "|" + repository.getUrl());
+        }
+        putSorted(hasher, "dependencyManagement", dependencyManagement.stream().map(DependencyResolutionCache::describe));
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Returns false if resolving the given dependencies may give a different result later, because one of them, or one
+     * of the managed dependencies, doesn't have a fixed version
+     */
+    static boolean isCacheable(Collection<Dependency> dependencies, Collection<Dependency> dependencyManagement) {
+        return Stream.concat(dependencies.stream(), dependencyManagement.stream())
+                .noneMatch(dep -> isChangingVersion(dep.getVersion()));
+    }
+
+    /**
+     * Tells if the version is a SNAPSHOT (or one of its timestamped builds), a version range or a meta-version
+     */
+    static boolean isChangingVersion(String version) {
+        if (version == null) {
+            return false;
+        }
+        return version.endsWith("-SNAPSHOT")
+                || SNAPSHOT_BUILD.matcher(version).find()
+                || version.startsWith("[") || version.startsWith("(")
+                || version.equals("LATEST") || version.equals("RELEASE");
+    }
+
+    /**
+     * Returns the cached resolution for the given key, or null if there is none or it can't be read
+     */
+    Resolution load(String key, SharedCache sharedCache) {
+        Path path = entryPath(key);
+        if (!Files.exists(path) && !copyFromSharedCache(key, sharedCache)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                log.warn("Ignoring dependency resolution cache entry {} with unknown format", path);
+                return null;
+            }
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = in.readUTF();
+            }
+
+            PackageIdentifier[] packages = new PackageIdentifier[in.readInt()];
+            Map<PackageIdentifier, List<String>> jars = new LinkedHashMap<>();
+            for (int i = 0; i < packages.length; i++) {
+                packages[i] = PackageIdentifier.ofMaven(strings[in.readInt()], strings[in.readInt()], strings[in.readInt()]);
+                int numJars = in.readInt();
+                List<String> pkgJars = new ArrayList<>(numJars);
+                for (int j = 0; j < numJars; j++) {
+                    pkgJars.add(localRepository.resolve(strings[in.readInt()]).toString());
+                }
+                jars.put(packages[i], pkgJars);
+            }
+            return new Resolution(jars);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not read dependency resolution cache entry {}: {}", path, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Stores the resolution under the given key, atomically replacing any existing entry
+     */
+    void save(String key, Resolution resolution, SharedCache sharedCache) throws IOException {
+        for (PackageIdentifier pkg : resolution.jars.keySet()) {
+            if (isChangingVersion(pkg.getVersion())) {
+                log.info("Not caching a resolution that includes {}:{}", pkg.getId(), pkg.getVersion());
+                return;
+            }
+        }
+        Map<String, Integer> stringIndexes = new LinkedHashMap<>();
+        for (PackageIdentifier pkg : resolution.jars.keySet()) {
+            for (String s : coordinates(pkg)) {
+                stringIndexes.putIfAbsent(s, stringIndexes.size());
+            }
+            for (String jar : resolution.jars.get(pkg)) {
+                stringIndexes.putIfAbsent(localRepository.relativize(Paths.get(jar)).toString(), stringIndexes.size());
+            }
+        }
+
+        Files.createDirectories(cacheDir);
+        Path tmp = Files.createTempFile(cacheDir, key, ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+
+                out.writeInt(stringIndexes.size());
+                for (String s : stringIndexes.keySet()) {
+                    out.writeUTF(s);
+                }
+
+                out.writeInt(resolution.jars.size());
+                for (PackageIdentifier pkg : resolution.jars.keySet()) {
+                    for (String s : coordinates(pkg)) {
+                        out.writeInt(stringIndexes.get(s));
+                    }
+                    List<String> pkgJars = resolution.jars.get(pkg);
+                    out.writeInt(pkgJars.size());
+                    for (String jar : pkgJars) {
+                        out.writeInt(stringIndexes.get(localRepository.relativize(Paths.get(jar)).toString()));
+                    }
+                }
+            }
+            sharedCache.set(SHARED_CACHE_NAMESPACE, FORMAT_VERSION, key, Files.readAllBytes(tmp));
+            moveIntoPlace(tmp, key);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Copies the entry for the given key from the shared cache, if another instance has stored it there
+     *
+     * @return true if the entry now exists locally
+     */
+    private boolean copyFromSharedCache(String key, SharedCache sharedCache) {
+        byte[] entry = sharedCache.get(SHARED_CACHE_NAMESPACE, FORMAT_VERSION, key);
+        if (entry == null) {
+            return false;
+        }
+        try {
+            Files.createDirectories(cacheDir);
+            Path tmp = Files.createTempFile(cacheDir, key, ".tmp");
+            try {
+                Files.write(tmp, entry);
+                moveIntoPlace(tmp, key);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            return true;
+        } catch (IOException e) {
+            log.warn("Could not copy dependency resolution cache entry {} from the shared cache: {}", key, e.toString());
+            return false;
+        }
+    }
+
+    private void moveIntoPlace(Path tmp, String key) throws IOException {
+        try {
+            Files.move(tmp, entryPath(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, entryPath(key), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    Path entryPath(String key) {
+        return cacheDir.resolve(key);
+    }
+
+    private static String[] coordinates(PackageIdentifier pkg) {
+        String[] groupAndArtifact = pkg.getId().split(":", 2);
+        return new String[]{groupAndArtifact[0], groupAndArtifact.length > 1 ? groupAndArtifact[1] : "", String.valueOf(pkg.getVersion())};
+    }
+
+    private static String describe(Dependency dep) {
+        String exclusions = dep.getExclusions() == null ? "" : dep.getExclusions().stream()
+                .map(e -> e.getGroupId() + ":" + e.getArtifactId())
+                .sorted()
+                .collect(Collectors.joining(","));
+        return String.join("|",
+                String.valueOf(dep.getGroupId()),
+                String.valueOf(dep.getArtifactId()),
+                String.valueOf(dep.getVersion()),
+                String.valueOf(dep.getClassifier()),
+                String.valueOf(dep.getType()),
+                String.valueOf(dep.getScope()),
+                String.valueOf(dep.getOptional()),
+                exclusions);
+    }
+
+    private static void putSorted(Hasher hasher, String section, Stream<String> values) {
+        putString(hasher, section);
+        values.sorted().forEach(v -> putString(hasher, v));
+    }
+
+    private static void putString(Hasher hasher, String s) {
+        // length-prefixed so that adjacent values can't run into each other
+        hasher.putInt(s.length());
+        hasher.putString(s, StandardCharsets.UTF_8);
+    }
+}
@@ -7,6 +7,7 @@ import com.sourcegraph.langserver.langservice.compiler.JarFileSource;
 import com.sourcegraph.langserver.langservice.compiler.JarSource;
 import com.sourcegraph.langserver.langservice.javaconfigjson.RepositoryInfo;
 import com.sourcegraph.lsp.MessageAggregator;
+import com.sourcegraph.lsp.SharedCache;
 import com.sourcegraph.lsp.Tracing;
 import com.sourcegraph.lsp.domain.result.WorkspaceConfigurationServersResult;
 import com.sourcegraph.lsp.domain.structures.PackageIdentifier;
@@ -30,6 +31,7 @@ import org.eclipse.aether.collection.DependencyCollectionException;
 import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
 import org.eclipse.aether.graph.Dependency;
 import org.eclipse.aether.graph.DependencyFilter;
+import org.eclipse.aether.graph.DependencyNode;
 import org.eclipse.aether.graph.Exclusion;
 import org.eclipse.aether.impl.DefaultServiceLocator;
 import org.eclipse.aether.repository.LocalRepository;
@@ -41,6 +43,8 @@ import org.eclipse.aether.transport.file.FileTransporterFactory;
 import org.eclipse.aether.transport.http.HttpTransporterFactory;
 import org.eclipse.aether.util.artifact.JavaScopes;
 import org.eclipse.aether.util.filter.DependencyFilterUtils;
+import org.eclipse.aether.util.graph.visitor.FilteringDependencyVisitor;
+import org.eclipse.aether.util.graph.visitor.PreorderNodeListGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,6 +54,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -67,6 +72,8 @@ public class EffectivePom {
 
     private static final Logger log = LoggerFactory.getLogger(EffectivePom.class);
 
+    private static final DependencyResolutionCache resolutionCache = new DependencyResolutionCache(Config.LOCAL_REPOSITORY.toPath());
+
     private String groupId;
     private String artifactId;
     private String version;
@@ -92,11 +99,14 @@ public class EffectivePom {
 
     private final MessageAggregator messages;
 
-    public static EffectivePom createAndResolve(String projectBaseDir, Model rawModel, MavenWorkspaceModelResolver modelResolver, List<CompilerOption> compilerOptions, MessageAggregator messages, List<WorkspaceConfigurationServersResult.Server> servers) throws ModelBuildingException {
-        return new EffectivePom(projectBaseDir, rawModel, modelResolver, compilerOptions, messages, servers);
+    // exchanges dependency resolutions with other language server instances (see DependencyResolutionCache)
+    private final SharedCache sharedCache;
+
+    public static EffectivePom createAndResolve(String projectBaseDir, Model rawModel, MavenWorkspaceModelResolver modelResolver, List<CompilerOption> compilerOptions, MessageAggregator messages, List<WorkspaceConfigurationServersResult.Server> servers, SharedCache sharedCache) throws ModelBuildingException {
+        return new EffectivePom(projectBaseDir, rawModel, modelResolver, compilerOptions, messages, servers, sharedCache);
     }
 
-    private EffectivePom(String projectBaseDir, Model rawModel, MavenWorkspaceModelResolver modelResolver, List<CompilerOption> compilerOptions, MessageAggregator messages, List<WorkspaceConfigurationServersResult.Server> servers) throws ModelBuildingException {
+    private EffectivePom(String projectBaseDir, Model rawModel, MavenWorkspaceModelResolver modelResolver, List<CompilerOption> compilerOptions, MessageAggregator messages, List<WorkspaceConfigurationServersResult.Server> servers, SharedCache sharedCache) throws ModelBuildingException {
         dependencies = new HashMap<>();
         transitiveDependencies = new ArrayList<>();
         dependencyManagement = new ArrayList<>();
@@ -106,6 +116,7 @@ public class EffectivePom {
         repositories = new ArrayList<>();
         isCompletelyResolved = new AtomicBoolean(false);
         this.messages = messages;
+        this.sharedCache = sharedCache;
         this.effectiveModel = MavenUtil.buildEffectiveModel(rawModel, projectBaseDir, modelResolver, repositorySystem, repositorySystemSession, servers);
 
         // Note: we support multiple comma-separated source directories here (not part of the official Maven spec)
@@ -203,16 +214,24 @@ public class EffectivePom {
 
     public Map<PackageIdentifier, List<JarSource>> resolveAndFetchTransitiveDependencies(Collection<PackageIdentifier> excludes, Map<String, Object> ctx, Span parent) {
 
+        // null if the resolution may change over time, which the key wouldn't tell
+        String cacheKey = DependencyResolutionCache.isCacheable(dependencies.values(), dependencyManagement)
+                ? DependencyResolutionCache.key(dependencies.values(), excludes, repositories, dependencyManagement)
+                : null;
+
         // Read transitive dependencies from cache if possible
         Map<PackageIdentifier, List<JarSource>> groupedDeps;
         if (Config.IGNORE_DEPENDENCY_RESOLUTION_CACHE) {
             groupedDeps = new HashMap<>();
             log.info("Dependency resolution cache ignored, resolving dependencies for {}:{}:{}", groupId, artifactId, version);
+        } else if (cacheKey == null) {
+            groupedDeps = new HashMap<>();
+            log.info("Resolving dependencies for {}:{}:{}, which has SNAPSHOT or version range dependencies", groupId, artifactId, version);
         } else {
             Span cachedDepsSpan = Tracing.startSpanFromContext(ctx, "resolution cache", parent);
             cachedDepsSpan.setTag("groupId", groupId);
             cachedDepsSpan.setTag("artifactId", artifactId);
-            groupedDeps = loadTransitiveDependencyList(dependencies, excludes);
+            groupedDeps = loadCachedResolution(cacheKey);
             if (groupedDeps != null) {
                 Tracing.endSpan(cachedDepsSpan);
                 setTransitiveDependencies(groupedDeps);
@@ -227,25 +246,23 @@ public class EffectivePom {
         Span fetchFromMavenSpan = Tracing.startSpanFromContext(ctx, "Maven resolution", parent);
         fetchFromMavenSpan.setTag("groupId", groupId);
         fetchFromMavenSpan.setTag("artifactId", artifactId);
-        List<Map<PackageIdentifier, List<JarSource>>> rawGroupedDeps = Collections.synchronizedList(new ArrayList<>());
-        CountDownLatch l = new CountDownLatch(dependencies.size());
+        // declared dependency -> its transitive dependencies
+        Map<PackageIdentifier, Map<PackageIdentifier, List<JarSource>>> rawGroupedDeps = new ConcurrentHashMap<>();
+        // set if any part of the graph couldn't be collected or fetched
+        AtomicBoolean incomplete = new AtomicBoolean(false);
+        List<CompletableFuture<Void>> fetches = new ArrayList<>();
         for (org.apache.maven.model.Dependency dep : dependencies.values()) {
-            AsyncUtils.runAsync(() -> {
-                try {
-                    if (excludes.contains(PackageIdentifier.ofMavenDep(dep))) {
-                        return;
-                    }
-                    rawGroupedDeps.add(this.fetchTransitiveDeps(dep, excludes));
-                } finally {
-                    l.countDown();
-                }
-            }, ExecutorUtils.getArtifactsFetcherExecutorService());
+            PackageIdentifier depId = PackageIdentifier.ofMavenDep(dep);
+            if (excludes.contains(depId)) {
+                continue;
+            }
+            fetches.add(fetchTransitiveDeps(dep, excludes, incomplete).thenAccept(deps -> rawGroupedDeps.put(depId, deps)));
         }
-        Util.waitFor(l, "could not fetch transitive dependencies");
+        CompletableFuture.allOf(fetches.toArray(new CompletableFuture[fetches.size()])).join();
         Tracing.endSpan(fetchFromMavenSpan);
 
         Set<String> seenJars = Sets.newHashSet();
-        for (Map<PackageIdentifier, List<JarSource>> pkgJars : rawGroupedDeps) {
+        for (Map<PackageIdentifier, List<JarSource>> pkgJars : rawGroupedDeps.values()) {
             for (Map.Entry<PackageIdentifier, List<JarSource>> e : pkgJars.entrySet()) {
                 PackageIdentifier pkg = e.getKey();
                 List<JarSource> jars = e.getValue();
@@ -261,12 +278,50 @@ public class EffectivePom {
             }
         }
 
-        // Write to cache
-        saveTransitiveDependencyList(groupedDeps);
+        // Write to cache, unless a retry may find more
+        if (cacheKey == null) {
+            log.info("Not caching the resolution of {}:{}:{}, which may change over time", groupId, artifactId, version);
+        } else if (incomplete.get()) {
+            log.info("Not caching the incomplete resolution of {}:{}:{}", groupId, artifactId, version);
+        } else {
+            saveResolution(cacheKey, groupedDeps);
+        }
         setTransitiveDependencies(groupedDeps);
         return groupedDeps;
     }
 
+    /**
+     * Fetches only the declared dependencies themselves (not their transitive dependencies), excluding the artifacts
+     * specified in the `excludes` parameter. This is much cheaper than resolving the transitive closure, because no
+     * dependency graph needs to be collected.
+     */
+    public Map<PackageIdentifier, List<JarSource>> fetchDirectDependencies(Collection<PackageIdentifier> excludes) {
+        ConcurrentHashMap<PackageIdentifier, List<JarSource>> result = new ConcurrentHashMap<>();
+        CountDownLatch l = new CountDownLatch(dependencies.size());
+        for (org.apache.maven.model.Dependency dep : dependencies.values()) {
+            AsyncUtils.runAsync(() -> {
+                try {
+                    PackageIdentifier depId = PackageIdentifier.ofMavenDep(dep);
+                    if (excludes.contains(depId)) {
+                        return;
+                    }
+                    Artifact artifact = fetchMavenArtifact(new DefaultArtifact(dep.getGroupId(), dep.getArtifactId(), dep.getClassifier(), dep.getType(), dep.getVersion()));
+                    if (artifact == null || artifact.getFile() == null) {
+                        return;
+                    }
+                    JarSource jar = JarSource.fromFileOrNull(artifact.getFile().toString());
+                    if (jar != null) {
+                        result.put(depId, Lists.newArrayList(jar));
+                    }
+                } finally {
+                    l.countDown();
+                }
+            }, ExecutorUtils.getReasonableFetcherExecutorService());
+        }
+        Util.waitFor(l, "could not fetch direct dependencies");
+        return result;
+    }
+
     public List<JarSource> getSystemDependencies() {
         return systemArtifacts.values().stream()
                 .filter(Optional::isPresent)
@@ -292,31 +347,94 @@ public class EffectivePom {
     }
 
     private Artifact fetchMavenArtifact(String coordinates) {
-        Artifact desiredArtifact = new DefaultArtifact(coordinates);
+        return fetchMavenArtifact(new DefaultArtifact(coordinates));
+    }
 
-        ArtifactRequest request = new ArtifactRequest();
-        request.setArtifact(desiredArtifact);
-        request.setRepositories(repositories);
+    private Artifact fetchMavenArtifact(Artifact desiredArtifact) {
+        return fetchMavenArtifactAsync(desiredArtifact, repositories).join();
+    }
 
-        try {
-            return repositorySystem.resolveArtifact(repositorySystemSession, request).getArtifact();
-        } catch (Exception exception) {
-            messages.error("Unable to resolve artifact {}", coordinates);
-            return null;
-        }
+    /**
+     * Fetches the artifact through the shared {@link ArtifactFetcher}. The returned future completes with null if
+     * the artifact can't be fetched.
+     */
+    private CompletableFuture<Artifact> fetchMavenArtifactAsync(Artifact desiredArtifact, List<RemoteRepository> repositories) {
+        return ArtifactFetcher.getInstance()
+                .fetch(repositorySystem, repositorySystemSession, desiredArtifact, repositories)
+                .handle((artifact, exception) -> {
+                    if (exception != null) {
+                        messages.error("Unable to resolve artifact {}", desiredArtifact);
+                        return null;
+                    }
+                    return artifact;
+                });
     }
 
     /**
      * Fetches the set of transitive dependencies rooted at the given dependency, excluding the artifacts specified in
-     * the `excludes` parameter.
+     * the `excludes` parameter. Sets `incomplete` if some of them couldn't be collected or fetched.
      *
      * TODO: this is known to be incorrect (i.e., its behavior diverges from `mvn dependency:tree && mvn dependency:resolve`) in 2 ways:
      *   1) It may resolve dependencies to the incorrect version, which may cause compiler errors if the fetched version is incompatible with the correct dependency version
      *   2) Local dependencies may be incorrectly resolved to remote external dependencies. This may lead to compiler errors. Even if there are no compiler errors,
      *      this may still result in jump-to-def jumping to the wrong location (the location in the external dep, rather than the local one).
      */
-    private Map<PackageIdentifier, List<JarSource>> fetchTransitiveDeps(org.apache.maven.model.Dependency dependency,
-                                                                        Collection<PackageIdentifier> excludes) {
+    private CompletableFuture<Map<PackageIdentifier, List<JarSource>>> fetchTransitiveDeps(org.apache.maven.model.Dependency dependency,
+                                                                                         Collection<PackageIdentifier> excludes,
+                                                                                         AtomicBoolean incomplete) {
+        return CompletableFuture.supplyAsync(() -> collectTransitiveDeps(dependency, excludes, incomplete), ExecutorUtils.getDependencyCollectorExecutorService())
+                .thenCompose(nodes -> {
+                    List<CompletableFuture<Artifact>> artifacts = nodes.stream()
+                            .map(node -> fetchMavenArtifactAsync(node.getArtifact(), node.getRepositories().isEmpty() ? repositories : node.getRepositories())
+                                    .thenCompose(a -> a == null ? CompletableFuture.<Artifact>completedFuture(null) : replaceWithStipulatedVersionAsync(a)))
+                            .collect(Collectors.toList());
+                    return CompletableFuture.allOf(artifacts.toArray(new CompletableFuture[artifacts.size()]))
+                            .thenApply(__ -> artifacts.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+                })
+                .thenApply(artifacts -> {
+                    long failed = artifacts.stream().filter(Objects::isNull).count();
+                    if (failed > 0) {
+                        incomplete.set(true);
+                    }
+                    if (failed > 0 && failed == artifacts.size()) {
+                        messages.error("Failed to resolve any transitive dependencies for {}", dependency);
+                    } else if (failed > 0) {
+                        messages.warn("Failed to resolve {} transitive dependencies for {}", failed, dependency);
+                    }
+                    Map<PackageIdentifier, List<Artifact>> m = artifacts.stream()
+                            .filter(Objects::nonNull)
+                            .collect(Collectors.groupingBy(a -> PackageIdentifier.ofMaven(a.getGroupId(), a.getArtifactId(), a.getBaseVersion() != null ? a.getBaseVersion() : a.getVersion())));
+                    Map<PackageIdentifier, List<JarSource>> files = Maps.newHashMap();
+                    for (Map.Entry<PackageIdentifier, List<Artifact>> e : m.entrySet()) {
+                        ArrayList<JarSource> jarFiles = e.getValue().stream()
+                                .map(Artifact::getFile)
+                                .filter(Objects::nonNull)
+                                .map(File::toString)
+                                .map(JarSource::fromFileOrNull)
+                                .filter(Objects::nonNull)
+                                .collect(Collectors.toCollection(ArrayList::new));
+                        if (jarFiles.size() < e.getValue().size()) {
+                            incomplete.set(true);
+                        }
+                        files.put(e.getKey(), jarFiles);
+                    }
+                    return files;
+                })
+                .exceptionally(exception -> {
+                    incomplete.set(true);
+                    messages.error("Unknown fatal exception resolving transitive dependencies for {}", dependency, exception);
+                    return ImmutableMap.of();
+                });
+    }
+
+    /**
+     * Collects the dependency graph rooted at the given dependency and returns the nodes whose artifacts belong on
+     * the compile classpath. No artifacts (other than POMs) are downloaded. Sets `incomplete` if the graph couldn't be
+     * collected entirely.
+     */
+    private List<DependencyNode> collectTransitiveDeps(org.apache.maven.model.Dependency dependency,
+                                                       Collection<PackageIdentifier> excludes,
+                                                       AtomicBoolean incomplete) {
         Artifact artifact = new DefaultArtifact(dependency.getGroupId(), dependency.getArtifactId(), dependency.getClassifier(), dependency.getType(), dependency.getVersion());
 
         Dependency aetherDep = new Dependency(artifact, JavaScopes.COMPILE, Boolean.valueOf(dependency.getOptional()));
@@ -363,59 +481,27 @@ public class EffectivePom {
         try {
             collectResult = repositorySystem.collectDependencies(repositorySystemSession, collectRequest);
         } catch (DependencyCollectionException exception) {
+            incomplete.set(true);
             messages.error("Unable to collect transitive dependencies for {}", dependency, exception);
             collectResult = exception.getResult();
             if (collectResult == null) {
-                return ImmutableMap.of();
+                return ImmutableList.of();
             }
         } catch (Exception exception) {
+            incomplete.set(true);
             messages.error("Unable to collect transitive dependencies for {}", dependency, exception);
-            return ImmutableMap.of();
+            return ImmutableList.of();
         }
 
         if (collectResult.getRoot() == null) {
-            return ImmutableMap.of();
+            return ImmutableList.of();
         }
 
-        DependencyRequest dependencyRequest = new DependencyRequest(collectResult.getRoot(), classpathFilter);
-
-        try {
-            DependencyResult dependencyResult;
-            try {
-                dependencyResult = repositorySystem.resolveDependencies(repositorySystemSession, dependencyRequest);
-            } catch (DependencyResolutionException exception) {
-                dependencyResult = exception.getResult();
-                if (dependencyResult == null) {
-                    messages.error("Failed to resolve any transitive dependencies for {}: {}", dependency, exception);
-                    return ImmutableMap.of();
-                }
-                messages.warn("Failed to resolve some transitive dependencies for {}: {}", dependency, exception.getMessage());
-            }
-
-            Map<PackageIdentifier, List<Artifact>> m = dependencyResult
-                    .getArtifactResults()
-                    .stream()
-                    .map(ArtifactResult::getArtifact)
-                    .filter(Objects::nonNull)
-                    .map(this::replaceWithStipulatedVersion)
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.groupingBy(a -> PackageIdentifier.ofMaven(a.getGroupId(), a.getArtifactId(), a.getBaseVersion() != null ? a.getBaseVersion() : a.getVersion())));
-            Map<PackageIdentifier, List<JarSource>> files = Maps.newHashMap();
-            for (Map.Entry<PackageIdentifier, List<Artifact>> e : m.entrySet()) {
-                ArrayList<JarSource> jarFiles = e.getValue().stream()
-                        .map(Artifact::getFile)
-                        .map(File::toString)
-                        .map(JarSource::fromFileOrNull)
-                        .filter(Objects::nonNull)
-                        .collect(Collectors.toCollection(ArrayList::new));
-                files.put(e.getKey(), jarFiles);
-            }
-
-            return files;
-        } catch (Exception exception) {
-            messages.error("Unknown fatal exception resolving transitive dependencies for {}", dependency, exception);
-            return ImmutableMap.of();
-        }
+        PreorderNodeListGenerator nodes = new PreorderNodeListGenerator();
+        collectResult.getRoot().accept(new FilteringDependencyVisitor(nodes, classpathFilter));
+        return nodes.getNodes().stream()
+                .filter(node -> node.getDependency() != null)
+                .collect(Collectors.toList());
     }
 
     private void setTransitiveDependencies(Map<PackageIdentifier, List<JarSource>> groupedDeps) {
@@ -425,125 +511,68 @@ public class EffectivePom {
         }
     }
 
-    private void saveTransitiveDependencyList(Map<PackageIdentifier, List<JarSource>> groupedJars) {
-        List<String> lines = new ArrayList<>();
-
-        List<PackageIdentifier> unfetchables = new ArrayList<>();
-        for (org.apache.maven.model.Dependency dependency : dependencies.values()) {
-            PackageIdentifier packageIdentifier = PackageIdentifier.ofMavenDep(dependency);
-            if (!groupedJars.containsKey(packageIdentifier)) {
-                unfetchables.add(packageIdentifier);
-            }
-        }
-
-        Path localRepoPath = Paths.get(Config.LOCAL_REPOSITORY.getAbsolutePath());
-
-        groupedJars.forEach((pkgId, jars) -> {
-            for (JarSource jar : jars) {
-                String id = String.join(":", pkgId.getId(), pkgId.getVersion());
-                String relPath = localRepoPath.relativize(Paths.get(jar.getFileName())).toString();
-                String line = id + "\t" + relPath;
-                lines.add(line);
-            }
-        });
-
-        for (PackageIdentifier unfetchable : unfetchables) {
-            String id = String.join(":", unfetchable.getId(), unfetchable.getVersion());
-            lines.add(id + "\t");
-        }
-
-        String thisArtifact = String.join("_", groupId, artifactId, version);
+    private void saveResolution(String cacheKey, Map<PackageIdentifier, List<JarSource>> groupedJars) {
+        Map<PackageIdentifier, List<String>> jars = new HashMap<>();
+        groupedJars.forEach((pkgId, pkgJars) -> jars.put(pkgId, pkgJars.stream()
+                .map(JarSource::getFileName)
+                .collect(Collectors.toList())));
         try {
-            Path depListPath = Paths.get(Config.LOCAL_REPOSITORY.getAbsolutePath(), thisArtifact);
-            Files.deleteIfExists(depListPath);
-            Path depPath = Files.createFile(depListPath);
-            Files.write(depPath, lines);
+            resolutionCache.save(cacheKey, new DependencyResolutionCache.Resolution(jars), sharedCache);
         } catch (IOException e) {
-            messages.warn("Couldn't write dependencies file for {}: {}", thisArtifact, e);
+            messages.warn("Couldn't write dependency resolution cache entry for {}:{}:{}: {}", groupId, artifactId, version, e);
         }
     }
 
-    private Map<PackageIdentifier, List<JarSource>> loadTransitiveDependencyList(
-            Map<String, org.apache.maven.model.Dependency> dependencies,
-            Collection<PackageIdentifier> exclusions
-    ) {
-        String thisArtifact = String.join("_", groupId, artifactId, version);
-        Path depList = Paths.get(Config.LOCAL_REPOSITORY.getAbsolutePath(), thisArtifact);
-        if (!Files.exists(depList)) {
-            return null;
-        }
-
-        List<String> lines;
-        try {
-            lines = Files.readAllLines(depList);
-        } catch (IOException e) {
-            messages.error("Error reading cached dependency list for {}; {}", thisArtifact, e);
+    /**
+     * Returns the transitive dependencies recorded in the resolution cache under the given key, or null on a cache
+     * miss. Jars that have since disappeared from the local repository are fetched again.
+     */
+    private Map<PackageIdentifier, List<JarSource>> loadCachedResolution(String cacheKey) {
+        DependencyResolutionCache.Resolution resolution = resolutionCache.load(cacheKey, sharedCache);
+        if (resolution == null) {
             return null;
         }
 
-
-        Set<PackageIdentifier> cachedPackageIds = new HashSet<>();
-        for (String line : lines) {
-            String pkgId = StringUtils.substringBefore(line, "\t");
-            String[] pkgComponents = StringUtils.split(pkgId, ':');
-            PackageIdentifier packageIdentifier = PackageIdentifier.ofMaven(pkgComponents[0], pkgComponents[1], pkgComponents[2]);
-            cachedPackageIds.add(packageIdentifier);
-        }
-        // make sure each declared dependency is in the cached list, unless it's been excluded
-        for (org.apache.maven.model.Dependency dependency : dependencies.values()) {
-            PackageIdentifier depId = PackageIdentifier.ofMaven(dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion());
-            if (!cachedPackageIds.contains(depId) && !exclusions.contains(depId)) {
-                messages.warn("Cached list for {}:{}:{} is out of date; doesn't contain {}", groupId, artifactId, version, dependency);
-                return null;
-            }
-        }
-
         // actually a concurrent hash map of pkgIds -> synchronized lists
         ConcurrentHashMap<PackageIdentifier, List<JarSource>> result = new ConcurrentHashMap<>();
-        CountDownLatch jarsLoaded = new CountDownLatch(lines.size());
-        for (String line : lines) {
-            AsyncUtils.runAsync(() -> {
-                try {
-                    String pkgId = StringUtils.substringBefore(line, "\t");
-                    String jarLoc = StringUtils.substringAfter(line, "\t");
-
-                    String[] pkgComponents = StringUtils.split(pkgId, ':');
-                    PackageIdentifier packageIdentifier = PackageIdentifier.ofMaven(pkgComponents[0], pkgComponents[1], pkgComponents[2]);
-//                    cachedPackageIds.putIfAbsent(packageIdentifier, true);
-                    if (jarLoc.trim().isEmpty()) {
-                        return;
-                    }
-                    Path jarPath = Paths.get(Config.LOCAL_REPOSITORY.getAbsolutePath(), jarLoc);
-                    JarSource jarFile = null;
-                    if (Files.exists(jarPath)) {
-                        try {
-                            jarFile = JarSource.fromFile(jarPath.toString());
-                        } catch (IOException e) {
-                            messages.error("Error loading cached jar file {}; {}", jarPath, e);
-                        }
-                    } else {
-                        Artifact artifact = fetchMavenArtifact(pkgId);
-                        if (artifact != null) {
-                            artifact = replaceWithStipulatedVersion(artifact);
-                        }
-                        if (artifact != null && artifact.getFile() != null) {
+        int numJars = resolution.jars.values().stream().mapToInt(List::size).sum();
+        CountDownLatch jarsLoaded = new CountDownLatch(numJars);
+        resolution.jars.forEach((packageIdentifier, jarPaths) -> {
+            for (String jarPath : jarPaths) {
+                AsyncUtils.runAsync(() -> {
+                    try {
+                        JarSource jarFile = null;
+                        if (Files.exists(Paths.get(jarPath))) {
                             try {
-                                jarFile = JarSource.fromFile(artifact.getFile().toString());
+                                jarFile = JarSource.fromFile(jarPath);
                             } catch (IOException e) {
-                                messages.error("Error loading fetched jar file {}; {}", jarPath, e);
+                                messages.error("Error loading cached jar file {}; {}", jarPath, e);
                             }
                         } else {
-                            messages.warn("Couldn't fetch artifact {} from Maven", pkgId);
+                            String coordinates = String.join(":", packageIdentifier.getId(), packageIdentifier.getVersion());
+                            Artifact artifact = fetchMavenArtifact(coordinates);
+                            if (artifact != null) {
+                                artifact = replaceWithStipulatedVersion(artifact);
+                            }
+                            if (artifact != null && artifact.getFile() != null) {
+                                try {
+                                    jarFile = JarSource.fromFile(artifact.getFile().toString());
+                                } catch (IOException e) {
+                                    messages.error("Error loading fetched jar file {}; {}", jarPath, e);
+                                }
+                            } else {
+                                messages.warn("Couldn't fetch artifact {} from Maven", coordinates);
+                            }
                         }
+                        if (jarFile != null) {
+                            result.computeIfAbsent(packageIdentifier, __ -> Collections.synchronizedList(new ArrayList<>())).add(jarFile);
+                        }
+                    } finally {
+                        jarsLoaded.countDown();
                     }
-                    if (jarFile != null) {
-                        result.computeIfAbsent(packageIdentifier, __ -> Collections.synchronizedList(new ArrayList<>())).add(jarFile);
-                    }
-                } finally {
-                    jarsLoaded.countDown();
-                }
-            }, ExecutorUtils.getReasonableFetcherExecutorService());
-        }
+                }, ExecutorUtils.getReasonableFetcherExecutorService());
+            }
+        });
 
         Util.waitFor(jarsLoaded, "Interrupted while waiting for cached jars to be loaded");
 
@@ -565,6 +594,10 @@ public class EffectivePom {
     }
 
     private Artifact replaceWithStipulatedVersion(Artifact artifact) {
+        return replaceWithStipulatedVersionAsync(artifact).join();
+    }
+
+    private CompletableFuture<Artifact> replaceWithStipulatedVersionAsync(Artifact artifact) {
         String groupAndArtifact = String.join(":", artifact.getGroupId(), artifact.getArtifactId());
         org.apache.maven.model.Dependency stipulatedDependency = dependencies.get(groupAndArtifact);
         if (stipulatedDependency != null && !stipulatedDependency.getVersion().equals(artifact.getVersion())) {
@@ -574,9 +607,9 @@ public class EffectivePom {
                     artifact.getVersion(),
                     stipulatedDependency.getVersion()
             );
-            return fetchMavenArtifact(String.join(":", groupAndArtifact, stipulatedDependency.getVersion()));
+            return fetchMavenArtifactAsync(new DefaultArtifact(String.join(":", groupAndArtifact, stipulatedDependency.getVersion())), repositories);
         } else {
-            return artifact;
+            return CompletableFuture.completedFuture(artifact);
         }
     }
 
@@ -0,0 +1,147 @@
+package com.sourcegraph.langserver.langservice.maven;
+
+import com.sourcegraph.lsp.MessageAggregator;
+import com.sourcegraph.lsp.SharedCache;
+import com.sourcegraph.lsp.domain.result.WorkspaceConfigurationServersResult;
+import com.sourcegraph.utils.ExecutorUtils;
+import org.apache.maven.model.Parent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * EffectivePoms builds the effective POMs of all modules of a workspace concurrently. A module is only built once
+ * the modules it inherits from (its parent chain inside the workspace) have been built, so that remote ancestors and
+ * imported BOMs shared by a reactor are fetched once by the parent instead of by every child at the same time.
+ * Modules that don't depend on each other are built in parallel on the model builder executor.
+ *
+ * A failure to build a module does not prevent its children from being built (as was the case when modules were
+ * built one after another); the failure is reported through the module's future.
+ */
+public class EffectivePoms {
+
+    private static final Logger log = LoggerFactory.getLogger(EffectivePoms.class);
+
+    /**
+     * Describes a single module to build
+     */
+    public static class Module {
+        /**
+         * Caller-defined key under which the resulting effective POM is returned
+         */
+        public final String key;
+        public final String projectBaseDir;
+        public final MavenWorkspaceModelResolver.PomInfo pomInfo;
+
+        public Module(String key, String projectBaseDir, MavenWorkspaceModelResolver.PomInfo pomInfo) {
+            this.key = key;
+            this.projectBaseDir = projectBaseDir;
+            this.pomInfo = pomInfo;
+        }
+    }
+
+    /**
+     * Starts building the effective POM of every module, parents first. Returns the futures keyed by module key, in
+     * the order of the given modules. Progress is reported through messages.
+     */
+    public static Map<String, CompletableFuture<EffectivePom>> createAndResolveAll(Collection<Module> modules,
+                                                                                  MavenWorkspaceModelResolver modelResolver,
+                                                                                  MessageAggregator messages,
+                                                                                  List<WorkspaceConfigurationServersResult.Server> servers,
+                                                                                  SharedCache sharedCache) {
+        Map<String, Module> modulesById = new HashMap<>();
+        for (Module module : modules) {
+            modulesById.put(MavenWorkspaceModelResolver.getModelId(module.pomInfo.rawModel), module);
+        }
+
+        int total = modules.size();
+        int reportEvery = Math.max(1, total / 10);
+        AtomicInteger done = new AtomicInteger();
+        messages.progress("Building {} effective POMs", total);
+
+        Map<Module, CompletableFuture<EffectivePom>> scheduled = new IdentityHashMap<>();
+        Map<String, CompletableFuture<EffectivePom>> ret = new LinkedHashMap<>();
+        for (Module module : modules) {
+            CompletableFuture<EffectivePom> future = schedule(module,
+                    modulesById,
+                    scheduled,
+                    Collections.newSetFromMap(new IdentityHashMap<>()),
+                    modelResolver,
+                    messages,
+                    servers,
+                    sharedCache);
+            ret.put(module.key, future.whenComplete((effectivePom, ex) -> {
+                int n = done.incrementAndGet();
+                if (n % reportEvery == 0 || n == total) {
+                    messages.progress("Built {}/{} effective POMs", n, total);
+                }
+            }));
+        }
+        return ret;
+    }
+
+    /**
+     * Waits for the effective POM and rethrows the original cause of a failure
+     */
+    public static EffectivePom await(CompletableFuture<EffectivePom> future) throws Exception {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static CompletableFuture<EffectivePom> schedule(Module module,
+                                                           Map<String, Module> modulesById,
+                                                           Map<Module, CompletableFuture<EffectivePom>> scheduled,
+                                                           Set<Module> visiting,
+                                                           MavenWorkspaceModelResolver modelResolver,
+                                                           MessageAggregator messages,
+                                                           List<WorkspaceConfigurationServersResult.Server> servers,
+                                                           SharedCache sharedCache) {
+        CompletableFuture<EffectivePom> future = scheduled.get(module);
+        if (future != null) {
+            return future;
+        }
+        visiting.add(module);
+
+        CompletableFuture<?> parentBuilt = CompletableFuture.completedFuture(null);
+        Parent parent = module.pomInfo.rawModel.getParent();
+        if (parent != null) {
+            Module parentModule = modulesById.get(MavenUtil.getModelId(parent.getGroupId(), parent.getArtifactId()));
+            if (parentModule != null && parentModule != module) {
+                if (visiting.contains(parentModule)) {
+                    log.warn("Cycle in parent hierarchy of {}, building it without waiting for {}", module.key, parentModule.key);
+                } else {
+                    // the child only waits for the parent, it doesn't care whether the parent could be built
+                    parentBuilt = schedule(parentModule, modulesById, scheduled, visiting, modelResolver, messages, servers, sharedCache)
+                            .handle((effectivePom, ex) -> null);
+                }
+            }
+        }
+
+        future = parentBuilt.thenApplyAsync(ignored -> {
+            try {
+                return EffectivePom.createAndResolve(module.projectBaseDir,
+                        module.pomInfo.rawModel,
+                        modelResolver,
+                        module.pomInfo.compilerOptions,
+                        messages,
+                        servers,
+                        sharedCache);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, ExecutorUtils.getModelBuilderExecutorService());
+        scheduled.put(module, future);
+        visiting.remove(module);
+        return future;
+    }
+}
@@ -2,10 +2,10 @@ package com.sourcegraph.langserver.langservice.maven;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Sets;
 import com.sourcegraph.langserver.langservice.compiler.CompilerOption;
 import com.sourcegraph.lsp.FileContentProvider;
 import com.sourcegraph.lsp.MessageAggregator;
+import com.sourcegraph.utils.ExecutorUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.model.Model;
@@ -20,9 +20,11 @@ import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -40,39 +42,60 @@ public class MavenWorkspaceModelResolver implements WorkspaceModelResolver {
     private static final Logger log = LoggerFactory.getLogger(MavenWorkspaceModelResolver.class);
 
     public static MavenWorkspaceModelResolver newResolver(Collection<String> pomUris, FileContentProvider fileProvider, MessageAggregator messages) {
-        Set<PomInfo> pomInfos = Sets.newHashSet();
-        MavenXpp3Reader mavenReader = new MavenXpp3Reader();
+        // POMs are read and parsed concurrently; a failure to read or parse one POM only drops that POM
+        Set<PomInfo> pomInfos = ConcurrentHashMap.newKeySet();
+        List<CompletableFuture<Void>> futures = new ArrayList<>(pomUris.size());
         for (String uri : pomUris) {
-            log.trace("Processing pom.xml from {}", uri);
-            String pomContent;
-            try {
-                pomContent = IOUtils.toString(fileProvider.readContent(uri), StandardCharsets.UTF_8);
-            } catch (Exception e) {
-                messages.warn("Failed to read POM content from {}: {}", uri, e.getMessage());
-                continue;
-            }
-            try {
-                Model rawModel = mavenReader.read(new StringReader(pomContent));
-                // ensure that raw model passing Maven validation
-                MavenUtil.dehydrate(rawModel);
-                pomInfos.add(new PomInfo(StringUtils.removeEnd(uri, "pom.xml"), rawModel, ImmutableList.of()));
-            } catch (IOException | XmlPullParserException e) {
-                messages.warn("Failed to parse POM content from {}: {}", uri, e.getMessage());
-            }
+            futures.add(CompletableFuture.runAsync(() -> {
+                PomInfo pomInfo = readPomInfo(uri, fileProvider, messages);
+                if (pomInfo != null) {
+                    pomInfos.add(pomInfo);
+                }
+            }, ExecutorUtils.getFileFetcherExecutorService()));
         }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).join();
         return new MavenWorkspaceModelResolver(pomInfos);
     }
 
+    private static PomInfo readPomInfo(String uri, FileContentProvider fileProvider, MessageAggregator messages) {
+        log.trace("Processing pom.xml from {}", uri);
+        String pomContent;
+        try {
+            pomContent = IOUtils.toString(fileProvider.readContent(uri), StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            messages.warn("Failed to read POM content from {}: {}", uri, e.getMessage());
+            return null;
+        }
+        try {
+            // MavenXpp3Reader is not threadsafe, so each POM gets its own reader
+            Model rawModel = new MavenXpp3Reader().read(new StringReader(pomContent));
+            // ensure that raw model passing Maven validation
+            MavenUtil.dehydrate(rawModel);
+            return new PomInfo(StringUtils.removeEnd(uri, "pom.xml"), rawModel, ImmutableList.of());
+        } catch (IOException | XmlPullParserException e) {
+            messages.warn("Failed to parse POM content from {}: {}", uri, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns the "groupId:artifactId" key under which a raw model is registered. The group ID is inherited from the
+     * parent if the model doesn't declare one.
+     */
+    public static String getModelId(Model rawModel) {
+        String groupId = rawModel.getGroupId();
+        if (groupId == null && rawModel.getParent() != null) {
+            groupId = rawModel.getParent().getGroupId();
+        }
+        return MavenUtil.getModelId(groupId, rawModel.getArtifactId());
+    }
+
     private ConcurrentHashMap<String, PomInfo> pomInfos;
 
     public MavenWorkspaceModelResolver(Collection<PomInfo> pomInfos) {
         this.pomInfos = new ConcurrentHashMap<>();
         for (PomInfo pomInfo : pomInfos) {
-            String groupId = pomInfo.rawModel.getGroupId();
-            if (groupId == null && pomInfo.rawModel.getParent() != null) {
-                groupId = pomInfo.rawModel.getParent().getGroupId();
-            }
-            this.pomInfos.put(String.format("%s:%s", groupId, pomInfo.rawModel.getArtifactId()), pomInfo);
+            this.pomInfos.put(getModelId(pomInfo.rawModel), pomInfo);
         }
     }
 
@@ -87,8 +110,10 @@ public class MavenWorkspaceModelResolver implements WorkspaceModelResolver {
         if (pomInfo == null) {
             return null;
         }
-        pomInfo.rawModel.setPomFile(new File("DUMMY"));
-        return pomInfo.rawModel;
+        // effective POMs are built concurrently, so hand out a copy rather than mutating the shared raw model
+        Model rawModel = pomInfo.rawModel.clone();
+        rawModel.setPomFile(new File("DUMMY"));
+        return rawModel;
     }
 
     @Override
@@ -0,0 +1,136 @@
+package com.sourcegraph.langserver.langservice.workspace;
+
+import com.sourcegraph.langserver.langservice.javaconfigjson.Project;
+import com.sourcegraph.lsp.domain.structures.PackageIdentifier;
+import com.sourcegraph.lsp.domain.structures.PackageInformation;
+
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ForkedWorkspace shares the source files, configuration and dependency JARs of another workspace, but has a compiler
+ * and a workspace manager of its own. javac compilers are not threadsafe, so threads that compile the same workspaces
+ * concurrently (see RepositoryIndexer) each use forks of them instead of resolving the workspaces again.
+ *
+ * Source files are copied the first time the fork returns them (see SourceFile.copy). The copies share the content of
+ * the originals until one of them is edited, so that a session forked for a connection's edits (see
+ * WorkspaceManager.fork) doesn't change the files of the session it was forked from, and vice versa.
+ *
+ * The forked workspace must provide its configuration (see ConfigProvider), as all workspaces do.
+ */
+public class ForkedWorkspace implements Workspace, ConfigProvider {
+
+    private final Workspace workspace;
+
+    private JavacHolder compiler;
+
+    // System.nanoTime() of the last call to getCompiler
+    private long compilerLastUsed;
+
+    private WorkspaceManager workspaceManager;
+
+    // file name -> copy of the source file of the forked workspace
+    private final ConcurrentHashMap<String, JavaFileObject> sourceFiles = new ConcurrentHashMap<>();
+
+    public ForkedWorkspace(Workspace workspace) {
+        this.workspace = workspace;
+    }
+
+    public Project getConfig() {
+        return ((ConfigProvider) workspace).getConfig();
+    }
+
+    public String getRootURI() {
+        return workspace.getRootURI();
+    }
+
+    public Set<String> getSourceUris() throws Exception {
+        return workspace.getSourceUris();
+    }
+
+    public Set<JavaFileObject> getSourceFiles() {
+        return copies(workspace.getSourceFiles());
+    }
+
+    public Set<JavaFileObject> getPackageSourceFileObjects(String packageName) throws Exception {
+        return copies(workspace.getPackageSourceFileObjects(packageName));
+    }
+
+    public Set<JavaFileObject> getPackageFileObjects(String packageName) throws IOException {
+        return copies(workspace.getPackageFileObjects(packageName));
+    }
+
+    public Set<JavaFileObject> getJARPackageFileObjects(String packageName) {
+        return workspace.getJARPackageFileObjects(packageName);
+    }
+
+    public JavaFileObject getSourceFile(String uri) {
+        JavaFileObject file = workspace.getSourceFile(uri);
+        return file == null ? null : copy(file);
+    }
+
+    private JavaFileObject copy(JavaFileObject file) {
+        if (!(file instanceof SourceFile)) {
+            return file;
+        }
+        return sourceFiles.computeIfAbsent(file.getName(), name -> ((SourceFile) file).copy());
+    }
+
+    private Set<JavaFileObject> copies(Set<JavaFileObject> files) {
+        Set<JavaFileObject> copies = new HashSet<>();
+        for (JavaFileObject file : files) {
+            copies.add(copy(file));
+        }
+        return copies;
+    }
+
+    public boolean containsSourceFile(String uri) throws Exception {
+        return workspace.containsSourceFile(uri);
+    }
+
+    public long getContentVersion() {
+        return workspace.getContentVersion();
+    }
+
+    public PackageIdentifier getArtifactIdentifier(URI fileObjectUri) {
+        return workspace.getArtifactIdentifier(fileObjectUri);
+    }
+
+    public PackageInformation getThisArtifactInformation() {
+        return workspace.getThisArtifactInformation();
+    }
+
+    public Set<PackageIdentifier> getDependencies() {
+        return workspace.getDependencies();
+    }
+
+    public void setWorkspaceManager(WorkspaceManager w) {
+        workspaceManager = w;
+    }
+
+    public WorkspaceManager getWorkspaceManager() {
+        return workspaceManager;
+    }
+
+    synchronized public JavacHolder getCompiler() {
+        if (compiler == null) {
+            compiler = JavacHolderPool.take(this, getConfig().getCompilerOptions());
+        }
+        compilerLastUsed = System.nanoTime();
+        return compiler;
+    }
+
+    synchronized public JavacHolder releaseCompiler() {
+        JavacHolder released = compiler;
+        compiler = null;
+        return released;
+    }
+
+    synchronized public long getCompilerLastUsed() {
+        return compiler != null ? compilerLastUsed : Long.MAX_VALUE;
+    }
+}
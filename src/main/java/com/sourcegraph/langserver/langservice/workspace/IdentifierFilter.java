@@ -0,0 +1,166 @@
+package com.sourcegraph.langserver.langservice.workspace;
+
+import java.util.Arrays;
+
+/**
+ * IdentifierFilter is a Bloom filter of the identifiers of a source file, ignoring case, built by a cheap lexer pass
+ * over its content. It answers whether a name may appear in the file without parsing it: a negative answer is
+ * definite, so files that can't refer to a symbol are skipped before javac ever sees them, while a positive answer is
+ * wrong for about 1% of the names that don't appear.
+ *
+ * The lexer skips comments, string and character literals, which javac doesn't turn into names either. Keywords are
+ * kept as identifiers, which only costs a few bits. Content with anything that looks like a unicode escape, which
+ * javac decodes before reading identifiers, gets a filter that accepts every name.
+ *
+ * Filters are immutable; SourceFile keeps the filter of its current content.
+ */
+public class IdentifierFilter {
+
+    private static final int BITS_PER_IDENTIFIER = 10;
+
+    private static final int HASHES = 7;
+
+    private static final IdentifierFilter ACCEPT_ALL = new IdentifierFilter(null, 0);
+
+    // null if the filter accepts every name
+    private final long[] bits;
+
+    private final int identifiers;
+
+    private IdentifierFilter(long[] bits, int identifiers) {
+        this.bits = bits;
+        this.identifiers = identifiers;
+    }
+
+    public static IdentifierFilter of(CharSequence content) {
+        int length = content.length();
+        for (int i = 0; i + 1 < length; i++) {
+            if (content.charAt(i) == '\\' && content.charAt(i + 1) == 'u') {
+                return ACCEPT_ALL;
+            }
+        }
+
+        long[] hashes = new long[64];
+        int count = 0;
+        int i = 0;
+        while (i < length) {
+            char c = content.charAt(i);
+            if (Character.isJavaIdentifierStart(c)) {
+                long hash = FNV_OFFSET;
+                while (i < length && Character.isJavaIdentifierPart(content.charAt(i))) {
+                    hash = hash(hash, content.charAt(i));
+                    i++;
+                }
+                if (count == hashes.length) {
+                    hashes = Arrays.copyOf(hashes, count * 2);
+                }
+                hashes[count++] = hash;
+            } else if (c == '/' && i + 1 < length && content.charAt(i + 1) == '/') {
+                while (i < length && content.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < length && content.charAt(i + 1) == '*') {
+                i += 2;
+                while (i < length && !(content.charAt(i) == '*' && i + 1 < length && content.charAt(i + 1) == '/')) {
+                    i++;
+                }
+                i += 2;
+            } else if (c == '"' || c == '\'') {
+                i++;
+                while (i < length && content.charAt(i) != c && content.charAt(i) != '\n') {
+                    if (content.charAt(i) == '\\') {
+                        i++;
+                    }
+                    i++;
+                }
+                i++;
+            } else {
+                i++;
+            }
+        }
+
+        Arrays.sort(hashes, 0, count);
+        int distinct = 0;
+        for (int j = 0; j < count; j++) {
+            if (j == 0 || hashes[j] != hashes[j - 1]) {
+                hashes[distinct++] = hashes[j];
+            }
+        }
+        long[] bits = new long[Math.max(1, (distinct * BITS_PER_IDENTIFIER + 63) / 64)];
+        for (int j = 0; j < distinct; j++) {
+            long hash = hashes[j];
+            for (int k = 0; k < HASHES; k++) {
+                int bit = bit(hash, k, bits.length * 64);
+                bits[bit >>> 6] |= 1L << bit;
+            }
+        }
+        return new IdentifierFilter(bits, distinct);
+    }
+
+    /**
+     * Tells if the name may be one of the identifiers of the file, ignoring case. Names that aren't identifiers, such
+     * as "&lt;init&gt;", may always be there.
+     */
+    public boolean mightContain(String name) {
+        if (bits == null || !isAsciiIdentifier(name)) {
+            return true;
+        }
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < name.length(); i++) {
+            hash = hash(hash, name.charAt(i));
+        }
+        for (int k = 0; k < HASHES; k++) {
+            int bit = bit(hash, k, bits.length * 64);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of distinct identifiers in the filter, ignoring case
+     */
+    public int getIdentifiers() {
+        return identifiers;
+    }
+
+    /**
+     * Returns the size of the filter, in bytes
+     */
+    public int getBytes() {
+        return bits == null ? 0 : bits.length * 8;
+    }
+
+    // lowercasing an identifier char by char is only known to agree with String.toLowerCase, which javac's names are
+    // compared with, when the result is ASCII
+    private static boolean isAsciiIdentifier(String name) {
+        if (name == null || name.isEmpty() || !Character.isJavaIdentifierStart(name.charAt(0))) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c >= 128 || !Character.isJavaIdentifierPart(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static long hash(long hash, char c) {
+        return (hash ^ Character.toLowerCase(c)) * FNV_PRIME;
+    }
+
+    /**
+     * Returns the k-th bit of the hash, by double hashing
+     */
+    private static int bit(long hash, int k, int size) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        return Math.floorMod(h1 + k * h2, size);
+    }
+}
@@ -40,6 +40,9 @@ public class JavaConfigWorkspace implements Workspace, ConfigProvider {
     private Project config;
     private JavacHolder compiler;
 
+    // System.nanoTime() of the last call to getCompiler
+    private long compilerLastUsed;
+
     // cached map of package name to file URIs
     private ConcurrentHashMap<String, Set<String>> packageUris;
 
@@ -147,7 +150,7 @@ public class JavaConfigWorkspace implements Workspace, ConfigProvider {
         }
         // Add implicit dependencies on standard libraries
         if (sourceUris.size() > 0) {
-            Collection<StandardLibrary> stdlibs = StandardLibraries.getInstance().getLibrariesInUse(getCompiler().getOptions());
+            Collection<StandardLibrary> stdlibs = StandardLibraries.getInstance().getLibrariesInUse(getConfig().getCompilerOptions());
             for (StandardLibrary stdlib : stdlibs) {
                 if (!Objects.equals(stdlib.getPackageIdentifier(), getThisArtifactIdentifier())) {
                     deps.add(DependencyReference.of(stdlib.getPackageIdentifier(), ImmutableMap.of()));
@@ -188,6 +191,11 @@ public class JavaConfigWorkspace implements Workspace, ConfigProvider {
         return getSourceUris().contains(uri);
     }
 
+    public long getContentVersion() {
+        // the sources and jars of a javaconfig.json workspace never change once they have been loaded
+        return 0;
+    }
+
     /**
      * Returns the Java source files in a given Java package.
      */
@@ -245,9 +253,20 @@ public class JavaConfigWorkspace implements Workspace, ConfigProvider {
 
     synchronized public JavacHolder getCompiler() {
         if (compiler == null) {
-            compiler = new JavacHolder(this, getConfig().getCompilerOptions());
+            compiler = JavacHolderPool.take(this, getConfig().getCompilerOptions());
         }
+        compilerLastUsed = System.nanoTime();
         return compiler;
     }
 
+    synchronized public JavacHolder releaseCompiler() {
+        JavacHolder released = compiler;
+        compiler = null;
+        return released;
+    }
+
+    synchronized public long getCompilerLastUsed() {
+        return compiler != null ? compilerLastUsed : Long.MAX_VALUE;
+    }
+
 }
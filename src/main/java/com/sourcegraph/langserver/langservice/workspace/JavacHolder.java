@@ -1,5 +1,6 @@
 package com.sourcegraph.langserver.langservice.workspace;
 
+import com.sourcegraph.common.Config;
 import com.sourcegraph.langserver.langservice.compiler.CompilerOption;
 import com.sourcegraph.langserver.langservice.compiler.Javac;
 import com.sun.source.tree.CompilationUnitTree;
@@ -8,8 +9,11 @@ import com.sun.source.util.TaskListener;
 import com.sun.source.util.Trees;
 import com.sun.tools.javac.api.JavacTrees;
 import com.sun.tools.javac.api.MultiTaskListener;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symtab;
 import com.sun.tools.javac.code.Types;
 import com.sun.tools.javac.comp.AttrContext;
+import com.sun.tools.javac.comp.EnterUtils;
 import com.sun.tools.javac.comp.Env;
 import com.sun.tools.javac.comp.ForgivingAttr;
 import com.sun.tools.javac.comp.Todo;
@@ -27,7 +31,9 @@ import javax.lang.model.element.Element;
 import javax.tools.DiagnosticListener;
 import javax.tools.JavaFileObject;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Maintains a reference to a Java compiler,
@@ -72,7 +78,28 @@ public class JavacHolder implements Javac {
 
     private final ShimFileManager fileManager;
 
+    // Source files (by name) entered while analyzing another file whose classes haven't been attributed yet, mapped to
+    // their environments (see Config.HEADER_ONLY_ATTRIBUTION)
+    private final Map<String, List<Env<AttrContext>>> unattributed = new HashMap<>();
+
+    // Source files (by name) mapped to the compilation units their classes were entered from, see reenter
+    private final Map<String, JCTree.JCCompilationUnit> entered = new HashMap<>();
+
+    // Config.HEADER_ONLY_ATTRIBUTION, unless set otherwise for this compiler
+    private boolean headerOnlyAttribution = Config.HEADER_ONLY_ATTRIBUTION;
+
+    // Config.LAZY_METHOD_ATTRIBUTION, unless set otherwise for this compiler
+    private boolean lazyMethodAttribution = Config.LAZY_METHOD_ATTRIBUTION;
+
     public JavacHolder(Workspace workspace, List<CompilerOption> compilerOptions) {
+        this(compilerOptions);
+        bind(workspace);
+    }
+
+    /**
+     * Creates a compiler that isn't bound to a workspace yet, and can only see the standard library until it is
+     */
+    JavacHolder(List<CompilerOption> compilerOptions) {
         this.context = new Context();
         this.errorsDelegate = diagnostic -> {};
         this.errors = diagnostic -> errorsDelegate.report(diagnostic);
@@ -84,7 +111,7 @@ public class JavacHolder implements Javac {
         rawOptions.add(new CompilerOption("-nowarn", ""));
         this.rawOptions.forEach(option -> this.options.put(option.getName(), option.getValue()));
         this.javacLog = Log.instance(context);
-        this.fileManager = new ShimFileManager(context, workspace);
+        this.fileManager = new ShimFileManager(context, null);
         this.context.put(ShimFileManager.class, this.fileManager);
         this.attr = ForgivingAttr.instance(context);
         this.parserFactory = FuzzyParserFactory.instance(context);
@@ -115,6 +142,35 @@ public class JavacHolder implements Javac {
         this.javacLog.multipleErrors = true;
     }
 
+    void bind(Workspace workspace) {
+        fileManager.bind(workspace);
+    }
+
+    /**
+     * Sends the diagnostics of later compilations to the given listener
+     */
+    synchronized void setDiagnosticListener(DiagnosticListener<JavaFileObject> listener) {
+        errorsDelegate = listener;
+    }
+
+    synchronized void setHeaderOnlyAttribution(boolean headerOnlyAttribution) {
+        this.headerOnlyAttribution = headerOnlyAttribution;
+    }
+
+    synchronized void setLazyMethodAttribution(boolean lazyMethodAttribution) {
+        this.lazyMethodAttribution = lazyMethodAttribution;
+    }
+
+    /**
+     * Loads the symbols every compilation needs (java.lang.Object, java.lang.String and their package), so that the
+     * first analysis done with this compiler doesn't have to
+     */
+    synchronized void preload() {
+        Symtab syms = Symtab.instance(context);
+        syms.objectType.tsym.complete();
+        syms.stringType.tsym.complete();
+    }
+
     public List<CompilerOption> getOriginalOptions() {
         return originalOptions;
     }
@@ -151,36 +207,111 @@ public class JavacHolder implements Javac {
      * If these files reference un-parsed dependencies, those dependencies will also be parsed and compiled.
      */
     public synchronized List<Element> analyze(CompilationUnitTree parsed) {
+        return analyze(parsed, -1);
+    }
+
+    public synchronized List<Element> analyze(CompilationUnitTree parsed, long position) {
 
         List<Element> elements = new ArrayList<>();
 
-        compiler.processAnnotations(compiler.enterTrees(com.sun.tools.javac.util.List.of((JCTree.JCCompilationUnit) parsed)));
+        String target = parsed.getSourceFile().getName();
+        List<Env<AttrContext>> skipped = unattributed.remove(target);
+        if (skipped != null) {
+            // The file has already been entered while analyzing another file, entering it again would make its
+            // classes duplicates. Attribute the classes that were skipped then.
+            skipped.forEach(todo::add);
+        } else {
+            enter((JCTree.JCCompilationUnit) parsed);
+        }
+
+        if (lazyMethodAttribution && position >= 0) {
+            attr.setLazyBodies(target, position);
+        }
+        try {
+            while (!todo.isEmpty()) {
+                Env<AttrContext> next = todo.remove();
+
+                String sourceFile = next.toplevel.sourcefile.getName();
+                entered.put(sourceFile, next.toplevel);
+                if (headerOnlyAttribution && !sourceFile.equals(target)) {
+                    // only needed for its members and signatures, which javac entered along with the class
+                    unattributed.computeIfAbsent(sourceFile, f -> new ArrayList<>()).add(next);
+                    addElement(next.tree, elements);
+                    continue;
+                }
 
+                try {
+                    // We don't do the desugar or generate phases, because they remove method bodies and methods
+                    Env<AttrContext> attributedTree = compiler.attribute(next);
+                    addElement(attributedTree.tree, elements);
+                } catch (Throwable e) {
+                    log.error("Error compiling {}", next.toplevel.sourcefile.getName(), e);
+                    // Keep going
+                }
+            }
+        } finally {
+            attr.setLazyBodies(null, -1);
+        }
+        return elements;
+    }
+
+    /**
+     * Enters the classes of the unit, replacing those entered from a previous content of its file
+     */
+    private void enter(JCTree.JCCompilationUnit unit) {
+        String fileName = unit.getSourceFile().getName();
+        JCTree.JCCompilationUnit previous = entered.remove(fileName);
+        List<Symbol.ClassSymbol> unentered = new ArrayList<>();
+        if (previous == unit) {
+            // javac can't enter the same tree twice
+            unit = parse(unit.getSourceFile());
+        }
+        if (previous != null) {
+            attr.forgetSkippedBodies(fileName);
+            unentered = EnterUtils.unenter(context, previous);
+        }
+        compiler.processAnnotations(compiler.enterTrees(com.sun.tools.javac.util.List.of(unit)));
+        entered.put(fileName, unit);
+        EnterUtils.removeVanished(context, unentered);
+    }
+
+    public synchronized boolean reenter(JavaFileObject file) {
+        if (!entered.containsKey(file.getName())) {
+            return false;
+        }
+        unattributed.remove(file.getName());
+        enter(parse(file));
+        // attributed when the files are analyzed, like the files entered along with another one in header-only mode
         while (!todo.isEmpty()) {
             Env<AttrContext> next = todo.remove();
+            String sourceFile = next.toplevel.sourcefile.getName();
+            entered.put(sourceFile, next.toplevel);
+            unattributed.computeIfAbsent(sourceFile, f -> new ArrayList<>()).add(next);
+        }
+        return true;
+    }
+
+    public synchronized void attributeBodies(JavaFileObject file, long position) {
+        attr.attribSkippedBodies(file.getName(), position);
+    }
+
+    public synchronized boolean isAttributed(JavaFileObject file) {
+        return !unattributed.containsKey(file.getName());
+    }
 
-            try {
-                // We don't do the desugar or generate phases, because they remove method bodies and methods
-                Env<AttrContext> attributedTree = compiler.attribute(next);
-
-                switch (attributedTree.tree.getTag()) {
-                    case CLASSDEF:
-                        JCTree.JCClassDecl classDecl = (JCTree.JCClassDecl) attributedTree.tree;
-                        if (classDecl.sym != null) {
-                            elements.add(classDecl.sym);
-                        }
-                        break;
-                    case TOPLEVEL:
-                        JCTree.JCCompilationUnit compilationUnit = (JCTree.JCCompilationUnit) attributedTree.tree;
-                        if (compilationUnit.packge != null) {
-                            elements.add(compilationUnit.packge);
-                        }
+    private static void addElement(JCTree tree, List<Element> elements) {
+        switch (tree.getTag()) {
+            case CLASSDEF:
+                JCTree.JCClassDecl classDecl = (JCTree.JCClassDecl) tree;
+                if (classDecl.sym != null) {
+                    elements.add(classDecl.sym);
+                }
+                break;
+            case TOPLEVEL:
+                JCTree.JCCompilationUnit compilationUnit = (JCTree.JCCompilationUnit) tree;
+                if (compilationUnit.packge != null) {
+                    elements.add(compilationUnit.packge);
                 }
-            } catch (Throwable e) {
-                log.error("Error compiling {}", next.toplevel.sourcefile.getName(), e);
-                // Keep going
-            }
         }
-        return elements;
     }
 }
@@ -0,0 +1,162 @@
+package com.sourcegraph.langserver.langservice.workspace;
+
+import com.sourcegraph.common.Config;
+import com.sourcegraph.langserver.langservice.compiler.CompilerOption;
+import com.sourcegraph.utils.Util;
+import com.sun.source.tree.CompilationUnitTree;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * JavacHolderPool hands out compilers to workspaces. Creating a compiler sets up a whole javac context and loads the
+ * core standard library symbols; for the option sets most workspaces use (no options, `-source 1.8 -target 1.8`, the
+ * Android boot classpath), the pool keeps up to Config.COMPILER_POOL_SIZE compilers that went through that ahead of
+ * time, and replaces each one handed out in the background. Compilers for other option sets are created on demand.
+ *
+ * warmUp, called at server start, also runs a few throwaway compilations of a small source file, so that the JIT has
+ * compiled the parser and attribution paths before the first request needs them.
+ */
+public class JavacHolderPool {
+
+    private static final Logger log = LoggerFactory.getLogger(JavacHolderPool.class);
+
+    private static final int WARM_UP_RUNS = 10;
+
+    private static final String WARM_UP_URI = "file:///warmup/Warmup.java";
+
+    private static final String WARM_UP_SOURCE = String.join("\n",
+            "import java.util.*;",
+            "import java.util.function.Function;",
+            "import java.util.stream.Collectors;",
+            "",
+            "public class Warmup<T extends Comparable<T>> extends AbstractList<T> implements Runnable {",
+            "    private final List<T> items = new ArrayList<>();",
+            "    private final Map<String, Integer> counts = new HashMap<>();",
+            "",
+            "    @Override",
+            "    public T get(int index) {",
+            "        return items.get(index);",
+            "    }",
+            "",
+            "    @Override",
+            "    public int size() {",
+            "        return items.size();",
+            "    }",
+            "",
+            "    @Override",
+            "    public void run() {",
+            "        for (int i = 0; i < items.size(); i++) {",
+            "            String key = String.valueOf(items.get(i));",
+            "            counts.merge(key, 1, Integer::sum);",
+            "        }",
+            "        Function<T, String> f = t -> t.toString().trim();",
+            "        List<String> names = items.stream().sorted().map(f).collect(Collectors.toList());",
+            "        try {",
+            "            System.out.println(names.isEmpty() ? \"none\" : names.get(0) + counts.size());",
+            "        } catch (RuntimeException e) {",
+            "            throw new IllegalStateException(e);",
+            "        }",
+            "    }",
+            "",
+            "    static class Node<K> {",
+            "        K value;",
+            "        Node<K> next;",
+            "    }",
+            "}",
+            "");
+
+    // option set key -> pre-created compilers for that option set
+    private static final Map<String, Queue<JavacHolder>> pools = new ConcurrentHashMap<>();
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "javac-pool");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Returns a compiler for the workspace, taking a pre-created one if the pool has one for the given options
+     */
+    static JavacHolder take(Workspace workspace, List<CompilerOption> compilerOptions) {
+        String key = key(compilerOptions);
+        Queue<JavacHolder> pool = pools.get(key);
+        JavacHolder compiler = pool != null ? pool.poll() : null;
+        if (compiler == null) {
+            return new JavacHolder(workspace, compilerOptions);
+        }
+        compiler.bind(workspace);
+        executor.submit(() -> fill(key, compilerOptions));
+        return compiler;
+    }
+
+    /**
+     * Runs the JIT warm-up and fills the pool for the common option sets, in the background
+     */
+    public static void warmUp() {
+        if (Config.COMPILER_POOL_SIZE <= 0) {
+            return;
+        }
+        executor.submit(JavacHolderPool::runWarmUp);
+        for (List<CompilerOption> compilerOptions : commonOptionSets()) {
+            String key = key(compilerOptions);
+            pools.putIfAbsent(key, new ConcurrentLinkedQueue<>());
+            executor.submit(() -> fill(key, compilerOptions));
+        }
+    }
+
+    private static List<List<CompilerOption>> commonOptionSets() {
+        List<List<CompilerOption>> optionSets = new ArrayList<>();
+        optionSets.add(Collections.emptyList());
+        optionSets.add(Arrays.asList(new CompilerOption("-source", "1.8"), new CompilerOption("-target", "1.8")));
+        if (Config.ANDROID_JAR_PATH != null) {
+            optionSets.add(Collections.singletonList(new CompilerOption("-bootclasspath", Config.ANDROID_JAR_PATH)));
+        }
+        return optionSets;
+    }
+
+    private static void fill(String key, List<CompilerOption> compilerOptions) {
+        Queue<JavacHolder> pool = pools.get(key);
+        if (pool == null) {
+            return;
+        }
+        try {
+            while (pool.size() < Config.COMPILER_POOL_SIZE) {
+                JavacHolder compiler = new JavacHolder(compilerOptions);
+                compiler.preload();
+                pool.add(compiler);
+            }
+        } catch (Throwable e) {
+            // e.g., a missing boot classpath; workspaces with these options get compilers created on demand
+            log.warn("Could not pre-create compiler for options [{}], not pooling them", key, e);
+            pools.remove(key, pool);
+        }
+    }
+
+    private static void runWarmUp() {
+        Util.Timer t = Util.timeStart("compiler warm-up");
+        try {
+            for (int i = 0; i < WARM_UP_RUNS; i++) {
+                JavacHolder compiler = new JavacHolder(Collections.emptyList());
+                CompilationUnitTree tree = compiler.parse(new SourceFile(WARM_UP_URI, "Warmup", WARM_UP_SOURCE));
+                compiler.analyze(tree);
+            }
+        } catch (Throwable e) {
+            log.warn("Compiler warm-up failed", e);
+        } finally {
+            t.end();
+        }
+    }
+
+    private static String key(List<CompilerOption> compilerOptions) {
+        return compilerOptions.stream()
+                .map(o -> o.getValue() == null || o.getValue().isEmpty() ? o.getName() : o.getName() + " " + o.getValue())
+                .collect(Collectors.joining(" "));
+    }
+}
@@ -2,7 +2,7 @@ package com.sourcegraph.langserver.langservice.workspace;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Lists;
+import com.sourcegraph.common.Config;
 import com.sourcegraph.langserver.langservice.compiler.JarSource;
 import com.sourcegraph.lsp.FileContentProvider;
 import com.sourcegraph.langserver.langservice.javaconfigjson.Project;
@@ -13,6 +13,7 @@ import com.sourcegraph.lsp.domain.structures.PackageDescriptor;
 import com.sourcegraph.lsp.domain.structures.PackageIdentifier;
 import com.sourcegraph.lsp.domain.structures.PackageInformation;
 import com.sourcegraph.langserver.langservice.maven.EffectivePom;
+import com.sourcegraph.utils.ExecutorUtils;
 import com.sourcegraph.utils.LanguageUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -24,7 +25,12 @@ import java.net.URI;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.jar.JarEntry;
 import java.util.stream.Collectors;
 
@@ -42,16 +48,41 @@ public class MavenWorkspace implements Workspace, ConfigProvider {
     private WorkspaceSourceFileProvider fileProvider;
     private JavacHolder compiler;
 
+    // System.nanoTime() of the last call to getCompiler
+    private long compilerLastUsed;
+
     private EffectivePom effectivePom;
 
-    // all POMs that are "local" to the entire repository (needed for exclusions when fetching dependencies)
-    private List<EffectivePom> allEffectivePoms;
+    // the artifacts of all POMs that are "local" to the entire repository (needed for exclusions when fetching
+    // dependencies)
+    private Supplier<Set<PackageIdentifier>> localArtifacts;
 
     // cached map of package name to file URIs
     private ConcurrentHashMap<String, Set<String>> packageUris;
 
-    // cached map of package name to JAR classes
-    private ConcurrentHashMap<String, Set<JavaFileObject>> jarClasses;
+    // cached map of package name to JAR classes of the dependencies indexed so far
+    private final ConcurrentHashMap<String, Set<JavaFileObject>> jarClasses;
+
+    // file names of the jars indexed so far
+    private final Set<String> indexedJars;
+
+    // packages of the jars indexed so far along with their ancestor packages, unless Config.SHARED_JAR_INDEX is set
+    private final Set<String> jarPackages;
+
+    // completes once the JAR classes that listings wait for have been indexed: those of the direct dependencies with
+    // Config.LAZY_DEPENDENCY_RESOLUTION, those of all dependencies otherwise; guarded by this
+    private CompletableFuture<Void> jarsIndexed;
+
+    // completes once the JAR classes of all dependencies have been indexed, or indexing them failed; set along with
+    // jarsIndexed
+    private volatile CompletableFuture<Void> allJarsIndexed;
+
+    // with Config.SHARED_JAR_INDEX, the indexes of the jars indexed so far (instead of jarClasses and
+    // jarClassUriToPackageIdentifier), mapped to the dependency they belong to
+    private final Map<SharedJarIndex, PackageIdentifier> sharedJars;
+
+    // incremented whenever a jar is added to jarClasses
+    private final AtomicLong contentVersion = new AtomicLong();
 
     // map from JavaFileObject.toURI() to PackageIdentifier
     private ConcurrentHashMap<URI, PackageIdentifier> jarClassUriToPackageIdentifier;
@@ -63,11 +94,28 @@ public class MavenWorkspace implements Workspace, ConfigProvider {
             String rootURI,
             EffectivePom effectivePom,
             Collection<EffectivePom> allEffectivePoms
+    ) {
+        this(files, rootURI, effectivePom, constant(artifactsOf(allEffectivePoms)));
+    }
+
+    /**
+     * Creates a workspace whose local artifacts are only known once dependencies are resolved, which is the case when
+     * workspaces are created while the effective POMs of other modules are still being built
+     */
+    public MavenWorkspace(
+            FileContentProvider files,
+            String rootURI,
+            EffectivePom effectivePom,
+            Supplier<Set<PackageIdentifier>> localArtifacts
     ) {
         this.rootURI= rootURI;
         this.effectivePom = effectivePom;
-        this.allEffectivePoms = Lists.newArrayList(allEffectivePoms);
+        this.localArtifacts = localArtifacts;
         this.jarClassUriToPackageIdentifier = new ConcurrentHashMap<>();
+        this.jarClasses = new ConcurrentHashMap<>();
+        this.indexedJars = ConcurrentHashMap.newKeySet();
+        this.jarPackages = ConcurrentHashMap.newKeySet();
+        this.sharedJars = new ConcurrentHashMap<>();
         this.fileProvider = new WorkspaceSourceFileProvider(files, rootURI, this);
     }
 
@@ -103,15 +151,86 @@ public class MavenWorkspace implements Workspace, ConfigProvider {
         }
     }
 
+    /**
+     * Returns the JAR classes of the package. With Config.LAZY_DEPENDENCY_RESOLUTION, a package that neither the
+     * direct dependencies nor the sources of the workspace know of (as a package or an ancestor of one) may only be
+     * provided by a transitive dependency, so its listing waits for the whole closure to be indexed: javac never sees
+     * a package as empty because it was listed too early. If dependencies can't be resolved, the classes of the jars
+     * indexed so far are returned.
+     */
     public Set<JavaFileObject> getJARPackageFileObjects(String packageName) {
-        if (jarClasses != null) {
-            return jarClasses.getOrDefault(packageName, ImmutableSet.of());
+        try {
+            startIndexingJars().join();
+            if (!isKnownPackage(packageName)) {
+                allJarsIndexed.join();
+            }
+        } catch (CompletionException | CancellationException e) {
+            // logged by startIndexingJars
         }
-        ConcurrentHashMap<String, Set<JavaFileObject>> packageClasses = new ConcurrentHashMap<>();
-        for (Map.Entry<PackageIdentifier, List<JarSource>> e : getAllDeps().entrySet()) {
+        if (Config.SHARED_JAR_INDEX) {
+            Set<JavaFileObject> classes = new HashSet<>();
+            for (SharedJarIndex index : sharedJars.keySet()) {
+                classes.addAll(index.getClasses(packageName));
+            }
+            return classes;
+        }
+        return jarClasses.getOrDefault(packageName, ImmutableSet.of());
+    }
+
+    /**
+     * Starts indexing the JAR classes of the dependencies if that hasn't happened yet, and returns jarsIndexed. Without
+     * lazy dependency resolution, the first caller resolves and indexes all dependencies. With lazy dependency
+     * resolution, it only indexes the direct dependencies, and the transitive closure is indexed in the background.
+     * Resolution goes over the network, so it runs without holding the workspace lock; only the future is published
+     * under it, and other callers wait for it.
+     */
+    private CompletableFuture<Void> startIndexingJars() {
+        CompletableFuture<Void> indexed;
+        synchronized (this) {
+            if (jarsIndexed != null) {
+                return jarsIndexed;
+            }
+            indexed = jarsIndexed = new CompletableFuture<>();
+            allJarsIndexed = indexed;
+        }
+        try {
+            if (Config.LAZY_DEPENDENCY_RESOLUTION) {
+                Map<PackageIdentifier, List<JarSource>> d = new HashMap<>();
+                d.put(PackageIdentifier.of(PackageIdentifier.Type.STDLIB, "SYSTEM_JARS", null, null, null), effectivePom.getSystemDependencies());
+                d.putAll(effectivePom.fetchDirectDependencies(getLocalExcludes()));
+                indexJars(d);
+                allJarsIndexed = CompletableFuture.runAsync(() -> indexJars(getAllDeps()), ExecutorUtils.getExecutorService()).exceptionally(e -> {
+                    log.error("Could not index the transitive dependencies of {}: {}", rootURI, e);
+                    return null;
+                });
+            } else {
+                indexJars(getAllDeps());
+            }
+            indexed.complete(null);
+        } catch (RuntimeException e) {
+            log.error("Could not index the dependencies of {}: {}", rootURI, e);
+            synchronized (this) {
+                // let a later listing try again
+                jarsIndexed = null;
+            }
+            indexed.completeExceptionally(e);
+        }
+        return indexed;
+    }
+
+    private void indexJars(Map<PackageIdentifier, List<JarSource>> deps) {
+        for (Map.Entry<PackageIdentifier, List<JarSource>> e : deps.entrySet()) {
             PackageIdentifier pkgID = e.getKey();
             List<JarSource> jars = e.getValue();
             for (JarSource jar : jars) {
+                if (!indexedJars.add(jar.getFileName())) {
+                    continue;
+                }
+                if (Config.SHARED_JAR_INDEX) {
+                    sharedJars.putIfAbsent(SharedJarIndex.of(jar), pkgID);
+                    contentVersion.incrementAndGet();
+                    continue;
+                }
                 Enumeration<JarEntry> entries = jar.entries();
                 while (entries.hasMoreElements()) {
                     JarEntry jarEntry = entries.nextElement();
@@ -120,13 +239,55 @@ public class MavenWorkspace implements Workspace, ConfigProvider {
                     }
                     JarEntryFile classFile = new JarEntryFile(jarEntry.getName(), jar, jarEntry);
                     String filePackageName = Workspace.Utils.classFileToPackageName(classFile.getName());
-                    packageClasses.computeIfAbsent(filePackageName, __ -> new HashSet<>()).add(classFile);
                     jarClassUriToPackageIdentifier.put(classFile.toUri(), pkgID);
+                    jarClasses.computeIfAbsent(filePackageName, __ -> ConcurrentHashMap.newKeySet()).add(classFile);
+                    addPackageAndAncestors(jarPackages, filePackageName);
                 }
+                contentVersion.incrementAndGet();
             }
         }
-        jarClasses = packageClasses;
-        return jarClasses.getOrDefault(packageName, ImmutableSet.of());
+    }
+
+    /**
+     * Tells if the package, or a package under it, is provided by the jars indexed so far or by the sources of the
+     * workspace
+     */
+    private boolean isKnownPackage(String packageName) {
+        if (Config.SHARED_JAR_INDEX) {
+            for (SharedJarIndex index : sharedJars.keySet()) {
+                if (index.containsPackage(packageName)) {
+                    return true;
+                }
+            }
+        } else if (jarPackages.contains(packageName)) {
+            return true;
+        }
+        try {
+            getPackageUris(packageName);
+        } catch (Exception e) {
+            return false;
+        }
+        String prefix = packageName + ".";
+        for (String sourcePackage : packageUris.keySet()) {
+            if (sourcePackage.equals(packageName) || sourcePackage.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long getContentVersion() {
+        return contentVersion.get();
+    }
+
+    static void addPackageAndAncestors(Set<String> packages, String packageName) {
+        while (packages.add(packageName)) {
+            int pos = packageName.lastIndexOf('.');
+            if (pos < 0) {
+                break;
+            }
+            packageName = packageName.substring(0, pos);
+        }
     }
 
     public PackageIdentifier getThisArtifactIdentifier() {
@@ -141,6 +302,15 @@ public class MavenWorkspace implements Workspace, ConfigProvider {
         if (fileProvider.getFetchedSourceFileUris().contains(fileObjectUri)) {
             return getThisArtifactIdentifier();
         }
+        if (Config.SHARED_JAR_INDEX) {
+            String name = fileObjectUri.toString();
+            for (Map.Entry<SharedJarIndex, PackageIdentifier> e : sharedJars.entrySet()) {
+                if (e.getKey().containsClass(name)) {
+                    return e.getValue();
+                }
+            }
+            return null;
+        }
         return jarClassUriToPackageIdentifier.get(fileObjectUri);
     }
 
@@ -158,7 +328,7 @@ public class MavenWorkspace implements Workspace, ConfigProvider {
         }
         // Add implicit dependencies on standard libraries
         if (sourceUris.size() > 0) {
-            Collection<StandardLibrary> stdlibs = StandardLibraries.getInstance().getLibrariesInUse(getCompiler().getOptions());
+            Collection<StandardLibrary> stdlibs = StandardLibraries.getInstance().getLibrariesInUse(getConfig().getCompilerOptions());
             for (StandardLibrary stdlib : stdlibs) {
                 if (!Objects.equals(stdlib.getPackageIdentifier(), getThisArtifactIdentifier())) {
                     deps.add(DependencyReference.of(stdlib.getPackageIdentifier(), ImmutableMap.of()));
@@ -225,21 +395,43 @@ public class MavenWorkspace implements Workspace, ConfigProvider {
 
     private Map<PackageIdentifier, List<JarSource>> allDeps;
 
-    synchronized private Map<PackageIdentifier, List<JarSource>> getAllDeps() {
-        if (allDeps == null) {
-            Map<PackageIdentifier, List<JarSource>> d = new HashMap<>();
-            try {
-                Set<PackageIdentifier> excludes = allEffectivePoms.stream().map(MavenWorkspace::effectivePOMConfig)
-                        .map(p -> PackageIdentifier.ofMaven(p.getGroupId(), p.getArtifactId(), p.getVersion()))
-                        .collect(Collectors.toSet());
-                d.put(PackageIdentifier.of(PackageIdentifier.Type.STDLIB, "SYSTEM_JARS", null, null, null), effectivePom.getSystemDependencies());
-                d.putAll(effectivePom.resolveAndFetchTransitiveDependencies(excludes, new HashMap<>(), null));
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-           }
-           allDeps = d;
+    // guards allDeps; resolution can take a long time, so it must not hold the workspace lock
+    private final Object allDepsLock = new Object();
+
+    private Map<PackageIdentifier, List<JarSource>> getAllDeps() {
+        synchronized (allDepsLock) {
+            if (allDeps == null) {
+                Map<PackageIdentifier, List<JarSource>> d = new HashMap<>();
+                try {
+                    d.put(PackageIdentifier.of(PackageIdentifier.Type.STDLIB, "SYSTEM_JARS", null, null, null), effectivePom.getSystemDependencies());
+                    d.putAll(effectivePom.resolveAndFetchTransitiveDependencies(getLocalExcludes(), new HashMap<>(), null));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                allDeps = d;
+            }
+            return allDeps;
         }
-        return allDeps;
+    }
+
+    /**
+     * Returns the artifacts of all POMs local to the repository, which must not be fetched as remote dependencies
+     */
+    private Set<PackageIdentifier> getLocalExcludes() {
+        return localArtifacts.get();
+    }
+
+    /**
+     * Returns the artifact of each effective POM
+     */
+    public static Set<PackageIdentifier> artifactsOf(Collection<EffectivePom> effectivePoms) {
+        return effectivePoms.stream()
+                .map(p -> PackageIdentifier.ofMaven(p.getGroupId(), p.getArtifactId(), p.getVersion()))
+                .collect(Collectors.toSet());
+    }
+
+    private static <T> Supplier<T> constant(T value) {
+        return () -> value;
     }
 
     private List<PackageIdentifier> directDeps;
@@ -270,11 +462,22 @@ public class MavenWorkspace implements Workspace, ConfigProvider {
 
     synchronized public JavacHolder getCompiler() {
         if (compiler == null) {
-            compiler = new JavacHolder(this, getConfig().getCompilerOptions());
+            compiler = JavacHolderPool.take(this, getConfig().getCompilerOptions());
         }
+        compilerLastUsed = System.nanoTime();
         return compiler;
     }
 
+    synchronized public JavacHolder releaseCompiler() {
+        JavacHolder released = compiler;
+        compiler = null;
+        return released;
+    }
+
+    synchronized public long getCompilerLastUsed() {
+        return compiler != null ? compilerLastUsed : Long.MAX_VALUE;
+    }
+
     private static Project effectivePOMConfig(EffectivePom effectivePom) {
         Project p = new Project();
         p.setCompilerOptions(effectivePom.getCompilerOptions());
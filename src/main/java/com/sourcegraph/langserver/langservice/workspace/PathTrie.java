@@ -0,0 +1,72 @@
+package com.sourcegraph.langserver.langservice.workspace;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * PathTrie maps directories (given as URIs or paths) to values, and finds the values of all directories that contain
+ * a given URI in time proportional to the depth of the URI rather than to the number of directories.
+ *
+ * Directories and URIs are compared segment by segment, ignoring a leading "file://" and empty segments, so a
+ * directory contains a URI whenever the URI starts with the directory followed by "/".
+ *
+ * PathTrie is threadsafe. Directories may be added while it is being read (workspaces are added as their models are
+ * built); a read that runs concurrently with a write may or may not see the value being added.
+ */
+class PathTrie<T> {
+
+    private static class Node<T> {
+        final Map<String, Node<T>> children = new ConcurrentHashMap<>();
+        final CopyOnWriteArrayList<T> values = new CopyOnWriteArrayList<>();
+    }
+
+    private final Node<T> root = new Node<>();
+
+    /**
+     * Associates the value with the given directory. A directory may have several values; they are returned in
+     * insertion order.
+     */
+    void put(String dir, T value) {
+        Node<T> node = root;
+        for (String segment : segments(dir)) {
+            node = node.children.computeIfAbsent(segment, s -> new Node<>());
+        }
+        node.values.addIfAbsent(value);
+    }
+
+    /**
+     * Returns the values of all directories that contain (or are equal to) the given URI, innermost directory first
+     */
+    List<T> getContaining(String uri) {
+        List<List<T>> matches = new ArrayList<>();
+        Node<T> node = root;
+        if (!node.values.isEmpty()) {
+            matches.add(node.values);
+        }
+        for (String segment : segments(uri)) {
+            node = node.children.get(segment);
+            if (node == null) {
+                break;
+            }
+            if (!node.values.isEmpty()) {
+                matches.add(node.values);
+            }
+        }
+        List<T> ret = new ArrayList<>();
+        for (int i = matches.size() - 1; i >= 0; i--) {
+            for (T value : matches.get(i)) {
+                if (!ret.contains(value)) {
+                    ret.add(value);
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static String[] segments(String uri) {
+        return StringUtils.split(StringUtils.removeStart(uri, "file://"), '/');
+    }
+}
@@ -0,0 +1,96 @@
+package com.sourcegraph.langserver.langservice.workspace;
+
+import com.google.common.collect.ImmutableSet;
+import com.sourcegraph.langserver.langservice.compiler.JarSource;
+
+import javax.tools.JavaFileObject;
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.jar.JarEntry;
+
+/**
+ * SharedJarIndex is the index of the classes of a dependency jar, shared by all the workspaces that depend on the same
+ * jar file (see Config.SHARED_JAR_INDEX). In a multi-module repository, most modules depend on the same jars, so
+ * each jar's classes are listed once instead of once per module. The class files themselves are read-only, so javac
+ * instances of different workspaces can read them concurrently.
+ *
+ * Indexes are held weakly by the cache, so an index goes away along with the last workspace that uses it.
+ */
+class SharedJarIndex {
+
+    // jar file name and modification time -> index
+    private static final Map<String, WeakReference<SharedJarIndex>> cache = new HashMap<>();
+
+    // package name -> classes of that package
+    private final Map<String, Set<JavaFileObject>> classes;
+
+    // every package in classes along with its ancestor packages
+    private final Set<String> packages;
+
+    // names of the class files in the jar, as returned by JavaFileObject.getName
+    private final Set<String> classNames;
+
+    private SharedJarIndex(JarSource jar) {
+        Map<String, Set<JavaFileObject>> classes = new HashMap<>();
+        Set<String> packages = new HashSet<>();
+        Set<String> classNames = new HashSet<>();
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            JarEntry jarEntry = entries.nextElement();
+            if (!jarEntry.getName().endsWith(".class")) {
+                continue;
+            }
+            JarEntryFile classFile = new JarEntryFile(jarEntry.getName(), jar, jarEntry);
+            String filePackageName = Workspace.Utils.classFileToPackageName(classFile.getName());
+            classes.computeIfAbsent(filePackageName, __ -> new HashSet<>()).add(classFile);
+            classNames.add(classFile.getName());
+            MavenWorkspace.addPackageAndAncestors(packages, filePackageName);
+        }
+        classes.replaceAll((packageName, files) -> Collections.unmodifiableSet(files));
+        this.classes = classes;
+        this.packages = packages;
+        this.classNames = classNames;
+    }
+
+    /**
+     * Returns the index of the given jar, indexing it if no workspace has indexed the same jar file yet
+     */
+    static SharedJarIndex of(JarSource jar) {
+        String key = jar.getFileName() + "@" + new File(jar.getFileName()).lastModified();
+        SharedJarIndex index = get(key);
+        if (index != null) {
+            return index;
+        }
+        // indexed outside of the lock, so that workspaces can index different jars concurrently
+        SharedJarIndex created = new SharedJarIndex(jar);
+        synchronized (cache) {
+            index = get(key);
+            if (index != null) {
+                return index;
+            }
+            cache.values().removeIf(r -> r.get() == null);
+            cache.put(key, new WeakReference<>(created));
+            return created;
+        }
+    }
+
+    private static SharedJarIndex get(String key) {
+        synchronized (cache) {
+            WeakReference<SharedJarIndex> ref = cache.get(key);
+            return ref != null ? ref.get() : null;
+        }
+    }
+
+    Set<JavaFileObject> getClasses(String packageName) {
+        return classes.getOrDefault(packageName, ImmutableSet.of());
+    }
+
+    boolean containsPackage(String packageName) {
+        return packages.contains(packageName);
+    }
+
+    boolean containsClass(String name) {
+        return classNames.contains(name);
+    }
+}
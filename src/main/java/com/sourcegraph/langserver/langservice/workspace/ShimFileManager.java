@@ -14,9 +14,13 @@ import javax.tools.JavaFileObject;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 
 /**
@@ -39,13 +43,35 @@ public class ShimFileManager extends JavacFileManager {
 
     private static final DomainValidator domainValidator = DomainValidator.getInstance();
 
-    private final Workspace workspace;
+    // null until the file manager's compiler is handed out to a workspace (see JavacHolderPool); until then, only the
+    // standard library is visible
+    private volatile Workspace workspace;
+
+    // package name -> files of that package in this workspace and its internal dependencies
+    private final ConcurrentHashMap<String, PackageListing> packageListings = new ConcurrentHashMap<>();
+
+    /**
+     * The files of a package, along with the workspaces they were listed from and the content version of each
+     */
+    private static class PackageListing {
+        final Map<Workspace, Long> contentVersions;
+        final List<JavaFileObject> files;
+
+        PackageListing(Map<Workspace, Long> contentVersions, List<JavaFileObject> files) {
+            this.contentVersions = contentVersions;
+            this.files = files;
+        }
+    }
 
     public ShimFileManager(Context context, Workspace workspace) {
         super(context, true, null);
         this.workspace = workspace;
     }
 
+    void bind(Workspace workspace) {
+        this.workspace = workspace;
+    }
+
     @Override
     public Iterable<JavaFileObject> list(
             Location location,
@@ -64,6 +90,7 @@ public class ShimFileManager extends JavacFileManager {
         // the system file manager (which will return class files directly from platform jars). This greatly speeds up
         // performance for things like OpenJDK and Android-SDK, which contain several thousand source files.
         if (location.getName().equals("CLASS_PATH")
+                && workspace != null
                 && !domainValidator.isValidTld(packageName)
                 && !StandardLibraries.isStandardLibraryPackage(packageName)) {
             files = getTransitivePackageFileObjects(packageName);
@@ -80,7 +107,33 @@ public class ShimFileManager extends JavacFileManager {
         return files;
     }
 
+    /**
+     * Returns the files of a package in this workspace and its internal dependencies, source files first. Listings are
+     * cached until the sources or JAR classes of one of those workspaces change.
+     */
     private List<JavaFileObject> getTransitivePackageFileObjects(String packageName) {
+        PackageIdentifier workspaceId = workspace.getThisArtifactInformation().getPackage().getIdentifier();
+        Set<Workspace> workspaceDeps = workspace.getWorkspaceManager().getInternalDependencies(workspaceId);
+
+        // Keyed by the workspaces themselves as well, since a dependency added later may still be at version 0. The
+        // versions are read before listing, so a change that races with the listing leaves the entry stale rather than
+        // wrong.
+        Map<Workspace, Long> contentVersions = new HashMap<>();
+        contentVersions.put(workspace, workspace.getContentVersion());
+        for (Workspace depWorkspace : workspaceDeps) {
+            contentVersions.put(depWorkspace, depWorkspace.getContentVersion());
+        }
+        PackageListing cached = packageListings.get(packageName);
+        if (cached != null && cached.contentVersions.equals(contentVersions)) {
+            return cached.files;
+        }
+
+        List<JavaFileObject> files = Collections.unmodifiableList(listPackageFileObjects(packageName, workspaceDeps));
+        packageListings.put(packageName, new PackageListing(contentVersions, files));
+        return files;
+    }
+
+    private List<JavaFileObject> listPackageFileObjects(String packageName, Set<Workspace> workspaceDeps) {
 
         // Get my source files
         List<JavaFileObject> files;
@@ -91,8 +144,6 @@ public class ShimFileManager extends JavacFileManager {
         }
 
         // Get source files from local dependency workspaces
-        PackageIdentifier workspaceId = workspace.getThisArtifactInformation().getPackage().getIdentifier();
-        Set<Workspace> workspaceDeps = workspace.getWorkspaceManager().getInternalDependencies(workspaceId);
         workspaceDeps.stream()
                 .map(depWorkspace -> {
                     try {
@@ -111,13 +162,13 @@ public class ShimFileManager extends JavacFileManager {
         futurePackages.add(
                 CompletableFuture.supplyAsync(
                         () -> workspace.getJARPackageFileObjects(packageName),
-                        ExecutorUtils.getArtifactsFetcherExecutorService()
+                        ExecutorUtils.getExecutorService()
                 )
         );
 
         workspaceDeps.stream()
                 .map(depWorkspace-> (Supplier<Set<JavaFileObject>>) () -> depWorkspace.getJARPackageFileObjects(packageName))
-                .map(packageSupplier -> CompletableFuture.supplyAsync(packageSupplier, ExecutorUtils.getArtifactsFetcherExecutorService()))
+                .map(packageSupplier -> CompletableFuture.supplyAsync(packageSupplier, ExecutorUtils.getExecutorService()))
                 .forEach(futurePackages::add);
         futurePackages.forEach(futurePackage -> files.addAll(futurePackage.join()));
 
@@ -1,5 +1,7 @@
 package com.sourcegraph.langserver.langservice.workspace;
 
+import com.sourcegraph.lsp.domain.structures.Position;
+import com.sourcegraph.lsp.domain.structures.TextDocumentContentChangeEvent;
 import org.apache.commons.io.input.CharSequenceInputStream;
 import org.apache.commons.io.input.CharSequenceReader;
 import org.apache.commons.lang3.StringUtils;
@@ -13,6 +15,7 @@ import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 
 public class SourceFile implements WorkspaceFile {
 
@@ -26,7 +29,15 @@ public class SourceFile implements WorkspaceFile {
 
     private String packageName;
 
-    private CharSequence sourceCode;
+    // replaced rather than modified when the client changes the document, so that javac keeps reading the content it
+    // started with
+    private volatile CharSequence sourceCode;
+
+    // identifiers of sourceCode, computed on demand; guarded by this
+    private IdentifierFilter identifierFilter;
+
+    // the version of the document last sent by the client, or -1 if the content is the one fetched from the workspace
+    private int version = -1;
 
     public SourceFile(String uri, String binaryName, String content) {
         this.uri = uri;
@@ -76,9 +87,10 @@ public class SourceFile implements WorkspaceFile {
     }
 
     @Override
-    public OutputStream openOutputStream() throws IOException {
+    public synchronized OutputStream openOutputStream() throws IOException {
         StringBuilder builder = new StringBuilder();
         sourceCode = builder;
+        identifierFilter = null;
         return new StringBuilderOutputStream(builder);
     }
 
@@ -93,9 +105,10 @@ public class SourceFile implements WorkspaceFile {
     }
 
     @Override
-    public Writer openWriter() throws IOException {
+    public synchronized Writer openWriter() throws IOException {
         StringWriter stringWriter = new StringWriter();
         sourceCode = stringWriter.getBuffer();
+        identifierFilter = null;
         return stringWriter;
     }
 
@@ -126,6 +139,127 @@ public class SourceFile implements WorkspaceFile {
         return path;
     }
 
+    /**
+     * Returns the identifiers of the current content, lexing it the first time
+     */
+    public synchronized IdentifierFilter getIdentifierFilter() {
+        if (identifierFilter == null) {
+            identifierFilter = IdentifierFilter.of(sourceCode);
+        }
+        return identifierFilter;
+    }
+
+    /**
+     * Returns a copy of the file, which shares the current content (never modified in place) until either of them is
+     * changed
+     */
+    public synchronized SourceFile copy() {
+        SourceFile copy = new SourceFile(uri, binaryName, "");
+        copy.sourceCode = sourceCode;
+        copy.identifierFilter = identifierFilter;
+        copy.version = version;
+        return copy;
+    }
+
+    public synchronized int getVersion() {
+        return version;
+    }
+
+    /**
+     * Replaces the content of the file with the given document version. Versions older than the current one are
+     * ignored; a null version (e.g., the content sent on save) always applies.
+     *
+     * @return true if the content has changed
+     */
+    public synchronized boolean setContent(String content, Integer version) {
+        if (!acceptVersion(version)) {
+            return false;
+        }
+        if (StringUtils.equals(sourceCode, content)) {
+            return false;
+        }
+        sourceCode = new StringBuilder(content);
+        identifierFilter = null;
+        return true;
+    }
+
+    /**
+     * Replaces the content of the file with the content of a document the client has opened. Opening starts a new
+     * sequence of versions, which may start below the versions of a previous opening, so the version is reset rather
+     * than compared.
+     *
+     * @return true if the content has changed
+     */
+    public synchronized boolean open(String content, Integer version) {
+        this.version = version == null ? -1 : version;
+        if (StringUtils.equals(sourceCode, content)) {
+            return false;
+        }
+        sourceCode = new StringBuilder(content);
+        identifierFilter = null;
+        return true;
+    }
+
+    /**
+     * Applies the given changes, in order, to the content of the file. A change without a range replaces the whole
+     * content. Changes for a version older than the current one are ignored.
+     *
+     * @return true if the content has changed
+     */
+    public synchronized boolean applyChanges(List<TextDocumentContentChangeEvent> changes, Integer version) {
+        if (changes == null || changes.isEmpty() || !acceptVersion(version)) {
+            return false;
+        }
+        StringBuilder content = new StringBuilder(sourceCode);
+        for (TextDocumentContentChangeEvent change : changes) {
+            String text = StringUtils.defaultString(change.getText());
+            if (change.getRange() == null) {
+                content = new StringBuilder(text);
+                continue;
+            }
+            int start = offset(content, change.getRange().getStart());
+            int end = Math.max(start, offset(content, change.getRange().getEnd()));
+            content.replace(start, end, text);
+        }
+        if (StringUtils.equals(sourceCode, content)) {
+            return false;
+        }
+        sourceCode = content;
+        identifierFilter = null;
+        return true;
+    }
+
+    private boolean acceptVersion(Integer version) {
+        if (version == null) {
+            return true;
+        }
+        if (version <= this.version) {
+            log.info("Ignoring version {} of {}, already at version {}", version, uri, this.version);
+            return false;
+        }
+        this.version = version;
+        return true;
+    }
+
+    /**
+     * Converts the position to an offset in the content, clamping positions past the end of a line or of the content
+     */
+    private static int offset(CharSequence content, Position position) {
+        int offset = 0;
+        for (int line = 0; line < position.getLine(); line++) {
+            int newline = StringUtils.indexOf(content, '\n', offset);
+            if (newline < 0) {
+                return content.length();
+            }
+            offset = newline + 1;
+        }
+        int lineEnd = StringUtils.indexOf(content, '\n', offset);
+        if (lineEnd < 0) {
+            lineEnd = content.length();
+        }
+        return Math.min(offset + Math.max(position.getCharacter(), 0), lineEnd);
+    }
+
     public class StringBuilderOutputStream extends OutputStream {
 
         private StringBuilder builder;
@@ -39,6 +39,12 @@ public interface Workspace {
 
     boolean containsSourceFile(String uri) throws Exception;
 
+    /**
+     * Returns a counter that increases whenever the source files or the JAR classes of this workspace change, so that
+     * results derived from them (e.g., package listings) can tell whether they are stale.
+     */
+    long getContentVersion();
+
     PackageIdentifier getArtifactIdentifier(URI fileObjectUri);
     PackageInformation getThisArtifactInformation();
     Set<PackageIdentifier> getDependencies();
@@ -48,6 +54,21 @@ public interface Workspace {
 
     JavacHolder getCompiler();
 
+    /**
+     * Drops the compiler of this workspace, along with everything javac keeps in its context (symbol tables, trees,
+     * etc.), so that it can be garbage collected. The next call to getCompiler creates a new compiler. Everything else
+     * the workspace has indexed (source files, JAR classes) is kept.
+     *
+     * @return the released compiler, or null if the workspace had none
+     */
+    JavacHolder releaseCompiler();
+
+    /**
+     * Returns the System.nanoTime() of the last call to getCompiler, or Long.MAX_VALUE if the workspace currently has
+     * no compiler
+     */
+    long getCompilerLastUsed();
+
     class Utils {
         public static String classFileToPackageName(String classFileName) {
             return StringUtils.substringBeforeLast(classFileName, "/").replace('/', '.');
@@ -1,13 +1,16 @@
 package com.sourcegraph.langserver.langservice.workspace;
 
 import com.google.common.collect.Lists;
+import com.sourcegraph.langserver.langservice.javaconfigjson.Project;
 import com.sourcegraph.lsp.FileContentProvider;
 import com.sourcegraph.lsp.domain.structures.PackageIdentifier;
+import com.sourcegraph.utils.LanguageUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
@@ -19,25 +22,131 @@ public class WorkspaceManager {
     private static Logger log = LoggerFactory.getLogger(WorkspaceManager.class);
 
     // Map from workspace root directory (where "/" is the repository root directory) to Workspace.
-    private Map<PackageIdentifier, Workspace> workspaces;
+    private final Map<PackageIdentifier, Workspace> workspaces;
     private FileContentProvider files;
 
+    // Source directories of all workspaces, for routing a URI to its workspace without listing every workspace's
+    // source files. Filled as workspaces are added.
+    private final PathTrie<Workspace> sourceDirs = new PathTrie<>();
+
+    // Directories and model IDs ("groupId:artifactId") of the modules whose workspaces are built in the background
+    // during staged initialization. Each future completes (with null if the module could not be built) once the
+    // module's workspace has been added.
+    private final PathTrie<CompletableFuture<Workspace>> pendingModules = new PathTrie<>();
+    private final Map<String, CompletableFuture<Workspace>> pendingModulesById = new ConcurrentHashMap<>();
+
+    // completes once all workspaces have been added
+    private final CompletableFuture<Void> initialized = new CompletableFuture<>();
+
     public WorkspaceManager(List<Workspace> workspaces, FileContentProvider files) {
-        this.workspaces = new HashMap<>();
+        this(files);
         for (Workspace ws : workspaces) {
-            PackageIdentifier id = ws.getThisArtifactInformation().getPackage().getIdentifier();
-            if (this.workspaces.containsKey(id)) {
-                log.error("Duplicate package identifier {} found. Ignoring.", id);
-                continue;
-            }
-            this.workspaces.put(id, ws);
-            ws.setWorkspaceManager(this);
+            addWorkspace(ws);
         }
+        initialized.complete(null);
+    }
+
+    /**
+     * Creates a workspace manager without workspaces, to which Workspaces adds them as their modules are built (see
+     * {@link #expectModule} and {@link #finishInitialization})
+     */
+    WorkspaceManager(FileContentProvider files) {
+        this.workspaces = new ConcurrentHashMap<>();
         this.files = files;
     }
 
+    synchronized void addWorkspace(Workspace ws) {
+        PackageIdentifier id = ws.getThisArtifactInformation().getPackage().getIdentifier();
+        if (this.workspaces.containsKey(id)) {
+            log.error("Duplicate package identifier {} found. Ignoring.", id);
+            return;
+        }
+        ws.setWorkspaceManager(this);
+        addSourceDirs(ws);
+        this.workspaces.put(id, ws);
+        // internal dependencies computed so far may lack the new workspace
+        localDependencyTree.clear();
+    }
+
+    /**
+     * Registers a module whose workspace is still being built. The workspace is added once `built` completes; until
+     * then, {@link #whenReadyFor} makes requests for URIs under the module directory wait for it.
+     *
+     * @return a future that completes once the workspace has been added, with null if it couldn't be built
+     */
+    CompletableFuture<Workspace> expectModule(String moduleUri, String modelId, CompletableFuture<Workspace> built) {
+        CompletableFuture<Workspace> added = built.handle((ws, e) -> {
+            if (ws != null) {
+                addWorkspace(ws);
+            }
+            return ws;
+        });
+        pendingModules.put(moduleUri, added);
+        if (modelId != null) {
+            pendingModulesById.put(modelId, added);
+        }
+        return added;
+    }
+
+    /**
+     * Marks the end of staged initialization: all workspaces have been added, or building them failed
+     */
+    void finishInitialization(Throwable error) {
+        if (error != null) {
+            initialized.completeExceptionally(error);
+        } else {
+            initialized.complete(null);
+        }
+    }
+
+    /**
+     * Returns a future that completes once all workspaces have been added
+     */
+    public CompletableFuture<Void> whenInitialized() {
+        return initialized;
+    }
+
+    /**
+     * Returns a future that completes once the workspace owning the given URI, along with the workspaces it
+     * (transitively) depends on, has been added. Requests that only concern that URI don't need to wait for the
+     * other workspaces. If the URI is not under any module known so far, the future completes once all workspaces
+     * have been added.
+     */
+    public CompletableFuture<Void> whenReadyFor(String uri) {
+        if (initialized.isDone()) {
+            return initialized;
+        }
+        List<CompletableFuture<Workspace>> modules = pendingModules.getContaining(uri);
+        if (modules.isEmpty()) {
+            return initialized;
+        }
+        Set<CompletableFuture<Workspace>> visited = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        visited.add(modules.get(0));
+        return whenReadyWithDependencies(modules.get(0), visited);
+    }
+
+    private CompletableFuture<Void> whenReadyWithDependencies(CompletableFuture<Workspace> module,
+                                                              Set<CompletableFuture<Workspace>> visited) {
+        return module.thenCompose(ws -> {
+            List<CompletableFuture<Void>> deps = new ArrayList<>();
+            if (ws != null) {
+                for (PackageIdentifier dep : ws.getDependencies()) {
+                    CompletableFuture<Workspace> depModule = pendingModulesById.get(dep.getId());
+                    if (depModule != null && visited.add(depModule)) {
+                        deps.add(whenReadyWithDependencies(depModule, visited));
+                    }
+                }
+            }
+            return CompletableFuture.allOf(deps.toArray(new CompletableFuture[0]));
+        });
+    }
+
+    /**
+     * Returns the workspace whose sources include the given URI. Only the workspaces that have a source directory
+     * containing the URI are checked, innermost source directory first.
+     */
     public Workspace getWorkspaceContainingUri(String uri) {
-        for (Workspace workspace : workspaces.values()) {
+        for (Workspace workspace : sourceDirs.getContaining(uri)) {
             try {
                 if (workspace.containsSourceFile(uri)) {
                     return workspace;
@@ -50,6 +159,41 @@ public class WorkspaceManager {
         return null;
     }
 
+    private void addSourceDirs(Workspace ws) {
+        List<String> dirs = new ArrayList<>();
+        if (ws instanceof ConfigProvider) {
+            try {
+                Project cfg = ((ConfigProvider) ws).getConfig();
+                dirs.addAll(cfg.getSourceDirectories());
+                dirs.addAll(cfg.getTestSourceDirectories());
+            } catch (Exception e) {
+                log.error("Exception getting source directories of workspace {}: {}", ws.getRootURI(), e);
+            }
+        }
+        if (dirs.isEmpty()) {
+            // fall back to the workspace root, which contains all of its sources
+            sourceDirs.put(ws.getRootURI(), ws);
+            return;
+        }
+        for (String dir : dirs) {
+            sourceDirs.put(LanguageUtils.concatPath(ws.getRootURI(), dir), ws);
+        }
+    }
+
+    /**
+     * Returns a workspace manager whose workspaces are forks of this one's (see ForkedWorkspace): they share the
+     * configuration, the resolved dependencies and their JAR indexes, and the content of the source files until it is
+     * edited, but get compilers of their own. Waits until all workspaces have been added.
+     */
+    public WorkspaceManager fork() {
+        initialized.join();
+        List<Workspace> forks = new ArrayList<>();
+        for (Workspace workspace : workspaces.values()) {
+            forks.add(new ForkedWorkspace(workspace));
+        }
+        return new WorkspaceManager(forks, files);
+    }
+
     public List<Workspace> getWorkspaces() {
         return Lists.newArrayList(workspaces.values());
     }
@@ -76,6 +220,20 @@ public class WorkspaceManager {
         return deps;
     }
 
+    /**
+     * Returns the workspaces that transitively depend on the given workspace, i.e., whose compilers may read its
+     * source files
+     */
+    public Set<Workspace> getInternalDependents(Workspace workspace) {
+        Set<Workspace> dependents = new HashSet<>();
+        for (Map.Entry<PackageIdentifier, Workspace> entry : workspaces.entrySet()) {
+            if (entry.getValue() != workspace && getInternalDependencies(entry.getKey()).contains(workspace)) {
+                dependents.add(entry.getValue());
+            }
+        }
+        return dependents;
+    }
+
     private Set<PackageIdentifier> getInternalDependencyIds(PackageIdentifier workspaceIdentifier) {
         if (localDependencyTree.containsKey(workspaceIdentifier)) {
             return localDependencyTree.get(workspaceIdentifier);
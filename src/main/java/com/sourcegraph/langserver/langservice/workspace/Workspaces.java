@@ -13,21 +13,26 @@ import com.sourcegraph.langserver.langservice.workspace.standardlibs.StandardLib
 import com.sourcegraph.langserver.langservice.maven.MavenWorkspaceModelResolver;
 import com.sourcegraph.lsp.MessageAggregator;
 import com.sourcegraph.lsp.Messenger;
+import com.sourcegraph.lsp.SharedCache;
 import com.sourcegraph.lsp.domain.result.WorkspaceConfigurationServersResult;
+import com.sourcegraph.lsp.domain.structures.PackageIdentifier;
 import com.sourcegraph.lsp.domain.structures.TextDocumentIdentifier;
 import com.sourcegraph.langserver.langservice.maven.EffectivePom;
+import com.sourcegraph.langserver.langservice.maven.EffectivePoms;
 import com.sourcegraph.utils.LanguageUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.maven.model.Model;
+import org.apache.maven.model.Parent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Workspaces is a container class for utility functions that deal with workspaces. It should never be instantiated.
@@ -37,53 +42,116 @@ public class Workspaces {
 
     private static final Logger log = LoggerFactory.getLogger(Workspaces.class);
 
-    public static List<Workspace> fromFiles(String rootUri, FileContentProvider files, Messenger messenger, List<WorkspaceConfigurationServersResult.Server> servers) throws Exception {
-        List<Workspace> ws = null;
-        try {
-            ws = fromJavaConfig(rootUri, files, messenger, servers);
-        } catch (RuntimeException e) {
-            if (e.getCause() instanceof IOException) {
-                log.info("A javaconfig.json file was not found.");
-            } else {
-                log.warn("Unexpected error attempting to read javaconfig.json: {}", e);
-            }
-        } catch (IOException e) {
-            log.info("A javaconfig.json file was not found.");
-        } catch (Exception e) {
-            log.warn("Unexpected error attempting to read javaconfig.json: {}", e);
-        }
+    public static List<Workspace> fromFiles(String rootUri, FileContentProvider files, Messenger messenger, List<WorkspaceConfigurationServersResult.Server> servers, SharedCache sharedCache) throws Exception {
+        List<Workspace> ws = tryJavaConfig(rootUri, files, messenger, servers, sharedCache);
 
-        List<TextDocumentIdentifier> allFiles = files.listFilesRecursively(rootUri);
-        List<String> allUris = Lists.newArrayListWithCapacity(allFiles.size());
-        List<String> pomUris = Lists.newArrayList();
-        List<String> gradleUris = Lists.newArrayList();
-        boolean hasStandardLayout = false;
-        for (TextDocumentIdentifier id : allFiles) {
-            String uri = id.getUri();
-            allUris.add(uri);
-            if (uri.endsWith("/pom.xml")) {
-                pomUris.add(uri);
-            }
-            if (uri.startsWith("file:///src/main/java/")) {
-                hasStandardLayout = true;
-            }
-            if (uri.endsWith(".gradle")) {
-                gradleUris.add(uri);
-            }
-        }
+        ListedFiles listed = new ListedFiles(rootUri, files);
 
         if (ws == null || ws.size() == 0) {
-            ws = fromMaven(rootUri, pomUris, files, messenger, servers);
+            ws = fromMaven(rootUri, listed.pomUris, files, messenger, servers, sharedCache);
         }
         if (ws == null || ws.size() == 0) {
-            ws = fromGradle(rootUri, gradleUris, allUris, files, messenger, servers);
+            ws = fromGradle(rootUri, listed.gradleUris, listed.allUris, files, messenger, servers, sharedCache);
         }
         if (ws == null || ws.size() == 0) {
-            // TODO(beyang): update to use with raw file API
-            ws = standardLibraryWorkspace(rootUri, files);
+            ws = fallbackWorkspaces(rootUri, files, listed);
         }
+        return ws;
+    }
+
+    /**
+     * Like fromFiles, but returns as soon as the files have been listed and the build files parsed, without waiting
+     * for the effective POMs of Maven and Gradle modules to be built. The workspace of each module is added to the
+     * returned WorkspaceManager once its effective POM has been built, so that a request about one module only waits
+     * for that module and the modules it depends on (see WorkspaceManager.whenReadyFor). Dependencies are resolved
+     * later, per workspace, when its compiler first needs them.
+     *
+     * If none of the Maven modules could be built, the remaining kinds of workspaces are tried afterwards, as
+     * fromFiles does. Inferred Gradle POMs and dependency resolutions are exchanged with other language server
+     * instances through sharedCache.
+     */
+    public static WorkspaceManager fromFilesStaged(String rootUri, FileContentProvider files, Messenger messenger, List<WorkspaceConfigurationServersResult.Server> servers, SharedCache sharedCache) throws Exception {
+        WorkspaceManager manager = new WorkspaceManager(files);
+
+        // javaconfig.json is explicit configuration, typically of few projects, so it isn't worth staging
+        List<Workspace> javaConfig = tryJavaConfig(rootUri, files, messenger, servers, sharedCache);
+        if (javaConfig != null && javaConfig.size() > 0) {
+            javaConfig.forEach(manager::addWorkspace);
+            manager.finishInitialization(null);
+            return manager;
+        }
+
+        ListedFiles listed = new ListedFiles(rootUri, files);
+
+        ModuleBuild build = mavenModules(rootUri, listed.pomUris, files, messenger, servers, sharedCache);
+        boolean isMaven = !build.modules.isEmpty();
+        if (!isMaven) {
+            build = gradleModules(listed.gradleUris, listed.allUris, files, messenger, servers, sharedCache);
+        }
+        if (build == null || build.modules.isEmpty()) {
+            fallbackWorkspaces(rootUri, files, listed).forEach(manager::addWorkspace);
+            manager.finishInitialization(null);
+            return manager;
+        }
+
+        build.addInBackground(manager).whenComplete((added, e) -> {
+            if (e != null) {
+                manager.finishInitialization(e);
+                return;
+            }
+            try {
+                if (added == 0) {
+                    List<Workspace> ws = isMaven ? fromGradle(rootUri, listed.gradleUris, listed.allUris, files, messenger, servers, sharedCache) : null;
+                    if (ws == null || ws.size() == 0) {
+                        ws = fallbackWorkspaces(rootUri, files, listed);
+                    }
+                    ws.forEach(manager::addWorkspace);
+                }
+                manager.finishInitialization(null);
+            } catch (Exception exc) {
+                manager.finishInitialization(exc);
+            }
+        });
+        return manager;
+    }
+
+    /**
+     * The files of the repository, along with the build files among them
+     */
+    private static class ListedFiles {
+        final List<String> allUris;
+        final List<String> pomUris = Lists.newArrayList();
+        final List<String> gradleUris = Lists.newArrayList();
+        boolean hasStandardLayout = false;
+
+        ListedFiles(String rootUri, FileContentProvider files) throws Exception {
+            List<TextDocumentIdentifier> allFiles = files.listFilesRecursively(rootUri);
+            allUris = Lists.newArrayListWithCapacity(allFiles.size());
+            for (TextDocumentIdentifier id : allFiles) {
+                String uri = id.getUri();
+                allUris.add(uri);
+                if (uri.endsWith("/pom.xml")) {
+                    pomUris.add(uri);
+                }
+                if (uri.startsWith("file:///src/main/java/")) {
+                    hasStandardLayout = true;
+                }
+                if (uri.endsWith(".gradle")) {
+                    gradleUris.add(uri);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the workspaces to use when there are no build files (or none of the modules they describe could be
+     * built)
+     */
+    private static List<Workspace> fallbackWorkspaces(String rootUri, FileContentProvider files, ListedFiles listed) throws Exception {
+        // TODO(beyang): update to use with raw file API
+        List<Workspace> ws = standardLibraryWorkspace(rootUri, files);
         if (ws == null || ws.size() == 0) {
-            ws = defaultWorkspace(rootUri, hasStandardLayout, files);
+            ws = defaultWorkspace(rootUri, listed.hasStandardLayout, files);
         }
         if (ws == null) {
             return new ArrayList<>();
@@ -91,7 +159,32 @@ public class Workspaces {
         return ws;
     }
 
-    public static List<Workspace> fromJavaConfig(String rootUri, FileContentProvider files, Messenger messenger, List<WorkspaceConfigurationServersResult.Server> servers) throws Exception {
+    /**
+     * Returns the workspaces described by the javaconfig.json file, or null if there is none or it can't be used
+     */
+    private static List<Workspace> tryJavaConfig(String rootUri, FileContentProvider files, Messenger messenger, List<WorkspaceConfigurationServersResult.Server> servers, SharedCache sharedCache) {
+        try {
+            return fromJavaConfig(rootUri, files, messenger, servers, sharedCache);
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof IOException) {
+                log.info("A javaconfig.json file was not found.");
+            } else {
+                log.warn("Unexpected error attempting to read javaconfig.json: {}", e);
+            }
+        } catch (IOException e) {
+            log.info("A javaconfig.json file was not found.");
+        } catch (Exception e) {
+            log.warn("Unexpected error attempting to read javaconfig.json: {}", e);
+        }
+        return null;
+    }
+
+    public static List<Workspace> fromJavaConfig(String rootUri, FileContentProvider files, Messenger messenger, List<WorkspaceConfigurationServersResult.Server> servers, SharedCache sharedCache) throws Exception {
+        ModuleBuild build = readJavaConfig(rootUri, files, messenger, servers, sharedCache);
+        return build != null ? build.await() : null;
+    }
+
+    private static ModuleBuild readJavaConfig(String rootUri, FileContentProvider files, Messenger messenger, List<WorkspaceConfigurationServersResult.Server> servers, SharedCache sharedCache) throws Exception {
         MessageAggregator msgs = new MessageAggregator(messenger, "Javaconfig: ");
 
         String configFile = LanguageUtils.concatPath(rootUri, "javaconfig.json");
@@ -102,7 +195,7 @@ public class Workspaces {
         Config config = Config.fromJavaConfig(configContents);
 
         Map<String, MavenWorkspaceModelResolver.PomInfo> pomInfos = new HashMap<>();
-        Map<String, Model> rawModels = new HashMap<>();
+        List<EffectivePoms.Module> modules = new ArrayList<>();
         for (Map.Entry<String, Project> e : config.getProjects().entrySet()) {
             String wsDir = e.getKey();
             String wsUri = LanguageUtils.pathToUri(wsDir);
@@ -110,32 +203,22 @@ public class Workspaces {
             Model rawModel = MavenUtil.javaConfigProjectToRawModel(project);
             MavenWorkspaceModelResolver.PomInfo pomInfo = new MavenWorkspaceModelResolver.PomInfo(wsUri, rawModel, project.getCompilerOptions());
             pomInfos.put(wsDir, pomInfo);
-            rawModels.put(wsDir, rawModel);
+            modules.add(new EffectivePoms.Module(wsDir, wsDir, pomInfo));
         }
         MavenWorkspaceModelResolver mavenWorkspaceModelResolver = new MavenWorkspaceModelResolver(pomInfos.values());
+        return new ModuleBuild(files, modules, mavenWorkspaceModelResolver, msgs, servers, sharedCache, key -> key, true);
+    }
 
-        Map<String, EffectivePom> effectivePoms = new HashMap<>();
-        for (Map.Entry<String, Project> e : config.getProjects().entrySet()) {
-            String wsDir = e.getKey();
-            Project project = e.getValue();
-            EffectivePom effectivePom = EffectivePom.createAndResolve(wsDir, rawModels.get(wsDir), mavenWorkspaceModelResolver, project.getCompilerOptions(), msgs, servers);
-            effectivePoms.put(wsDir, effectivePom);
-        }
-
-        List<Workspace> workspaces = new ArrayList<>();
-        for (Map.Entry<String, EffectivePom> e : effectivePoms.entrySet()) {
-            String wsDir = e.getKey();
-            workspaces.add(new MavenWorkspace(files, wsDir, e.getValue(), effectivePoms.values()));
-        }
-        return workspaces;
+    public static List<Workspace> fromMaven(String rootUri, List<String> pomUris, FileContentProvider files, Messenger messenger, List<WorkspaceConfigurationServersResult.Server> servers, SharedCache sharedCache) throws Exception {
+        return mavenModules(rootUri, pomUris, files, messenger, servers, sharedCache).await();
     }
 
-    public static List<Workspace> fromMaven(String rootUri, List<String> pomUris, FileContentProvider files, Messenger messenger, List<WorkspaceConfigurationServersResult.Server> servers) throws Exception {
+    private static ModuleBuild mavenModules(String rootUri, List<String> pomUris, FileContentProvider files, Messenger messenger, List<WorkspaceConfigurationServersResult.Server> servers, SharedCache sharedCache) throws Exception {
         MessageAggregator msgs = new MessageAggregator(messenger, "Maven: ");
         MavenWorkspaceModelResolver mavenWorkspaceModelResolver = MavenWorkspaceModelResolver.newResolver(pomUris, files, msgs);
 
-        Map<String, EffectivePom> effectivePoms = new HashMap<>();
         ImmutableMap<String, MavenWorkspaceModelResolver.PomInfo> pomInfos = mavenWorkspaceModelResolver.getPomInfos();
+        List<EffectivePoms.Module> modules = new ArrayList<>();
         for (Map.Entry<String, MavenWorkspaceModelResolver.PomInfo> e : pomInfos.entrySet()) {
             String workspaceUri = e.getValue().workspaceUri;
             String baseDir = LanguageUtils.relativePath(rootUri, workspaceUri);
@@ -143,46 +226,153 @@ public class Workspaces {
                 log.error("Could not resolve effective POM at {}: could not relativize workspace URI", workspaceUri);
                 continue;
             }
-            try {
-                EffectivePom effectivePom = EffectivePom.createAndResolve(baseDir, e.getValue().rawModel, mavenWorkspaceModelResolver, e.getValue().compilerOptions, msgs, servers);
-                effectivePoms.put(workspaceUri, effectivePom);
-            } catch (Exception exc) {
-                log.error("Could not resolve effective POM at {}: {}", workspaceUri, exc);
-            }
+            modules.add(new EffectivePoms.Module(workspaceUri, baseDir, e.getValue()));
         }
+        return new ModuleBuild(files, modules, mavenWorkspaceModelResolver, msgs, servers, sharedCache, key -> key, false);
+    }
 
-        List<Workspace> workspaces = new ArrayList<>();
-        for (Map.Entry<String, EffectivePom> e : effectivePoms.entrySet()) {
-            workspaces.add(new MavenWorkspace(files, e.getKey(), e.getValue(), effectivePoms.values()));
-        }
-        return workspaces;
+    public static List<Workspace> fromGradle(String rootUri, List<String> gradleUris, List<String> allUris, FileContentProvider files, Messenger messenger, List<WorkspaceConfigurationServersResult.Server> servers, SharedCache sharedCache) throws Exception {
+        ModuleBuild build = gradleModules(gradleUris, allUris, files, messenger, servers, sharedCache);
+        return build != null ? build.await() : null;
     }
 
-    public static List<Workspace> fromGradle(String rootUri, List<String> gradleUris, List<String> allUris, FileContentProvider files, Messenger messenger, List<WorkspaceConfigurationServersResult.Server> servers) throws Exception {
+    private static ModuleBuild gradleModules(List<String> gradleUris, List<String> allUris, FileContentProvider files, Messenger messenger, List<WorkspaceConfigurationServersResult.Server> servers, SharedCache sharedCache) throws Exception {
         if (gradleUris.size() == 0) {
             return null;
         }
 
         MessageAggregator msgs = new MessageAggregator(messenger, "Gradle: ");
-        GradleHierarchy gradleHierarchy = new GradleHierarchy(gradleUris, allUris, files, msgs);
+        GradleHierarchy gradleHierarchy = new GradleHierarchy(gradleUris, allUris, files, msgs, sharedCache);
         Map<String, MavenWorkspaceModelResolver.PomInfo> inferredPoms = gradleHierarchy.computeInferredPoms();
 
-        Map<String, EffectivePom> effectivePoms = new HashMap<>();
         MavenWorkspaceModelResolver mavenWorkspaceModelResolver = new MavenWorkspaceModelResolver(inferredPoms.values());
         ImmutableMap<String, MavenWorkspaceModelResolver.PomInfo> pomInfos = mavenWorkspaceModelResolver.getPomInfos();
+        List<EffectivePoms.Module> modules = new ArrayList<>();
         for (Map.Entry<String, MavenWorkspaceModelResolver.PomInfo> e : pomInfos.entrySet()) {
             String baseDir = LanguageUtils.uriToPath(e.getValue().workspaceUri).toString();
-            EffectivePom effectivePom = EffectivePom.createAndResolve(baseDir, e.getValue().rawModel, mavenWorkspaceModelResolver, e.getValue().compilerOptions, msgs, servers);
-            effectivePoms.put(e.getValue().workspaceUri, effectivePom);
+            modules.add(new EffectivePoms.Module(e.getValue().workspaceUri, baseDir, e.getValue()));
+        }
+        return new ModuleBuild(files, modules, mavenWorkspaceModelResolver, msgs, servers, sharedCache,
+                key -> LanguageUtils.uriToPath(key).toString(), true);
+    }
+
+    /**
+     * ModuleBuild holds the modules described by the build files of a repository, whose effective POMs remain to be
+     * built before they can become workspaces
+     */
+    private static class ModuleBuild {
+        final FileContentProvider files;
+        final List<EffectivePoms.Module> modules;
+        final MavenWorkspaceModelResolver modelResolver;
+        final MessageAggregator msgs;
+        final List<WorkspaceConfigurationServersResult.Server> servers;
+        final SharedCache sharedCache;
+        // maps a module key to the root passed to its MavenWorkspace
+        final Function<String, String> workspaceRoot;
+        // whether a module that can't be built fails all of them, rather than being skipped
+        final boolean failFast;
+
+        ModuleBuild(FileContentProvider files,
+                    List<EffectivePoms.Module> modules,
+                    MavenWorkspaceModelResolver modelResolver,
+                    MessageAggregator msgs,
+                    List<WorkspaceConfigurationServersResult.Server> servers,
+                    SharedCache sharedCache,
+                    Function<String, String> workspaceRoot,
+                    boolean failFast) {
+            this.files = files;
+            this.modules = modules;
+            this.modelResolver = modelResolver;
+            this.msgs = msgs;
+            this.servers = servers;
+            this.sharedCache = sharedCache;
+            this.workspaceRoot = workspaceRoot;
+            this.failFast = failFast;
+        }
+
+        /**
+         * Builds the effective POMs of all modules and returns their workspaces
+         */
+        List<Workspace> await() throws Exception {
+            Map<String, EffectivePom> effectivePoms = new HashMap<>();
+            Map<String, CompletableFuture<EffectivePom>> futures = EffectivePoms.createAndResolveAll(modules, modelResolver, msgs, servers, sharedCache);
+            for (Map.Entry<String, CompletableFuture<EffectivePom>> e : futures.entrySet()) {
+                try {
+                    effectivePoms.put(e.getKey(), EffectivePoms.await(e.getValue()));
+                } catch (Exception exc) {
+                    if (failFast) {
+                        throw exc;
+                    }
+                    log.error("Could not resolve effective POM at {}: {}", e.getKey(), exc);
+                }
+            }
+
+            List<Workspace> workspaces = new ArrayList<>();
+            for (Map.Entry<String, EffectivePom> e : effectivePoms.entrySet()) {
+                workspaces.add(new MavenWorkspace(files, workspaceRoot.apply(e.getKey()), e.getValue(), effectivePoms.values()));
+            }
+            return workspaces;
         }
 
-        List<Workspace> workspaces = new ArrayList<>();
-        for (Map.Entry<String, EffectivePom> e : effectivePoms.entrySet()) {
-            String baseDir = LanguageUtils.uriToPath(e.getKey()).toString();
-            workspaces.add(new MavenWorkspace(files, baseDir, e.getValue(), effectivePoms.values()));
+        /**
+         * Starts building the effective POMs of all modules, adding the workspace of each module to the manager as
+         * soon as it is built. The returned future completes with the number of workspaces added once all modules are
+         * done, or fails with the first error if failFast is set.
+         */
+        CompletableFuture<Integer> addInBackground(WorkspaceManager manager) {
+            Map<String, CompletableFuture<EffectivePom>> futures = EffectivePoms.createAndResolveAll(modules, modelResolver, msgs, servers, sharedCache);
+            Supplier<Set<PackageIdentifier>> localArtifacts = () -> localArtifacts(futures);
+
+            List<CompletableFuture<Workspace>> built = new ArrayList<>();
+            List<CompletableFuture<Workspace>> added = new ArrayList<>();
+            for (EffectivePoms.Module module : modules) {
+                CompletableFuture<Workspace> ws = futures.get(module.key).thenApply(effectivePom ->
+                        new MavenWorkspace(files, workspaceRoot.apply(module.key), effectivePom, localArtifacts));
+                built.add(ws);
+                added.add(manager.expectModule(module.pomInfo.workspaceUri, MavenWorkspaceModelResolver.getModelId(module.pomInfo.rawModel), ws));
+            }
+
+            return CompletableFuture.allOf(added.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+                int n = 0;
+                for (int i = 0; i < built.size(); i++) {
+                    try {
+                        built.get(i).join();
+                        n++;
+                    } catch (CompletionException e) {
+                        if (failFast) {
+                            throw e;
+                        }
+                        log.error("Could not resolve effective POM at {}: {}", modules.get(i).key, e.getCause());
+                    }
+                }
+                return n;
+            });
         }
 
-        return workspaces;
+        /**
+         * Returns the artifacts of all modules. Modules whose effective POM is still being built are identified by
+         * the coordinates of their raw POM (inheriting the group ID and version of their parent); modules whose
+         * effective POM couldn't be built are left out, as they are when all effective POMs are built up front.
+         */
+        private Set<PackageIdentifier> localArtifacts(Map<String, CompletableFuture<EffectivePom>> futures) {
+            Set<PackageIdentifier> artifacts = new HashSet<>();
+            for (EffectivePoms.Module module : modules) {
+                CompletableFuture<EffectivePom> future = futures.get(module.key);
+                if (future.isCompletedExceptionally()) {
+                    continue;
+                }
+                if (future.isDone()) {
+                    artifacts.addAll(MavenWorkspace.artifactsOf(Collections.singleton(future.join())));
+                    continue;
+                }
+                Model rawModel = module.pomInfo.rawModel;
+                Parent parent = rawModel.getParent();
+                String groupId = rawModel.getGroupId() != null || parent == null ? rawModel.getGroupId() : parent.getGroupId();
+                String version = rawModel.getVersion() != null || parent == null ? rawModel.getVersion() : parent.getVersion();
+                artifacts.add(PackageIdentifier.ofMaven(groupId, rawModel.getArtifactId(), version));
+            }
+            return artifacts;
+        }
     }
 
     public static List<Workspace> standardLibraryWorkspace(String rootUri, FileContentProvider files) {
@@ -31,6 +31,7 @@ import java.net.Socket;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 
 /**
@@ -62,12 +63,21 @@ public class Controller implements FileContentProvider, PartialResultStreamer, M
     // the whole thing on shutdown.
     private final ExecutorService requestHandlingExecutor;
 
+    // Document synchronization notifications (didOpen, didChange, didSave) are handled one at a time, in the order
+    // they were received, since each of them applies to the document content left by the previous one.
+    private final ExecutorService documentSyncExecutor;
+
     private Tracer tracer;
 
     private Socket socket;
 
     private boolean logLsp;
 
+    // run once, when the controller shuts down
+    private final List<Runnable> shutdownListeners = new CopyOnWriteArrayList<>();
+
+    private final AtomicBoolean isShutDown = new AtomicBoolean(false);
+
     public Controller() {
         this(false);
     }
@@ -76,6 +86,7 @@ public class Controller implements FileContentProvider, PartialResultStreamer, M
         this.logLsp = logLsp;
         this.pendingResponses = new ConcurrentHashMap<>();
         this.requestHandlingExecutor = Executors.newCachedThreadPool();
+        this.documentSyncExecutor = Executors.newSingleThreadExecutor();
     }
 
     public static void serve(int port,
@@ -257,7 +268,25 @@ public class Controller implements FileContentProvider, PartialResultStreamer, M
         shutdown();
     }
 
+    /**
+     * Registers a callback to run when this controller shuts down, whether because the session ended or because the
+     * connection was lost
+     */
+    public void addShutdownListener(Runnable listener) {
+        shutdownListeners.add(listener);
+    }
+
     public void shutdown() {
+        if (isShutDown.compareAndSet(false, true)) {
+            for (Runnable listener : shutdownListeners) {
+                try {
+                    listener.run();
+                } catch (Exception e) {
+                    log.error("Error running shutdown listener for LSP controller {}", controllerId, e);
+                }
+            }
+        }
+
         // Cancel any threads that are still waiting for file contents, or stuck in computations (probably long-running
         // searches for references). Note that there's no danger of messing up shared state at this point because
         // the entire session is being shut down.
@@ -267,6 +296,7 @@ public class Controller implements FileContentProvider, PartialResultStreamer, M
         synchronized (requestHandlingExecutor) {
             requestHandlingExecutor.shutdown();
             requestHandlingExecutor.shutdownNow();
+            documentSyncExecutor.shutdownNow();
         }
         outgoingMessages.onComplete();
         try {
@@ -310,7 +340,13 @@ public class Controller implements FileContentProvider, PartialResultStreamer, M
                 handleRequest(messageHandlers::textDocumentDidClose, DidCloseTextDocumentParams.class, message);
                 break;
             case TEXT_DOCUMENT_DID_OPEN:
-                handleRequest(messageHandlers::textDocumentDidOpen, DidOpenTextDocumentParams.class, message);
+                handleRequest(messageHandlers::textDocumentDidOpen, DidOpenTextDocumentParams.class, message, documentSyncExecutor);
+                break;
+            case TEXT_DOCUMENT_DID_CHANGE:
+                handleRequest(messageHandlers::textDocumentDidChange, DidChangeTextDocumentParams.class, message, documentSyncExecutor);
+                break;
+            case TEXT_DOCUMENT_DID_SAVE:
+                handleRequest(messageHandlers::textDocumentDidSave, DidSaveTextDocumentParams.class, message, documentSyncExecutor);
                 break;
             case TEXT_DOCUMENT_HOVER:
                 handleRequest(messageHandlers::textDocumentHover, TextDocumentPositionParams.class, message);
@@ -330,6 +366,9 @@ public class Controller implements FileContentProvider, PartialResultStreamer, M
             case TEXT_DOCUMENT_CONTENT:
                 handleRequest(messageHandlers::textDocumentContent, TextDocumentContentParams.class, message);
                 break;
+            case TEXT_DOCUMENT_XANNOTATIONS:
+                handleRequest(messageHandlers::textDocumentXAnnotations, TextDocumentAnnotationsParams.class, message);
+                break;
             case PARTIAL_RESULT: // neither the mock client nor the server use these, so just drop them
                 break;
             case UNKNOWN:
@@ -340,6 +379,10 @@ public class Controller implements FileContentProvider, PartialResultStreamer, M
     }
 
     private <P> void handleRequest(RequestHandler<P> requestHandler, Class<P> paramsClass, Message message) {
+        handleRequest(requestHandler, paramsClass, message, requestHandlingExecutor);
+    }
+
+    private <P> void handleRequest(RequestHandler<P> requestHandler, Class<P> paramsClass, Message message, ExecutorService executor) {
 
         synchronized (requestHandlingExecutor) {
             if (requestHandlingExecutor.isShutdown()) {
@@ -348,7 +391,7 @@ public class Controller implements FileContentProvider, PartialResultStreamer, M
             }
         }
 
-        requestHandlingExecutor.submit(() -> {
+        executor.submit(() -> {
             try {
                 Request<P> request = Mapper.convertMessageToRequest(message, paramsClass);
                 Map<String, Object> ctx = new ConcurrentHashMap<>();
@@ -137,6 +137,16 @@ public class MessageAggregator {
         }
     }
 
+    /**
+     * Reports progress of a long-running operation. Progress messages are never accrued: they are logged and sent
+     * straight to the messenger at LOG level, regardless of `passthrough`.
+     */
+    public synchronized void progress(String format, Object ...objs) {
+        String msg = MessageFormatter.arrayFormat(format, objs).getMessage();
+        log.info(msg);
+        showMessage(MessageType.LOG, prefix + msg);
+    }
+
     /**
      * Convenience methods to mirror the SL4J API.
      */
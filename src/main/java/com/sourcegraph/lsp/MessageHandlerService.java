@@ -20,11 +20,14 @@ public interface MessageHandlerService {
     // Document
     void textDocumentDidClose(Map<String, Object> ctx, Request<DidCloseTextDocumentParams> request);
     void textDocumentDidOpen(Map<String, Object> ctx, Request<DidOpenTextDocumentParams> request);
+    void textDocumentDidChange(Map<String, Object> ctx, Request<DidChangeTextDocumentParams> request);
+    void textDocumentDidSave(Map<String, Object> ctx, Request<DidSaveTextDocumentParams> request);
     void textDocumentHover(Map<String, Object> ctx, Request<TextDocumentPositionParams> request);
     void textDocumentReferences(Map<String, Object> ctx, Request<ReferenceParams> request);
     void textDocumentDocumentSymbol(Map<String, Object> ctx, Request<DocumentSymbolParams> request);
     void textDocumentDefinition(Map<String, Object> ctx, Request<TextDocumentPositionParams> request);
     void textDocumentXDefinition(Map<String, Object> ctx, Request<TextDocumentPositionParams> request);
     void textDocumentContent(Map<String, Object> ctx, Request<TextDocumentContentParams> request);
+    void textDocumentXAnnotations(Map<String, Object> ctx, Request<TextDocumentAnnotationsParams> request);
     // TODO: add the rest
 }
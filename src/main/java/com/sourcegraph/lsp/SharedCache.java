@@ -0,0 +1,121 @@
+package com.sourcegraph.lsp;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * SharedCache stores binary artifacts (e.g., resolved dependency graphs) in the cache that clients offer through
+ * "xcache/get" and "xcache/set", which is shared by all language server instances behind the same client. An artifact
+ * computed by one instance can thus be reused by an instance that has never seen the repository.
+ *
+ * Values are gzipped and base64-encoded. Keys are prefixed with Cache.CACHE_TAG, the artifact's namespace and the
+ * version of the artifact's format, so that entries written by other versions of the language server are never read.
+ *
+ * Each session has its own SharedCache (see SessionRegistry.Session.getSharedCache), to which the connections of the
+ * session whose client advertises the xcacheProvider capability are attached, so that artifacts computed for a session
+ * only ever go to and come from the clients of that session. Requests go to the most recently attached connection,
+ * and lookups simply miss when there is none. Errors are logged and treated as misses, since the cache only ever saves
+ * work.
+ *
+ * This class is threadsafe.
+ */
+public class SharedCache {
+
+    private static final Logger log = LoggerFactory.getLogger(SharedCache.class);
+
+    /**
+     * Values larger than this (after compression) are not stored
+     */
+    private static final int MAX_VALUE_SIZE = 8 * 1024 * 1024;
+
+    private final List<Cache> caches = new CopyOnWriteArrayList<>();
+
+    public void attach(Cache cache) {
+        caches.add(cache);
+    }
+
+    public void detach(Cache cache) {
+        caches.remove(cache);
+    }
+
+    /**
+     * Returns true if some connection can serve the cache
+     */
+    public boolean isAvailable() {
+        return !caches.isEmpty();
+    }
+
+    /**
+     * Returns the value stored under the given key, or null if there is none or the cache can't be reached. Waits for
+     * the client to answer, so it must not be called while serving a request.
+     */
+    public byte[] get(String namespace, int version, String key) {
+        Cache cache = current();
+        if (cache == null) {
+            return null;
+        }
+        String cacheKey = cacheKey(namespace, version, key);
+        try {
+            String value = cache.get(cacheKey, String.class);
+            return value == null ? null : decode(value);
+        } catch (Exception e) {
+            log.warn("Could not read {} from the shared cache: {}", cacheKey, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Stores the value under the given key. Best effort, like Cache.set.
+     */
+    public void set(String namespace, int version, String key, byte[] value) {
+        Cache cache = current();
+        if (cache == null) {
+            return;
+        }
+        String cacheKey = cacheKey(namespace, version, key);
+        try {
+            String encoded = encode(value);
+            if (encoded.length() > MAX_VALUE_SIZE) {
+                log.info("Not storing {} in the shared cache, it is too large ({} bytes)", cacheKey, encoded.length());
+                return;
+            }
+            cache.set(cacheKey, encoded);
+        } catch (Exception e) {
+            log.warn("Could not write {} to the shared cache: {}", cacheKey, e.toString());
+        }
+    }
+
+    private Cache current() {
+        List<Cache> current = new ArrayList<>(caches);
+        return current.isEmpty() ? null : current.get(current.size() - 1);
+    }
+
+    static String cacheKey(String namespace, int version, String key) {
+        return Cache.CACHE_TAG + namespace + "-" + version + "::" + key;
+    }
+
+    static String encode(byte[] value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(value);
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    static byte[] decode(String value) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(value)))) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+}
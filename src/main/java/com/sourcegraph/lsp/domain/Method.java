@@ -29,6 +29,7 @@ public enum Method {
     TEXT_DOCUMENT_DEFINITION("textDocument/definition"),
     TEXT_DOCUMENT_XDEFINITION("textDocument/xdefinition"),
     TEXT_DOCUMENT_CONTENT("textDocument/xcontent"),
+    TEXT_DOCUMENT_XANNOTATIONS("textDocument/xannotations"),
     // Window
     WINDOW_SHOW_MESSAGE("window/showMessage"),
     // Cache extension
@@ -0,0 +1,31 @@
+package com.sourcegraph.lsp.domain.params;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.sourcegraph.lsp.domain.structures.TextDocumentContentChangeEvent;
+import com.sourcegraph.lsp.domain.structures.VersionedTextDocumentIdentifier;
+
+import java.util.List;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class DidChangeTextDocumentParams {
+
+    private VersionedTextDocumentIdentifier textDocument;
+
+    private List<TextDocumentContentChangeEvent> contentChanges;
+
+    public VersionedTextDocumentIdentifier getTextDocument() {
+        return textDocument;
+    }
+
+    public void setTextDocument(VersionedTextDocumentIdentifier textDocument) {
+        this.textDocument = textDocument;
+    }
+
+    public List<TextDocumentContentChangeEvent> getContentChanges() {
+        return contentChanges;
+    }
+
+    public void setContentChanges(List<TextDocumentContentChangeEvent> contentChanges) {
+        this.contentChanges = contentChanges;
+    }
+}
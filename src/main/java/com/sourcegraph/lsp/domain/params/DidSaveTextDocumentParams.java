@@ -0,0 +1,29 @@
+package com.sourcegraph.lsp.domain.params;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.sourcegraph.lsp.domain.structures.TextDocumentIdentifier;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class DidSaveTextDocumentParams {
+
+    private TextDocumentIdentifier textDocument;
+
+    // only sent if the client includes the content on save
+    private String text;
+
+    public TextDocumentIdentifier getTextDocument() {
+        return textDocument;
+    }
+
+    public void setTextDocument(TextDocumentIdentifier textDocument) {
+        this.textDocument = textDocument;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+}
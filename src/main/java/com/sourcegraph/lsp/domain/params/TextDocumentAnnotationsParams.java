@@ -0,0 +1,29 @@
+package com.sourcegraph.lsp.domain.params;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.sourcegraph.lsp.domain.structures.TextDocumentIdentifier;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class TextDocumentAnnotationsParams {
+
+    private TextDocumentIdentifier textDocument;
+
+    public TextDocumentIdentifier getTextDocument() {
+        return textDocument;
+    }
+
+    public void setTextDocument(TextDocumentIdentifier textDocument) {
+        this.textDocument = textDocument;
+    }
+
+    public TextDocumentAnnotationsParams withTextDocument(TextDocumentIdentifier textDocument) {
+        this.textDocument = textDocument;
+        return this;
+    }
+
+    public static TextDocumentAnnotationsParams of(TextDocumentIdentifier textDocument) {
+        return new TextDocumentAnnotationsParams().withTextDocument(textDocument);
+    }
+}
@@ -0,0 +1,114 @@
+package com.sourcegraph.lsp.domain.structures;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An element of a textDocument/xannotations result: what hover and xdefinition would return for a position within a
+ * name token of the document
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class Annotation implements SourceGenerable {
+
+    public static Annotation of(Range range, List<MarkedString> contents, Location location, SymbolDescriptor symbol) {
+        return new Annotation().withRange(range).withContents(contents).withLocation(location).withSymbol(symbol);
+    }
+
+    private Range range;
+
+    private List<MarkedString> contents = new ArrayList<>();
+
+    // definition of the token's symbol, if it is defined in the workspace
+    private Location location;
+
+    private SymbolDescriptor symbol;
+
+    public Range getRange() {
+        return range;
+    }
+
+    public void setRange(Range range) {
+        this.range = range;
+    }
+
+    public List<MarkedString> getContents() {
+        return contents;
+    }
+
+    public void setContents(List<MarkedString> contents) {
+        this.contents = contents;
+    }
+
+    public Location getLocation() {
+        return location;
+    }
+
+    public void setLocation(Location location) {
+        this.location = location;
+    }
+
+    public SymbolDescriptor getSymbol() {
+        return symbol;
+    }
+
+    public void setSymbol(SymbolDescriptor symbol) {
+        this.symbol = symbol;
+    }
+
+    public Annotation withRange(Range range) {
+        this.range = range;
+        return this;
+    }
+
+    public Annotation withContents(List<MarkedString> contents) {
+        this.contents = contents;
+        return this;
+    }
+
+    public Annotation withLocation(Location location) {
+        this.location = location;
+        return this;
+    }
+
+    public Annotation withSymbol(SymbolDescriptor symbol) {
+        this.symbol = symbol;
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Annotation that = (Annotation) o;
+
+        if (range != null ? !range.equals(that.range) : that.range != null) return false;
+        if (contents != null ? !contents.equals(that.contents) : that.contents != null) return false;
+        if (location != null ? !location.equals(that.location) : that.location != null) return false;
+        return symbol != null ? symbol.equals(that.symbol) : that.symbol == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = range != null ? range.hashCode() : 0;
+        result = 31 * result + (contents != null ? contents.hashCode() : 0);
+        result = 31 * result + (location != null ? location.hashCode() : 0);
+        result = 31 * result + (symbol != null ? symbol.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String generateSource(String linePrefix) {
+        String linePrefix2 = linePrefix + "  ";
+        String rangeSource = String.format("new Range().withStart(Position.of(%d, %d)).withEnd(Position.of(%d, %d))",
+                range.getStart().getLine(), range.getStart().getCharacter(), range.getEnd().getLine(), range.getEnd().getCharacter());
+        return String.format("%s.of(\n%s%s,\n%s%s,\n%s%s,\n%s%s\n%s)", getClass().getSimpleName(),
+                linePrefix2, rangeSource,
+                linePrefix2, SourceGenerable.q(contents, linePrefix2),
+                linePrefix2, location == null ? "null" : location.generateSource(linePrefix2),
+                linePrefix2, symbol == null ? "null" : symbol.generateSource(linePrefix2),
+                linePrefix);
+    }
+}
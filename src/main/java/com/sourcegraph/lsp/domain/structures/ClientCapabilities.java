@@ -10,8 +10,11 @@ public class ClientCapabilities {
 
     private boolean streaming;
 
+    private boolean xcacheProvider;
+
     public ClientCapabilities() {
         this.streaming = false;
+        this.xcacheProvider = false;
     }
 
     public boolean isStreaming() {
@@ -21,4 +24,15 @@ public class ClientCapabilities {
     public void setStreaming(boolean streaming) {
         this.streaming = streaming;
     }
+
+    /**
+     * Whether the client answers "xcache/get" and "xcache/set" requests
+     */
+    public boolean isXcacheProvider() {
+        return xcacheProvider;
+    }
+
+    public void setXcacheProvider(boolean xcacheProvider) {
+        this.xcacheProvider = xcacheProvider;
+    }
 }
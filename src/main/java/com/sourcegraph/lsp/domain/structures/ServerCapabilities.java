@@ -12,6 +12,8 @@ public class ServerCapabilities {
 
     private boolean xdefinitionProvider = true;
 
+    private boolean xannotationsProvider = true;
+
     private boolean referencesProvider = true;
 
     private boolean xworkspaceReferencesProvider = true;
@@ -20,6 +22,9 @@ public class ServerCapabilities {
 
     private boolean streaming = true;
 
+    // TextDocumentSyncKind.Incremental: didChange notifications carry ranged changes
+    private int textDocumentSync = 2;
+
     public boolean isHoverProvider() {
         return hoverProvider;
     }
@@ -40,6 +45,10 @@ public class ServerCapabilities {
 
     public void setXdefinitionProvider(boolean xdefinitionProvider) { this.xdefinitionProvider = xdefinitionProvider; }
 
+    public boolean isXannotationsProvider() { return xannotationsProvider; }
+
+    public void setXannotationsProvider(boolean xannotationsProvider) { this.xannotationsProvider = xannotationsProvider; }
+
     public boolean isReferencesProvider() {
         return referencesProvider;
     }
@@ -69,4 +78,12 @@ public class ServerCapabilities {
     public void setStreaming(boolean streaming) {
         this.streaming = streaming;
     }
+
+    public int getTextDocumentSync() {
+        return textDocumentSync;
+    }
+
+    public void setTextDocumentSync(int textDocumentSync) {
+        this.textDocumentSync = textDocumentSync;
+    }
 }
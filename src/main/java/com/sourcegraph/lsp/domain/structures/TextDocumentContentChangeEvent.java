@@ -0,0 +1,50 @@
+package com.sourcegraph.lsp.domain.structures;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * A change to a text document. If the range is null, the text is the new full content of the document.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class TextDocumentContentChangeEvent {
+
+    private Range range;
+
+    private Integer rangeLength;
+
+    private String text;
+
+    public Range getRange() {
+        return range;
+    }
+
+    public void setRange(Range range) {
+        this.range = range;
+    }
+
+    public Integer getRangeLength() {
+        return rangeLength;
+    }
+
+    public void setRangeLength(Integer rangeLength) {
+        this.rangeLength = rangeLength;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    public TextDocumentContentChangeEvent withRange(Range range) {
+        this.range = range;
+        return this;
+    }
+
+    public TextDocumentContentChangeEvent withText(String text) {
+        this.text = text;
+        return this;
+    }
+}
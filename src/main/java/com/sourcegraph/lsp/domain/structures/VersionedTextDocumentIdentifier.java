@@ -0,0 +1,22 @@
+package com.sourcegraph.lsp.domain.structures;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class VersionedTextDocumentIdentifier extends TextDocumentIdentifier {
+
+    private Integer version;
+
+    public Integer getVersion() {
+        return version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+
+    public VersionedTextDocumentIdentifier withVersion(Integer version) {
+        this.version = version;
+        return this;
+    }
+}
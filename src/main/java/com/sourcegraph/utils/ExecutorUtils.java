@@ -11,27 +11,15 @@ public class ExecutorUtils {
     private static ExecutorService executorService = Executors.newCachedThreadPool();
 
     /**
-     * The executor for fetching artifacts from remote repositories. Used to parallelize multiple levels of the artifact
-     * fetching process.
+     * The executor for collecting dependency graphs (which downloads POMs). Artifacts themselves are downloaded by
+     * ArtifactFetcher, which has its own per-host pools.
      */
-    private static ExecutorService artifactsFetcherExecutorService = new ThreadPoolExecutor(
-            1000,
-            1000,
-            60,
-            TimeUnit.SECONDS,
-            new LinkedBlockingQueue<>()
-    );
+    private static ExecutorService dependencyCollectorExecutorService = newShrinkingPool(16);
 
     /**
      * Slightly less aggressive executor for fetching file contents from the LSP proxy
      */
-    private static ExecutorService fileFetcherExecutorService = new ThreadPoolExecutor(
-            200,
-            200,
-            60,
-            TimeUnit.SECONDS,
-            new LinkedBlockingQueue<>()
-    );
+    private static ExecutorService fileFetcherExecutorService = newShrinkingPool(200);
 
     /**
      * This executor should be used for direct fetching (i.e., manually fetching one artifact at a time) -- we want
@@ -46,12 +34,25 @@ public class ExecutorUtils {
             new LinkedBlockingQueue<>()
     );
 
+    /**
+     * The executor for building effective POMs. Model building is mostly CPU-bound (interpolation, inheritance
+     * assembly), with occasional blocking on a remote parent POM or BOM download, so it is sized relative to the
+     * number of processors rather than to the number of modules.
+     */
+    private static ExecutorService modelBuilderExecutorService = new ThreadPoolExecutor(
+            Math.max(4, Runtime.getRuntime().availableProcessors() * 2),
+            Math.max(4, Runtime.getRuntime().availableProcessors() * 2),
+            60,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>()
+    );
+
     public static ExecutorService getExecutorService() {
         return executorService;
     }
 
-    public static ExecutorService getArtifactsFetcherExecutorService() {
-        return artifactsFetcherExecutorService;
+    public static ExecutorService getDependencyCollectorExecutorService() {
+        return dependencyCollectorExecutorService;
     }
 
     public static ExecutorService getFileFetcherExecutorService() {
@@ -61,4 +62,24 @@ public class ExecutorUtils {
     public static ExecutorService getReasonableFetcherExecutorService() {
         return reasonableFetcherExecutorService;
     }
+
+    public static ExecutorService getModelBuilderExecutorService() {
+        return modelBuilderExecutorService;
+    }
+
+    /**
+     * Creates a pool of at most `size` threads whose threads exit when idle, so that a pool sized for peak load
+     * doesn't keep its threads around between sessions.
+     */
+    private static ThreadPoolExecutor newShrinkingPool(int size) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                size,
+                size,
+                60,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>()
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 }
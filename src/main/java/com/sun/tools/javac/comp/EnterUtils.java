@@ -0,0 +1,64 @@
+package com.sun.tools.javac.comp;
+
+import com.sun.tools.javac.code.Kinds;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symtab;
+import com.sun.tools.javac.code.Type;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeScanner;
+import com.sun.tools.javac.util.Context;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lets a compilation unit be entered again, e.g. after its file has been edited. javac 8 has no counterpart of the
+ * Enter.unenter of later versions, which also drops the class symbols; here they are kept, so that the other trees
+ * attributed by the compiler still refer to the classes entered from the new content.
+ */
+public class EnterUtils {
+
+    /**
+     * Removes the classes declared by the unit from the compiled classes and the class environments, so that entering
+     * the file again doesn't report them as duplicates
+     *
+     * @return the removed classes
+     */
+    public static List<Symbol.ClassSymbol> unenter(Context context, JCTree.JCCompilationUnit unit) {
+        Check chk = Check.instance(context);
+        TypeEnvs typeEnvs = TypeEnvs.instance(context);
+        List<Symbol.ClassSymbol> classes = new ArrayList<>();
+        new TreeScanner() {
+            @Override
+            public void visitClassDef(JCTree.JCClassDecl tree) {
+                Symbol.ClassSymbol c = tree.sym;
+                if (c != null && chk.compiled.get(c.flatname) == c) {
+                    chk.compiled.remove(c.flatname);
+                    typeEnvs.remove(c);
+                    ((Type.ClassType) c.type).allparams_field = null;
+                    classes.add(c);
+                }
+                super.visitClassDef(tree);
+            }
+        }.scan(unit);
+        return classes;
+    }
+
+    /**
+     * Removes the classes that were unentered, but not entered again, from the symbol table and their packages, so
+     * that classes deleted from a file can't be resolved anymore
+     */
+    public static void removeVanished(Context context, List<Symbol.ClassSymbol> unentered) {
+        Check chk = Check.instance(context);
+        Symtab syms = Symtab.instance(context);
+        for (Symbol.ClassSymbol c : unentered) {
+            if (chk.compiled.get(c.flatname) == c || syms.classes.get(c.flatname) != c) {
+                continue;
+            }
+            syms.classes.remove(c.flatname);
+            if (c.owner.kind == Kinds.PCK) {
+                c.owner.members().remove(c);
+            }
+        }
+    }
+}
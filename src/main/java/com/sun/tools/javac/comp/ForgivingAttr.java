@@ -4,13 +4,19 @@ import com.sun.tools.javac.code.Attribute;
 import com.sun.tools.javac.code.Symbol;
 import com.sun.tools.javac.code.Type;
 import com.sun.tools.javac.code.TypeAnnotations;
+import com.sun.tools.javac.code.Kinds;
 import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeInfo;
 import com.sun.tools.javac.tree.TreeScanner;
 import com.sun.tools.javac.util.Context;
 import com.sun.tools.javac.util.List;
 import com.sun.tools.javac.util.ListBuffer;
 import org.slf4j.LoggerFactory;
 
+import javax.tools.JavaFileObject;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import static com.sun.tools.javac.code.TypeTag.NONE;
@@ -42,6 +48,95 @@ public class ForgivingAttr extends Attr {
         return attr;
     }
 
+    // the source file (by name) whose method and initializer bodies are attributed lazily, and the position whose
+    // enclosing body is attributed right away
+    private String lazyFile;
+    private long lazyPos;
+
+    // bodies skipped so far, mapped to the environments of their classes, in which they are attributed on demand
+    private final Map<JCTree, Env<AttrContext>> skippedBodies = new LinkedHashMap<>();
+
+    /**
+     * Makes the attribution of the given file's classes skip the bodies of their methods and initializers, except for
+     * the one containing the given position. A null file attributes all bodies again.
+     */
+    public void setLazyBodies(String file, long pos) {
+        lazyFile = file;
+        lazyPos = pos;
+    }
+
+    /**
+     * Attributes the bodies of the given file that were skipped and contain the given position, or all of them if the
+     * position is negative
+     */
+    public void attribSkippedBodies(String file, long pos) {
+        Iterator<Map.Entry<JCTree, Env<AttrContext>>> it = skippedBodies.entrySet().iterator();
+        List<Map.Entry<JCTree, Env<AttrContext>>> toAttribute = List.nil();
+        while (it.hasNext()) {
+            Map.Entry<JCTree, Env<AttrContext>> e = it.next();
+            if (e.getValue().toplevel.sourcefile.getName().equals(file) && (pos < 0 || contains(e.getKey(), pos))) {
+                toAttribute = toAttribute.prepend(e);
+                it.remove();
+            }
+        }
+        for (Map.Entry<JCTree, Env<AttrContext>> e : toAttribute.reverse()) {
+            JavaFileObject prev = log.useSource(e.getValue().toplevel.sourcefile);
+            try {
+                attribStat(e.getKey(), e.getValue());
+            } catch (Throwable t) {
+                logger.error("Error attributing a body of {}", file, t);
+            } finally {
+                log.useSource(prev);
+            }
+        }
+    }
+
+    /**
+     * Drops the skipped bodies of the given file, whose classes are about to be entered again
+     */
+    public void forgetSkippedBodies(String file) {
+        skippedBodies.values().removeIf(env -> env.toplevel.sourcefile.getName().equals(file));
+    }
+
+    @Override
+    public void visitMethodDef(JCTree.JCMethodDecl tree) {
+        if (tree.body != null && tree.sym != null && shouldSkip(tree, tree.sym.owner)) {
+            skippedBodies.put(tree, env);
+            result = tree.type = tree.sym.type;
+            return;
+        }
+        super.visitMethodDef(tree);
+    }
+
+    @Override
+    public void visitBlock(JCTree.JCBlock tree) {
+        if (env.info.scope.owner.kind == Kinds.TYP && shouldSkip(tree, env.info.scope.owner)) {
+            // an initializer
+            skippedBodies.put(tree, env);
+            result = null;
+            return;
+        }
+        super.visitBlock(tree);
+    }
+
+    /**
+     * Returns true if the body is a member of a (non-local) class of the lazily attributed file that doesn't contain
+     * the position to attribute. Bodies of local and anonymous classes are always attributed along with the body
+     * that contains them (which also covers the speculative attribution of lambdas).
+     */
+    private boolean shouldSkip(JCTree body, Symbol owner) {
+        return lazyFile != null
+                && env.toplevel.sourcefile.getName().equals(lazyFile)
+                && owner.kind == Kinds.TYP
+                && !owner.isLocal()
+                && !contains(body, lazyPos);
+    }
+
+    private static boolean contains(JCTree tree, long pos) {
+        JCTree body = tree.hasTag(METHODDEF) ? ((JCTree.JCMethodDecl) tree).body : tree;
+        return TreeInfo.getStartPos(tree) <= pos && pos <= TreeInfo.endPos(body);
+    }
+
     @Override
     public void validateTypeAnnotations(JCTree tree, boolean sigOnly) {
         tree.accept(new TypeAnnotationsValidator(sigOnly));
@@ -1,11 +1,23 @@
 package com.sourcegraph.langserver;
 
 import com.sourcegraph.langserver.langservice.*;
+import com.sourcegraph.langserver.langservice.compiler.AnnotationScannerTest;
+import com.sourcegraph.langserver.langservice.compiler.CamelHumpsTest;
+import com.sourcegraph.langserver.langservice.compiler.NavigationIndexTest;
+import com.sourcegraph.langserver.langservice.gradle.FradleCacheTest;
 import com.sourcegraph.langserver.langservice.gradle.FradleTest;
 import com.sourcegraph.langserver.langservice.gradle.GradleServiceTest;
 import com.sourcegraph.langserver.langservice.gradle.GradleUtilTest;
+import com.sourcegraph.langserver.langservice.maven.ArtifactFetcherTest;
+import com.sourcegraph.langserver.langservice.maven.DependencyResolutionCacheTest;
 import com.sourcegraph.langserver.langservice.maven.EffectivePomTest;
+import com.sourcegraph.langserver.langservice.workspace.IdentifierFilterTest;
+import com.sourcegraph.langserver.langservice.workspace.JavacHolderTest;
+import com.sourcegraph.langserver.langservice.workspace.PathTrieTest;
+import com.sourcegraph.langserver.langservice.workspace.SharedJarIndexTest;
+import com.sourcegraph.langserver.langservice.workspace.SourceFileTest;
 import com.sourcegraph.lsp.ControllerTest;
+import com.sourcegraph.lsp.SharedCacheTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
@@ -16,8 +28,27 @@ import org.junit.runners.Suite;
         GradleServiceTest.class,
         GradleUtilTest.class,
         FradleTest.class,
+        FradleCacheTest.class,
         LanguageUtilsTest.class,
-        EffectivePomTest.class
+        EffectivePomTest.class,
+        DependencyResolutionCacheTest.class,
+        ArtifactFetcherTest.class,
+        PathTrieTest.class,
+        SourceFileTest.class,
+        SharedJarIndexTest.class,
+        NavigationIndexTest.class,
+        SessionRegistryTest.class,
+        RequestCoalescerTest.class,
+        SharedCacheTest.class,
+        ResponseCacheTest.class,
+        AnnotationScannerTest.class,
+        RepositoryIndexerTest.class,
+        SymbolRankingTest.class,
+        SymbolSearchCacheTest.class,
+        CamelHumpsTest.class,
+        SymbolNameIndexTest.class,
+        IdentifierFilterTest.class,
+        JavacHolderTest.class
 }) // Note that Categories is a kind of Suite
 public class AllTestSuite {
 }
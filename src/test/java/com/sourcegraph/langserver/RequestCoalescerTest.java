@@ -0,0 +1,113 @@
+package com.sourcegraph.langserver;
+
+import com.sourcegraph.lsp.domain.structures.Position;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RequestCoalescerTest {
+
+    @Test
+    public void testConcurrentDuplicatesShareOneComputation() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger computations = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<String> first = executor.submit(() -> coalescer.run("hover", Position.of(1, 2), () -> {
+                computations.incrementAndGet();
+                started.countDown();
+                await(release);
+                return "result";
+            }));
+            started.await();
+            List<Future<String>> duplicates = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                duplicates.add(executor.submit(() -> coalescer.run("hover", Position.of(1, 2), () -> {
+                    computations.incrementAndGet();
+                    return "duplicate";
+                })));
+            }
+            // wait until all duplicates have joined the first computation
+            while (coalescer.getCoalesced() < 3) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            Assert.assertEquals("result", first.get());
+            for (Future<String> duplicate : duplicates) {
+                Assert.assertEquals("result", duplicate.get());
+            }
+            Assert.assertEquals(1, computations.get());
+            Assert.assertEquals(1, coalescer.getComputed());
+            Assert.assertEquals(3, coalescer.getCoalesced());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDifferentRequestsAreComputedSeparately() {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        Assert.assertEquals("a", coalescer.run("hover", Position.of(1, 2), () -> "a"));
+        Assert.assertEquals("b", coalescer.run("hover", Position.of(1, 3), () -> "b"));
+        Assert.assertEquals("c", coalescer.run("definition", Position.of(1, 2), () -> "c"));
+        // not cached once done
+        Assert.assertEquals("d", coalescer.run("hover", Position.of(1, 2), () -> "d"));
+        Assert.assertEquals(4, coalescer.getComputed());
+        Assert.assertEquals(0, coalescer.getCoalesced());
+    }
+
+    @Test
+    public void testNewRevisionDoesNotJoinEarlierComputation() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> before = executor.submit(() -> coalescer.run("hover", Position.of(1, 2), () -> {
+                started.countDown();
+                await(release);
+                return "before";
+            }));
+            started.await();
+            coalescer.advanceRevision();
+            Assert.assertEquals("after", coalescer.run("hover", Position.of(1, 2), () -> "after"));
+            release.countDown();
+            Assert.assertEquals("before", before.get());
+            Assert.assertEquals(0, coalescer.getCoalesced());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testExceptionsAreRethrown() {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        try {
+            coalescer.run("hover", Position.of(1, 2), () -> {
+                throw new IllegalStateException("failed");
+            });
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("failed", e.getMessage());
+        }
+        // a failed computation isn't remembered either
+        Assert.assertEquals("ok", coalescer.run("hover", Position.of(1, 2), () -> "ok"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.sourcegraph.langserver;
+
+import com.sourcegraph.langserver.langservice.workspace.WorkspaceManager;
+import com.sourcegraph.lsp.Controller;
+import com.sourcegraph.lsp.domain.result.WorkspaceConfigurationServersResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+
+public class SessionRegistryTest {
+
+    private static final String REPO = "git://github.com/foo/bar?8b0a0a7ef0d2cd4ba5b4bd14a2bc4e0a11bb4b8f";
+
+    @Test
+    public void testSharesSessionPerRevision() {
+        SessionRegistry registry = new SessionRegistry(4, 1.0);
+        Controller a = new Controller();
+        Controller b = new Controller();
+        Controller c = new Controller();
+
+        SessionRegistry.Session sa = registry.acquire(SessionRegistry.key("file:///", REPO), a);
+        SessionRegistry.Session sb = registry.acquire(SessionRegistry.key("file:///", REPO), b);
+        SessionRegistry.Session sc = registry.acquire(SessionRegistry.key("file:///", REPO.replace("8b0a", "0000")), c);
+
+        Assert.assertSame(sa, sb);
+        Assert.assertNotSame(sa, sc);
+        Assert.assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void testUnknownRevisionIsNotShared() {
+        SessionRegistry registry = new SessionRegistry(4, 1.0);
+        SessionRegistry.Session sa = registry.acquire(SessionRegistry.key("file:///", null), new Controller());
+        SessionRegistry.Session sb = registry.acquire(SessionRegistry.key("file:///", null), new Controller());
+
+        Assert.assertNotSame(sa, sb);
+        Assert.assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedIdleSession() {
+        SessionRegistry registry = new SessionRegistry(1, 1.0);
+        Controller a = new Controller();
+        Controller b = new Controller();
+
+        SessionRegistry.Session first = registry.acquire(SessionRegistry.key("file:///", REPO + "1"), a);
+        SessionRegistry.Session second = registry.acquire(SessionRegistry.key("file:///", REPO + "2"), b);
+        registry.release(first, a);
+        Assert.assertEquals(2, registry.size());
+
+        // the second session going idle leaves one idle session too many
+        registry.release(second, b);
+        Assert.assertEquals(1, registry.size());
+        Assert.assertSame(second, registry.acquire(SessionRegistry.key("file:///", REPO + "2"), new Controller()));
+    }
+
+    @Test
+    public void testKeepsSessionsInUse() {
+        SessionRegistry registry = new SessionRegistry(0, 1.0);
+        Controller a = new Controller();
+        Controller b = new Controller();
+
+        SessionRegistry.Session session = registry.acquire(SessionRegistry.key("file:///", REPO), a);
+        registry.acquire(SessionRegistry.key("file:///", REPO), b);
+        registry.release(session, a);
+        Assert.assertEquals(1, registry.size());
+
+        registry.release(session, b);
+        Assert.assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void testSharedCacheOnlyReachesConnectionsOfTheSession() {
+        SessionRegistry registry = new SessionRegistry(4, 1.0);
+        Controller a = new Controller();
+        Controller b = new Controller();
+
+        SessionRegistry.Session sa = registry.acquire(SessionRegistry.key("file:///", REPO), a);
+        SessionRegistry.Session sb = registry.acquire(SessionRegistry.key("file:///", REPO.replace("8b0a", "0000")), b);
+        sa.getSharedCache().attach(a);
+        sb.getSharedCache().attach(b);
+        Assert.assertNotSame(sa.getSharedCache(), sb.getSharedCache());
+
+        registry.release(sa, a);
+        Assert.assertFalse(sa.getSharedCache().isAvailable());
+        Assert.assertTrue(sb.getSharedCache().isAvailable());
+    }
+
+    @Test
+    public void testOnlyConnectionClaimsSessionForEditing() {
+        SessionRegistry registry = new SessionRegistry(4, 1.0);
+        Controller a = new Controller();
+
+        SessionRegistry.Session session = registry.acquire(SessionRegistry.key("file:///", REPO), a);
+        Assert.assertTrue(registry.claimForEditing(session));
+
+        // later connections don't see the edits
+        Assert.assertNotSame(session, registry.acquire(SessionRegistry.key("file:///", REPO), new Controller()));
+    }
+
+    @Test
+    public void testEditingConnectionForksSharedSession() {
+        SessionRegistry registry = new SessionRegistry(4, 1.0);
+        Controller a = new Controller();
+        Controller b = new Controller();
+
+        SessionRegistry.Session shared = registry.acquire(SessionRegistry.key("file:///", REPO), a);
+        shared.initializeOnce(connections -> new SessionRegistry.Initialized(connections,
+                new WorkspaceManager(Collections.emptyList(), connections))).join();
+        registry.acquire(SessionRegistry.key("file:///", REPO), b);
+        Assert.assertFalse(registry.claimForEditing(shared));
+
+        SessionRegistry.Session forked = registry.fork(shared, a);
+        Assert.assertNotSame(shared, forked);
+        // forked from the initialized workspaces rather than initialized again
+        forked.initializeOnce(connections -> {
+            throw new AssertionError("initialized again");
+        }).join();
+        Assert.assertNotSame(shared.getWorkspaceManager(), forked.getWorkspaceManager());
+        Assert.assertSame(shared.getFiles(), forked.getFiles());
+        // the other connection keeps the shared session, which later connections still attach to
+        Assert.assertSame(shared, registry.acquire(SessionRegistry.key("file:///", REPO), new Controller()));
+        Assert.assertTrue(registry.claimForEditing(forked));
+    }
+
+    @Test
+    public void testDiscardedSessionIsNotFilledInByItsInitializer() throws Exception {
+        SessionRegistry registry = new SessionRegistry(4, 1.0);
+        Controller a = new Controller();
+        CountDownLatch discarded = new CountDownLatch(1);
+
+        SessionRegistry.Session session = registry.acquire(null, a);
+        CompletableFuture<Void> ready = session.initializeOnce(connections -> {
+            try {
+                discarded.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return new SessionRegistry.Initialized(connections, new WorkspaceManager(Collections.emptyList(), connections));
+        });
+        // an unshared session is discarded as soon as its connection is gone
+        registry.release(session, a);
+        discarded.countDown();
+
+        try {
+            ready.join();
+            Assert.fail("a discarded session must not become ready");
+        } catch (CompletionException e) {
+            Assert.assertNull(session.getWorkspaceManager());
+            Assert.assertNull(session.getCompilerService());
+        }
+    }
+
+    @Test
+    public void testServersAreDistinguished() {
+        WorkspaceConfigurationServersResult.Server server = new WorkspaceConfigurationServersResult.Server();
+        server.setId("private");
+        server.setUsername("user");
+        server.setPassword("secret");
+        WorkspaceConfigurationServersResult.Server other = new WorkspaceConfigurationServersResult.Server();
+        other.setId("private");
+        other.setUsername("user");
+        other.setPassword("other");
+
+        String key = SessionRegistry.key("file:///", REPO, Collections.singletonList(server));
+        Assert.assertEquals(key, SessionRegistry.key("file:///", REPO, Collections.singletonList(server)));
+        Assert.assertNotEquals(key, SessionRegistry.key("file:///", REPO));
+        Assert.assertNotEquals(key, SessionRegistry.key("file:///", REPO, Collections.singletonList(other)));
+        Assert.assertFalse(key.contains("secret"));
+    }
+}
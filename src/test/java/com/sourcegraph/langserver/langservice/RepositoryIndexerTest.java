@@ -0,0 +1,109 @@
+package com.sourcegraph.langserver.langservice;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sourcegraph.langserver.langservice.files.FileSystemFileProvider;
+import com.sourcegraph.lsp.domain.Mapper;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RepositoryIndexerTest {
+
+    @Test
+    public void testFilesOfADirectoryGoToTheSameWorker() {
+        for (int workers = 1; workers <= 8; workers++) {
+            int worker = RepositoryIndexer.workerOf("file:///src/main/java/a/A.java", workers);
+            assertTrue(worker >= 0 && worker < workers);
+            assertEquals(worker, RepositoryIndexer.workerOf("file:///src/main/java/a/B.java", workers));
+        }
+    }
+
+    @Test
+    public void testDirectoriesAreSpreadOverWorkers() {
+        boolean[] used = new boolean[4];
+        for (int i = 0; i < 100; i++) {
+            used[RepositoryIndexer.workerOf("file:///src/p" + i + "/A.java", used.length)] = true;
+        }
+        for (boolean u : used) {
+            assertTrue(u);
+        }
+    }
+
+    @Test
+    public void testIndexesTree() throws Exception {
+        Path root = Files.createTempDirectory("repository-indexer-test");
+        try {
+            Path pkg = Files.createDirectories(root.resolve("src/main/java/a"));
+            Files.write(pkg.resolve("A.java"), String.join("\n",
+                    "package a;",
+                    "",
+                    "public class A {",
+                    "    public int size() {",
+                    "        return new B().count;",
+                    "    }",
+                    "}",
+                    "").getBytes(StandardCharsets.UTF_8));
+            Files.write(pkg.resolve("B.java"), String.join("\n",
+                    "package a;",
+                    "",
+                    "class B {",
+                    "    int count;",
+                    "}",
+                    "").getBytes(StandardCharsets.UTF_8));
+
+            StringWriter out = new StringWriter();
+            RepositoryIndexer.Stats stats = new RepositoryIndexer("file:///", new FileSystemFileProvider(root), 2).index(out);
+            assertEquals(2, stats.getDocuments());
+            assertEquals(0, stats.getFailedDocuments());
+
+            List<JsonNode> lines = new ArrayList<>();
+            for (String line : out.toString().split("\n")) {
+                lines.add(Mapper.getObjectMapper().readTree(line));
+            }
+            List<String> documents = new ArrayList<>();
+            List<String> symbols = new ArrayList<>();
+            boolean hover = false;
+            boolean referenceToB = false;
+            for (JsonNode line : lines) {
+                switch (line.get("type").asText()) {
+                    case "document":
+                        documents.add(line.get("uri").asText());
+                        break;
+                    case "symbol":
+                        symbols.add(line.get("symbol").get("name").asText());
+                        break;
+                    case "hover":
+                        hover = true;
+                        break;
+                    case "range":
+                        // `new B().count` refers to definitions in the other document
+                        JsonNode definition = line.get("definition");
+                        if (definition != null && definition.get("uri").asText().endsWith("/B.java")
+                                && !line.get("range").equals(definition.get("range"))
+                                && line.get("range").get("start").get("line").asInt() == 4) {
+                            referenceToB = true;
+                        }
+                        break;
+                    default:
+                        fail("unexpected line " + line);
+                }
+            }
+            documents.sort(null);
+            assertEquals(Arrays.asList("file:///src/main/java/a/A.java", "file:///src/main/java/a/B.java"), documents);
+            assertTrue(symbols.containsAll(Arrays.asList("A", "size", "B", "count")));
+            assertTrue(hover);
+            assertTrue(referenceToB);
+        } finally {
+            FileUtils.deleteDirectory(root.toFile());
+        }
+    }
+}
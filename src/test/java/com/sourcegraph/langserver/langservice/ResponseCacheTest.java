@@ -0,0 +1,101 @@
+package com.sourcegraph.langserver.langservice;
+
+import com.sourcegraph.lsp.domain.structures.Position;
+import com.sourcegraph.lsp.domain.structures.Range;
+import org.junit.Test;
+
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class ResponseCacheTest {
+
+    private static final String URI = "file:///src/Foo.java";
+
+    private static Range range(int line, int start, int end) {
+        return new Range().withStart(Position.of(line, start)).withEnd(Position.of(line, end));
+    }
+
+    @Test
+    public void testIdentifierResponseIsReturnedForWholeIdentifier() {
+        ResponseCache cache = new ResponseCache(10);
+        cache.put("textDocument/hover", URI, cache.getRevision(), Position.of(3, 7), range(3, 5, 10), "hover");
+
+        assertEquals(Optional.of("hover"), cache.get("textDocument/hover", URI, Position.of(3, 5)));
+        assertEquals(Optional.of("hover"), cache.get("textDocument/hover", URI, Position.of(3, 9)));
+        assertFalse(cache.get("textDocument/hover", URI, Position.of(3, 10)).isPresent());
+        assertFalse(cache.get("textDocument/hover", URI, Position.of(4, 7)).isPresent());
+        assertFalse(cache.get("textDocument/definition", URI, Position.of(3, 7)).isPresent());
+    }
+
+    @Test
+    public void testOtherResponseIsReturnedForExactPosition() {
+        ResponseCache cache = new ResponseCache(10);
+        cache.put("textDocument/hover", URI, cache.getRevision(), Position.of(3, 7), null, "hover");
+
+        assertEquals(Optional.of("hover"), cache.get("textDocument/hover", URI, Position.of(3, 7)));
+        assertFalse(cache.get("textDocument/hover", URI, Position.of(3, 6)).isPresent());
+    }
+
+    @Test
+    public void testAdvanceRevisionDropsResponses() {
+        ResponseCache cache = new ResponseCache(10);
+        cache.put("textDocument/hover", URI, cache.getRevision(), Position.of(3, 7), null, "hover");
+        cache.putFile("textDocument/documentSymbol", URI, cache.getRevision(), "symbols");
+        assertEquals(Optional.of("symbols"), cache.getFile("textDocument/documentSymbol", URI));
+
+        cache.advanceRevision();
+
+        assertFalse(cache.get("textDocument/hover", URI, Position.of(3, 7)).isPresent());
+        assertFalse(cache.getFile("textDocument/documentSymbol", URI).isPresent());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testResponseComputedAtOldRevisionIsNotStored() {
+        ResponseCache cache = new ResponseCache(10);
+        long revision = cache.getRevision();
+        cache.advanceRevision();
+        cache.put("textDocument/hover", URI, revision, Position.of(3, 7), null, "hover");
+        cache.putFile("textDocument/documentSymbol", URI, revision, "symbols");
+
+        assertFalse(cache.get("textDocument/hover", URI, Position.of(3, 7)).isPresent());
+        assertFalse(cache.getFile("textDocument/documentSymbol", URI).isPresent());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedFilesAreEvicted() {
+        ResponseCache cache = new ResponseCache(2);
+        cache.put("textDocument/hover", "file:///A.java", cache.getRevision(), Position.of(0, 0), null, "a");
+        cache.put("textDocument/hover", "file:///B.java", cache.getRevision(), Position.of(0, 0), null, "b");
+        // use A, so that B is evicted first
+        assertTrue(cache.get("textDocument/hover", "file:///A.java", Position.of(0, 0)).isPresent());
+        cache.put("textDocument/hover", "file:///C.java", cache.getRevision(), Position.of(0, 0), null, "c");
+
+        assertEquals(2, cache.size());
+        assertTrue(cache.get("textDocument/hover", "file:///A.java", Position.of(0, 0)).isPresent());
+        assertFalse(cache.get("textDocument/hover", "file:///B.java", Position.of(0, 0)).isPresent());
+        assertTrue(cache.get("textDocument/hover", "file:///C.java", Position.of(0, 0)).isPresent());
+    }
+
+    @Test
+    public void testDisabled() {
+        ResponseCache cache = new ResponseCache(0);
+        cache.put("textDocument/hover", URI, cache.getRevision(), Position.of(3, 7), null, "hover");
+
+        assertFalse(cache.get("textDocument/hover", URI, Position.of(3, 7)).isPresent());
+    }
+
+    @Test
+    public void testIdentifierRange() {
+        String content = "class Foo {\n    int bar = baz(1);\n}\n";
+
+        assertNotNull(ResponseCache.identifierRange(content, range(0, 6, 9)));
+        assertNotNull(ResponseCache.identifierRange(content, range(1, 8, 11)));
+        // "bar = baz" spans several tokens
+        assertNull(ResponseCache.identifierRange(content, range(1, 8, 17)));
+        // "baz(1)" is an expression
+        assertNull(ResponseCache.identifierRange(content, range(1, 14, 20)));
+        assertNull(ResponseCache.identifierRange(content, range(5, 0, 3)));
+    }
+}
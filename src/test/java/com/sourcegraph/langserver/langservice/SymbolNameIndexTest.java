@@ -0,0 +1,94 @@
+package com.sourcegraph.langserver.langservice;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SymbolNameIndexTest {
+
+    private SymbolNameIndex index;
+
+    @Before
+    public void setUp() {
+        index = new SymbolNameIndex(100);
+        add("Multimap.java", "Multimap", "put", "get");
+        add("AbstractMapBasedMultimap.java", "AbstractMapBasedMultimap", "backingMap", "put");
+        add("Maps.java", "Maps", "newHashMap");
+    }
+
+    private void add(String fileName, String... names) {
+        Assert.assertTrue(index.add(fileName, ImmutableList.copyOf(names), index.getVersion()));
+    }
+
+    @Test
+    public void testSubstring() {
+        Assert.assertEquals(ImmutableSet.of("Multimap.java", "AbstractMapBasedMultimap.java"), index.findFiles("multimap"));
+        Assert.assertEquals(ImmutableSet.of("Multimap.java", "AbstractMapBasedMultimap.java", "Maps.java"), index.findFiles("MAP"));
+        Assert.assertEquals(ImmutableSet.of("Multimap.java", "AbstractMapBasedMultimap.java"), index.findFiles("pu"));
+        Assert.assertEquals(ImmutableSet.of(), index.findFiles("treemap"));
+    }
+
+    @Test
+    public void testCamelCaseAbbreviation() {
+        Assert.assertEquals(ImmutableSet.of("AbstractMapBasedMultimap.java"), index.findFiles("AMBM"));
+        Assert.assertEquals(ImmutableSet.of("Maps.java"), index.findFiles("nhm"));
+    }
+
+    @Test
+    public void testRemoveAndReindex() {
+        index.remove("Maps.java");
+        Assert.assertFalse(index.contains("Maps.java"));
+        Assert.assertEquals(ImmutableSet.of(), index.findFiles("newHashMap"));
+
+        add("Maps.java", "Maps", "newTreeMap");
+        Assert.assertEquals(ImmutableSet.of(), index.findFiles("newHashMap"));
+        Assert.assertEquals(ImmutableSet.of("Maps.java"), index.findFiles("newTreeMap"));
+    }
+
+    @Test
+    public void testAddAfterRemovalIsRejected() {
+        long version = index.getVersion();
+        index.remove("Multimap.java");
+        Assert.assertFalse(index.add("Multimap.java", ImmutableList.of("Multimap"), version));
+        Assert.assertFalse(index.contains("Multimap.java"));
+    }
+
+    @Test
+    public void testCompactsNamesNoLongerDeclared() {
+        index = new SymbolNameIndex(3);
+        add("A.java", "a1", "a2");
+        index.remove("A.java");
+        add("B.java", "b1", "b2");
+        Assert.assertTrue(index.isEnabled());
+        Assert.assertEquals(2, index.getNames());
+        Assert.assertEquals(ImmutableSet.of("B.java"), index.findFiles("b2"));
+    }
+
+    @Test
+    public void testKeepsFewNamesNoLongerDeclared() {
+        index = new SymbolNameIndex(8);
+        add("A.java", "a1", "a2", "a3", "a4", "a5", "a6", "a7");
+        add("B.java", "b1");
+        index.remove("B.java");
+        add("C.java", "c1");
+        // one dead name out of nine isn't worth rebuilding for
+        Assert.assertTrue(index.isEnabled());
+        Assert.assertEquals(9, index.getNames());
+        Assert.assertEquals(ImmutableSet.of("C.java"), index.findFiles("c1"));
+        // but too many live names still disable the index
+        add("B.java", "b1");
+        Assert.assertFalse(index.isEnabled());
+    }
+
+    @Test
+    public void testDisabledAboveLimit() {
+        index = new SymbolNameIndex(3);
+        add("A.java", "a1", "a2");
+        add("B.java", "b1", "b2");
+        Assert.assertFalse(index.isEnabled());
+        Assert.assertNull(index.findFiles("a1"));
+        Assert.assertEquals(0, index.getEstimatedBytes());
+    }
+}
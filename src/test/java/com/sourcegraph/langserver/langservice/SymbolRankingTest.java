@@ -0,0 +1,89 @@
+package com.sourcegraph.langserver.langservice;
+
+import com.sourcegraph.lsp.domain.structures.Location;
+import com.sourcegraph.lsp.domain.structures.SymbolInformation;
+import com.sourcegraph.lsp.domain.structures.SymbolKind;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class SymbolRankingTest {
+
+    private static SymbolInformation symbol(String name, SymbolKind kind, String uri) {
+        return SymbolInformation.of(name, kind, null, Location.of(uri, 0, 0, 0, name.length()));
+    }
+
+    /**
+     * The ranking workspace/symbol used to compute: sort everything, then take the first ones
+     */
+    private static List<SymbolInformation> sortAll(List<SymbolInformation> symbols, String query, int limit) {
+        SymbolRanking scorer = new SymbolRanking(query, limit);
+        return symbols.stream()
+                .map(symbol -> Pair.of(-1 * scorer.score(symbol), symbol))
+                .sorted(Comparator.comparing(Pair::getLeft))
+                .limit(limit)
+                .map(Pair::getRight)
+                .collect(Collectors.toList());
+    }
+
+    private static List<SymbolInformation> rank(List<SymbolInformation> symbols, String query, int limit) {
+        SymbolRanking ranking = new SymbolRanking(query, limit);
+        symbols.forEach(ranking::offer);
+        return ranking.result();
+    }
+
+    @Test
+    public void testScore() {
+        SymbolRanking ranking = new SymbolRanking("Esc", 5);
+        assertTrue(ranking.score(symbol("Esc", SymbolKind.METHOD, "file:///A.java"))
+                > ranking.score(symbol("esc", SymbolKind.METHOD, "file:///A.java")));
+        assertTrue(ranking.score(symbol("esc", SymbolKind.METHOD, "file:///A.java"))
+                > ranking.score(symbol("Escape", SymbolKind.METHOD, "file:///A.java")));
+        assertTrue(ranking.score(symbol("Escape", SymbolKind.CLASS, "file:///A.java"))
+                > ranking.score(symbol("Escape", SymbolKind.METHOD, "file:///A.java")));
+    }
+
+    @Test
+    public void testAbbreviationsRankBelowSubstrings() {
+        SymbolInformation abbreviated = symbol("AbstractMapBasedMultimap", SymbolKind.CLASS, "file:///A.java");
+        SymbolInformation containing = symbol("streamAmbmOperationsOfTheLongestPossibleName", SymbolKind.FIELD,
+                "file:///src/main/java/com/example/deeply/nested/Operations.java");
+        SymbolRanking ranking = new SymbolRanking("ambm", 5);
+        assertTrue(ranking.score(containing) > ranking.score(abbreviated));
+        assertEquals(Collections.singletonList(containing), rank(Arrays.asList(abbreviated, containing), "ambm", 1));
+    }
+
+    @Test
+    public void testKeepsOrderOfTies() {
+        List<SymbolInformation> symbols = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            // same name and URI length, so the same score
+            symbols.add(symbol("escape", SymbolKind.METHOD, "file:///A" + (char) ('a' + i) + ".java"));
+        }
+        assertEquals(symbols.subList(0, 5), rank(symbols, "esc", 5));
+    }
+
+    @Test
+    public void testMatchesSortingEverything() {
+        Random random = new Random(42);
+        String[] names = {"Esc", "esc", "Escape", "escapeHtml", "EscapeUtils", "unescape", "ESCAPE", "descend"};
+        SymbolKind[] kinds = {SymbolKind.CLASS, SymbolKind.METHOD, SymbolKind.FIELD, SymbolKind.INTERFACE};
+        for (int run = 0; run < 50; run++) {
+            List<SymbolInformation> symbols = new ArrayList<>();
+            int n = random.nextInt(200);
+            for (int i = 0; i < n; i++) {
+                symbols.add(symbol(names[random.nextInt(names.length)], kinds[random.nextInt(kinds.length)],
+                        "file:///src/" + "p/".substring(0, random.nextInt(3)) + random.nextInt(3) + ".java"));
+            }
+            for (String query : new String[]{"esc", "Esc", "escape"}) {
+                for (int limit : new int[]{0, 1, 5, 10}) {
+                    assertEquals(sortAll(symbols, query, limit), rank(symbols, query, limit));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.sourcegraph.langserver.langservice;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SymbolSearchCacheTest {
+
+    @Test
+    public void testExtendingQueryReusesFiles() {
+        SymbolSearchCache<String> cache = new SymbolSearchCache<>(4);
+        cache.put("Esc", 0, ImmutableList.of("a", "b"));
+
+        assertEquals(ImmutableList.of("a", "b"), cache.candidates("Esca", 0));
+        assertEquals(ImmutableList.of("a", "b"), cache.candidates("escape", 0));
+        assertEquals(ImmutableList.of("a", "b"), cache.candidates("Esc", 0));
+        assertNull(cache.candidates("Es", 0));
+        assertNull(cache.candidates("Xesc", 0));
+    }
+
+    @Test
+    public void testLongestPrefixWins() {
+        SymbolSearchCache<String> cache = new SymbolSearchCache<>(4);
+        cache.put("E", 0, ImmutableList.of("a", "b", "c"));
+        cache.put("Esc", 0, ImmutableList.of("a"));
+
+        assertEquals(ImmutableList.of("a"), cache.candidates("Escape", 0));
+        assertEquals(ImmutableList.of("a", "b", "c"), cache.candidates("Ex", 0));
+    }
+
+    @Test
+    public void testOtherRevisionMisses() {
+        SymbolSearchCache<String> cache = new SymbolSearchCache<>(4);
+        cache.put("Esc", 0, ImmutableList.of("a"));
+
+        assertNull(cache.candidates("Esca", 1));
+        // dropped
+        assertNull(cache.candidates("Esca", 0));
+    }
+
+    @Test
+    public void testBounded() {
+        SymbolSearchCache<String> cache = new SymbolSearchCache<>(2);
+        cache.put("a", 0, ImmutableList.of("1"));
+        cache.put("b", 0, ImmutableList.of("2"));
+        cache.put("c", 0, ImmutableList.of("3"));
+
+        assertNull(cache.candidates("a", 0));
+        assertNotNull(cache.candidates("b", 0));
+        assertNotNull(cache.candidates("c", 0));
+    }
+}
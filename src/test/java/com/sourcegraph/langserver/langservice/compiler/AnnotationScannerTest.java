@@ -0,0 +1,96 @@
+package com.sourcegraph.langserver.langservice.compiler;
+
+import com.google.common.collect.ImmutableList;
+import com.sourcegraph.langserver.langservice.workspace.SourceFile;
+import com.sourcegraph.lsp.domain.structures.Range;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.Trees;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.lang.model.element.ElementKind;
+import javax.tools.ToolProvider;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class AnnotationScannerTest {
+
+    private static final String SOURCE = String.join("\n",
+            "package a;",
+            "",
+            "public class A {",
+            "    private int count;",
+            "",
+            "    public A next(int step) {",
+            "        count += step;",
+            "        return new A();",
+            "    }",
+            "}",
+            "");
+
+    private List<LanguageData> tokens;
+
+    @Before
+    public void setUp() throws Exception {
+        SourceFile file = new SourceFile("file:///src/a/A.java", "a.A", SOURCE);
+        JavacTask task = (JavacTask) ToolProvider.getSystemJavaCompiler()
+                .getTask(null, null, null, null, null, ImmutableList.of(file));
+        CompilationUnitTree unit = task.parse().iterator().next();
+        task.analyze();
+        tokens = new AnnotationScanner(Trees.instance(task), unit).collect();
+    }
+
+    private List<LanguageData> tokensAt(int line, int character) {
+        return tokens.stream().filter(token -> {
+            Range range = token.getLocation().getRange();
+            return range.getStart().getLine() == line
+                    && range.getStart().getCharacter() <= character && character < range.getEnd().getCharacter();
+        }).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testReferencesAndDeclarations() {
+        // `count` in `count += step`
+        List<LanguageData> count = tokensAt(6, 10);
+        Assert.assertEquals(1, count.size());
+        Assert.assertEquals(ElementKind.FIELD, count.get(0).getElement().getKind());
+        Assert.assertEquals(8, count.get(0).getLocation().getRange().getStart().getCharacter());
+        Assert.assertEquals(13, count.get(0).getLocation().getRange().getEnd().getCharacter());
+
+        // declaration of `count`
+        Assert.assertEquals(ElementKind.FIELD, tokensAt(3, 17).get(0).getElement().getKind());
+        // declaration of `step`
+        Assert.assertEquals(ElementKind.PARAMETER, tokensAt(5, 23).get(0).getElement().getKind());
+        // declaration of `A`
+        Assert.assertEquals(ElementKind.CLASS, tokensAt(2, 13).get(0).getElement().getKind());
+    }
+
+    @Test
+    public void testNewClassNameStandsForConstructor() {
+        // `A` in `new A()`
+        List<LanguageData> constructor = tokensAt(7, 19);
+        Assert.assertEquals(1, constructor.size());
+        Assert.assertEquals(ElementKind.CONSTRUCTOR, constructor.get(0).getElement().getKind());
+        // the default constructor has no token of its own
+        Assert.assertEquals(1, tokens.stream().filter(token -> token.getElement().getKind() == ElementKind.CONSTRUCTOR).count());
+    }
+
+    @Test
+    public void testNoTokensOutsideOfNames() {
+        Assert.assertTrue(tokensAt(6, 14).isEmpty());
+        Assert.assertTrue(tokensAt(7, 8).isEmpty());
+    }
+
+    @Test
+    public void testSortedByPosition() {
+        for (int i = 1; i < tokens.size(); i++) {
+            Range previous = tokens.get(i - 1).getLocation().getRange();
+            Range range = tokens.get(i).getLocation().getRange();
+            Assert.assertTrue(previous.getStart().getLine() < range.getStart().getLine()
+                    || previous.getStart().getLine() == range.getStart().getLine()
+                    && previous.getStart().getCharacter() <= range.getStart().getCharacter());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.sourcegraph.langserver.langservice.compiler;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CamelHumpsTest {
+
+    @Test
+    public void testHumps() {
+        Assert.assertEquals(ImmutableList.of("abstract", "map", "based", "multimap"), CamelHumps.humps("AbstractMapBasedMultimap"));
+        Assert.assertEquals(ImmutableList.of("html", "parser2"), CamelHumps.humps("HTMLParser2"));
+        Assert.assertEquals(ImmutableList.of("max", "value"), CamelHumps.humps("MAX_VALUE"));
+        Assert.assertEquals(ImmutableList.of("get", "url"), CamelHumps.humps("getURL"));
+        Assert.assertEquals(ImmutableList.of(), CamelHumps.humps("_"));
+    }
+
+    @Test
+    public void testAbbreviations() {
+        Assert.assertTrue(CamelHumps.matches("ambm", "AbstractMapBasedMultimap"));
+        Assert.assertTrue(CamelHumps.matches("absmapbm", "AbstractMapBasedMultimap"));
+        Assert.assertTrue(CamelHumps.matches("amm", "AbstractMapBasedMultimap"));
+        Assert.assertTrue(CamelHumps.matches("npe", "NullPointerException"));
+        Assert.assertTrue(CamelHumps.matches("mv", "MAX_VALUE"));
+        Assert.assertTrue(CamelHumps.matches("hp", "HTMLParser2"));
+    }
+
+    @Test
+    public void testBacktracksOverHumps() {
+        // "ab" can't be taken from "abc" since the rest has to start a hump
+        Assert.assertTrue(CamelHumps.matches("abar", "AbcBar"));
+    }
+
+    @Test
+    public void testMismatches() {
+        Assert.assertFalse(CamelHumps.matches("mbm", "AbstractMapBasedMultimap"));
+        Assert.assertFalse(CamelHumps.matches("ambx", "AbstractMapBasedMultimap"));
+        Assert.assertFalse(CamelHumps.matches("ambmx", "AbstractMapBasedMultimap"));
+        Assert.assertFalse(CamelHumps.matches("ab", "_"));
+    }
+
+    @Test
+    public void testPrefixesOfMatchesMatch() {
+        String query = "abstmapbasmu";
+        for (int i = 1; i <= query.length(); i++) {
+            Assert.assertTrue(query.substring(0, i), CamelHumps.matches(query.substring(0, i), "AbstractMapBasedMultimap"));
+        }
+    }
+}
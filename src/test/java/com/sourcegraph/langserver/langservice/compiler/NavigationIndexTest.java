@@ -0,0 +1,95 @@
+package com.sourcegraph.langserver.langservice.compiler;
+
+import com.google.common.collect.ImmutableList;
+import com.sourcegraph.langserver.langservice.workspace.SourceFile;
+import com.sourcegraph.lsp.domain.structures.Position;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.Trees;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.ToolProvider;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Optional;
+
+public class NavigationIndexTest {
+
+    private static final String SOURCE = String.join("\n",
+            "package a;",
+            "",
+            "public class A {",
+            "    /** The count. */",
+            "    private int count;",
+            "",
+            "    public int next(int step) {",
+            "        int result = count + step;",
+            "        return new A().count + result;",
+            "    }",
+            "}",
+            "");
+
+    private NavigationIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        SourceFile file = new SourceFile("file:///src/a/A.java", "a.A", SOURCE);
+        JavacTask task = (JavacTask) ToolProvider.getSystemJavaCompiler()
+                .getTask(null, null, null, null, null, ImmutableList.of(file));
+        CompilationUnitTree unit = task.parse().iterator().next();
+        task.analyze();
+        index = NavigationIndex.build(unit, Trees.instance(task));
+    }
+
+    @Test
+    public void testResolvesReferencesToDeclarationsInFile() {
+        // `count` in `count + step`
+        Optional<NavigationIndex.Symbol> symbol = index.findSymbol(Position.of(7, 22));
+        Assert.assertTrue(symbol.isPresent());
+        Assert.assertEquals(4, symbol.get().getDefinition().getRange().getStart().getLine());
+        Assert.assertEquals(2, symbol.get().getHoverContents().size());
+        Assert.assertNotNull(symbol.get().getKey());
+    }
+
+    @Test
+    public void testLocalSymbolsHaveNoKey() {
+        // `result` in `... + result`
+        Optional<NavigationIndex.Symbol> symbol = index.findSymbol(Position.of(8, 32));
+        Assert.assertTrue(symbol.isPresent());
+        Assert.assertNull(symbol.get().getKey());
+        Assert.assertEquals(7, symbol.get().getDefinition().getRange().getStart().getLine());
+    }
+
+    @Test
+    public void testNoSymbolOutsideOfTokens() {
+        Assert.assertFalse(index.findSymbol(Position.of(7, 8)).isPresent());
+        Assert.assertFalse(index.findSymbol(Position.of(1, 0)).isPresent());
+    }
+
+    @Test
+    public void testDeclarationsExcludeLocals() {
+        for (NavigationIndex.Symbol declaration : index.getDeclarations()) {
+            Assert.assertNotNull(declaration.getKey());
+        }
+        Assert.assertEquals(3, index.getDeclarations().size());
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.write(new DataOutputStream(bytes));
+        NavigationIndex read = NavigationIndex.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        Assert.assertEquals(index.size(), read.size());
+        NavigationIndex.Symbol expected = index.findSymbol(Position.of(7, 22)).get();
+        NavigationIndex.Symbol actual = read.findSymbol(Position.of(7, 22)).get();
+        Assert.assertEquals(expected.getKey(), actual.getKey());
+        Assert.assertEquals(expected.getDefinition(), actual.getDefinition());
+        Assert.assertEquals(expected.getHoverContents(), actual.getHoverContents());
+        Assert.assertEquals(index.getDeclarations().size(), read.getDeclarations().size());
+    }
+}
@@ -0,0 +1,139 @@
+package com.sourcegraph.langserver.langservice.gradle;
+
+import com.google.common.collect.ImmutableSet;
+import com.sourcegraph.langserver.langservice.MockCache;
+import com.sourcegraph.langserver.langservice.compiler.CompilerOption;
+import com.sourcegraph.langserver.langservice.files.FileSystemFileProvider;
+import com.sourcegraph.langserver.langservice.maven.MavenWorkspaceModelResolver;
+import com.sourcegraph.lsp.SharedCache;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.model.Model;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+public class FradleCacheTest {
+
+    private static final String ROOT = "file:///";
+    private static final String BUILD_GRADLE = "file:///build.gradle";
+    private static final String SETTINGS_GRADLE = "file:///settings.gradle";
+
+    private Path workspace;
+    private File diskDir;
+    private FileSystemFileProvider files;
+
+    @Before
+    public void setUp() throws Exception {
+        workspace = Files.createTempDirectory("fradle-cache-test");
+        diskDir = Files.createTempDirectory("fradle-cache-test-disk").toFile();
+        files = new FileSystemFileProvider(workspace);
+        write("build.gradle", "apply plugin: 'java'");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(workspace.toFile());
+        FileUtils.deleteDirectory(diskDir);
+    }
+
+    @Test
+    public void testHitUntilScriptChanges() throws Exception {
+        FradleCache cache = new FradleCache(null);
+        Set<String> allUris = ImmutableSet.of(BUILD_GRADLE);
+        cache.put(ROOT, record(allUris), allUris, poms(), new SharedCache());
+
+        Map<String, MavenWorkspaceModelResolver.PomInfo> cached = cache.get(ROOT, files, allUris, new SharedCache());
+        Assert.assertNotNull(cached);
+        Assert.assertEquals("lib", cached.get("file:///").rawModel.getArtifactId());
+
+        write("build.gradle", "apply plugin: 'war'");
+        Assert.assertNull(cache.get(ROOT, files, allUris, new SharedCache()));
+    }
+
+    @Test
+    public void testMissWhenAbsentFileAppears() throws Exception {
+        FradleCache cache = new FradleCache(null);
+        cache.put(ROOT, record(ImmutableSet.of(BUILD_GRADLE)), ImmutableSet.of(BUILD_GRADLE), poms(), new SharedCache());
+
+        write("settings.gradle", "include 'app'");
+        Assert.assertNull(cache.get(ROOT, files, ImmutableSet.of(BUILD_GRADLE, SETTINGS_GRADLE), new SharedCache()));
+    }
+
+    @Test
+    public void testReturnsCopies() throws Exception {
+        FradleCache cache = new FradleCache(null);
+        Set<String> allUris = ImmutableSet.of(BUILD_GRADLE);
+        cache.put(ROOT, record(allUris), allUris, poms(), new SharedCache());
+
+        cache.get(ROOT, files, allUris, new SharedCache()).get("file:///").rawModel.setArtifactId("changed");
+        Assert.assertEquals("lib", cache.get(ROOT, files, allUris, new SharedCache()).get("file:///").rawModel.getArtifactId());
+    }
+
+    @Test
+    public void testDiskEntriesSurviveRestart() throws Exception {
+        Set<String> allUris = ImmutableSet.of(BUILD_GRADLE);
+        new FradleCache(diskDir).put(ROOT, record(allUris), allUris, poms(), new SharedCache());
+
+        Map<String, MavenWorkspaceModelResolver.PomInfo> cached = new FradleCache(diskDir).get(ROOT, files, allUris, new SharedCache());
+        Assert.assertNotNull(cached);
+        MavenWorkspaceModelResolver.PomInfo pom = cached.get("file:///");
+        Assert.assertEquals("com.example", pom.rawModel.getGroupId());
+        Assert.assertEquals("lib", pom.rawModel.getArtifactId());
+        Assert.assertEquals(1, pom.compilerOptions.size());
+        Assert.assertEquals("-bootclasspath", pom.compilerOptions.get(0).getName());
+        Assert.assertNull(pom.compilerOptions.get(0).getValue());
+    }
+
+    @Test
+    public void testSharedEntriesReachOtherInstances() throws Exception {
+        SharedCache sharedCache = new SharedCache();
+        MockCache client = new MockCache();
+        sharedCache.attach(client);
+        Set<String> allUris = ImmutableSet.of(BUILD_GRADLE);
+        new FradleCache(null).put(ROOT, record(allUris), allUris, poms(), sharedCache);
+        Assert.assertEquals(1, client.getData().size());
+
+        Map<String, MavenWorkspaceModelResolver.PomInfo> cached = new FradleCache(null).get(ROOT, files, allUris, sharedCache);
+        Assert.assertNotNull(cached);
+        Assert.assertEquals("lib", cached.get("file:///").rawModel.getArtifactId());
+
+        write("build.gradle", "apply plugin: 'war'");
+        Assert.assertNull(new FradleCache(null).get(ROOT, files, allUris, sharedCache));
+    }
+
+    /**
+     * Reads the files the way GradleHierarchy does for a hierarchy without settings.gradle
+     */
+    private FradleCache.Recorder record(Set<String> allUris) throws Exception {
+        FradleCache.Recorder recorder = new FradleCache.Recorder(files);
+        IOUtils.toString(recorder.readContent(BUILD_GRADLE), StandardCharsets.UTF_8);
+        if (!allUris.contains(SETTINGS_GRADLE)) {
+            recorder.recordAbsent(SETTINGS_GRADLE);
+        }
+        return recorder;
+    }
+
+    private static Map<String, MavenWorkspaceModelResolver.PomInfo> poms() {
+        Model model = new Model();
+        model.setModelVersion("4.0.0");
+        model.setGroupId("com.example");
+        model.setArtifactId("lib");
+        List<CompilerOption> options = new ArrayList<>();
+        options.add(new CompilerOption("-bootclasspath", null));
+        Map<String, MavenWorkspaceModelResolver.PomInfo> poms = new LinkedHashMap<>();
+        poms.put("file:///", new MavenWorkspaceModelResolver.PomInfo("file:///", model, options));
+        return poms;
+    }
+
+    private void write(String name, String content) throws Exception {
+        Files.write(workspace.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
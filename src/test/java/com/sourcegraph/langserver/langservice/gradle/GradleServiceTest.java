@@ -9,6 +9,7 @@ import com.sourcegraph.langserver.langservice.files.ResourceFileProvider;
 import com.sourcegraph.langserver.langservice.maven.MavenUtil;
 import com.sourcegraph.langserver.langservice.maven.MavenWorkspaceModelResolver;
 import com.sourcegraph.lsp.MessageAggregator;
+import com.sourcegraph.lsp.SharedCache;
 import com.sourcegraph.lsp.domain.structures.TextDocumentIdentifier;
 import com.sourcegraph.utils.LanguageUtils;
 import org.apache.commons.io.IOUtils;
@@ -124,7 +125,7 @@ public class GradleServiceTest {
             expPomContent.put(expPomUri, IOUtils.toString(pomFs.readContent(expPomUri), "UTF-8"));
         }
 
-        GradleHierarchy gh = new GradleHierarchy(gradleUris, uris, fs, new MessageAggregator(null));
+        GradleHierarchy gh = new GradleHierarchy(gradleUris, uris, fs, new MessageAggregator(null), new SharedCache());
         Map<String, MavenWorkspaceModelResolver.PomInfo> pomInfos = gh.computeInferredPoms();
         Map<String, String> pomContent = Maps.newHashMap();
         Map<String, Model> pomModels = Maps.newHashMap();
@@ -0,0 +1,173 @@
+package com.sourcegraph.langserver.langservice.maven;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
+import org.eclipse.aether.impl.DefaultServiceLocator;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.repository.RepositoryPolicy;
+import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
+import org.eclipse.aether.spi.connector.transport.TransporterFactory;
+import org.eclipse.aether.transport.http.HttpTransporterFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs ArtifactFetcher against a stand-in Maven repository served over HTTP from this process.
+ */
+public class ArtifactFetcherTest {
+
+    private static final Logger log = LoggerFactory.getLogger(ArtifactFetcherTest.class);
+
+    private static final int NUM_ARTIFACTS = 50;
+
+    private static final byte[] JAR_CONTENT = new byte[4096];
+
+    private HttpServer server;
+    private ConcurrentHashMap<String, AtomicInteger> requests;
+    private File localRepository;
+    private RepositorySystem system;
+    private DefaultRepositorySystemSession session;
+    private List<RemoteRepository> repositories;
+
+    @Before
+    public void setUp() throws Exception {
+        requests = new ConcurrentHashMap<>();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            int n = requests.computeIfAbsent(path, __ -> new AtomicInteger()).incrementAndGet();
+            if (path.endsWith("/flaky-1.0.jar") && n == 1) {
+                exchange.sendResponseHeaders(503, -1);
+            } else if (path.endsWith(".jar") && !path.contains("/missing/")) {
+                exchange.sendResponseHeaders(200, JAR_CONTENT.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(JAR_CONTENT);
+                }
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+            exchange.close();
+        });
+        server.start();
+
+        localRepository = Files.createTempDirectory("artifact-fetcher-test").toFile();
+
+        DefaultServiceLocator locator = MavenRepositorySystemUtils.newServiceLocator();
+        locator.addService(RepositoryConnectorFactory.class, BasicRepositoryConnectorFactory.class);
+        locator.addService(TransporterFactory.class, HttpTransporterFactory.class);
+        system = locator.getService(RepositorySystem.class);
+
+        session = MavenRepositorySystemUtils.newSession();
+        session.setLocalRepositoryManager(system.newLocalRepositoryManager(session, new LocalRepository(localRepository)));
+
+        RepositoryPolicy policy = new RepositoryPolicy(true, RepositoryPolicy.UPDATE_POLICY_NEVER, RepositoryPolicy.CHECKSUM_POLICY_IGNORE);
+        repositories = new ArrayList<>();
+        repositories.add(new RemoteRepository.Builder("stand-in", "default", "http://127.0.0.1:" + server.getAddress().getPort() + "/")
+                .setPolicy(policy)
+                .build());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+        FileUtils.deleteDirectory(localRepository);
+    }
+
+    @Test
+    public void testFetchesEachArtifactOnce() {
+        ArtifactFetcher fetcher = new ArtifactFetcher(4, 3, 10);
+
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<Artifact>> futures = new ArrayList<>();
+        // every artifact is requested twice, as if by two workspaces sharing a dependency
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < NUM_ARTIFACTS; i++) {
+                futures.add(fetcher.fetch(system, session, new DefaultArtifact("com.example:lib" + i + ":1.0"), repositories));
+            }
+        }
+        for (CompletableFuture<Artifact> future : futures) {
+            File file = future.join().getFile();
+            Assert.assertNotNull(file);
+            Assert.assertTrue(file.isFile());
+        }
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        log.info("Fetched {} artifacts in {}ms ({} artifacts/s): {} downloads, {} deduplicated, {} local hits",
+                NUM_ARTIFACTS, elapsed, NUM_ARTIFACTS * 1000 / elapsed,
+                fetcher.getDownloads(), fetcher.getDeduplicated(), fetcher.getLocalHits());
+
+        for (int i = 0; i < NUM_ARTIFACTS; i++) {
+            Assert.assertEquals(1, requests.get("/com/example/lib" + i + "/1.0/lib" + i + "-1.0.jar").get());
+        }
+        Assert.assertEquals(NUM_ARTIFACTS, fetcher.getDownloads());
+        Assert.assertEquals(NUM_ARTIFACTS, fetcher.getDeduplicated() + fetcher.getLocalHits());
+    }
+
+    @Test
+    public void testRetriesTransferFailures() {
+        ArtifactFetcher fetcher = new ArtifactFetcher(4, 3, 10);
+        Artifact artifact = fetcher.fetch(system, session, new DefaultArtifact("com.example:flaky:1.0"), repositories).join();
+        Assert.assertTrue(artifact.getFile().isFile());
+        Assert.assertEquals(2, requests.get("/com/example/flaky/1.0/flaky-1.0.jar").get());
+        Assert.assertEquals(1, fetcher.getRetries());
+    }
+
+    @Test
+    public void testDoesNotRetryMissingArtifacts() {
+        ArtifactFetcher fetcher = new ArtifactFetcher(4, 3, 10);
+        try {
+            fetcher.fetch(system, session, new DefaultArtifact("com.example.missing:nothing:1.0"), repositories).join();
+            Assert.fail("expected the fetch to fail");
+        } catch (CompletionException e) {
+            // expected
+        }
+        Assert.assertEquals(1, requests.get("/com/example/missing/nothing/1.0/nothing-1.0.jar").get());
+        Assert.assertEquals(0, fetcher.getRetries());
+        Assert.assertEquals(1, fetcher.getFailures());
+    }
+
+    @Test
+    public void testDoesNotShareDownloadsAcrossRepositories() {
+        ArtifactFetcher fetcher = new ArtifactFetcher(4, 3, 10);
+        // a repository the stand-in has nothing in
+        List<RemoteRepository> empty = Collections.singletonList(new RemoteRepository.Builder(
+                "empty", "default", "http://127.0.0.1:" + server.getAddress().getPort() + "/missing/")
+                .setPolicy(repositories.get(0).getPolicy(false))
+                .build());
+        Artifact artifact = new DefaultArtifact("com.example:shared:1.0");
+        Assert.assertNotEquals(ArtifactFetcher.inFlightKey(artifact, empty), ArtifactFetcher.inFlightKey(artifact, repositories));
+
+        CompletableFuture<Artifact> fromEmpty = fetcher.fetch(system, session, artifact, empty);
+        CompletableFuture<Artifact> fromStandIn = fetcher.fetch(system, session, artifact, repositories);
+        Assert.assertTrue(fromStandIn.join().getFile().isFile());
+        try {
+            fromEmpty.join();
+            Assert.fail("expected the fetch to fail");
+        } catch (CompletionException e) {
+            // expected
+        }
+        Assert.assertEquals(0, fetcher.getDeduplicated());
+    }
+}
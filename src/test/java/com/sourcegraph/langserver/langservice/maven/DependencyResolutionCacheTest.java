@@ -0,0 +1,141 @@
+package com.sourcegraph.langserver.langservice.maven;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.sourcegraph.langserver.langservice.MockCache;
+import com.sourcegraph.lsp.SharedCache;
+import com.sourcegraph.lsp.domain.structures.PackageIdentifier;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Exclusion;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+public class DependencyResolutionCacheTest {
+
+    private static final List<RemoteRepository> REPOSITORIES = ImmutableList.of(
+            new RemoteRepository.Builder("central", "default", "https://repo1.maven.org/maven2/").build());
+
+    private Path localRepository;
+    private DependencyResolutionCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        localRepository = Files.createTempDirectory("resolution-cache-test");
+        cache = new DependencyResolutionCache(localRepository);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(localRepository.toFile());
+    }
+
+    @Test
+    public void testKeyIgnoresDeclarationOrder() {
+        Dependency guava = dependency("com.google.guava", "guava", "21.0");
+        Dependency junit = dependency("junit", "junit", "4.12");
+        Assert.assertEquals(
+                DependencyResolutionCache.key(ImmutableList.of(guava, junit), ImmutableList.of(), REPOSITORIES, ImmutableList.of()),
+                DependencyResolutionCache.key(ImmutableList.of(junit, guava), ImmutableList.of(), REPOSITORIES, ImmutableList.of()));
+    }
+
+    @Test
+    public void testKeyChangesWithResolutionInputs() {
+        List<Dependency> deps = ImmutableList.of(dependency("junit", "junit", "4.12"));
+        String key = DependencyResolutionCache.key(deps, ImmutableList.of(), REPOSITORIES, ImmutableList.of());
+
+        Assert.assertNotEquals(key, DependencyResolutionCache.key(
+                ImmutableList.of(dependency("junit", "junit", "4.11")), ImmutableList.of(), REPOSITORIES, ImmutableList.of()));
+        Assert.assertNotEquals(key, DependencyResolutionCache.key(
+                deps, ImmutableList.of(PackageIdentifier.ofMaven("org.hamcrest", "hamcrest-core", "1.3")), REPOSITORIES, ImmutableList.of()));
+        Assert.assertNotEquals(key, DependencyResolutionCache.key(
+                deps, ImmutableList.of(), ImmutableList.of(), ImmutableList.of()));
+        Assert.assertNotEquals(key, DependencyResolutionCache.key(
+                deps, ImmutableList.of(), REPOSITORIES, ImmutableList.of(dependency("org.hamcrest", "hamcrest-core", "1.3"))));
+
+        Dependency withExclusion = dependency("junit", "junit", "4.12");
+        Exclusion exclusion = new Exclusion();
+        exclusion.setGroupId("org.hamcrest");
+        exclusion.setArtifactId("hamcrest-core");
+        withExclusion.addExclusion(exclusion);
+        Assert.assertNotEquals(key, DependencyResolutionCache.key(
+                ImmutableList.of(withExclusion), ImmutableList.of(), REPOSITORIES, ImmutableList.of()));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        String key = DependencyResolutionCache.key(
+                ImmutableList.of(dependency("com.example", "round-trip", String.valueOf(System.nanoTime()))),
+                ImmutableList.of(), REPOSITORIES, ImmutableList.of());
+        Map<PackageIdentifier, List<String>> jars = ImmutableMap.of(
+                PackageIdentifier.ofMaven("junit", "junit", "4.12"), ImmutableList.of(jar("junit/junit/4.12/junit-4.12.jar")),
+                PackageIdentifier.ofMaven("org.hamcrest", "hamcrest-core", "1.3"), ImmutableList.of(
+                        jar("org/hamcrest/hamcrest-core/1.3/hamcrest-core-1.3.jar"),
+                        jar("org/hamcrest/hamcrest-core/1.3/hamcrest-core-1.3-sources.jar")));
+        cache.save(key, new DependencyResolutionCache.Resolution(jars), new SharedCache());
+        DependencyResolutionCache.Resolution loaded = cache.load(key, new SharedCache());
+        Assert.assertNotNull(loaded);
+        Assert.assertEquals(jars, loaded.jars);
+    }
+
+    @Test
+    public void testEntriesReachOtherInstances() throws Exception {
+        String key = DependencyResolutionCache.key(
+                ImmutableList.of(dependency("com.example", "shared", String.valueOf(System.nanoTime()))),
+                ImmutableList.of(), REPOSITORIES, ImmutableList.of());
+        Map<PackageIdentifier, List<String>> jars = ImmutableMap.of(
+                PackageIdentifier.ofMaven("junit", "junit", "4.12"), ImmutableList.of(jar("junit/junit/4.12/junit-4.12.jar")));
+        SharedCache sharedCache = new SharedCache();
+        sharedCache.attach(new MockCache());
+        cache.save(key, new DependencyResolutionCache.Resolution(jars), sharedCache);
+        // as seen by an instance that has never resolved these dependencies
+        Files.delete(cache.entryPath(key));
+        Assert.assertNull(cache.load(key, new SharedCache()));
+
+        DependencyResolutionCache.Resolution loaded = cache.load(key, sharedCache);
+        Assert.assertNotNull(loaded);
+        Assert.assertEquals(jars, loaded.jars);
+    }
+
+    @Test
+    public void testChangingVersionsAreNotCached() throws Exception {
+        Assert.assertTrue(DependencyResolutionCache.isCacheable(
+                ImmutableList.of(dependency("junit", "junit", "4.12")), ImmutableList.of()));
+        Assert.assertFalse(DependencyResolutionCache.isCacheable(
+                ImmutableList.of(dependency("com.example", "snapshot", "1.0-SNAPSHOT")), ImmutableList.of()));
+        Assert.assertFalse(DependencyResolutionCache.isCacheable(
+                ImmutableList.of(dependency("junit", "junit", "[4.0,5.0)")), ImmutableList.of()));
+        Assert.assertFalse(DependencyResolutionCache.isCacheable(
+                ImmutableList.of(), ImmutableList.of(dependency("junit", "junit", "LATEST"))));
+
+        // pulled in transitively
+        String key = DependencyResolutionCache.key(
+                ImmutableList.of(dependency("com.example", "transitive-snapshot", "1.0")),
+                ImmutableList.of(), REPOSITORIES, ImmutableList.of());
+        cache.save(key, new DependencyResolutionCache.Resolution(ImmutableMap.of(
+                PackageIdentifier.ofMaven("com.example", "snapshot", "1.0-20180101.123456-1"),
+                ImmutableList.of(jar("com/example/snapshot/1.0-SNAPSHOT/snapshot-1.0-20180101.123456-1.jar")))),
+                new SharedCache());
+        Assert.assertNull(cache.load(key, new SharedCache()));
+    }
+
+    private String jar(String path) {
+        return localRepository.resolve(path).toString();
+    }
+
+    private static Dependency dependency(String groupId, String artifactId, String version) {
+        Dependency dependency = new Dependency();
+        dependency.setGroupId(groupId);
+        dependency.setArtifactId(artifactId);
+        dependency.setVersion(version);
+        return dependency;
+    }
+}
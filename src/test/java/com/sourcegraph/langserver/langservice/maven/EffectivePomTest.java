@@ -5,6 +5,7 @@ import com.google.common.io.Resources;
 import com.sourcegraph.langserver.langservice.files.FileSystemFileProvider;
 import com.sourcegraph.langserver.langservice.workspace.TestMessenger;
 import com.sourcegraph.lsp.MessageAggregator;
+import com.sourcegraph.lsp.SharedCache;
 import com.sourcegraph.lsp.domain.result.WorkspaceConfigurationServersResult;
 import junit.framework.Assert;
 import org.apache.commons.io.FilenameUtils;
@@ -57,7 +58,8 @@ public class EffectivePomTest {
             EffectivePom effectivePom = EffectivePom.createAndResolve("/", pomInfo.rawModel, mavenWorkspaceModelResolver,
                     new ArrayList<>(),
                     msgs,
-                    servers);
+                    servers,
+                    new SharedCache());
 
             StringWriter stringWriter = new StringWriter();
             new DefaultModelWriter().write(stringWriter, null, effectivePom.getEffectiveModel());
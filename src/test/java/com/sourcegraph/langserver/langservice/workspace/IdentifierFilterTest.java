@@ -0,0 +1,106 @@
+package com.sourcegraph.langserver.langservice.workspace;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class IdentifierFilterTest {
+
+    private static final String SOURCE = String.join("\n",
+            "package a.b;",
+            "",
+            "import java.util.List;",
+            "",
+            "/** Mentions Javadoc */",
+            "public class Counter extends Base {",
+            "    // mentions LineComment",
+            "    private int count = 0x1F;",
+            "    private String label = \"StringContent \\\" Escaped\";",
+            "    private char quote = '\\'';",
+            "",
+            "    public Counter next(List<Counter> others) {",
+            "        return new Counter();",
+            "    }",
+            "}",
+            "");
+
+    @Test
+    public void testContainsIdentifiers() {
+        IdentifierFilter filter = IdentifierFilter.of(SOURCE);
+        for (String name : new String[]{"a", "b", "java", "util", "List", "Counter", "Base", "count", "label", "quote", "next", "others", "class", "String"}) {
+            Assert.assertTrue(name, filter.mightContain(name));
+        }
+    }
+
+    @Test
+    public void testIgnoresCase() {
+        IdentifierFilter filter = IdentifierFilter.of(SOURCE);
+        Assert.assertTrue(filter.mightContain("COUNTER"));
+        Assert.assertTrue(filter.mightContain("counter"));
+    }
+
+    @Test
+    public void testSkipsCommentsAndLiterals() {
+        IdentifierFilter filter = IdentifierFilter.of(SOURCE);
+        Assert.assertFalse(filter.mightContain("Mentions"));
+        Assert.assertFalse(filter.mightContain("Javadoc"));
+        Assert.assertFalse(filter.mightContain("LineComment"));
+        Assert.assertFalse(filter.mightContain("StringContent"));
+        Assert.assertFalse(filter.mightContain("Escaped"));
+    }
+
+    @Test
+    public void testNonIdentifiersMayAlwaysBeThere() {
+        IdentifierFilter filter = IdentifierFilter.of(SOURCE);
+        Assert.assertTrue(filter.mightContain("<init>"));
+        Assert.assertTrue(filter.mightContain(""));
+    }
+
+    @Test
+    public void testUnicodeEscapesAcceptEverything() {
+        IdentifierFilter filter = IdentifierFilter.of("class A { int \\u0062; }");
+        Assert.assertTrue(filter.mightContain("b"));
+        Assert.assertTrue(filter.mightContain("Missing"));
+        Assert.assertEquals(0, filter.getBytes());
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+        Random random = new Random(0);
+        Set<String> present = new HashSet<>();
+        StringBuilder source = new StringBuilder();
+        while (present.size() < 1000) {
+            String name = "present" + random.nextInt(1_000_000);
+            present.add(name);
+            source.append(name).append(";\n");
+        }
+        IdentifierFilter filter = IdentifierFilter.of(source);
+        Assert.assertEquals(1000, filter.getIdentifiers());
+        for (String name : present) {
+            Assert.assertTrue(filter.mightContain(name));
+        }
+
+        int falsePositives = 0;
+        int queries = 100_000;
+        for (int i = 0; i < queries; i++) {
+            if (filter.mightContain("absent" + i)) {
+                falsePositives++;
+            }
+        }
+        // about 0.8% with 10 bits and 7 hashes per identifier
+        Assert.assertTrue("false positive rate " + (double) falsePositives / queries, falsePositives < queries * 0.02);
+    }
+
+    @Test
+    public void testSourceFileRebuildsFilterOnChange() {
+        SourceFile file = new SourceFile("file:///src/a/A.java", "a.A", "class A { int first; }");
+        Assert.assertTrue(file.getIdentifierFilter().mightContain("first"));
+        Assert.assertFalse(file.getIdentifierFilter().mightContain("second"));
+        Assert.assertTrue(file.setContent("class A { int second; }", null));
+        Assert.assertTrue(file.getIdentifierFilter().mightContain("second"));
+        Assert.assertFalse(file.getIdentifierFilter().mightContain("first"));
+    }
+}
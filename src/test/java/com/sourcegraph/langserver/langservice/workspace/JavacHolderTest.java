@@ -0,0 +1,204 @@
+package com.sourcegraph.langserver.langservice.workspace;
+
+import com.google.common.collect.ImmutableList;
+import com.sourcegraph.langserver.langservice.CompilerService;
+import com.sourcegraph.langserver.langservice.compiler.CompilationResult;
+import com.sourcegraph.langserver.langservice.files.FileSystemFileProvider;
+import com.sourcegraph.langserver.langservice.javaconfigjson.Project;
+import com.sourcegraph.lsp.domain.structures.Position;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.tree.JCTree;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class JavacHolderTest {
+
+    private static final String A = "file:///src/main/java/a/A.java";
+    private static final String B = "file:///src/main/java/a/B.java";
+
+    private Path root;
+    private Workspace workspace;
+    private JavacHolder compiler;
+    private List<Diagnostic<? extends JavaFileObject>> errors;
+
+    @Before
+    public void setUp() throws Exception {
+        root = Files.createTempDirectory("javac-holder-test");
+        write("src/main/java/a/A.java",
+                "package a;",
+                "",
+                "class A {",
+                "    int size() {",
+                "        return new B().count();",
+                "    }",
+                "",
+                "    String name() {",
+                "        return \"a\".trim();",
+                "    }",
+                "}");
+        write("src/main/java/a/B.java",
+                "package a;",
+                "",
+                "class B {",
+                "    int count() {",
+                "        return \"b\".length();",
+                "    }",
+                "}");
+        FileSystemFileProvider files = new FileSystemFileProvider(root);
+        workspace = new JavaConfigWorkspace(files, Project.newDefaultProject(), "/");
+        new WorkspaceManager(ImmutableList.of(workspace), files);
+        compiler = (JavacHolder) workspace.getCompiler();
+        errors = new ArrayList<>();
+        compiler.setDiagnosticListener(diagnostic -> {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.add(diagnostic);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(root.toFile());
+    }
+
+    private void write(String path, String... lines) throws Exception {
+        Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testHeaderOnlyAttributionDefersDependencies() {
+        compiler.setHeaderOnlyAttribution(true);
+        JavaFileObject a = workspace.getSourceFile(A);
+        JavaFileObject b = workspace.getSourceFile(B);
+
+        compiler.analyze(compiler.parse(a));
+        Assert.assertTrue(compiler.isAttributed(a));
+        Assert.assertFalse(compiler.isAttributed(b));
+
+        // B was entered along with A, analyzing it attributes it without entering its classes again
+        compiler.analyze(compiler.parse(b));
+        Assert.assertTrue(compiler.isAttributed(b));
+        Assert.assertEquals(ImmutableList.of(), errors);
+    }
+
+    @Test
+    public void testLazyMethodAttributionDefersOtherBodies() {
+        compiler.setLazyMethodAttribution(true);
+        CompilerService compilerService = new CompilerService(workspace.getWorkspaceManager());
+        Map<String, Object> ctx = new HashMap<>();
+
+        // in the body of size()
+        CompilationResult result = compilerService.analyze(A, Position.of(4, 20), ctx).get();
+        Assert.assertNotNull(invocation(result, "count").type);
+        Assert.assertNull(invocation(result, "trim").type);
+
+        compilerService.analyze(A, null, ctx);
+        Assert.assertNotNull(invocation(result, "trim").type);
+        Assert.assertEquals(ImmutableList.of(), errors);
+    }
+
+    @Test
+    public void testReenterReplacesTheClassesOfTheChangedFile() throws Exception {
+        JavaFileObject b = workspace.getSourceFile(B);
+        compiler.analyze(compiler.parse(workspace.getSourceFile(A)));
+        Assert.assertTrue(compiler.isAttributed(b));
+
+        edit(b,
+                "package a;",
+                "",
+                "class B {",
+                "    int count() {",
+                "        return total();",
+                "    }",
+                "",
+                "    int total() {",
+                "        return 1;",
+                "    }",
+                "}");
+        Assert.assertTrue(compiler.reenter(b));
+        Assert.assertFalse(compiler.isAttributed(b));
+
+        List<Element> elements = compiler.analyze(compiler.parse(b));
+        Assert.assertTrue(compiler.isAttributed(b));
+        TypeElement type = (TypeElement) elements.stream().filter(e -> e instanceof TypeElement).findFirst().get();
+        Assert.assertTrue(type.getEnclosedElements().stream().anyMatch(e -> e.getSimpleName().contentEquals("total")));
+        Assert.assertEquals(ImmutableList.of(), errors);
+    }
+
+    @Test
+    public void testInvalidateKeepsTheCompilerUnlessTheSignatureChanges() throws Exception {
+        CompilerService compilerService = new CompilerService(workspace.getWorkspaceManager());
+        JavaFileObject b = workspace.getSourceFile(B);
+        compilerService.analyze(A, Collections.emptyMap());
+
+        edit(b,
+                "package a;",
+                "",
+                "class B {",
+                "    int count() {",
+                "        return 2;",
+                "    }",
+                "}");
+        compilerService.invalidate(B);
+        Assert.assertSame(compiler, workspace.getCompiler());
+
+        edit(b,
+                "package a;",
+                "",
+                "class B {",
+                "    long count() {",
+                "        return 2;",
+                "    }",
+                "}");
+        compilerService.invalidate(B);
+        Assert.assertNotSame(compiler, workspace.getCompiler());
+    }
+
+    private static void edit(JavaFileObject file, String... lines) throws Exception {
+        try (Writer writer = file.openWriter()) {
+            writer.write(String.join("\n", lines));
+        }
+    }
+
+    /**
+     * Returns the call of the method with the given name in the analyzed file
+     */
+    private static JCTree.JCMethodInvocation invocation(CompilationResult result, String name) {
+        return new TreeScanner<JCTree.JCMethodInvocation, Void>() {
+            @Override
+            public JCTree.JCMethodInvocation visitMethodInvocation(MethodInvocationTree node, Void v) {
+                if (node.getMethodSelect() instanceof MemberSelectTree
+                        && ((MemberSelectTree) node.getMethodSelect()).getIdentifier().contentEquals(name)) {
+                    return (JCTree.JCMethodInvocation) node;
+                }
+                return super.visitMethodInvocation(node, v);
+            }
+
+            @Override
+            public JCTree.JCMethodInvocation reduce(JCTree.JCMethodInvocation r1, JCTree.JCMethodInvocation r2) {
+                return r1 != null ? r1 : r2;
+            }
+        }.scan(result.getCompilationUnitTree(), null);
+    }
+}
@@ -0,0 +1,39 @@
+package com.sourcegraph.langserver.langservice.workspace;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PathTrieTest {
+
+    @Test
+    public void testInnermostDirectoryFirst() {
+        PathTrie<String> trie = new PathTrie<>();
+        trie.put("file:///", "root");
+        trie.put("file:///src/main/java", "parent");
+        trie.put("file:///child/src/main/java", "child");
+        trie.put("file:///child/src/test/java", "child");
+
+        Assert.assertEquals(ImmutableList.of("parent", "root"), trie.getContaining("file:///src/main/java/a/A.java"));
+        Assert.assertEquals(ImmutableList.of("child", "root"), trie.getContaining("file:///child/src/test/java/a/ATest.java"));
+        Assert.assertEquals(ImmutableList.of("root"), trie.getContaining("file:///child/build.gradle"));
+    }
+
+    @Test
+    public void testMatchesWholeSegmentsOnly() {
+        PathTrie<String> trie = new PathTrie<>();
+        trie.put("file:///src", "ws");
+
+        Assert.assertEquals(ImmutableList.of("ws"), trie.getContaining("file:///src/A.java"));
+        Assert.assertEquals(ImmutableList.of(), trie.getContaining("file:///srcgen/A.java"));
+        Assert.assertEquals(ImmutableList.of(), trie.getContaining("file:///other/src/A.java"));
+    }
+
+    @Test
+    public void testAcceptsPathsAndUris() {
+        PathTrie<String> trie = new PathTrie<>();
+        trie.put("/module/src/", "ws");
+
+        Assert.assertEquals(ImmutableList.of("ws"), trie.getContaining("file:///module/src/A.java"));
+    }
+}
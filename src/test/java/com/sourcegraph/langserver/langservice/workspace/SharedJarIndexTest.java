@@ -0,0 +1,57 @@
+package com.sourcegraph.langserver.langservice.workspace;
+
+import com.sourcegraph.langserver.langservice.compiler.JarSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.JavaFileObject;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+public class SharedJarIndexTest {
+
+    private File jar;
+
+    @Before
+    public void setUp() throws Exception {
+        jar = Files.createTempFile("shared-jar-index-test", ".jar").toFile();
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (String name : new String[]{"com/example/a/A.class", "com/example/a/B.class", "com/example/b/C.class", "META-INF/x.txt"}) {
+                out.putNextEntry(new JarEntry(name));
+                out.write(new byte[]{(byte) 0xCA, (byte) 0xFE});
+                out.closeEntry();
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        jar.delete();
+    }
+
+    @Test
+    public void testSharedBetweenSourcesOfSameJar() throws Exception {
+        SharedJarIndex first = SharedJarIndex.of(JarSource.fromFile(jar.getPath()));
+        SharedJarIndex second = SharedJarIndex.of(JarSource.fromFile(jar.getPath()));
+        Assert.assertSame(first, second);
+    }
+
+    @Test
+    public void testIndexesClassesByPackage() throws Exception {
+        SharedJarIndex index = SharedJarIndex.of(JarSource.fromFile(jar.getPath()));
+
+        Set<JavaFileObject> classes = index.getClasses("com.example.a");
+        Assert.assertEquals(2, classes.size());
+        Assert.assertTrue(index.getClasses("META-INF").isEmpty());
+        Assert.assertTrue(index.containsPackage("com.example"));
+        Assert.assertTrue(index.containsPackage("com"));
+        Assert.assertFalse(index.containsPackage("com.example.c"));
+        Assert.assertTrue(index.containsClass("com/example/b/C.class"));
+    }
+}
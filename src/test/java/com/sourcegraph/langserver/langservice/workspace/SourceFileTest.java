@@ -0,0 +1,74 @@
+package com.sourcegraph.langserver.langservice.workspace;
+
+import com.google.common.collect.ImmutableList;
+import com.sourcegraph.lsp.domain.structures.Position;
+import com.sourcegraph.lsp.domain.structures.Range;
+import com.sourcegraph.lsp.domain.structures.TextDocumentContentChangeEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SourceFileTest {
+
+    private static final String URI = "file:///src/main/java/a/A.java";
+
+    private static TextDocumentContentChangeEvent change(int startLine, int startChar, int endLine, int endChar, String text) {
+        return new TextDocumentContentChangeEvent()
+                .withRange(new Range().withStart(Position.of(startLine, startChar)).withEnd(Position.of(endLine, endChar)))
+                .withText(text);
+    }
+
+    @Test
+    public void testAppliesChangesInOrder() throws Exception {
+        SourceFile file = new SourceFile(URI, "a.A", "class A {\n    int x;\n}\n");
+
+        Assert.assertTrue(file.applyChanges(ImmutableList.of(
+                change(1, 8, 1, 9, "count"),
+                change(1, 4, 1, 7, "long")), 1));
+        Assert.assertEquals("class A {\n    long count;\n}\n", file.getCharContent(true).toString());
+        Assert.assertEquals(1, file.getVersion());
+    }
+
+    @Test
+    public void testCopyIsEditedSeparately() throws Exception {
+        SourceFile file = new SourceFile(URI, "a.A", "class A {\n}");
+        SourceFile copy = file.copy();
+
+        Assert.assertTrue(copy.setContent("class A { int x; }", 1));
+        Assert.assertEquals("class A {\n}", file.getCharContent(true).toString());
+        Assert.assertEquals(-1, file.getVersion());
+        Assert.assertEquals("class A { int x; }", copy.getCharContent(true).toString());
+    }
+
+    @Test
+    public void testClampsPositionsPastTheEnd() throws Exception {
+        SourceFile file = new SourceFile(URI, "a.A", "class A {\n}");
+
+        Assert.assertTrue(file.applyChanges(ImmutableList.of(change(0, 42, 5, 0, " }")), 1));
+        Assert.assertEquals("class A { }", file.getCharContent(true).toString());
+    }
+
+    @Test
+    public void testIgnoresOutdatedVersions() throws Exception {
+        SourceFile file = new SourceFile(URI, "a.A", "class A {}");
+        CharSequence original = file.getCharContent(true);
+
+        Assert.assertTrue(file.setContent("class B {}", 2));
+        Assert.assertFalse(file.applyChanges(ImmutableList.of(new TextDocumentContentChangeEvent().withText("class C {}")), 1));
+        Assert.assertFalse(file.setContent("class B {}", 3));
+        Assert.assertEquals("class B {}", file.getCharContent(true).toString());
+        // readers of the previous content are unaffected
+        Assert.assertEquals("class A {}", original.toString());
+    }
+
+    @Test
+    public void testReopeningResetsVersion() throws Exception {
+        SourceFile file = new SourceFile(URI, "a.A", "class A {}");
+
+        Assert.assertTrue(file.open("class B {}", 5));
+        // closed and opened again, with versions starting over
+        Assert.assertTrue(file.open("class C {}", 1));
+        Assert.assertEquals("class C {}", file.getCharContent(true).toString());
+        Assert.assertTrue(file.applyChanges(ImmutableList.of(new TextDocumentContentChangeEvent().withText("class D {}")), 2));
+        Assert.assertEquals(2, file.getVersion());
+    }
+}
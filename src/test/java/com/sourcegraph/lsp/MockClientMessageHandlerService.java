@@ -60,6 +60,16 @@ public class MockClientMessageHandlerService implements MessageHandlerService {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public void textDocumentDidChange(Map<String, Object> ctx, Request<DidChangeTextDocumentParams> request) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void textDocumentDidSave(Map<String, Object> ctx, Request<DidSaveTextDocumentParams> request) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public void textDocumentHover(Map<String, Object> ctx, Request<TextDocumentPositionParams> request) {
         throw new UnsupportedOperationException();
@@ -90,6 +100,11 @@ public class MockClientMessageHandlerService implements MessageHandlerService {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public void textDocumentXAnnotations(Map<String, Object> ctx, Request<TextDocumentAnnotationsParams> request) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public void workspaceXPackages(Map<String, Object> ctx, Request<Void> request) {
         throw new UnsupportedOperationException();
@@ -0,0 +1,62 @@
+package com.sourcegraph.lsp;
+
+import com.sourcegraph.langserver.langservice.MockCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class SharedCacheTest {
+
+    private static final byte[] VALUE = "some artifact, some artifact, some artifact".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testRoundTrip() {
+        SharedCache sharedCache = new SharedCache();
+        MockCache client = new MockCache();
+        sharedCache.attach(client);
+
+        sharedCache.set("test", 1, "key", VALUE);
+        Assert.assertArrayEquals(VALUE, sharedCache.get("test", 1, "key"));
+        Assert.assertTrue(client.getData().containsKey(Cache.CACHE_TAG + "test-1::key"));
+    }
+
+    @Test
+    public void testVersionsDontMix() {
+        SharedCache sharedCache = new SharedCache();
+        sharedCache.attach(new MockCache());
+
+        sharedCache.set("test", 1, "key", VALUE);
+        Assert.assertNull(sharedCache.get("test", 2, "key"));
+        Assert.assertNull(sharedCache.get("other", 1, "key"));
+    }
+
+    @Test
+    public void testMissesWithoutClient() {
+        SharedCache sharedCache = new SharedCache();
+        Assert.assertFalse(sharedCache.isAvailable());
+        sharedCache.set("test", 1, "key", VALUE);
+        Assert.assertNull(sharedCache.get("test", 1, "key"));
+
+        MockCache client = new MockCache();
+        sharedCache.attach(client);
+        sharedCache.detach(client);
+        Assert.assertFalse(sharedCache.isAvailable());
+    }
+
+    @Test
+    public void testUsesMostRecentlyAttachedClient() {
+        SharedCache sharedCache = new SharedCache();
+        MockCache first = new MockCache();
+        MockCache second = new MockCache();
+        sharedCache.attach(first);
+        sharedCache.attach(second);
+
+        sharedCache.set("test", 1, "key", VALUE);
+        Assert.assertTrue(first.getData().isEmpty());
+        Assert.assertEquals(1, second.getData().size());
+
+        sharedCache.detach(second);
+        Assert.assertNull(sharedCache.get("test", 1, "key"));
+    }
+}